@@ -0,0 +1,435 @@
+/*
+ * CommandDispatcher
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.connectsdk.service.command.ServiceCommand.Priority;
+
+/**
+ * Runs tasks in lanes on a shared executor. The tasks of a lane run one after another in the order
+ * they were queued, while different lanes run side by side. Services use one lane per device, so a
+ * device which is slow to respond only holds up its own commands and a single thread of the pool.
+ *
+ * Interactive tasks run before the normal tasks queued in their lane, and a lane with interactive
+ * tasks gets the next free thread before other lanes. Background tasks only run when no other
+ * task is queued in their lane. Priorities only reorder the queued tasks: a lane never runs two
+ * tasks at once, so a key press waits for a poll which has already started, but never for a
+ * queued one.
+ *
+ * A Request keeps its lane busy after it has returned, until it says it is done, so that requests
+ * which are answered on another thread are still sent one at a time.
+ *
+ * Tasks run on the executor set with setExecutor(Executor), or on the background executor of Util
+ * by default. Lanes are created on first use, and forgotten together with their metrics once there
+ * are more than MAX_LANES and they have nothing to do.
+ */
+public final class CommandDispatcher {
+    /** Number of tasks a lane runs before it lets the other lanes have the thread */
+    static final int MAX_TASKS_PER_TURN = 8;
+    /** Number of lanes above which idle lanes are forgotten, so that lanes of old devices don't pile up */
+    static final int MAX_LANES = 64;
+
+    private static final int PRIORITIES = Priority.values().length;
+
+    private static final CommandDispatcher instance = new CommandDispatcher();
+
+    private final Map<String, Lane> lanes = new HashMap<String, Lane>();
+    /* lanes waiting for a thread, in the order they became ready */
+    private final List<Lane> readyLanes = new ArrayList<Lane>();
+    private Executor executor;
+
+    /**
+     * A task which keeps its lane from running the next task until it calls done, for requests
+     * which are answered on another thread.
+     */
+    public interface Request {
+        /**
+         * Sends the request. Done has to be called once it has been answered or has failed,
+         * otherwise the lane stays busy.
+         */
+        void run(Runnable done);
+    }
+
+    public static CommandDispatcher getInstance() {
+        return instance;
+    }
+
+    // @cond INTERNAL
+    CommandDispatcher() {
+    }
+    // @endcond
+
+    /**
+     * Sets the executor which runs the lanes, for example to size the pool for the number of
+     * devices the app works with. Passing null restores the default executor.
+     */
+    public synchronized void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public synchronized Executor getExecutor() {
+        return executor != null ? executor : Util.getExecutor();
+    }
+
+    /**
+     * Queues a task with normal priority in a lane. It runs after the tasks which are already
+     * queued in the same lane.
+     */
+    public void execute(String laneKey, Runnable task) {
+        execute(laneKey, Priority.NORMAL, task);
+    }
+
+    /**
+     * Queues a task in a lane. It runs after the tasks of the same or a higher priority which are
+     * already queued in the same lane.
+     */
+    public void execute(String laneKey, Priority priority, Runnable task) {
+        if (task == null)
+            throw new NullPointerException("task");
+
+        if (priority == null)
+            priority = Priority.NORMAL;
+
+        int workers;
+
+        synchronized (this) {
+            Lane lane = lanes.get(laneKey);
+
+            if (lane == null) {
+                if (lanes.size() >= MAX_LANES)
+                    removeIdleLanes();
+
+                lane = new Lane();
+                lanes.put(laneKey, lane);
+            }
+
+            lane.queues[priority.ordinal()].add(task);
+            lane.maxQueueDepth = Math.max(lane.maxQueueDepth, lane.size());
+
+            workers = lane.makeReady();
+        }
+
+        startWorkers(workers);
+    }
+
+    /**
+     * Queues a request in a lane. The next task of the lane runs once the request is done.
+     */
+    public void execute(String laneKey, Priority priority, Request request) {
+        if (request == null)
+            throw new NullPointerException("request");
+
+        execute(laneKey, priority, new HeldTask(request));
+    }
+
+    /**
+     * Returns the number of tasks waiting in a lane, not counting the ones which are running.
+     */
+    public synchronized int getQueueDepth(String laneKey) {
+        Lane lane = lanes.get(laneKey);
+        return lane != null ? lane.size() : 0;
+    }
+
+    /**
+     * Returns the number of tasks of a priority waiting in a lane.
+     */
+    public synchronized int getQueueDepth(String laneKey, Priority priority) {
+        Lane lane = lanes.get(laneKey);
+        return lane != null ? lane.queues[priority.ordinal()].size() : 0;
+    }
+
+    /**
+     * Returns the largest number of tasks which have been waiting in a lane at once.
+     */
+    public synchronized int getMaxQueueDepth(String laneKey) {
+        Lane lane = lanes.get(laneKey);
+        return lane != null ? lane.maxQueueDepth : 0;
+    }
+
+    /**
+     * Returns the number of tasks which have run in a lane.
+     */
+    public synchronized long getCompletedTaskCount(String laneKey) {
+        Lane lane = lanes.get(laneKey);
+        return lane != null ? lane.completedTasks : 0;
+    }
+
+    /**
+     * Returns the number of tasks waiting in all lanes.
+     */
+    public synchronized int getTotalQueueDepth() {
+        int depth = 0;
+
+        for (Lane lane : lanes.values()) {
+            depth += lane.size();
+        }
+
+        return depth;
+    }
+
+    /**
+     * Forgets the metrics of a lane, for example when its device is gone. Queued tasks still run.
+     */
+    public synchronized void removeLane(String laneKey) {
+        Lane lane = lanes.get(laneKey);
+
+        if (lane != null && lane.isIdle())
+            lanes.remove(laneKey);
+    }
+
+    /**
+     * Returns the number of lanes, including idle lanes which have not been forgotten yet.
+     */
+    public synchronized int getLaneCount() {
+        return lanes.size();
+    }
+
+    private void removeIdleLanes() {
+        Iterator<Lane> it = lanes.values().iterator();
+
+        while (it.hasNext()) {
+            if (it.next().isIdle())
+                it.remove();
+        }
+    }
+
+    private void startWorkers(int count) {
+        for (int i = 0; i < count; i++) {
+            try {
+                getExecutor().execute(worker);
+            } catch (RejectedExecutionException e) {
+                // the executor is shutting down, so the tasks run on this thread rather than never
+                worker.run();
+            }
+        }
+    }
+
+    /* submitted once for each lane which becomes ready, runs the one with the most urgent task */
+    private final Runnable worker = new Runnable() {
+
+        @Override
+        public void run() {
+            Lane lane = null;
+
+            synchronized (CommandDispatcher.this) {
+                int best = PRIORITIES;
+
+                for (Lane ready : readyLanes) {
+                    int priority = ready.nextPriority();
+
+                    if (priority < best) {
+                        best = priority;
+                        lane = ready;
+                    }
+                }
+
+                if (lane == null)
+                    return;
+
+                readyLanes.remove(lane);
+                lane.state = Lane.RUNNING;
+            }
+
+            lane.run();
+        }
+    };
+
+    /**
+     * The queued tasks of a lane, which runs them one at a time: interactive tasks first, then
+     * normal tasks, and background tasks only when no other task is queued.
+     */
+    private final class Lane {
+        static final int IDLE = 0;
+        static final int READY = 1;
+        static final int RUNNING = 2;
+        /* waiting for a request which has been sent to be done */
+        static final int HELD = 3;
+
+        @SuppressWarnings("unchecked")
+        final ArrayDeque<Runnable>[] queues = new ArrayDeque[PRIORITIES];
+        int state = IDLE;
+        int maxQueueDepth;
+        long completedTasks;
+
+        Lane() {
+            for (int i = 0; i < PRIORITIES; i++) {
+                queues[i] = new ArrayDeque<Runnable>();
+            }
+        }
+
+        int size() {
+            int size = 0;
+
+            for (ArrayDeque<Runnable> queue : queues) {
+                size += queue.size();
+            }
+
+            return size;
+        }
+
+        boolean isIdle() {
+            return state == IDLE && size() == 0;
+        }
+
+        /* ordinal of the priority of the next task, PRIORITIES if there is none */
+        int nextPriority() {
+            for (int i = 0; i < PRIORITIES; i++) {
+                if (!queues[i].isEmpty())
+                    return i;
+            }
+
+            return PRIORITIES;
+        }
+
+        /* returns the number of workers to start */
+        int makeReady() {
+            if (state != IDLE || nextPriority() == PRIORITIES)
+                return 0;
+
+            state = READY;
+            readyLanes.add(this);
+            return 1;
+        }
+
+        Runnable poll() {
+            int priority = nextPriority();
+            return priority < PRIORITIES ? queues[priority].poll() : null;
+        }
+
+        void run() {
+            for (int i = 0; i < MAX_TASKS_PER_TURN; i++) {
+                Runnable task;
+
+                synchronized (CommandDispatcher.this) {
+                    task = poll();
+                }
+
+                if (task == null)
+                    break;
+
+                if (task instanceof HeldTask)
+                    ((HeldTask) task).lane = this;
+
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                } catch (Error e) {
+                    // the rest of the lane still runs
+                    finishTurn();
+                    throw e;
+                } finally {
+                    synchronized (CommandDispatcher.this) {
+                        completedTasks++;
+                    }
+                }
+
+                // the request which is not done yet finishes the turn
+                if (task instanceof HeldTask && ((HeldTask) task).hold())
+                    return;
+            }
+
+            finishTurn();
+        }
+
+        /* if there are tasks left, the lane goes to the back of the ready lanes */
+        private void finishTurn() {
+            int workers;
+
+            synchronized (CommandDispatcher.this) {
+                state = IDLE;
+                workers = makeReady();
+            }
+
+            startWorkers(workers);
+        }
+    }
+
+    /**
+     * Runs a Request in a lane, which is held from the time the request has been sent until it is
+     * done.
+     */
+    private final class HeldTask implements Runnable {
+        final Request request;
+        Lane lane;
+        boolean done;
+        boolean holding;
+
+        HeldTask(Request request) {
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            try {
+                request.run(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // a request which could not be sent is done
+                release();
+                throw e;
+            }
+        }
+
+        /* returns whether the lane waits for the request */
+        boolean hold() {
+            synchronized (CommandDispatcher.this) {
+                if (done)
+                    return false;
+
+                holding = true;
+                lane.state = Lane.HELD;
+                return true;
+            }
+        }
+
+        void release() {
+            int workers;
+
+            synchronized (CommandDispatcher.this) {
+                if (done)
+                    return;
+
+                done = true;
+
+                if (!holding)
+                    return;
+
+                lane.state = Lane.IDLE;
+                workers = lane.makeReady();
+            }
+
+            startWorkers(workers);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Futures
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.core;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import com.connectsdk.service.capability.listeners.CallbackExecutor;
+import com.connectsdk.service.capability.listeners.ResponseListener;
+import com.connectsdk.service.command.ServiceCommand;
+import com.connectsdk.service.command.ServiceCommandError;
+
+/**
+ * Helpers for the future based variants of the capability methods.
+ *
+ * The futures are completed on a background thread of Util.getExecutor() rather than on the main
+ * thread, so steps chained with thenCompose() or thenApply() follow each other without waiting
+ * for the UI, and never run on the thread which reads the responses. A failed future holds the ServiceCommandError of the request, which getError(Throwable)
+ * gets back out of the wrapping exceptions.
+ *
+ * The *Async default methods of the capabilities are adapters: they call the listener based method
+ * with a listener from newListener(), so they save no request or thread hop over it. Services
+ * override them where they have a future of their own, like the SetAVTransportURI and Play chain
+ * of DLNAService.playMediaAsync() and the app list of NetcastTVService.getAppListAsync().
+ */
+public final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Returns a future which has failed with the error.
+     */
+    public static <T> CompletableFuture<T> failed(ServiceCommandError error) {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    /**
+     * Returns a listener which completes the future, for the methods which take a
+     * ResponseListener<Object>.
+     */
+    @SuppressWarnings("unchecked")
+    public static ResponseListener<Object> newListener(CompletableFuture<Object> future) {
+        return newListener(ResponseListener.class, future);
+    }
+
+    /**
+     * Returns a listener of the given type which completes the future. It is called on a
+     * background thread of Util.getExecutor().
+     *
+     * @param listenerType An interface which extends ResponseListener, like AppListListener
+     */
+    public static <T, L extends ResponseListener<T>> L newListener(Class<L> listenerType, final CompletableFuture<T> future) {
+        InvocationHandler handler = new InvocationHandler() {
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+
+                if (name.equals("onSuccess") && args != null && args.length == 1) {
+                    future.complete((T) args[0]);
+                    return null;
+                } else if (name.equals("onError") && args != null && args.length == 1) {
+                    future.completeExceptionally(args[0] != null ? (ServiceCommandError) args[0]
+                            : new ServiceCommandError(0, "Unknown error", null));
+                    return null;
+                } else if (name.equals("getCallbackExecutor")) {
+                    return Util.getExecutor();
+                } else if (name.equals("equals")) {
+                    return proxy == args[0];
+                } else if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (name.equals("toString")) {
+                    return "Listener for " + future;
+                }
+
+                return null;
+            }
+        };
+
+        return listenerType.cast(Proxy.newProxyInstance(listenerType.getClassLoader(),
+                new Class<?>[] { listenerType, CallbackExecutor.class }, handler));
+    }
+
+    /**
+     * Passes the result of the future on to the listener, with Util.postSuccess() or
+     * Util.postError().
+     */
+    public static <T> void deliver(CompletionStage<T> future, final ResponseListener<? super T> listener) {
+        future.whenComplete(new BiConsumer<T, Throwable>() {
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public void accept(T result, Throwable throwable) {
+                if (throwable != null) {
+                    Util.postError(listener, getError(throwable));
+                } else {
+                    Util.postSuccess((ResponseListener<T>) listener, result);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns a future of the results of all the futures, in their order. It fails as soon as one
+     * of them fails. The futures run concurrently, as far as the devices allow.
+     */
+    public static <T> CompletableFuture<List<T>> all(final List<? extends CompletionStage<? extends T>> futures) {
+        final CompletableFuture<List<T>> all = new CompletableFuture<List<T>>();
+        final Object[] results = new Object[futures.size()];
+        final int[] remaining = { futures.size() };
+
+        if (futures.isEmpty()) {
+            all.complete(new ArrayList<T>());
+            return all;
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            final int index = i;
+
+            futures.get(i).whenComplete(new BiConsumer<T, Throwable>() {
+
+                @SuppressWarnings("unchecked")
+                @Override
+                public void accept(T result, Throwable throwable) {
+                    if (throwable != null) {
+                        all.completeExceptionally(getError(throwable));
+                        return;
+                    }
+
+                    boolean done;
+
+                    synchronized (results) {
+                        results[index] = result;
+                        done = --remaining[0] == 0;
+                    }
+
+                    if (done) {
+                        List<T> list = new ArrayList<T>(results.length);
+
+                        for (Object value : results) {
+                            list.add((T) value);
+                        }
+                        all.complete(list);
+                    }
+                }
+            });
+        }
+
+        return all;
+    }
+
+    /**
+     * Returns a future which fails with a TimeoutServiceCommandError if the future is not done
+     * within the timeout (in milliseconds). The future is cancelled then, which cancels its request
+     * where the service supports it.
+     */
+    public static <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future, final long timeout) {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+
+        final ScheduledFuture<?> deadline = ServiceCommand.getDeadlineExecutor().schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                if (result.completeExceptionally(ServiceCommandError.timeout(timeout)))
+                    future.cancel(false);
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+
+        future.whenComplete(new BiConsumer<T, Throwable>() {
+
+            @Override
+            public void accept(T value, Throwable throwable) {
+                deadline.cancel(false);
+
+                if (throwable != null) {
+                    result.completeExceptionally(getError(throwable));
+                } else {
+                    result.complete(value);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Returns the ServiceCommandError behind a failure of a future.
+     */
+    public static ServiceCommandError getError(Throwable throwable) {
+        while ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+                && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+
+        if (throwable instanceof ServiceCommandError)
+            return (ServiceCommandError) throwable;
+
+        if (throwable instanceof CancellationException)
+            return new ServiceCommandError(0, "Cancelled", null);
+
+        return new ServiceCommandError(0, String.valueOf(throwable.getMessage()), throwable);
+    }
+}
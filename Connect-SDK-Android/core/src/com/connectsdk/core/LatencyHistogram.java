@@ -0,0 +1,149 @@
+/*
+ * LatencyHistogram
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in milliseconds with fixed buckets, which can be recorded from any thread
+ * without locking. Percentiles are reported as the upper bound of the bucket they fall into.
+ */
+public class LatencyHistogram {
+    /** Upper bounds of the buckets in milliseconds, the last bucket holds everything above */
+    public static final long[] BUCKET_BOUNDS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 60000
+    };
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        buckets = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Creates a copy of the histogram. Values recorded while copying may be partially included.
+     */
+    public LatencyHistogram(LatencyHistogram other) {
+        this();
+
+        for (int i = 0; i < other.buckets.length(); i++) {
+            buckets.set(i, other.buckets.get(i));
+        }
+        count.set(other.count.get());
+        sum.set(other.sum.get());
+        max.set(other.max.get());
+    }
+
+    public void record(long millis) {
+        if (millis < 0)
+            millis = 0;
+
+        buckets.incrementAndGet(bucketIndex(millis));
+        count.incrementAndGet();
+        sum.addAndGet(millis);
+
+        long currentMax;
+        do {
+            currentMax = max.get();
+        } while (millis > currentMax && !max.compareAndSet(currentMax, millis));
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /** Returns the mean in milliseconds, or 0 if nothing has been recorded */
+    public long getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the upper bound in milliseconds of the bucket containing the given percentile, or
+     * the maximum for the last bucket. Returns 0 if nothing has been recorded.
+     *
+     * @param percentile value between 0 and 100
+     */
+    public long getPercentile(double percentile) {
+        long n = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            n += buckets.get(i);
+        }
+
+        if (n == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(n * Math.min(Math.max(percentile, 0), 100) / 100);
+        if (rank == 0)
+            rank = 1;
+
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min(BUCKET_BOUNDS[i], max.get());
+        }
+
+        return max.get();
+    }
+
+    /** Returns the number of values in each bucket, see {@link #BUCKET_BOUNDS} */
+    public long[] getBuckets() {
+        long[] values = new long[buckets.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buckets.get(i);
+        }
+        return values;
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    private static int bucketIndex(long millis) {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            if (millis <= BUCKET_BOUNDS[i])
+                return i;
+        }
+        return BUCKET_BOUNDS.length;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%dms p50=%dms p90=%dms p99=%dms max=%dms",
+                getCount(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getMax());
+    }
+}
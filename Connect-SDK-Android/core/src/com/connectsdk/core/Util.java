@@ -37,6 +37,7 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 
+import com.connectsdk.service.capability.listeners.CallbackExecutor;
 import com.connectsdk.service.capability.listeners.ErrorListener;
 import com.connectsdk.service.capability.listeners.ResponseListener;
 import com.connectsdk.service.command.ServiceCommandError;
@@ -48,6 +49,18 @@ public final class Util {
 
     static private final int NUM_OF_THREADS = 20;
 
+    /**
+     * Runs callbacks on the thread which delivers them, for listeners which only pass results on
+     * to background work.
+     */
+    public static final Executor DIRECT_EXECUTOR = new Executor() {
+
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
     static private Executor executor;
 
     static {
@@ -73,6 +86,27 @@ public final class Util {
         handler.post(runnable);
     }
 
+    /**
+     * Runs the runnable with the executor, or on the main thread if the executor is null.
+     */
+    public static void runOn(Executor executor, Runnable runnable) {
+        if (executor == null) {
+            runOnUI(runnable);
+        } else {
+            executor.execute(runnable);
+        }
+    }
+
+    /**
+     * Returns the executor a listener wants its callbacks on, null for the main thread.
+     */
+    public static Executor getCallbackExecutor(Object listener) {
+        if (listener instanceof CallbackExecutor)
+            return ((CallbackExecutor) listener).getCallbackExecutor();
+
+        return null;
+    }
+
     public static void runInBackground(Runnable runnable, boolean forceNewThread) {
         if (forceNewThread || isMain()) {
             executor.execute(runnable);
@@ -95,10 +129,17 @@ public final class Util {
     }
 
     public static <T> void postSuccess(final ResponseListener<T> listener, final T object) {
+        postSuccess(getCallbackExecutor(listener), listener, object);
+    }
+
+    /**
+     * Calls the listener with the executor, or on the main thread if the executor is null.
+     */
+    public static <T> void postSuccess(Executor executor, final ResponseListener<T> listener, final T object) {
         if (listener == null)
             return;
 
-        Util.runOnUI(new Runnable() {
+        Util.runOn(executor, new Runnable() {
 
             @Override
             public void run() {
@@ -108,10 +149,17 @@ public final class Util {
     }
 
     public static void postError(final ErrorListener listener, final ServiceCommandError error) {
+        postError(getCallbackExecutor(listener), listener, error);
+    }
+
+    /**
+     * Calls the listener with the executor, or on the main thread if the executor is null.
+     */
+    public static void postError(Executor executor, final ErrorListener listener, final ServiceCommandError error) {
         if (listener == null)
             return;
 
-        Util.runOnUI(new Runnable() {
+        Util.runOn(executor, new Runnable() {
 
             @Override
             public void run() {
@@ -23,6 +23,7 @@ package com.connectsdk.device;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -40,6 +41,8 @@ import com.connectsdk.service.DeviceService.DeviceServiceListener;
 import com.connectsdk.service.DeviceService.PairingType;
 import com.connectsdk.service.capability.CapabilityMethods;
 import com.connectsdk.service.capability.CapabilityMethods.CapabilityPriorityLevel;
+import com.connectsdk.service.capability.CapabilityQuery;
+import com.connectsdk.service.capability.CapabilitySet;
 import com.connectsdk.service.capability.ExternalInputControl;
 import com.connectsdk.service.capability.KeyControl;
 import com.connectsdk.service.capability.Launcher;
@@ -101,6 +104,8 @@ public class ConnectableDevice implements DeviceServiceListener {
 
     Map<String, DeviceService> services;
 
+    private volatile CapabilitySnapshot capabilitySnapshot;
+
     private String serviceId;
 
     public boolean isConnecting = false;
@@ -179,7 +184,7 @@ public class ConnectableDevice implements DeviceServiceListener {
      * @param service DeviceService to be added
      */
     public void addService(DeviceService service) {
-        final List<String> added = getMismatchCapabilities(service.getCapabilities(), getCapabilities());
+        final List<String> added = getMismatchCapabilities(service.getCapabilities(), getCapabilitySet());
 
         service.setListener(this);
 
@@ -193,6 +198,7 @@ public class ConnectableDevice implements DeviceServiceListener {
         });
 
         services.put(service.getServiceName(), service);
+        updateCapabilities();
     }
 
 
@@ -229,8 +235,9 @@ public class ConnectableDevice implements DeviceServiceListener {
         service.disconnect();
 
         services.remove(serviceId);
+        updateCapabilities();
 
-        final List<String> removed = getMismatchCapabilities(service.getCapabilities(), getCapabilities());
+        final List<String> removed = getMismatchCapabilities(service.getCapabilities(), getCapabilitySet());
 
         Util.runOnUI(new Runnable() {
 
@@ -242,7 +249,7 @@ public class ConnectableDevice implements DeviceServiceListener {
         });
     }
 
-    private synchronized List<String> getMismatchCapabilities(List<String> capabilities, List<String> allCapabilities) {
+    private List<String> getMismatchCapabilities(List<String> capabilities, CapabilitySet allCapabilities) {
         List<String> list = new ArrayList<String>();
 
         for (String cap : capabilities) {
@@ -439,18 +446,8 @@ public class ConnectableDevice implements DeviceServiceListener {
     /**
      * A combined list of all capabilities that are supported among the detected DeviceServices.
      */
-    public synchronized List<String> getCapabilities() {
-        List<String> caps = new ArrayList<String>();
-
-        for (DeviceService service : services.values()) {
-            for (String capability : service.getCapabilities()) {
-                if (!caps.contains(capability)) {
-                    caps.add(capability);
-                }
-            }
-        }
-
-        return caps;
+    public List<String> getCapabilities() {
+        return new ArrayList<String>(getCapabilitySnapshot().capabilities);
     }
 
     /**
@@ -463,16 +460,7 @@ public class ConnectableDevice implements DeviceServiceListener {
      * @param capability Capability to test against
      */
     public boolean hasCapability(String capability) {
-        boolean hasCap = false;
-
-        for (DeviceService service : services.values()) {
-            if (service.hasCapability(capability)) {
-                hasCap = true;
-                break;
-            }
-        }
-
-        return hasCap;
+        return CapabilityQuery.compile(capability).matchesAll(getCapabilitySet());
     }
 
     /**
@@ -483,12 +471,7 @@ public class ConnectableDevice implements DeviceServiceListener {
      * @param capabilities Array of capabilities to test against
      */
     public boolean hasAnyCapability(String... capabilities) {
-        for (DeviceService service : services.values()) {
-            if (service.hasAnyCapability(capabilities))
-                return true;
-        }
-
-        return false;
+        return CapabilityQuery.compile(capabilities).matchesAny(getCapabilitySet());
     }
 
     /**
@@ -498,10 +481,8 @@ public class ConnectableDevice implements DeviceServiceListener {
      *
      * @param capabilities Array of capabilities to test against
      */
-    public synchronized boolean hasCapabilities(List<String> capabilities) {
-        String[] arr = new String[capabilities.size()];
-        capabilities.toArray(arr);
-        return hasCapabilities(arr);
+    public boolean hasCapabilities(List<String> capabilities) {
+        return CapabilityQuery.compile(capabilities).matchesAll(getCapabilitySet());
     }
 
     /**
@@ -511,17 +492,39 @@ public class ConnectableDevice implements DeviceServiceListener {
      *
      * @param capabilites Array of capabilities to test against
      */
-    public synchronized boolean hasCapabilities(String... capabilites) {
-        boolean hasCaps = true;
+    public boolean hasCapabilities(String... capabilites) {
+        return CapabilityQuery.compile(capabilites).matchesAll(getCapabilitySet());
+    }
 
-        for (String capability : capabilites) {
-            if (!hasCapability(capability)) {
-                hasCaps = false;
-                break;
-            }
+    /**
+     * Test to see if the capabilities of all services contain the capabilities of a compiled query.
+     *
+     * @param query Capabilities to test against
+     */
+    public boolean hasCapabilities(CapabilityQuery query) {
+        return query.matchesAll(getCapabilitySet());
+    }
+
+    /**
+     * The combined capabilities of all DeviceServices as a set of interned capability IDs.
+     */
+    public CapabilitySet getCapabilitySet() {
+        return getCapabilitySnapshot().capabilitySet;
+    }
+
+    private CapabilitySnapshot getCapabilitySnapshot() {
+        CapabilitySnapshot snapshot = capabilitySnapshot;
+
+        if (snapshot == null) {
+            snapshot = new CapabilitySnapshot(services.values());
+            capabilitySnapshot = snapshot;
         }
 
-        return hasCaps;
+        return snapshot;
+    }
+
+    private void updateCapabilities() {
+        capabilitySnapshot = new CapabilitySnapshot(services.values());
     }
 
     /**
@@ -681,10 +684,23 @@ public class ConnectableDevice implements DeviceServiceListener {
      * @param controllerClass type of capability
      * @return capability implementation
      */
+    @SuppressWarnings("unchecked")
     public <T extends CapabilityMethods> T getCapability(Class<T> controllerClass) {
+        CapabilitySnapshot snapshot = getCapabilitySnapshot();
+        Object controller = snapshot.controllers.get(controllerClass);
+
+        if (controller == null) {
+            controller = findCapability(controllerClass, snapshot.services);
+            snapshot.controllers.put(controllerClass, controller != null ? controller : NO_CONTROLLER);
+        }
+
+        return controller != NO_CONTROLLER ? (T) controller : null;
+    }
+
+    private <T extends CapabilityMethods> T findCapability(Class<T> controllerClass, DeviceService[] services) {
         T foundController = null;
         CapabilityPriorityLevel foundControllerPriority = CapabilityPriorityLevel.NOT_SUPPORTED;
-        for (DeviceService service : services.values()) {
+        for (DeviceService service : services) {
             if (service.getAPI(controllerClass) == null)
                 continue;
 
@@ -929,6 +945,7 @@ public class ConnectableDevice implements DeviceServiceListener {
 
     @Override
     public void onCapabilitiesUpdated(DeviceService service, List<String> added, List<String> removed) {
+        updateCapabilities();
         DiscoveryManager.getInstance().onCapabilityUpdated(this, added, removed);
     }
 
@@ -1015,4 +1032,38 @@ public class ConnectableDevice implements DeviceServiceListener {
     public String getServiceId() {
         return serviceId;
     }
+
+    private static final Object NO_CONTROLLER = new Object();
+
+    /**
+     * Combined capabilities of the services at one point in time, replaced when a service is added
+     * or removed and when a service reports through onCapabilitiesUpdated that its capabilities
+     * have changed.
+     */
+    private static final class CapabilitySnapshot {
+        final DeviceService[] services;
+        final List<String> capabilities;
+        final CapabilitySet capabilitySet;
+
+        /* highest priority controller for each capability class, filled on first use */
+        final ConcurrentHashMap<Class<?>, Object> controllers = new ConcurrentHashMap<Class<?>, Object>();
+
+        CapabilitySnapshot(Collection<DeviceService> currentServices) {
+            services = currentServices.toArray(new DeviceService[0]);
+
+            LinkedHashSet<String> names = new LinkedHashSet<String>();
+            CapabilitySet set = CapabilitySet.EMPTY;
+
+            for (DeviceService service : services) {
+                CapabilitySet serviceCapabilities = service.getCapabilitySet();
+
+                if (serviceCapabilities != null)
+                    set = set.union(serviceCapabilities);
+                names.addAll(service.getCapabilities());
+            }
+
+            capabilities = new ArrayList<String>(names);
+            capabilitySet = set;
+        }
+    }
 }
@@ -20,16 +20,28 @@
 
 package com.connectsdk.device;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -43,6 +55,21 @@ import com.connectsdk.service.config.ServiceDescription;
 /**
  * Default implementation of ConnectableDeviceStore. It stores data in a file in application
  * data directory.
+ *
+ * Changes are written behind on a background thread: they are appended to a journal next to the
+ * file, and the file is rewritten from time to time in the background to include them. Changes
+ * made in quick succession are written together, use {@link #flush()} to wait until all of them
+ * are on disk.
+ *
+ * The file is loaded in the background as well, in a single pass, and devices can be looked up as
+ * soon as they have been read. Lookups on the main thread are answered from the devices which have
+ * been read so far and never wait, lookups on other threads wait for the rest of the file if the
+ * device has not been read yet. Adding and updating devices which have not been read yet is done
+ * once the file has been loaded, in order.
+ *
+ * The store is kept within maxStoreDuration, maxStoredDevices and maxStoreSize in the background.
+ * Devices which have not been discovered for the longest time are removed first, devices which are
+ * connected or still online are kept.
  */
 public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
     // @cond INTERNAL
@@ -56,6 +83,16 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
 
     static final String FILENAME = "StoredDevices";
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /* delay before changes are written, so that changes in quick succession are written together */
+    static final long WRITE_DELAY = 500;
+
+    /* max number of devices removed at a time, the others are removed with the following writes */
+    static final int TRIM_BATCH = 64;
+    /* interval (in seconds) of the scans for devices older than maxStoreDuration */
+    static final long TRIM_INTERVAL = TimeUnit.HOURS.toSeconds(1);
+
     static final String IP_ADDRESS = "ipAddress";
     static final String FRIENDLY_NAME = "friendlyName";
     static final String MODEL_NAME = "modelName";
@@ -90,38 +127,100 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
      */
     public long maxStoreDuration = TimeUnit.DAYS.toSeconds(3);
 
+    /**
+     * Max number of ConnectableDevices in the ConnectableDeviceStore. Default is 500, the devices which have not been discovered for the longest time are removed first.
+     */
+    public int maxStoredDevices = 500;
+
+    /**
+     * Max size (in UTF-8 bytes) of the ConnectableDevices in the ConnectableDeviceStore file. Default is 1 MB, the devices which have not been discovered for the longest time are removed first.
+     */
+    public long maxStoreSize = 1024 * 1024;
+
     // @cond INTERNAL
     private String fileFullPath;
 
     private Map<String, JSONObject> storedDevices = new ConcurrentHashMap<String, JSONObject>();
     private Map<String, ConnectableDevice> activeDevices = new ConcurrentHashMap<String, ConnectableDevice>();
 
-    private boolean waitToWrite = false;
+    /* service UUID to the ID of the stored device which has the service */
+    private Map<String, String> serviceIndex = new ConcurrentHashMap<String, String>();
+
+    private final CountDownLatch loadLatch = new CountDownLatch(1);
+    private final Object loadLock = new Object();
+    private volatile boolean loaded;
+
+    /* changes while loading, which win over the devices that are loaded from the file */
+    private final Set<String> removedWhileLoading = new HashSet<String>();
+    private boolean clearedWhileLoading;
+
+    /* changes which need the loaded devices, made on the writer thread once the file has been loaded */
+    private final LinkedList<Runnable> changesAfterLoad = new LinkedList<Runnable>();
+    private boolean runningChangesAfterLoad = true;
+
+    private final DeviceStoreJournal journal;
+    private final ScheduledThreadPoolExecutor writer;
+
+    /* changes which have not been written yet, the latest record for each device in order of change */
+    private final LinkedHashMap<String, JSONObject> pendingRecords = new LinkedHashMap<String, JSONObject>();
+    private JSONObject pendingClear;
+    private boolean writeScheduled;
+
+    /* size of each stored device as last measured, used on the writer thread only */
+    private final Map<String, StoredSize> storedSizes = new HashMap<String, StoredSize>();
+    private volatile long storedSize;
+    private long lastTrimTime;
+
+    private final Runnable writeTask = new Runnable() {
+
+        @Override
+        public void run() {
+            writePendingRecords();
+        }
+    };
 
     public DefaultConnectableDeviceStore(Context context) {
         fileFullPath = new File(context.getFilesDir(), FILENAME).getPath();
+        journal = new DeviceStoreJournal(new File(fileFullPath));
+
+        writer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Device Store");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        writer.setKeepAliveTime(10, TimeUnit.SECONDS);
+        writer.allowCoreThreadTimeOut(true);
 
-        load();
+        // changes are written after the file has been loaded, both happen on the writer thread
+        writer.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                load();
+            }
+        });
     }
     // @endcond
 
     @Override
-    public void addDevice(ConnectableDevice device) {
+    public void addDevice(final ConnectableDevice device) {
         if (device == null || device.getServices().size() == 0)
             return;
 
         if (!activeDevices.containsKey(device.getId()))
             activeDevices.put(device.getId(), device);
 
-        JSONObject storedDevice = getStoredDevice(device.getId());
-
-        if (storedDevice != null) {
-            updateDevice(device);
-        } else {
-            storedDevices.put(device.getId(), device.toJSONObject());
+        changeAfterLoad(new Runnable() {
 
-            store();
-        }
+            @Override
+            public void run() {
+                addStoredDevice(device);
+            }
+        });
     }
 
     @Override
@@ -130,22 +229,80 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
             return;
 
         activeDevices.remove(device.getId());
-        storedDevices.remove(device.getId());
 
-        store();
+        final String deviceId = device.getId();
+        Runnable removal = new Runnable() {
+
+            @Override
+            public void run() {
+                removeStoredDevice(deviceId);
+
+                storeRemove(deviceId);
+            }
+        };
+
+        // removed right away, and again after the changes which wait for the file in case one of them adds it
+        removal.run();
+        deferUntilLoaded(removal);
     }
 
     @Override
-    public void updateDevice(ConnectableDevice device) {
+    public void updateDevice(final ConnectableDevice device) {
         if (device == null || device.getServices().size() == 0)
             return;
 
+        changeAfterLoad(new Runnable() {
+
+            @Override
+            public void run() {
+                updateStoredDevice(device);
+            }
+        });
+    }
+
+    @Override
+    public void removeAll() {
+        activeDevices.clear();
+
+        Runnable clear = new Runnable() {
+
+            @Override
+            public void run() {
+                clearStoredDevices();
+
+                storeClear();
+            }
+        };
+
+        // cleared right away, and again after the changes which wait for the file in case one of them adds a device
+        clear.run();
+        deferUntilLoaded(clear);
+    }
+
+    // @cond INTERNAL
+    private void addStoredDevice(ConnectableDevice device) {
+        JSONObject storedDevice = getStoredDevice(device.getId());
+
+        if (storedDevice != null) {
+            updateStoredDevice(device);
+        } else {
+            JSONObject deviceInfo = device.toJSONObject();
+            putStoredDevice(device.getId(), deviceInfo);
+
+            storePut(device.getId(), deviceInfo);
+        }
+    }
+
+    private void updateStoredDevice(ConnectableDevice device) {
         JSONObject storedDevice = getStoredDevice(device.getId());
 
         if (storedDevice == null)
             return;
 
         try {
+            // stored devices are replaced instead of changed, so that they can be written while they are updated
+            storedDevice = copyOf(storedDevice);
+
             storedDevice.put(ConnectableDevice.KEY_LAST_IP, device.getLastKnownIPAddress());
             storedDevice.put(ConnectableDevice.KEY_LAST_SEEN, device.getLastSeenOnWifi());
             storedDevice.put(ConnectableDevice.KEY_LAST_CONNECTED, device.getLastConnected());
@@ -155,6 +312,8 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
 
             if (services == null)
                 services = new JSONObject();
+            else
+                services = copyOf(services);
 
             for (DeviceService service : device.getServices()) {
                 JSONObject serviceInfo = service.toJSONObject();
@@ -165,25 +324,95 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
 
             storedDevice.put(ConnectableDevice.KEY_SERVICES, services);
 
-            storedDevices.put(device.getId(), storedDevice);
+            putStoredDevice(device.getId(), storedDevice);
             activeDevices.put(device.getId(), device);
 
-            store();
+            storePut(device.getId(), storedDevice);
         } catch (JSONException e) {
             e.printStackTrace();
         }
     }
 
-    @Override
-    public void removeAll() {
-        activeDevices.clear();
-        storedDevices.clear();
+    /**
+     * Makes a change which needs the stored devices right away if the file has been loaded, and on
+     * the writer thread once it has been loaded otherwise, so that changes are made in order.
+     */
+    private void changeAfterLoad(Runnable change) {
+        if (!deferUntilLoaded(change))
+            change.run();
+    }
+
+    /**
+     * @return false if the file has been loaded and the change has not been deferred
+     */
+    private boolean deferUntilLoaded(Runnable change) {
+        synchronized (loadLock) {
+            if (!runningChangesAfterLoad)
+                return false;
+
+            changesAfterLoad.add(change);
+            return true;
+        }
+    }
+
+    private void runChangesAfterLoad() {
+        while (true) {
+            Runnable change;
+
+            synchronized (loadLock) {
+                change = changesAfterLoad.poll();
+
+                if (change == null) {
+                    runningChangesAfterLoad = false;
+                    return;
+                }
+            }
+
+            try {
+                change.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    // @endcond
+
+    /**
+     * Writes all changes which have not been written yet and waits until they are on disk.
+     */
+    public void flush() {
+        try {
+            writer.submit(writeTask).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } catch (RejectedExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the number of devices in the store.
+     */
+    public int getStoredDeviceCount() {
+        awaitLoad();
+
+        return storedDevices.size();
+    }
 
-        store();
+    /**
+     * Returns the approximate size (in bytes) of the stored devices in the file, as of the last write.
+     */
+    public long getStoredSize() {
+        return storedSize;
     }
 
     @Override
     public JSONObject getStoredDevices() {
+        // the only lookup which needs every device
+        awaitLoad();
+
         JSONObject ret = new JSONObject();
 
         for (java.util.Map.Entry<String, JSONObject> entry: storedDevices.entrySet()) {
@@ -229,19 +458,84 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
     }
 
     private JSONObject getStoredDevice(String uuid) {
+        JSONObject foundDevice = findStoredDevice(uuid);
+
+        // the main thread never waits for the file, discovery looks devices up on it
+        if (foundDevice == null && !loaded && !Util.isMain()) {
+            awaitLoad();
+
+            foundDevice = findStoredDevice(uuid);
+        }
+
+        return foundDevice;
+    }
+
+    private JSONObject findStoredDevice(String uuid) {
         JSONObject foundDevice = storedDevices.get(uuid);
 
         if (foundDevice == null) {
-            for (JSONObject device: storedDevices.values()) {
-                JSONObject services = device.optJSONObject(ConnectableDevice.KEY_SERVICES);
+            String deviceId = serviceIndex.get(uuid);
 
-                if (services != null && services.has(uuid))
-                    return device;
+            if (deviceId != null) {
+                JSONObject device = storedDevices.get(deviceId);
+
+                if (device != null && DeviceStoreJournal.matches(device, uuid))
+                    foundDevice = device;
             }
         }
+
         return foundDevice;
     }
 
+    private void putStoredDevice(String deviceId, JSONObject device) {
+        storedDevices.put(deviceId, device);
+
+        JSONObject services = device.optJSONObject(ConnectableDevice.KEY_SERVICES);
+        if (services != null) {
+            Iterator<?> keys = services.keys();
+            while (keys.hasNext()) {
+                serviceIndex.put((String) keys.next(), deviceId);
+            }
+        }
+    }
+
+    private void removeStoredDevice(String deviceId) {
+        JSONObject device;
+
+        synchronized (loadLock) {
+            device = storedDevices.remove(deviceId);
+
+            if (!loaded)
+                removedWhileLoading.add(deviceId);
+        }
+
+        JSONObject services = device != null ? device.optJSONObject(ConnectableDevice.KEY_SERVICES) : null;
+        if (services != null) {
+            Iterator<?> keys = services.keys();
+            while (keys.hasNext()) {
+                serviceIndex.remove(keys.next());
+            }
+        }
+    }
+
+    private void clearStoredDevices() {
+        synchronized (loadLock) {
+            storedDevices.clear();
+            serviceIndex.clear();
+
+            if (!loaded)
+                clearedWhileLoading = true;
+        }
+    }
+
+    private void awaitLoad() {
+        try {
+            loadLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public ServiceConfig getServiceConfig(ServiceDescription serviceDescription) {
         if (serviceDescription == null) {
@@ -271,112 +565,292 @@ public class DefaultConnectableDeviceStore implements ConnectableDeviceStore {
 
     // @cond INTERNAL
     private void load() {
-        String line;
-
-        BufferedReader in = null;
-
-        File file = new File(fileFullPath);
-
-        if (!file.exists()) {
-            version = CURRENT_VERSION;
-
-            created = Util.getTime();
-            updated = Util.getTime();
-        } else {
-            boolean encounteredException = false;
-
-            try {
-                in = new BufferedReader(new FileReader(file));
+        try {
+            journal.recover();
 
-                StringBuilder sb = new StringBuilder();
+            // the journal is read first, so that devices of the snapshot can be looked up as soon as they are read
+            final DeviceStoreJournal.Changes changes = journal.readJournal();
 
-                while ((line = in.readLine()) != null) {
-                    sb.append(line);
+            synchronized (loadLock) {
+                for (Map.Entry<String, JSONObject> entry : changes.devices.entrySet()) {
+                    putLoadedDevice(entry.getKey(), entry.getValue());
                 }
+            }
 
-                in.close();
+            JSONObject header = null;
 
-                JSONObject data = new JSONObject(sb.toString());
-                JSONArray deviceArray = data.optJSONArray(KEY_DEVICES);
-                if (deviceArray != null) {
-                    for (int i = 0; i < deviceArray.length(); i++) {
-                        JSONObject device = deviceArray.getJSONObject(i);
-                        storedDevices.put(device.getString(ConnectableDevice.KEY_ID), device);
+            try {
+                header = journal.readSnapshot(new DeviceStoreJournal.DeviceVisitor() {
+
+                    @Override
+                    public boolean visit(JSONObject device) {
+                        String deviceId = device.optString(ConnectableDevice.KEY_ID, null);
+
+                        if (deviceId != null && changes.keeps(deviceId)) {
+                            synchronized (loadLock) {
+                                putLoadedDevice(deviceId, device);
+                            }
+                        }
+                        return true;
                     }
-                }
-
-                version = data.optInt(KEY_VERSION, CURRENT_VERSION);
-                created = data.optLong(KEY_CREATED, 0);
-                updated = data.optLong(KEY_UPDATED, 0);
+                });
             } catch (IOException e) {
                 e.printStackTrace();
 
-                // it is likely that the device store has been corrupted
-                encounteredException = true;
+                // it is likely that the device store has been corrupted, it is rewritten with the devices read so far
+                journal.requestCompaction();
             } catch (JSONException e) {
                 e.printStackTrace();
 
-                // it is likely that the device store has been corrupted
-                encounteredException = true;
+                // it is likely that the device store has been corrupted, it is rewritten with the devices read so far
+                journal.requestCompaction();
             }
 
-            if (encounteredException && storedDevices == null) {
-                file.delete();
-
+            if (header != null) {
+                version = header.optInt(KEY_VERSION, CURRENT_VERSION);
+                created = header.optLong(KEY_CREATED, 0);
+                updated = header.optLong(KEY_UPDATED, 0);
+            } else {
                 version = CURRENT_VERSION;
 
                 created = Util.getTime();
                 updated = Util.getTime();
             }
+
+            if (changes.updated > updated)
+                updated = changes.updated;
+        } finally {
+            synchronized (loadLock) {
+                removedWhileLoading.clear();
+                loaded = true;
+            }
+
+            runChangesAfterLoad();
+
+            loadLatch.countDown();
+        }
+
+        // measures the loaded devices and removes the old ones
+        scheduleWrite(0);
+    }
+
+    private void putLoadedDevice(String deviceId, JSONObject device) {
+        // devices which have been removed while loading stay removed
+        if (clearedWhileLoading || removedWhileLoading.contains(deviceId) || storedDevices.containsKey(deviceId))
+            return;
+
+        putStoredDevice(deviceId, device);
+    }
+
+    private void storePut(String id, JSONObject deviceInfo) {
+        updated = Util.getTime();
+
+        try {
+            addPendingRecord(id, DeviceStoreJournal.putRecord(deviceInfo, updated));
+        } catch (JSONException e) {
+            e.printStackTrace();
         }
     }
 
-    private void store() {
+    private void storeRemove(String id) {
         updated = Util.getTime();
 
-        JSONObject deviceStore = new JSONObject();
         try {
-            deviceStore.put(KEY_VERSION, version);
-            deviceStore.put(KEY_CREATED, created);
-            deviceStore.put(KEY_UPDATED, updated);
-            JSONArray deviceArray = new JSONArray(storedDevices.values());
-            deviceStore.put(KEY_DEVICES, deviceArray);
+            addPendingRecord(id, DeviceStoreJournal.removeRecord(id, updated));
         } catch (JSONException e) {
             e.printStackTrace();
         }
+    }
+
+    private void storeClear() {
+        updated = Util.getTime();
+
+        synchronized (pendingRecords) {
+            pendingRecords.clear();
+
+            try {
+                pendingClear = DeviceStoreJournal.clearRecord(updated);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+
+            scheduleWrite(WRITE_DELAY);
+        }
+    }
+
+    private void addPendingRecord(String id, JSONObject record) {
+        synchronized (pendingRecords) {
+            // an earlier change of the device is replaced, the new record goes to the end
+            pendingRecords.remove(id);
+            pendingRecords.put(id, record);
+
+            scheduleWrite(WRITE_DELAY);
+        }
+    }
+
+    private void scheduleWrite(long delay) {
+        synchronized (pendingRecords) {
+            if (writeScheduled)
+                return;
+
+            try {
+                writer.schedule(writeTask, delay, TimeUnit.MILLISECONDS);
+                writeScheduled = true;
+            } catch (RejectedExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Appends the pending changes to the journal and compacts it into the file once it has grown
+     * too large. Runs on the writer thread only.
+     */
+    private void writePendingRecords() {
+        List<JSONObject> records = new ArrayList<JSONObject>();
+
+        synchronized (pendingRecords) {
+            if (pendingClear != null)
+                records.add(pendingClear);
+            records.addAll(pendingRecords.values());
+
+            pendingRecords.clear();
+            pendingClear = null;
+            writeScheduled = false;
+        }
+
+        try {
+            journal.append(records);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (journal.shouldCompact()) {
+            try {
+                journal.compact(version, created, updated, storedDevices.values());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        measureStoredDevices();
+
+        long now = Util.getTime();
+
+        if (storedDevices.size() > maxStoredDevices || storedSize > maxStoreSize || now - lastTrimTime >= TRIM_INTERVAL)
+            trimStoredDevices(now);
+    }
+
+    /**
+     * Updates the size of the devices which have changed since the last write. Runs on the writer
+     * thread only.
+     */
+    private void measureStoredDevices() {
+        storedSizes.keySet().retainAll(storedDevices.keySet());
+
+        long size = 0;
+
+        for (Map.Entry<String, JSONObject> entry : storedDevices.entrySet()) {
+            StoredSize storedSize = storedSizes.get(entry.getKey());
+
+            // stored devices are replaced when they change
+            if (storedSize == null || storedSize.device != entry.getValue()) {
+                storedSize = new StoredSize(entry.getValue());
+                storedSizes.put(entry.getKey(), storedSize);
+            }
+
+            size += storedSize.size;
+        }
 
-        if (!waitToWrite)
-            writeStoreToDisk(deviceStore);
+        this.storedSize = size;
     }
 
-    private synchronized void writeStoreToDisk(final JSONObject deviceStore) {
-        final long lastUpdate = updated;
-        waitToWrite = true;
+    /**
+     * Removes the devices which are older than maxStoreDuration, then the least recently discovered
+     * devices until the store is within its limits. At most TRIM_BATCH devices are removed at a
+     * time, their removal schedules the next write which continues. Runs on the writer thread only.
+     */
+    private void trimStoredDevices(long now) {
+        long killPoint = now - maxStoreDuration;
+
+        final Map<String, Long> lastDetections = new HashMap<String, Long>();
+        List<String> candidates = new ArrayList<String>();
+
+        for (Map.Entry<String, JSONObject> entry : storedDevices.entrySet()) {
+            if (isOnline(activeDevices.get(entry.getKey())))
+                continue;
+
+            lastDetections.put(entry.getKey(), entry.getValue().optLong(ConnectableDevice.KEY_LAST_DETECTED, 0));
+            candidates.add(entry.getKey());
+        }
 
-        Util.runInBackground(new Runnable() {
+        Collections.sort(candidates, new Comparator<String>() {
 
             @Override
-            public void run() {
-                FileWriter out;
-                try {
-                    File output = new File(fileFullPath);
-
-                    if (!output.exists())
-                        output.getParentFile().mkdirs();
-
-                    out = new FileWriter(output);
-                    out.write(deviceStore.toString());
-                    out.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } finally {
-                    waitToWrite = false;
-                }
+            public int compare(String lhs, String rhs) {
+                long lhsTime = lastDetections.get(lhs);
+                long rhsTime = lastDetections.get(rhs);
 
-                if (lastUpdate < updated)
-                    writeStoreToDisk(deviceStore);
+                return lhsTime < rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1);
             }
         });
+
+        int count = storedDevices.size();
+        long size = storedSize;
+        int removed = 0;
+
+        for (String deviceId : candidates) {
+            if (removed == TRIM_BATCH)
+                break;
+
+            if (lastDetections.get(deviceId) >= killPoint && count <= maxStoredDevices && size <= maxStoreSize)
+                break;
+
+            StoredSize storedSize = storedSizes.remove(deviceId);
+            if (storedSize != null)
+                size -= storedSize.size;
+            count--;
+            removed++;
+
+            activeDevices.remove(deviceId);
+            removeStoredDevice(deviceId);
+            storeRemove(deviceId);
+        }
+
+        this.storedSize = size;
+
+        if (removed < TRIM_BATCH)
+            lastTrimTime = now;
+    }
+
+    /**
+     * Whether a device of this session is connected or online. Discovery removes the services of a
+     * device which is lost, so a device which still has services has not been lost yet.
+     */
+    private static boolean isOnline(ConnectableDevice device) {
+        return device != null && (device.isConnected() || !device.getServices().isEmpty());
+    }
+
+    private static class StoredSize {
+        final JSONObject device;
+        final int size;
+
+        StoredSize(JSONObject device) {
+            this.device = device;
+            this.size = device.toString().getBytes(UTF8).length;
+        }
+    }
+
+    private static JSONObject copyOf(JSONObject object) throws JSONException {
+        JSONObject copy = new JSONObject();
+
+        Iterator<?> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = (String) keys.next();
+            copy.put(key, object.get(key));
+        }
+
+        return copy;
     }
     // @endcond
 }
@@ -0,0 +1,423 @@
+/*
+ * DeviceStoreJournal
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.device;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+/**
+ * Files of DefaultConnectableDeviceStore: a snapshot of all devices, in the format which has always
+ * been used for the store, and an append-only journal of the changes since the snapshot has been
+ * written. Every journal line is one JSON record, which puts a whole device, removes one or removes
+ * all of them. Records can be replayed more than once, so a crash between replacing the snapshot
+ * and deleting the journal loses nothing. Lines which have been cut off by a crash are skipped and
+ * the snapshot is rewritten without them.
+ *
+ * The snapshot is read with a streaming reader, one device at a time, so it never has to fit into
+ * memory as a whole. The methods which write are called on the writer thread of the store only.
+ */
+class DeviceStoreJournal {
+
+    static final String JOURNAL_SUFFIX = ".journal";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    static final String KEY_OP = "op";
+    static final String KEY_ID = "id";
+    static final String KEY_DEVICE = "device";
+    static final String KEY_UPDATED = "updated";
+
+    static final String OP_PUT = "put";
+    static final String OP_REMOVE = "remove";
+    static final String OP_CLEAR = "clear";
+
+    /* journals smaller than this are never compacted, larger ones once they outgrow the snapshot */
+    static final long MIN_COMPACT_SIZE = 64 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Receives the devices of the snapshot while it is read.
+     */
+    interface DeviceVisitor {
+        /** @return false to stop reading */
+        boolean visit(JSONObject device);
+    }
+
+    /**
+     * Changes in the journal, replayed in order of their records.
+     */
+    static class Changes {
+        /** Devices put since the snapshot, which replace the devices of the snapshot */
+        final Map<String, JSONObject> devices = new LinkedHashMap<String, JSONObject>();
+        /** IDs of devices removed since the snapshot */
+        final Set<String> removed = new HashSet<String>();
+        /** Whether all devices of the snapshot have been removed */
+        boolean cleared;
+        /** Time of the last record, or 0 if there is none */
+        long updated;
+
+        /**
+         * Returns whether a device of the snapshot is still stored after the changes.
+         */
+        boolean keeps(String id) {
+            return !cleared && !removed.contains(id) && !devices.containsKey(id);
+        }
+    }
+
+    final File snapshotFile;
+    final File journalFile;
+    final File tempFile;
+
+    private long journalLength;
+    private long snapshotLength;
+    private boolean needsCompaction;
+
+    DeviceStoreJournal(File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = new File(snapshotFile.getPath() + JOURNAL_SUFFIX);
+        this.tempFile = new File(snapshotFile.getPath() + TEMP_SUFFIX);
+
+        snapshotLength = snapshotFile.length();
+        journalLength = journalFile.length();
+    }
+
+    static JSONObject putRecord(JSONObject device, long updated) throws JSONException {
+        JSONObject record = new JSONObject();
+        record.put(KEY_OP, OP_PUT);
+        record.put(KEY_UPDATED, updated);
+        record.put(KEY_DEVICE, device);
+        return record;
+    }
+
+    static JSONObject removeRecord(String id, long updated) throws JSONException {
+        JSONObject record = new JSONObject();
+        record.put(KEY_OP, OP_REMOVE);
+        record.put(KEY_UPDATED, updated);
+        record.put(KEY_ID, id);
+        return record;
+    }
+
+    static JSONObject clearRecord(long updated) throws JSONException {
+        JSONObject record = new JSONObject();
+        record.put(KEY_OP, OP_CLEAR);
+        record.put(KEY_UPDATED, updated);
+        return record;
+    }
+
+    /**
+     * Makes the next write rewrite the snapshot, used when the snapshot could not be read completely.
+     */
+    void requestCompaction() {
+        needsCompaction = true;
+    }
+
+    /**
+     * Removes what an interrupted compaction has left behind, called before the store is loaded.
+     */
+    void recover() {
+        if (tempFile.exists() && !tempFile.delete())
+            needsCompaction = true;
+    }
+
+    /**
+     * Reads the records of the journal, which win over the devices of the snapshot.
+     */
+    Changes readJournal() {
+        Changes changes = new Changes();
+
+        if (!journalFile.exists())
+            return changes;
+
+        BufferedReader in = null;
+
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), UTF8));
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.length() == 0)
+                    continue;
+
+                try {
+                    JSONObject record = new JSONObject(line);
+                    String op = record.getString(KEY_OP);
+
+                    if (OP_PUT.equals(op)) {
+                        JSONObject device = record.getJSONObject(KEY_DEVICE);
+                        String id = device.getString(ConnectableDevice.KEY_ID);
+
+                        changes.devices.put(id, device);
+                        changes.removed.remove(id);
+                    } else if (OP_REMOVE.equals(op)) {
+                        String id = record.getString(KEY_ID);
+
+                        changes.devices.remove(id);
+                        changes.removed.add(id);
+                    } else if (OP_CLEAR.equals(op)) {
+                        changes.devices.clear();
+                        changes.removed.clear();
+                        changes.cleared = true;
+                    }
+
+                    changes.updated = Math.max(changes.updated, record.optLong(KEY_UPDATED, 0));
+                } catch (JSONException e) {
+                    // a record which has been cut off, the snapshot is rewritten without it
+                    e.printStackTrace();
+                    needsCompaction = true;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            needsCompaction = true;
+        } finally {
+            closeQuietly(in);
+        }
+
+        return changes;
+    }
+
+    /**
+     * Reads the snapshot and hands every device to the visitor.
+     *
+     * @return The other fields of the snapshot, such as its version, or null if there is no snapshot
+     */
+    JSONObject readSnapshot(DeviceVisitor visitor) throws IOException, JSONException {
+        if (!snapshotFile.exists())
+            return null;
+
+        JSONObject header = new JSONObject();
+        JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(snapshotFile), UTF8));
+
+        try {
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                if (!DefaultConnectableDeviceStore.KEY_DEVICES.equals(name)) {
+                    header.put(name, readValue(reader));
+                    continue;
+                }
+
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (!visitor.visit(readObject(reader)))
+                        return header;
+                }
+                reader.endArray();
+            }
+
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            // thrown by JsonReader for unexpected tokens
+            throw new JSONException(e.getMessage());
+        } finally {
+            closeQuietly(reader);
+        }
+
+        return header;
+    }
+
+    static boolean matches(JSONObject device, String uuid) {
+        if (uuid.equals(device.optString(ConnectableDevice.KEY_ID)))
+            return true;
+
+        JSONObject services = device.optJSONObject(ConnectableDevice.KEY_SERVICES);
+        return services != null && services.has(uuid);
+    }
+
+    private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            object.put(reader.nextName(), readValue(reader));
+        }
+        reader.endObject();
+
+        return object;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        JsonToken token = reader.peek();
+
+        switch (token) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+
+            case BOOLEAN:
+                return reader.nextBoolean();
+
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+
+            case NUMBER:
+                return parseNumber(reader.nextString());
+
+            default:
+                return reader.nextString();
+        }
+    }
+
+    /* numbers are typed like JSONObject does it when parsing, so getters behave the same */
+    private static Object parseNumber(String number) {
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            try {
+                long value = Long.parseLong(number);
+
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+                    return (int) value;
+                return value;
+            } catch (NumberFormatException e) {
+                // falls through to double
+            }
+        }
+
+        return Double.valueOf(number);
+    }
+
+    /**
+     * Appends records to the journal and waits until they are on disk.
+     */
+    void append(List<JSONObject> records) throws IOException {
+        if (records.isEmpty())
+            return;
+
+        StringBuilder sb = new StringBuilder();
+        for (JSONObject record : records) {
+            sb.append(record.toString()).append('\n');
+        }
+        byte[] data = sb.toString().getBytes(UTF8);
+
+        ensureParentExists(journalFile);
+
+        FileOutputStream out = new FileOutputStream(journalFile, true);
+        try {
+            out.write(data);
+            out.getFD().sync();
+        } catch (IOException e) {
+            // part of the records may have been written, they are rewritten with the snapshot
+            needsCompaction = true;
+            throw e;
+        } finally {
+            closeQuietly(out);
+        }
+
+        journalLength += data.length;
+    }
+
+    boolean shouldCompact() {
+        return needsCompaction || journalLength > Math.max(MIN_COMPACT_SIZE, snapshotLength);
+    }
+
+    /**
+     * Writes all devices to a new snapshot, replaces the old one atomically and starts a new journal.
+     */
+    void compact(int version, long created, long updated, Collection<JSONObject> devices) throws IOException {
+        ensureParentExists(tempFile);
+
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF8));
+
+            writer.write("{\"" + DefaultConnectableDeviceStore.KEY_VERSION + "\":" + version);
+            writer.write(",\"" + DefaultConnectableDeviceStore.KEY_CREATED + "\":" + created);
+            writer.write(",\"" + DefaultConnectableDeviceStore.KEY_UPDATED + "\":" + updated);
+            writer.write(",\"" + DefaultConnectableDeviceStore.KEY_DEVICES + "\":[");
+
+            boolean first = true;
+            for (JSONObject device : devices) {
+                if (!first)
+                    writer.write(',');
+                writer.write(device.toString());
+                first = false;
+            }
+
+            writer.write("]}");
+            writer.flush();
+            out.getFD().sync();
+        } finally {
+            closeQuietly(out);
+        }
+
+        if (!tempFile.renameTo(snapshotFile)) {
+            tempFile.delete();
+            needsCompaction = true;
+            throw new IOException("Could not replace " + snapshotFile);
+        }
+
+        // the records are part of the snapshot now
+        journalFile.delete();
+
+        journalLength = 0;
+        snapshotLength = snapshotFile.length();
+        needsCompaction = false;
+    }
+
+    private static void ensureParentExists(File file) {
+        File parent = file.getParentFile();
+
+        if (parent != null && !parent.exists())
+            parent.mkdirs();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null)
+            return;
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
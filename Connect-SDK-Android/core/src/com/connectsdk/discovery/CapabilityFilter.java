@@ -24,6 +24,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import com.connectsdk.service.capability.CapabilityQuery;
+
 /**
  * CapabilityFilter is an object that wraps a List of required capabilities. This CapabilityFilter is used for determining which devices will appear in DiscoveryManager's compatibleDevices array. The contents of a CapabilityFilter's array must be any of the string constants defined in the Capability Class constants.
  *
@@ -80,6 +82,9 @@ public class CapabilityFilter {
      */
     public List<String> capabilities = new ArrayList<String>();
 
+    private List<String> compiledCapabilities;
+    private CapabilityQuery query;
+
     /**
      * Create an empty CapabilityFilter.
      */
@@ -132,4 +137,17 @@ public class CapabilityFilter {
     public void addCapabilities(String... capabilities) {
         Collections.addAll(this.capabilities, capabilities);
     }
+
+    /**
+     * Returns the capabilities of the filter compiled for matching, see ConnectableDevice.hasCapabilities(CapabilityQuery).
+     */
+    public synchronized CapabilityQuery getQuery() {
+        // capabilities is a public list, so it may have been changed directly
+        if (query == null || !capabilities.equals(compiledCapabilities)) {
+            compiledCapabilities = new ArrayList<String>(capabilities);
+            query = CapabilityQuery.compile(compiledCapabilities);
+        }
+
+        return query;
+    }
 }
@@ -25,8 +25,8 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -53,6 +53,7 @@ import com.connectsdk.device.DefaultConnectableDeviceStore;
 import com.connectsdk.service.DLNAService;
 import com.connectsdk.service.DeviceService;
 import com.connectsdk.service.DeviceService.PairingType;
+import com.connectsdk.service.DeviceServiceFactory;
 import com.connectsdk.service.NetcastTVService;
 import com.connectsdk.service.command.ServiceCommandError;
 import com.connectsdk.service.config.ServiceConfig;
@@ -123,7 +124,10 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
     private ConcurrentHashMap<String, ConnectableDevice> compatibleDevices;
 
     ConcurrentHashMap<String, Class<? extends DeviceService>> deviceClasses;
+    ConcurrentHashMap<String, DeviceServiceFactory> serviceFactories;
     CopyOnWriteArrayList<DiscoveryProvider> discoveryProviders;
+    /* providers which have been registered but not created yet, by class */
+    final Map<Class<? extends DiscoveryProvider>, PendingProvider> pendingProviders;
 
     private CopyOnWriteArrayList<DiscoveryManagerListener> discoveryListeners;
     List<CapabilityFilter> capabilityFilters;
@@ -134,6 +138,8 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
 
     Timer rescanTimer;
 
+    DiscoveryMetrics metrics = new DiscoveryMetrics();
+
     PairingLevel pairingLevel;
 
     private boolean mSearching = false;
@@ -232,7 +238,9 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
         compatibleDevices = new ConcurrentHashMap<String, ConnectableDevice>(8, 0.75f, 2);
 
         deviceClasses = new ConcurrentHashMap<String, Class<? extends DeviceService>>(4, 0.75f, 2);
+        serviceFactories = new ConcurrentHashMap<String, DeviceServiceFactory>(8, 0.75f, 2);
         discoveryProviders = new CopyOnWriteArrayList<DiscoveryProvider>();
+        pendingProviders = new LinkedHashMap<Class<? extends DiscoveryProvider>, PendingProvider>();
 
         discoveryListeners = new CopyOnWriteArrayList<DiscoveryManagerListener>();
 
@@ -369,7 +377,7 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
         boolean isCompatible = false;
 
         for (CapabilityFilter filter : this.capabilityFilters) {
-            if (device.hasCapabilities(filter.capabilities)) {
+            if (device.hasCapabilities(filter.getQuery())) {
                 isCompatible = true;
                 break;
             }
@@ -393,20 +401,12 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
      * + MultiScreenService
      * - ZeroconfDiscoveryProvider
      * + AirPlayService
+     * <p>
+     * The services are registered with factories, see DefaultPlatform.registerDeviceServices, so
+     * none of their classes is loaded before the first service of its type has been found.
      */
-    @SuppressWarnings("unchecked")
     public void registerDefaultDeviceTypes() {
-        final HashMap<String, String> devicesList = DefaultPlatform.getDeviceServiceMap();
-
-        for (HashMap.Entry<String, String> entry : devicesList.entrySet()) {
-            String key = entry.getKey();
-            String value = entry.getValue();
-            try {
-                registerDeviceService((Class<DeviceService>) Class.forName(key), (Class<DiscoveryProvider>) Class.forName(value));
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-            }
-        }
+        DefaultPlatform.registerDeviceServices(this);
     }
 
     /**
@@ -419,23 +419,10 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
         DiscoveryProvider discoveryProvider;
         if (DeviceService.class.isAssignableFrom(cls) && DiscoveryProvider.class.isAssignableFrom(cls2)) {
             try {
-                Iterator<DiscoveryProvider> it = this.discoveryProviders.iterator();
-                while (true) {
-                    if (!it.hasNext()) {
-                        discoveryProvider = null;
-                        break;
-                    }
-                    discoveryProvider = it.next();
-                    if (discoveryProvider.getClass().isAssignableFrom(cls2)) {
-                        break;
-                    }
-                }
-                if (discoveryProvider == null) {
-                    discoveryProvider = cls2.getConstructor(Context.class).newInstance(this.context);
-                    discoveryProvider.addListener(this);
-                    this.discoveryProviders.add(discoveryProvider);
-                }
+                discoveryProvider = getDiscoveryProvider(cls2);
                 DiscoveryFilter discoveryFilter = (DiscoveryFilter) cls.getMethod("discoveryFilter", new Class[0]).invoke(null, new Object[0]);
+                discoveryProvider.removeDeviceFilter(discoveryFilter);
+                this.serviceFactories.remove(discoveryFilter.getServiceId());
                 this.deviceClasses.put(discoveryFilter.getServiceId(), cls);
                 discoveryProvider.addDeviceFilter(discoveryFilter);
                 if (!this.mSearching) {
@@ -460,6 +447,168 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
         }
     }
 
+    /**
+     * Registers a DeviceService which is created by a factory instead of reflection. Only the discovery filter of the service is needed up front, so the class of the DeviceService, and any library it depends on, is loaded when the DiscoveryProvider reports the first matching service.
+     * <p>
+     * The DiscoveryProvider is created through its Context constructor when discovery is started, see registerDeviceService(DiscoveryFilter, Class, DiscoveryProviderFactory, DeviceServiceFactory).
+     *
+     * @param discoveryFilter Filter which the DiscoveryProvider uses to find the DeviceService, it must match the discoveryFilter() of the DeviceService
+     * @param providerClass Class for object that should discover this DeviceService. If a DiscoveryProvider of this class already exists, then the existing DiscoveryProvider will be used.
+     * @param factory Factory which creates the DeviceService when it is found
+     */
+    public void registerDeviceService(DiscoveryFilter discoveryFilter, Class<? extends DiscoveryProvider> providerClass, DeviceServiceFactory factory) {
+        registerDeviceService(discoveryFilter, providerClass, null, factory);
+    }
+
+    /**
+     * Registers a DeviceService which is created by a factory, together with a factory for its DiscoveryProvider. The DiscoveryProvider is not created before discovery is started or the providers are looked up with getDiscoveryProviders(), so registering the services of an optional module loads none of its classes.
+     *
+     * @param discoveryFilter Filter which the DiscoveryProvider uses to find the DeviceService, it must match the discoveryFilter() of the DeviceService
+     * @param providerClass Class of the DiscoveryProvider, which identifies it. If a DiscoveryProvider of this class already exists, then the existing DiscoveryProvider will be used.
+     * @param providerFactory Factory which creates the DiscoveryProvider, or null to use its Context constructor
+     * @param factory Factory which creates the DeviceService when it is found
+     */
+    public void registerDeviceService(DiscoveryFilter discoveryFilter, Class<? extends DiscoveryProvider> providerClass, DiscoveryProviderFactory providerFactory, DeviceServiceFactory factory) {
+        if (discoveryFilter == null || providerClass == null || factory == null)
+            throw new NullPointerException("discoveryFilter, providerClass and factory must not be null");
+
+        this.deviceClasses.remove(discoveryFilter.getServiceId());
+        this.serviceFactories.put(discoveryFilter.getServiceId(), factory);
+
+        DiscoveryProvider discoveryProvider = findDiscoveryProvider(providerClass);
+
+        if (discoveryProvider == null) {
+            synchronized (pendingProviders) {
+                PendingProvider pending = pendingProviders.get(providerClass);
+
+                if (pending == null) {
+                    pending = new PendingProvider(providerClass, providerFactory);
+                    pendingProviders.put(providerClass, pending);
+                }
+                pending.filters.add(discoveryFilter);
+            }
+
+            if (this.mSearching)
+                createPendingProviders(true);
+            return;
+        }
+
+        discoveryProvider.addDeviceFilter(discoveryFilter);
+
+        if (this.mSearching) {
+            discoveryProvider.restart();
+        }
+    }
+
+    /**
+     * Creates the DiscoveryProviders which have been registered but not created yet.
+     *
+     * @param start Whether to start the new providers
+     */
+    void createPendingProviders(boolean start) {
+        List<PendingProvider> pending;
+
+        synchronized (pendingProviders) {
+            if (pendingProviders.isEmpty())
+                return;
+
+            pending = new ArrayList<PendingProvider>(pendingProviders.values());
+            pendingProviders.clear();
+        }
+
+        for (PendingProvider provider : pending) {
+            DiscoveryProvider discoveryProvider = findDiscoveryProvider(provider.providerClass);
+
+            if (discoveryProvider == null) {
+                try {
+                    if (provider.factory != null) {
+                        discoveryProvider = provider.factory.createProvider(this.context);
+                    } else {
+                        discoveryProvider = provider.providerClass.getConstructor(Context.class).newInstance(this.context);
+                    }
+                } catch (NoSuchMethodException e) {
+                    e.printStackTrace();
+                } catch (InstantiationException e) {
+                    e.printStackTrace();
+                } catch (IllegalAccessException e) {
+                    e.printStackTrace();
+                } catch (InvocationTargetException e) {
+                    e.printStackTrace();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+
+                if (discoveryProvider == null)
+                    continue;
+
+                addDiscoveryProvider(discoveryProvider, provider.providerClass);
+            }
+
+            for (DiscoveryFilter filter : provider.filters) {
+                discoveryProvider.addDeviceFilter(filter);
+            }
+
+            if (start)
+                discoveryProvider.restart();
+        }
+    }
+
+    private DiscoveryProvider findDiscoveryProvider(Class<? extends DiscoveryProvider> providerClass) {
+        for (DiscoveryProvider discoveryProvider : this.discoveryProviders) {
+            if (discoveryProvider.getClass().isAssignableFrom(providerClass)) {
+                return discoveryProvider;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the registered DiscoveryProvider of the class, creating it on first use.
+     */
+    private DiscoveryProvider getDiscoveryProvider(Class<? extends DiscoveryProvider> providerClass) throws NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
+        DiscoveryProvider discoveryProvider = findDiscoveryProvider(providerClass);
+
+        if (discoveryProvider == null) {
+            discoveryProvider = providerClass.getConstructor(Context.class).newInstance(this.context);
+            addDiscoveryProvider(discoveryProvider, providerClass);
+
+            PendingProvider pending;
+            synchronized (pendingProviders) {
+                pending = pendingProviders.remove(providerClass);
+            }
+            if (pending != null) {
+                for (DiscoveryFilter filter : pending.filters) {
+                    discoveryProvider.addDeviceFilter(filter);
+                }
+            }
+        }
+
+        return discoveryProvider;
+    }
+
+    private void addDiscoveryProvider(DiscoveryProvider discoveryProvider, Class<? extends DiscoveryProvider> providerClass) {
+        discoveryProvider.addListener(this);
+        if (discoveryProvider instanceof DiscoveryMetrics.Instrumented) {
+            ((DiscoveryMetrics.Instrumented) discoveryProvider).setMetrics(metrics.getProviderMetrics(providerClass.getSimpleName()));
+        }
+        this.discoveryProviders.add(discoveryProvider);
+    }
+
+    /**
+     * Filters of a DiscoveryProvider which has not been created yet
+     */
+    static class PendingProvider {
+        final Class<? extends DiscoveryProvider> providerClass;
+        final DiscoveryProviderFactory factory;
+        final List<DiscoveryFilter> filters = new ArrayList<DiscoveryFilter>();
+
+        PendingProvider(Class<? extends DiscoveryProvider> providerClass, DiscoveryProviderFactory factory) {
+            this.providerClass = providerClass;
+            this.factory = factory;
+        }
+    }
+
     /**
      * Unregisters a DeviceService with DiscoveryManager. If no other DeviceServices are set to being discovered with the associated DiscoveryProvider, then that DiscoveryProvider instance will be stopped and shut down.
      *
@@ -481,11 +630,13 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
                         break;
                     }
                 }
+                DiscoveryFilter discoveryFilter = (DiscoveryFilter) cls.getMethod("discoveryFilter", new Class[0]).invoke(null, new Object[0]);
                 if (discoveryProvider == null) {
+                    removePendingFilter(cls2, discoveryFilter);
                     return;
                 }
-                DiscoveryFilter discoveryFilter = (DiscoveryFilter) cls.getMethod("discoveryFilter", new Class[0]).invoke(null, new Object[0]);
-                if (this.deviceClasses.remove(discoveryFilter.getServiceId()) == null) {
+                if (this.deviceClasses.remove(discoveryFilter.getServiceId()) == null
+                        && this.serviceFactories.remove(discoveryFilter.getServiceId()) == null) {
                     return;
                 }
                 discoveryProvider.removeDeviceFilter(discoveryFilter);
@@ -507,6 +658,18 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
             }
         }
     }
+    private void removePendingFilter(Class<?> providerClass, DiscoveryFilter discoveryFilter) {
+        synchronized (pendingProviders) {
+            PendingProvider pending = pendingProviders.get(providerClass);
+
+            if (pending == null || !pending.filters.remove(discoveryFilter))
+                return;
+
+            this.serviceFactories.remove(discoveryFilter.getServiceId());
+            if (pending.filters.isEmpty())
+                pendingProviders.remove(providerClass);
+        }
+    }
     // @endcond
 
     /**
@@ -522,14 +685,20 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
 
         mSearching = true;
         multicastLock.acquire();
+        metrics.markStart();
 
         Util.runOnUI(new Runnable() {
 
             @Override
             public void run() {
-                if (discoveryProviders.size() == 0) {
+                boolean registered;
+                synchronized (pendingProviders) {
+                    registered = discoveryProviders.size() > 0 || !pendingProviders.isEmpty();
+                }
+                if (!registered) {
                     registerDefaultDeviceTypes();
                 }
+                createPendingProviders(false);
 
                 ConnectivityManager connManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
                 NetworkInfo mWifi = connManager.getNetworkInfo(ConnectivityManager.TYPE_WIFI);
@@ -604,6 +773,7 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
             return;
         }
         this.compatibleDevices.put(connectableDevice.getIpAddress(), connectableDevice);
+        metrics.recordCompatibleDevice();
         Iterator<DiscoveryManagerListener> it = this.discoveryListeners.iterator();
         while (it.hasNext()) {
             it.next().onDeviceAdded(this, connectableDevice);
@@ -729,7 +899,17 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
         unregisterBroadcastReceiver();
     }
 
+    /**
+     * Counters and timings of discovery since the last call of start(), from the packets received
+     * by the discovery providers to the compatible devices. Call DiscoveryMetrics.snapshot() to
+     * read a consistent copy.
+     */
+    public DiscoveryMetrics getMetrics() {
+        return metrics;
+    }
+
     public List<DiscoveryProvider> getDiscoveryProviders() {
+        createPendingProviders(mSearching);
         return new ArrayList<DiscoveryProvider>(discoveryProviders);
     }
 
@@ -838,15 +1018,18 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
         boolean z2;
         String str = Util.T;
         Log.d(str, "Adding service " + serviceDescription.getServiceID() + " to device with address " + connectableDevice.getIpAddress() + " and id " + connectableDevice.getId());
-        Class<? extends DeviceService> cls = this.deviceClasses.get(serviceDescription.getServiceID());
-        if (cls == null) {
+        String serviceId = serviceDescription.getServiceID();
+        DeviceServiceFactory factory = this.serviceFactories.get(serviceId);
+        Class<? extends DeviceService> cls = factory == null ? this.deviceClasses.get(serviceId) : null;
+        if (factory == null && cls == null) {
             return;
         }
-        if (cls == DLNAService.class) {
-            if (serviceDescription.getLocationXML() == null) {
+        if (factory != null ? DLNAService.ID.equals(serviceId) : cls == DLNAService.class) {
+            // only devices whose description has been loaded
+            if (serviceDescription.getServiceList() == null) {
                 return;
             }
-        } else if (cls == NetcastTVService.class && !isNetcast(serviceDescription)) {
+        } else if ((factory != null ? NetcastTVService.ID.equals(serviceId) : cls == NetcastTVService.class) && !isNetcast(serviceDescription)) {
             return;
         }
         ServiceConfig serviceConfig = null;
@@ -885,7 +1068,12 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
             }
             connectableDevice.removeServiceByName(serviceDescription.getServiceID());
         }
-        DeviceService service = DeviceService.getService(cls, serviceDescription, serviceConfig);
+        DeviceService service;
+        if (factory != null) {
+            service = factory.createService(serviceDescription, serviceConfig);
+        } else {
+            service = DeviceService.getService(cls, serviceDescription, serviceConfig);
+        }
         if (service == null) {
             return;
         }
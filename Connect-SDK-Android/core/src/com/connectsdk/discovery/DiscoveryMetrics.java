@@ -0,0 +1,302 @@
+/*
+ * DiscoveryMetrics
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.discovery;
+
+import com.connectsdk.core.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and timings of the discovery funnel, from packets received by the providers to
+ * compatible devices reported by DiscoveryManager. They tell whether slow discovery comes from the
+ * network, from loading device descriptions or from capability filtering.
+ *
+ * The metrics of the running DiscoveryManager are returned by DiscoveryManager.getMetrics(). Use
+ * {@link #snapshot()} to read a consistent copy. All times are in milliseconds and measured from
+ * the last call of DiscoveryManager.start().
+ */
+public class DiscoveryMetrics {
+
+    /**
+     * Implemented by discovery providers which report to the metrics of DiscoveryManager.
+     */
+    public interface Instrumented {
+        void setMetrics(ProviderMetrics metrics);
+    }
+
+    /**
+     * Counters of one discovery provider.
+     */
+    public static class ProviderMetrics {
+        private final String name;
+
+        private final AtomicLong packetsReceived;
+        private final AtomicLong parseFailures;
+        private final AtomicLong duplicatesSuppressed;
+        private final AtomicLong fetchFailures;
+        private final AtomicLong servicesFound;
+        private final AtomicLong servicesLost;
+        private final LatencyHistogram fetchLatency;
+
+        private volatile long startTime;
+        private final long snapshotTime;
+
+        public ProviderMetrics(String name) {
+            this.name = name;
+
+            packetsReceived = new AtomicLong();
+            parseFailures = new AtomicLong();
+            duplicatesSuppressed = new AtomicLong();
+            fetchFailures = new AtomicLong();
+            servicesFound = new AtomicLong();
+            servicesLost = new AtomicLong();
+            fetchLatency = new LatencyHistogram();
+
+            startTime = now();
+            snapshotTime = -1;
+        }
+
+        ProviderMetrics(ProviderMetrics other, long snapshotTime) {
+            name = other.name;
+
+            packetsReceived = new AtomicLong(other.packetsReceived.get());
+            parseFailures = new AtomicLong(other.parseFailures.get());
+            duplicatesSuppressed = new AtomicLong(other.duplicatesSuppressed.get());
+            fetchFailures = new AtomicLong(other.fetchFailures.get());
+            servicesFound = new AtomicLong(other.servicesFound.get());
+            servicesLost = new AtomicLong(other.servicesLost.get());
+            fetchLatency = new LatencyHistogram(other.fetchLatency);
+
+            startTime = other.startTime;
+            this.snapshotTime = snapshotTime;
+        }
+
+        public void recordPacket() {
+            packetsReceived.incrementAndGet();
+        }
+
+        /** A packet or description which could not be used */
+        public void recordParseFailure() {
+            parseFailures.incrementAndGet();
+        }
+
+        /** A response for a service which is already known or being loaded */
+        public void recordDuplicate() {
+            duplicatesSuppressed.incrementAndGet();
+        }
+
+        public void recordFetch(long millis) {
+            fetchLatency.record(millis);
+        }
+
+        public void recordFetchFailure() {
+            fetchFailures.incrementAndGet();
+        }
+
+        public void recordServiceFound() {
+            servicesFound.incrementAndGet();
+        }
+
+        public void recordServiceLost() {
+            servicesLost.incrementAndGet();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getPacketsReceived() {
+            return packetsReceived.get();
+        }
+
+        /** Average rate of received packets since discovery has been started */
+        public double getPacketsPerSecond() {
+            long end = snapshotTime >= 0 ? snapshotTime : now();
+            long elapsed = end - startTime;
+
+            return elapsed <= 0 ? 0 : packetsReceived.get() * 1000.0 / elapsed;
+        }
+
+        public long getParseFailures() {
+            return parseFailures.get();
+        }
+
+        public long getDuplicatesSuppressed() {
+            return duplicatesSuppressed.get();
+        }
+
+        public long getFetchFailures() {
+            return fetchFailures.get();
+        }
+
+        public long getServicesFound() {
+            return servicesFound.get();
+        }
+
+        public long getServicesLost() {
+            return servicesLost.get();
+        }
+
+        /** Time from the discovery of a service until its device description has been loaded */
+        public LatencyHistogram getFetchLatency() {
+            return fetchLatency;
+        }
+
+        void reset(long startTime) {
+            packetsReceived.set(0);
+            parseFailures.set(0);
+            duplicatesSuppressed.set(0);
+            fetchFailures.set(0);
+            servicesFound.set(0);
+            servicesLost.set(0);
+            fetchLatency.reset();
+
+            this.startTime = startTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: packets=%d (%.1f/s) parseFailures=%d duplicates=%d found=%d lost=%d fetchFailures=%d fetch=[%s]",
+                    name, getPacketsReceived(), getPacketsPerSecond(), getParseFailures(), getDuplicatesSuppressed(),
+                    getServicesFound(), getServicesLost(), getFetchFailures(), fetchLatency);
+        }
+    }
+
+    private final ConcurrentHashMap<String, ProviderMetrics> providers;
+
+    private volatile long startTime;
+    private volatile long firstCompatibleDeviceTime = -1;
+    private volatile long lastCompatibleDeviceTime = -1;
+    private final AtomicLong compatibleDevicesFound;
+
+    public DiscoveryMetrics() {
+        providers = new ConcurrentHashMap<String, ProviderMetrics>();
+        compatibleDevicesFound = new AtomicLong();
+        startTime = now();
+    }
+
+    private DiscoveryMetrics(DiscoveryMetrics other) {
+        long snapshotTime = now();
+
+        providers = new ConcurrentHashMap<String, ProviderMetrics>();
+        for (Map.Entry<String, ProviderMetrics> entry : other.providers.entrySet()) {
+            providers.put(entry.getKey(), new ProviderMetrics(entry.getValue(), snapshotTime));
+        }
+
+        startTime = other.startTime;
+        firstCompatibleDeviceTime = other.firstCompatibleDeviceTime;
+        lastCompatibleDeviceTime = other.lastCompatibleDeviceTime;
+        compatibleDevicesFound = new AtomicLong(other.compatibleDevicesFound.get());
+    }
+
+    /** Returns a copy which does not change anymore */
+    public DiscoveryMetrics snapshot() {
+        return new DiscoveryMetrics(this);
+    }
+
+    /** Returns the counters of a provider, creating them on first use */
+    public ProviderMetrics getProviderMetrics(String name) {
+        ProviderMetrics metrics = providers.get(name);
+
+        if (metrics == null) {
+            metrics = new ProviderMetrics(name);
+            metrics.startTime = startTime;
+
+            ProviderMetrics existing = providers.putIfAbsent(name, metrics);
+            if (existing != null)
+                metrics = existing;
+        }
+
+        return metrics;
+    }
+
+    public List<ProviderMetrics> getAllProviderMetrics() {
+        List<ProviderMetrics> list = new ArrayList<ProviderMetrics>(providers.values());
+        return Collections.unmodifiableList(list);
+    }
+
+    /** Number of compatible devices which have been added since discovery has been started */
+    public long getCompatibleDevicesFound() {
+        return compatibleDevicesFound.get();
+    }
+
+    /** Time from the start of discovery to the first compatible device, or -1 if none has been found */
+    public long getTimeToFirstCompatibleDevice() {
+        long time = firstCompatibleDeviceTime;
+        return time < 0 ? -1 : time - startTime;
+    }
+
+    /**
+     * Time from the start of discovery to the last compatible device which has been added, that is
+     * until the device set has been complete so far. Returns -1 if no device has been found.
+     */
+    public long getTimeToFullDeviceSet() {
+        long time = lastCompatibleDeviceTime;
+        return time < 0 ? -1 : time - startTime;
+    }
+
+    // @cond INTERNAL
+    /** Starts measuring again, called when discovery is started */
+    public void markStart() {
+        long time = now();
+
+        startTime = time;
+        firstCompatibleDeviceTime = -1;
+        lastCompatibleDeviceTime = -1;
+        compatibleDevicesFound.set(0);
+
+        for (ProviderMetrics metrics : providers.values()) {
+            metrics.reset(time);
+        }
+    }
+
+    public void recordCompatibleDevice() {
+        long time = now();
+
+        compatibleDevicesFound.incrementAndGet();
+        if (firstCompatibleDeviceTime < 0)
+            firstCompatibleDeviceTime = time;
+        lastCompatibleDeviceTime = time;
+    }
+    // @endcond
+
+    static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("devices=%d firstDevice=%dms fullDeviceSet=%dms",
+                getCompatibleDevicesFound(), getTimeToFirstCompatibleDevice(), getTimeToFullDeviceSet()));
+
+        for (ProviderMetrics metrics : providers.values()) {
+            sb.append('\n').append(metrics);
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * DiscoveryProviderFactory
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.discovery;
+
+import android.content.Context;
+
+/**
+ * Creates a DiscoveryProvider without reflection. DiscoveryManager calls it when discovery is
+ * started or the providers are looked up for the first time, so a provider which depends on an
+ * optional library is not created while its services are only registered.
+ */
+public interface DiscoveryProviderFactory {
+
+    /**
+     * Creates the DiscoveryProvider.
+     *
+     * @param context Context of DiscoveryManager
+     * @return The new DiscoveryProvider
+     */
+    DiscoveryProvider createProvider(Context context);
+}
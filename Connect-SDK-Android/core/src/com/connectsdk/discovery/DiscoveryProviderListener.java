@@ -25,6 +25,8 @@ import com.connectsdk.service.config.ServiceDescription;
 
 /**
  * The DiscoveryProviderListener is mechanism for passing service information to the DiscoveryManager. You likely will not be using the DiscoveryProviderListener class directly, as DiscoveryManager acts as a listener to all of the DiscoveryProviders.
+ *
+ * The SSDP provider calls its listeners on the main thread, unless a listener implements CallbackExecutor.
  */
 public interface DiscoveryProviderListener {
 
@@ -25,32 +25,39 @@ import android.util.Log;
 
 import com.connectsdk.core.Util;
 import com.connectsdk.discovery.DiscoveryFilter;
+import com.connectsdk.discovery.DiscoveryMetrics;
 import com.connectsdk.discovery.DiscoveryProvider;
 import com.connectsdk.discovery.DiscoveryProviderListener;
 import com.connectsdk.discovery.provider.ssdp.SSDPClient;
+import com.connectsdk.discovery.provider.ssdp.SSDPDescriptionFetcher;
 import com.connectsdk.discovery.provider.ssdp.SSDPDevice;
+import com.connectsdk.discovery.provider.ssdp.SSDPDeviceCache;
 import com.connectsdk.discovery.provider.ssdp.SSDPPacket;
+import com.connectsdk.discovery.provider.ssdp.SSDPScanPlanner;
 import com.connectsdk.service.config.ServiceDescription;
 
-import org.xml.sax.SAXException;
-
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import javax.xml.parsers.ParserConfigurationException;
-
-public class SSDPDiscoveryProvider implements DiscoveryProvider {
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SSDPDiscoveryProvider implements DiscoveryProvider, DiscoveryMetrics.Instrumented {
     Context context;
 
     boolean needToStartSearch = false;
@@ -64,24 +71,44 @@ public class SSDPDiscoveryProvider implements DiscoveryProvider {
 
     private SSDPClient ssdpClient;
 
-    private Timer scanTimer;
+    SSDPDeviceCache deviceCache;
+    SSDPDescriptionFetcher descriptionFetcher;
 
-    private Pattern uuidReg;
+    SSDPScanPlanner scanPlanner;
 
-    private Thread responseThread;
-    private Thread notifyThread;
+    /* Single thread for all M-SEARCH rounds, replaced on every start */
+    private ScheduledExecutorService scanExecutor;
+
+    /* Incremented whenever a device is found or lost, tells the planner whether the set changed */
+    private final AtomicInteger deviceSetVersion = new AtomicInteger();
+    private int scannedDeviceSetVersion;
+
+    private Thread receiveThread;
 
     boolean isRunning = false;
 
+    /* Replaced with the counters of DiscoveryManager when the provider is registered */
+    DiscoveryMetrics.ProviderMetrics metrics = new DiscoveryMetrics.ProviderMetrics("SSDP");
+
     public SSDPDiscoveryProvider(Context context) {
         this.context = context;
 
-        uuidReg = Pattern.compile("(?<=uuid:)(.+?)(?=(::)|$)");
-
+        deviceCache = new SSDPDeviceCache(context);
+        descriptionFetcher = new SSDPDescriptionFetcher(deviceCache);
+        scanPlanner = new SSDPScanPlanner();
         serviceListeners = new CopyOnWriteArrayList<DiscoveryProviderListener>();
         serviceFilters = new CopyOnWriteArrayList<DiscoveryFilter>();
     }
 
+    @Override
+    public void setMetrics(DiscoveryMetrics.ProviderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public DiscoveryMetrics.ProviderMetrics getMetrics() {
+        return metrics;
+    }
+
     private void openSocket() {
         if (ssdpClient != null && ssdpClient.isConnected())
             return;
@@ -112,20 +139,21 @@ public class SSDPDiscoveryProvider implements DiscoveryProvider {
 
         openSocket();
 
-        scanTimer = new Timer();
-        scanTimer.schedule(new TimerTask() {
+        scanPlanner.reset();
+        scannedDeviceSetVersion = deviceSetVersion.get();
 
+        scanExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
             @Override
-            public void run() {
-                sendSearch();
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SSDP Scan");
+                thread.setDaemon(true);
+                return thread;
             }
-        }, 100, RESCAN_INTERVAL);
+        });
+        scheduleScan(scanExecutor, 100);
 
-        responseThread = new Thread(mResponseHandler);
-        notifyThread = new Thread(mRespNotifyHandler);
-
-        responseThread.start();
-        notifyThread.start();
+        receiveThread = new Thread(mReceiveHandler, "SSDP Receive");
+        receiveThread.start();
     }
 
     public void sendSearch() {
@@ -151,32 +179,66 @@ public class SSDPDiscoveryProvider implements DiscoveryProvider {
                 foundServices.remove(key);
         }
 
-        rescan();
+        sendSearchMessages();
     }
 
-    @Override
-    public void stop() {
-        isRunning = false;
+    private void scheduleScan(final ScheduledExecutorService executor, long delay) {
+        try {
+            executor.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    sendSearch();
+
+                    int version = deviceSetVersion.get();
+                    boolean changed = version != scannedDeviceSetVersion;
+                    scannedDeviceSetVersion = version;
+
+                    scheduleScan(executor, scanPlanner.nextDelay(changed));
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the provider has been stopped
+        }
+    }
+
+    private void sendSearchMessages() {
+        SSDPClient client = ssdpClient;
+
+        if (client == null)
+            return;
 
-        if (scanTimer != null) {
-            scanTimer.cancel();
-            scanTimer = null;
+        // filters of different services often share a search target, one message per target is enough
+        Set<String> searchTargets = new LinkedHashSet<String>();
+        for (DiscoveryFilter searchTarget : serviceFilters) {
+            searchTargets.add(searchTarget.getServiceFilter());
         }
 
-        if (responseThread != null) {
-            responseThread.interrupt();
-            responseThread = null;
+        for (String searchTarget : searchTargets) {
+            try {
+                client.send(SSDPClient.getSSDPSearchMessage(searchTarget));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
+    }
+
+    @Override
+    public void stop() {
+        isRunning = false;
 
-        if (notifyThread != null) {
-            notifyThread.interrupt();
-            notifyThread = null;
+        if (scanExecutor != null) {
+            scanExecutor.shutdownNow();
+            scanExecutor = null;
         }
 
         if (ssdpClient != null) {
+            // closing the client terminates the receive loop
             ssdpClient.close();
             ssdpClient = null;
         }
+
+        receiveThread = null;
     }
 
     @Override
@@ -188,35 +250,30 @@ public class SSDPDiscoveryProvider implements DiscoveryProvider {
     @Override
     public void reset() {
         stop();
+        descriptionFetcher.cancelPending();
         foundServices.clear();
         discoveredServices.clear();
     }
 
     @Override
     public void rescan() {
-        for (DiscoveryFilter searchTarget : serviceFilters) {
-            final String message = SSDPClient.getSSDPSearchMessage(searchTarget.getServiceFilter());
+        ScheduledExecutorService executor = scanExecutor;
 
-            Timer timer = new Timer();
-            /* Send 3 times like WindowsMedia */
-            for (int i = 0; i < 3; i++) {
-                TimerTask task = new TimerTask() {
+        if (executor == null)
+            return;
 
-                    @Override
-                    public void run() {
-                        try {
-                            if (ssdpClient != null)
-                                ssdpClient.send(message);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                };
+        // sockets must not be used on the calling thread, which may be the main thread
+        try {
+            executor.execute(new Runnable() {
 
-                timer.schedule(task, i * 1000);
-            }
+                @Override
+                public void run() {
+                    sendSearchMessages();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the provider has been stopped
         }
-
     }
 
     @Override
@@ -243,37 +300,34 @@ public class SSDPDiscoveryProvider implements DiscoveryProvider {
         return serviceFilters.size() == 0;
     }
 
-    private Runnable mResponseHandler = new Runnable() {
+    private Runnable mReceiveHandler = new Runnable() {
         @Override
         public void run() {
-            while (ssdpClient != null) {
-                try {
-                    handleSSDPPacket(new SSDPPacket(ssdpClient.responseReceive()));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    break;
-                } catch (RuntimeException e) {
-                    e.printStackTrace();
-                    break;
-                }
+            SSDPClient client = ssdpClient;
+
+            if (client == null)
+                return;
+
+            try {
+                client.receive(mPacketListener);
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
             }
         }
     };
 
-    private Runnable mRespNotifyHandler = new Runnable() {
+    private SSDPClient.PacketListener mPacketListener = new SSDPClient.PacketListener() {
+        // packets are received on a single thread, so one parser is reused for all of them
+        private final SSDPPacket ssdpPacket = new SSDPPacket();
+
         @Override
-        public void run() {
-            while (ssdpClient != null) {
-                try {
-                    handleSSDPPacket(new SSDPPacket(ssdpClient.multicastReceive()));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    break;
-                } catch (RuntimeException e) {
-                    e.printStackTrace();
-                    break;
-                }
-            }
+        public void onPacketReceived(ByteBuffer packet, InetSocketAddress sender) {
+            metrics.recordPacket();
+
+            ssdpPacket.parse(packet, sender);
+            handleSSDPPacket(ssdpPacket);
         }
     };
 
@@ -293,27 +347,24 @@ public class SSDPDiscoveryProvider implements DiscoveryProvider {
 //        });
         // End Debugging stuff
 
-        if (ssdpPacket == null || ssdpPacket.getData().size() == 0 || ssdpPacket.getType() == null)
-            return;
-
-        String serviceFilter = ssdpPacket.getData().get(ssdpPacket.getType().equals(SSDPClient.NOTIFY) ? "NT" : "ST");
-
-        if (serviceFilter == null || SSDPClient.MSEARCH.equals(ssdpPacket.getType()) || !isSearchingForFilter(serviceFilter))
+        if (ssdpPacket == null || ssdpPacket.getHeaderCount() == 0) {
+            metrics.recordParseFailure();
             return;
+        }
 
-        String usnKey = ssdpPacket.getData().get("USN");
+        String serviceFilter = ssdpPacket.getHeader(ssdpPacket.isType(SSDPClient.NOTIFY) ? "NT" : "ST");
 
-        if (usnKey == null || usnKey.length() == 0)
+        if (serviceFilter == null || ssdpPacket.isType(SSDPClient.MSEARCH) || !isSearchingForFilter(serviceFilter))
             return;
 
-        Matcher m = uuidReg.matcher(usnKey);
+        String uuid = ssdpPacket.getUUID();
 
-        if (!m.find())
+        if (uuid == null) {
+            metrics.recordParseFailure();
             return;
+        }
 
-        String uuid = m.group();
-
-        if (SSDPClient.BYEBYE.equals(ssdpPacket.getData().get("NTS"))) {
+        if (ssdpPacket.headerEquals("NTS", SSDPClient.BYEBYE)) {
             final ServiceDescription service = foundServices.get(uuid);
 
             if (service != null) {
@@ -322,10 +373,12 @@ public class SSDPDiscoveryProvider implements DiscoveryProvider {
                 notifyListenersOfLostService(service);
             }
         } else {
-            String location = ssdpPacket.getData().get("LOCATION");
+            String location = ssdpPacket.getHeader("LOCATION");
 
-            if (location == null || location.length() == 0)
+            if (location == null || location.length() == 0) {
+                metrics.recordParseFailure();
                 return;
+            }
 
             ServiceDescription foundService = foundServices.get(uuid);
             ServiceDescription discoverdService = discoveredServices.get(uuid);
@@ -336,12 +389,15 @@ public class SSDPDiscoveryProvider implements DiscoveryProvider {
                 foundService = new ServiceDescription();
                 foundService.setUUID(uuid);
                 foundService.setServiceFilter(serviceFilter);
-                foundService.setIpAddress(ssdpPacket.getDatagramPacket().getAddress().getHostAddress());
+                foundService.setIpAddress(ssdpPacket.getSourceAddress().getHostAddress());
                 foundService.setPort(3001);
 
                 discoveredServices.put(uuid, foundService);
 
-                getLocationData(location, uuid, serviceFilter);
+                getLocationData(location, uuid, serviceFilter,
+                        ssdpPacket.getHeader("BOOTID.UPNP.ORG"), ssdpPacket.getHeader("CONFIGID.UPNP.ORG"));
+            } else {
+                metrics.recordDuplicate();
             }
 
             if (foundService != null)
@@ -350,64 +406,87 @@ public class SSDPDiscoveryProvider implements DiscoveryProvider {
     }
 
     public void getLocationData(final String location, final String uuid, final String serviceFilter) {
+        getLocationData(location, uuid, serviceFilter, null, null);
+    }
+
+    public void getLocationData(final String location, final String uuid, final String serviceFilter, final String bootId, final String configId) {
         try {
-            getLocationData(new URL(location), uuid, serviceFilter);
+            getLocationData(new URL(location), uuid, serviceFilter, bootId, configId);
         } catch (IOException e) {
             e.printStackTrace();
+
+            metrics.recordParseFailure();
+            discoveredServices.remove(uuid);
         }
     }
 
     public void getLocationData(final URL location, final String uuid, final String serviceFilter) {
-        Util.runInBackground(new Runnable() {
+        getLocationData(location, uuid, serviceFilter, null, null);
+    }
 
-            @Override
-            public void run() {
-                SSDPDevice device = null;
-                try {
-                    device = new SSDPDevice(location, serviceFilter);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } catch (ParserConfigurationException e) {
-                    e.printStackTrace();
-                } catch (SAXException e) {
-                    e.printStackTrace();
-                }
+    /**
+     * Loads the device description, a cached description is reused if it is still valid
+     *
+     * @param bootId value of the BOOTID.UPNP.ORG header, if any
+     * @param configId value of the CONFIGID.UPNP.ORG header, if any
+     */
+    public void getLocationData(final URL location, final String uuid, final String serviceFilter, final String bootId, final String configId) {
+        final long fetchStart = System.nanoTime();
+
+        descriptionFetcher.fetch(location, serviceFilter, uuid, bootId, configId, new SSDPDescriptionFetcher.FetchListener() {
 
-                if (device != null) {
-                    device.UUID = uuid;
-                    boolean hasServices = containsServicesWithFilter(device, serviceFilter);
-
-                    if (hasServices) {
-                        final ServiceDescription service = discoveredServices.get(uuid);
-
-                        if (service != null) {
-                            service.setServiceFilter(serviceFilter);
-                            service.setFriendlyName(device.friendlyName);
-                            service.setModelName(device.modelName);
-                            service.setModelNumber(device.modelNumber);
-                            service.setModelDescription(device.modelDescription);
-                            service.setManufacturer(device.manufacturer);
-                            service.setApplicationURL(device.applicationURL);
-                            service.setServiceList(device.serviceList);
-                            service.setResponseHeaders(device.headers);
-                            service.setLocationXML(device.locationXML);
-                            service.setServiceURI(device.serviceURI);
-                            service.setPort(device.port);
-
-                            foundServices.put(uuid, service);
-
-                            notifyListenersOfNewService(service);
-                        }
+            @Override
+            public void onDeviceFetched(SSDPDevice device) {
+                metrics.recordFetch(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fetchStart));
+
+                boolean hasServices = containsServicesWithFilter(device, serviceFilter);
+
+                if (hasServices) {
+                    final ServiceDescription service = discoveredServices.get(uuid);
+
+                    if (service != null) {
+                        service.setServiceFilter(serviceFilter);
+                        service.setFriendlyName(device.friendlyName);
+                        service.setModelName(device.modelName);
+                        service.setModelNumber(device.modelNumber);
+                        service.setModelDescription(device.modelDescription);
+                        service.setManufacturer(device.manufacturer);
+                        service.setApplicationURL(device.applicationURL);
+                        service.setServiceList(device.serviceList);
+                        service.setResponseHeaders(device.headers);
+                        service.setLocationXML(device.locationXML);
+                        service.setDescriptionElements(device.descriptionElements);
+                        service.setServiceURI(device.serviceURI);
+                        service.setPort(device.port);
+
+                        foundServices.put(uuid, service);
+
+                        notifyListenersOfNewService(service);
                     }
                 }
 
                 discoveredServices.remove(uuid);
             }
-        }, true);
 
+            @Override
+            public void onFetchFailed(Exception error) {
+                // a cancelled fetch is tried again when the device answers the next search
+                if (!(error instanceof CancellationException)) {
+                    if (error != null)
+                        error.printStackTrace();
+
+                    metrics.recordFetchFailure();
+                }
+
+                discoveredServices.remove(uuid);
+            }
+        });
     }
 
     private void notifyListenersOfNewService(ServiceDescription service) {
+        deviceSetVersion.incrementAndGet();
+        metrics.recordServiceFound();
+
         List<String> serviceIds = serviceIdsForFilter(service.getServiceFilter());
 
         for (String serviceId : serviceIds) {
@@ -416,20 +495,22 @@ public class SSDPDiscoveryProvider implements DiscoveryProvider {
 
             final ServiceDescription newService = _newService;
 
-            Util.runOnUI(new Runnable() {
-
-                @Override
-                public void run() {
+            for (final DiscoveryProviderListener listener : serviceListeners) {
+                Util.runOn(Util.getCallbackExecutor(listener), new Runnable() {
 
-                    for (DiscoveryProviderListener listener : serviceListeners) {
+                    @Override
+                    public void run() {
                         listener.onServiceAdded(SSDPDiscoveryProvider.this, newService);
                     }
-                }
-            });
+                });
+            }
         }
     }
 
     private void notifyListenersOfLostService(ServiceDescription service) {
+        deviceSetVersion.incrementAndGet();
+        metrics.recordServiceLost();
+
         List<String> serviceIds = serviceIdsForFilter(service.getServiceFilter());
 
         for (String serviceId : serviceIds) {
@@ -438,15 +519,15 @@ public class SSDPDiscoveryProvider implements DiscoveryProvider {
 
             final ServiceDescription newService = _newService;
 
-            Util.runOnUI(new Runnable() {
+            for (final DiscoveryProviderListener listener : serviceListeners) {
+                Util.runOn(Util.getCallbackExecutor(listener), new Runnable() {
 
-                @Override
-                public void run() {
-                    for (DiscoveryProviderListener listener : serviceListeners) {
+                    @Override
+                    public void run() {
                         listener.onServiceRemoved(SSDPDiscoveryProvider.this, newService);
                     }
-                }
-            });
+                });
+            }
         }
     }
 
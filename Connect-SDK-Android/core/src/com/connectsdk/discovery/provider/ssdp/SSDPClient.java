@@ -21,14 +21,21 @@
 package com.connectsdk.discovery.provider.ssdp;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.MulticastSocket;
 import java.net.NetworkInterface;
 import java.net.SocketAddress;
-import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Set;
 
 public class SSDPClient {
     /* New line definition */
@@ -37,6 +44,9 @@ public class SSDPClient {
     public static final String MULTICAST_ADDRESS = "239.255.255.250";
     public static final int PORT = 1900;
 
+    /* Maximum size of a received SSDP datagram, larger packets are truncated */
+    public static final int MAX_PACKET_SIZE = 1024;
+
     /* Definitions of start line */
     public static final String NOTIFY = "NOTIFY * HTTP/1.1";
     public static final String MSEARCH = "M-SEARCH * HTTP/1.1";
@@ -56,91 +66,148 @@ public class SSDPClient {
     public static final String BYEBYE = "ssdp:byebye";
     public static final String UPDATE = "ssdp:update";
 
-    DatagramSocket datagramSocket;
-    MulticastSocket multicastSocket;
+    /**
+     * Receives every SSDP datagram read by the client. The buffer is owned by the client and is
+     * reused for the next packet, so it must be consumed before this method returns.
+     */
+    public interface PacketListener {
+        void onPacketReceived(ByteBuffer packet, InetSocketAddress sender);
+    }
+
+    DatagramChannel datagramChannel;
+    DatagramChannel multicastChannel;
+    MembershipKey membershipKey;
+
+    Selector selector;
+    final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
 
-    SocketAddress multicastGroup;
+    InetSocketAddress multicastGroup;
     NetworkInterface networkInterface;
     InetAddress localInAddress;
 
-    int timeout = 0;
     static int MX = 5;
 
     public SSDPClient(InetAddress source) throws IOException {
-        this(source, new MulticastSocket(PORT), new DatagramSocket(null));
+        this(source, DatagramChannel.open(StandardProtocolFamily.INET), DatagramChannel.open(StandardProtocolFamily.INET));
+
+        multicastChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        multicastChannel.bind(new InetSocketAddress(PORT));
+        membershipKey = multicastChannel.join(multicastGroup.getAddress(), networkInterface);
     }
 
-    public SSDPClient(InetAddress source, MulticastSocket mcSocket, DatagramSocket dgSocket) throws IOException {
+    /**
+     * @param mcChannel channel that receives multicast NOTIFY packets, it is expected to be bound
+     *                  and to be a member of the SSDP multicast group already
+     * @param dgChannel unbound channel used to send M-SEARCH requests and receive their responses
+     */
+    public SSDPClient(InetAddress source, DatagramChannel mcChannel, DatagramChannel dgChannel) throws IOException {
         localInAddress = source;
-        multicastSocket = mcSocket;
-        datagramSocket = dgSocket;
+        multicastChannel = mcChannel;
+        datagramChannel = dgChannel;
 
         multicastGroup = new InetSocketAddress(MULTICAST_ADDRESS, PORT);
         networkInterface = NetworkInterface.getByInetAddress(localInAddress);
-        multicastSocket.joinGroup(multicastGroup, networkInterface);
 
-        datagramSocket.setReuseAddress(true);
-        datagramSocket.bind(new InetSocketAddress(localInAddress, 0));
+        datagramChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        datagramChannel.bind(new InetSocketAddress(localInAddress, 0));
     }
 
     /** Used to send SSDP packet */
     public void send(String data) throws IOException {
-        DatagramPacket dp = new DatagramPacket(data.getBytes(), data.length(), multicastGroup);
-
-        datagramSocket.send(dp);
+        datagramChannel.send(ByteBuffer.wrap(data.getBytes()), multicastGroup);
     }
 
+    /**
+     * Reads SSDP responses and multicast notifications on the calling thread until the client is
+     * closed. Both channels share one selector and one receive buffer, so no memory is allocated
+     * for the packet payload.
+     */
+    public void receive(PacketListener listener) throws IOException {
+        synchronized (this) {
+            if (selector != null)
+                throw new IllegalStateException("SSDPClient is already receiving");
+
+            selector = Selector.open();
+        }
 
-    /** Used to receive SSDP Response packet */
-    public DatagramPacket responseReceive() throws IOException {
-        byte[] buf = new byte[1024];
-        DatagramPacket dp = new DatagramPacket(buf, buf.length);
+        try {
+            datagramChannel.configureBlocking(false);
+            multicastChannel.configureBlocking(false);
+            datagramChannel.register(selector, SelectionKey.OP_READ);
+            multicastChannel.register(selector, SelectionKey.OP_READ);
 
-        datagramSocket.receive(dp);
+            while (selector.isOpen()) {
+                selector.select();
 
-        return dp;
+                Set<SelectionKey> selectedKeys = selector.selectedKeys();
+                Iterator<SelectionKey> iterator = selectedKeys.iterator();
+
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    if (key.isValid() && key.isReadable()) {
+                        drain((DatagramChannel) key.channel(), listener);
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // client has been closed
+        } catch (ClosedChannelException e) {
+            // client has been closed
+        }
     }
 
-    /** Used to receive SSDP Multicast packet */
-    public DatagramPacket multicastReceive() throws IOException {
-        byte[] buf = new byte[1024];
-        DatagramPacket dp = new DatagramPacket(buf, buf.length);
+    private void drain(DatagramChannel channel, PacketListener listener) throws IOException {
+        while (true) {
+            receiveBuffer.clear();
+            SocketAddress sender = channel.receive(receiveBuffer);
 
-        multicastSocket.receive(dp);
+            if (sender == null)
+                return;
 
-        return dp;
+            receiveBuffer.flip();
+            listener.onPacketReceived(receiveBuffer, (InetSocketAddress) sender);
+        }
     }
 
-//    /** Starts the socket */
-//    public void start() {
-//    
-//    }
-
     public boolean isConnected() {
-        return datagramSocket != null && multicastSocket != null && datagramSocket.isConnected() && multicastSocket.isConnected();
+        return datagramChannel != null && multicastChannel != null && datagramChannel.isOpen() && multicastChannel.isOpen();
     }
 
     /** Close the socket */
     public void close() {
-        if (multicastSocket != null) {
+        synchronized (this) {
+            if (selector != null) {
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        if (multicastChannel != null) {
+            if (membershipKey != null) {
+                membershipKey.drop();
+            }
+
             try {
-                multicastSocket.leaveGroup(multicastGroup, networkInterface);
+                multicastChannel.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
-            multicastSocket.close();
         }
 
-        if (datagramSocket != null) {
-            datagramSocket.close();
+        if (datagramChannel != null) {
+            try {
+                datagramChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 
-    public void setTimeout(int timeout) throws SocketException {
-        this.timeout = timeout;
-        datagramSocket.setSoTimeout(this.timeout);
-    }
-
     public static String getSSDPSearchMessage(String ST) {
         StringBuilder sb = new StringBuilder();
 
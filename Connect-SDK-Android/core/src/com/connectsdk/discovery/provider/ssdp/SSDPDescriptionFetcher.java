@@ -0,0 +1,256 @@
+/*
+ * SSDPDescriptionFetcher
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.discovery.provider.ssdp;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import com.connectsdk.core.Util;
+
+/**
+ * Schedules device description downloads. Requests for a LOCATION that is already being fetched
+ * are merged into the running fetch, so every search target announcing the same description is
+ * served by a single download. The number of simultaneous downloads is limited globally and per
+ * host, requests above the limits wait in FIFO order.
+ */
+public class SSDPDescriptionFetcher {
+    public static final int DEFAULT_MAX_FETCHES = 8;
+    public static final int DEFAULT_MAX_FETCHES_PER_HOST = 2;
+
+    public interface FetchListener {
+        /**
+         * Called on a background thread when the description has been downloaded or taken from
+         * the cache. The device may be shared between listeners and must not be modified.
+         */
+        void onDeviceFetched(SSDPDevice device);
+
+        /**
+         * Called on a background thread when the description could not be loaded, or with a
+         * CancellationException on the thread which called cancelPending()
+         */
+        void onFetchFailed(Exception error);
+    }
+
+    private final SSDPDeviceCache cache;
+    private final int maxFetches;
+    private final int maxFetchesPerHost;
+
+    // all state below is guarded by this
+    private final Map<String, Fetch> fetches = new HashMap<String, Fetch>();
+    private final LinkedList<Fetch> pendingFetches = new LinkedList<Fetch>();
+    private final Map<String, Integer> runningPerHost = new HashMap<String, Integer>();
+    private int running = 0;
+
+    private static class Request {
+        final String uuid;
+        final String bootId;
+        final String configId;
+        final FetchListener listener;
+
+        Request(String uuid, String bootId, String configId, FetchListener listener) {
+            this.uuid = uuid;
+            this.bootId = bootId;
+            this.configId = configId;
+            this.listener = listener;
+        }
+    }
+
+    private class Fetch implements Runnable {
+        final URL location;
+        final String key;
+        final String host;
+        final String ST;
+        final List<Request> requests = new ArrayList<Request>();
+
+        Fetch(URL location, String ST) {
+            this.location = location;
+            this.key = location.toString();
+            this.host = location.getHost();
+            this.ST = ST;
+        }
+
+        @Override
+        public void run() {
+            Fetch fetch = this;
+
+            // a finished fetch frees a slot for at most one queued fetch, which is run on this
+            // thread instead of being handed back to the executor
+            while (fetch != null) {
+                fetch.load();
+                fetch = takePendingFetch();
+            }
+        }
+
+        private void load() {
+            Request first;
+            synchronized (SSDPDescriptionFetcher.this) {
+                first = requests.get(0);
+            }
+
+            SSDPDevice device = null;
+            Exception error = null;
+
+            try {
+                device = cache.getDevice(location, ST, first.uuid, first.bootId, first.configId);
+            } catch (Exception e) {
+                error = e;
+            }
+
+            List<Request> completed = complete(this);
+
+            // a listener which throws must not keep the others from their result, nor the
+            // thread from taking the next queued fetch
+            for (Request request : completed) {
+                try {
+                    if (device == null) {
+                        request.listener.onFetchFailed(error);
+                        continue;
+                    }
+
+                    if (request != first)
+                        cache.putDevice(location, request.uuid, request.bootId, request.configId, device);
+
+                    request.listener.onDeviceFetched(device);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    public SSDPDescriptionFetcher(SSDPDeviceCache cache) {
+        this(cache, DEFAULT_MAX_FETCHES, DEFAULT_MAX_FETCHES_PER_HOST);
+    }
+
+    public SSDPDescriptionFetcher(SSDPDeviceCache cache, int maxFetches, int maxFetchesPerHost) {
+        this.cache = cache;
+        this.maxFetches = maxFetches;
+        this.maxFetchesPerHost = maxFetchesPerHost;
+    }
+
+    /**
+     * Loads the description from the location, joining a fetch of the same location if one is
+     * already queued or running.
+     *
+     * @param bootId value of the BOOTID.UPNP.ORG header, if any
+     * @param configId value of the CONFIGID.UPNP.ORG header, if any
+     */
+    public void fetch(URL location, String ST, String uuid, String bootId, String configId, FetchListener listener) {
+        Request request = new Request(uuid, bootId, configId, listener);
+
+        synchronized (this) {
+            String key = location.toString();
+            Fetch fetch = fetches.get(key);
+
+            if (fetch != null) {
+                fetch.requests.add(request);
+                return;
+            }
+
+            fetch = new Fetch(location, ST);
+            fetch.requests.add(request);
+            fetches.put(key, fetch);
+            pendingFetches.add(fetch);
+        }
+
+        startPendingFetches();
+    }
+
+    /** Number of locations which are being downloaded or wait for a free slot */
+    public synchronized int getFetchCount() {
+        return fetches.size();
+    }
+
+    /**
+     * Drops the queued fetches, their listeners get a CancellationException. Running fetches are
+     * completed.
+     */
+    public void cancelPending() {
+        List<Request> cancelled = new ArrayList<Request>();
+
+        synchronized (this) {
+            for (Fetch fetch : pendingFetches) {
+                fetches.remove(fetch.key);
+                cancelled.addAll(fetch.requests);
+            }
+
+            pendingFetches.clear();
+        }
+
+        for (Request request : cancelled) {
+            try {
+                request.listener.onFetchFailed(new CancellationException("Description fetch cancelled"));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private synchronized List<Request> complete(Fetch fetch) {
+        fetches.remove(fetch.key);
+        running--;
+
+        int hostCount = runningPerHost.get(fetch.host) - 1;
+        if (hostCount == 0)
+            runningPerHost.remove(fetch.host);
+        else
+            runningPerHost.put(fetch.host, hostCount);
+
+        // no more requests can join this fetch, so the list can be handed out
+        return new ArrayList<Request>(fetch.requests);
+    }
+
+    private void startPendingFetches() {
+        Fetch fetch;
+
+        while ((fetch = takePendingFetch()) != null) {
+            Util.runInBackground(fetch, true);
+        }
+    }
+
+    private synchronized Fetch takePendingFetch() {
+        if (running >= maxFetches)
+            return null;
+
+        Iterator<Fetch> iterator = pendingFetches.iterator();
+
+        while (iterator.hasNext()) {
+            Fetch fetch = iterator.next();
+            Integer hostCount = runningPerHost.get(fetch.host);
+
+            if (hostCount != null && hostCount >= maxFetchesPerHost)
+                continue;
+
+            iterator.remove();
+            running++;
+            runningPerHost.put(fetch.host, hostCount == null ? 1 : hostCount + 1);
+
+            return fetch;
+        }
+
+        return null;
+    }
+}
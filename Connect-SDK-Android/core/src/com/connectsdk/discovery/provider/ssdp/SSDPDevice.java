@@ -22,22 +22,54 @@ package com.connectsdk.discovery.provider.ssdp;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.TreeMap;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.xml.sax.SAXException;
 
 public class SSDPDevice {
+    static final String KEY_DEVICE_TYPE = "deviceType";
+    static final String KEY_FRIENDLY_NAME = "friendlyName";
+    static final String KEY_MANUFACTURER = "manufacturer";
+    static final String KEY_MODEL_DESCRIPTION = "modelDescription";
+    static final String KEY_MODEL_NAME = "modelName";
+    static final String KEY_MODEL_NUMBER = "modelNumber";
+    static final String KEY_UDN = "UDN";
+    static final String KEY_LOCATION_XML = "locationXML";
+    static final String KEY_SERVICE_LIST = "serviceList";
+    static final String KEY_ST = "ST";
+    static final String KEY_APPLICATION_URL = "applicationURL";
+    static final String KEY_SERVICE_URI = "serviceURI";
+    static final String KEY_BASE_URL = "baseURL";
+    static final String KEY_IP_ADDRESS = "ipAddress";
+    static final String KEY_PORT = "port";
+    static final String KEY_HEADERS = "headers";
+    static final String KEY_ETAG = "eTag";
+    static final String KEY_LAST_MODIFIED = "lastModified";
+    static final String KEY_DESCRIPTION_ELEMENTS = "descriptionElements";
+
+    /* Parsers are expensive to create, each fetching thread keeps one */
+    private static final ThreadLocal<SAXParser> saxParsers = new ThreadLocal<SAXParser>();
+
+    private static volatile boolean retainLocationXML = false;
+
     /* Required. UPnP device type. */
     public String deviceType;
     /* Required. Short description for end user. */
@@ -62,7 +94,10 @@ public class SSDPDevice {
 //    public String UPC;
     /* Required. */
 //    List<Icon> iconList = new ArrayList<Icon>();
+    /* Only kept when enabled with setRetainLocationXML() */
     public String locationXML;
+    /* Elements of the description read by services, see SSDPDeviceDescriptionParser.DESCRIPTION_ELEMENTS */
+    public Map<String, String> descriptionElements = new HashMap<String, String>();
     /* Optional. */
     public List<Service> serviceList = new ArrayList<Service>();
 
@@ -78,11 +113,23 @@ public class SSDPDevice {
 
     public Map<String, List<String>> headers;
 
+    /* Validators of the description document, used for conditional requests */
+    public String eTag;
+    public String lastModified;
+
     public SSDPDevice(String url, String ST) throws IOException, ParserConfigurationException, SAXException {
         this(new URL(url), ST);
     }
 
     public SSDPDevice(URL urlObject, String ST) throws IOException, ParserConfigurationException, SAXException {
+        this(urlObject, ST, urlObject.openConnection());
+    }
+
+    /**
+     * Creates the device from a connection which has been opened for the description URL, but
+     * the response of which has not been read yet.
+     */
+    public SSDPDevice(URL urlObject, String ST, URLConnection urlConnection) throws IOException, ParserConfigurationException, SAXException {
         if (urlObject.getPort() == -1) {
             baseURL = String.format("%s://%s", urlObject.getProtocol(), urlObject.getHost());
         } else {
@@ -94,37 +141,183 @@ public class SSDPDevice {
 
         serviceURI = String.format("%s://%s",  urlObject.getProtocol(), urlObject.getHost());
 
-        parse(urlObject);
+        parse(urlConnection);
+    }
+
+    /**
+     * Restores a device which has been saved with {@link #toJSONObject()}.
+     */
+    public SSDPDevice(JSONObject json) {
+        deviceType = json.optString(KEY_DEVICE_TYPE, null);
+        friendlyName = json.optString(KEY_FRIENDLY_NAME, null);
+        manufacturer = json.optString(KEY_MANUFACTURER, null);
+        modelDescription = json.optString(KEY_MODEL_DESCRIPTION, null);
+        modelName = json.optString(KEY_MODEL_NAME, null);
+        modelNumber = json.optString(KEY_MODEL_NUMBER, null);
+        UDN = json.optString(KEY_UDN, null);
+        locationXML = json.optString(KEY_LOCATION_XML, null);
+        ST = json.optString(KEY_ST, null);
+        applicationURL = json.optString(KEY_APPLICATION_URL, null);
+        serviceURI = json.optString(KEY_SERVICE_URI, null);
+        baseURL = json.optString(KEY_BASE_URL, null);
+        ipAddress = json.optString(KEY_IP_ADDRESS, null);
+        port = json.optInt(KEY_PORT, -1);
+        eTag = json.optString(KEY_ETAG, null);
+        lastModified = json.optString(KEY_LAST_MODIFIED, null);
+
+        JSONArray services = json.optJSONArray(KEY_SERVICE_LIST);
+        if (services != null) {
+            for (int i = 0; i < services.length(); i++) {
+                JSONObject service = services.optJSONObject(i);
+
+                if (service != null)
+                    serviceList.add(new Service(service));
+            }
+        }
+
+        JSONObject elementObject = json.optJSONObject(KEY_DESCRIPTION_ELEMENTS);
+        if (elementObject != null) {
+            Iterator<String> names = elementObject.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                descriptionElements.put(name, elementObject.optString(name));
+            }
+        }
+
+        JSONObject headerObject = json.optJSONObject(KEY_HEADERS);
+        if (headerObject != null) {
+            // header names are case-insensitive like in the map returned by URLConnection
+            headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+            Iterator<String> names = headerObject.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                JSONArray values = headerObject.optJSONArray(name);
+                List<String> valueList = new ArrayList<String>();
+
+                for (int i = 0; values != null && i < values.length(); i++) {
+                    valueList.add(values.optString(i));
+                }
+
+                headers.put(name, valueList);
+            }
+        }
+    }
+
+    /**
+     * Sets whether the full description document is kept in locationXML of new devices and in
+     * ServiceDescription.getLocationXML(). It is not kept by default, as the documents take a
+     * lot of memory with many devices on the network and the fields which are used are parsed anyway.
+     */
+    public static void setRetainLocationXML(boolean retain) {
+        retainLocationXML = retain;
+    }
+
+    public static boolean isRetainingLocationXML() {
+        return retainLocationXML;
     }
 
     public void parse(URL url) throws IOException, ParserConfigurationException, SAXException {
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        SAXParser saxParser;
+        parse(url.openConnection());
+    }
 
+    public void parse(URLConnection urlConnection) throws IOException, ParserConfigurationException, SAXException {
         SSDPDeviceDescriptionParser parser = new SSDPDeviceDescriptionParser(this);
 
-        URLConnection urlConnection = url.openConnection();
-
         applicationURL = urlConnection.getHeaderField("Application-URL");
         if (applicationURL != null && !applicationURL.substring(applicationURL.length() - 1).equals("/")) {
             applicationURL = applicationURL.concat("/");
         }
 
         InputStream in = new BufferedInputStream(urlConnection.getInputStream());
-        Scanner s = null;
+        SAXParser saxParser = getSAXParser();
         try {
-            s = new Scanner(in).useDelimiter("\\A");
-            locationXML = s.hasNext() ? s.next() : "";
+            if (retainLocationXML) {
+                byte[] xml = readFully(in);
+                locationXML = new String(xml, StandardCharsets.UTF_8);
 
-            saxParser = factory.newSAXParser();
-            saxParser.parse(new ByteArrayInputStream(locationXML.getBytes()), parser);
+                saxParser.parse(new ByteArrayInputStream(xml), parser);
+            } else {
+                saxParser.parse(in, parser);
+            }
         } finally {
             in.close();
-            if (s != null)
-                s.close();
+            saxParser.reset();
         }
 
         headers = urlConnection.getHeaderFields();
+        eTag = urlConnection.getHeaderField("ETag");
+        lastModified = urlConnection.getHeaderField("Last-Modified");
+    }
+
+    private static SAXParser getSAXParser() throws ParserConfigurationException, SAXException {
+        SAXParser saxParser = saxParsers.get();
+
+        if (saxParser == null) {
+            saxParser = SAXParserFactory.newInstance().newSAXParser();
+            saxParsers.set(saxParser);
+        }
+
+        return saxParser;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int length;
+
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+
+        return out.toByteArray();
+    }
+
+    public JSONObject toJSONObject() {
+        JSONObject jsonObj = new JSONObject();
+
+        try {
+            jsonObj.putOpt(KEY_DEVICE_TYPE, deviceType);
+            jsonObj.putOpt(KEY_FRIENDLY_NAME, friendlyName);
+            jsonObj.putOpt(KEY_MANUFACTURER, manufacturer);
+            jsonObj.putOpt(KEY_MODEL_DESCRIPTION, modelDescription);
+            jsonObj.putOpt(KEY_MODEL_NAME, modelName);
+            jsonObj.putOpt(KEY_MODEL_NUMBER, modelNumber);
+            jsonObj.putOpt(KEY_UDN, UDN);
+            jsonObj.putOpt(KEY_LOCATION_XML, locationXML);
+            jsonObj.putOpt(KEY_ST, ST);
+            jsonObj.putOpt(KEY_APPLICATION_URL, applicationURL);
+            jsonObj.putOpt(KEY_SERVICE_URI, serviceURI);
+            jsonObj.putOpt(KEY_BASE_URL, baseURL);
+            jsonObj.putOpt(KEY_IP_ADDRESS, ipAddress);
+            jsonObj.put(KEY_PORT, port);
+            jsonObj.putOpt(KEY_ETAG, eTag);
+            jsonObj.putOpt(KEY_LAST_MODIFIED, lastModified);
+
+            JSONArray services = new JSONArray();
+            for (Service service : serviceList) {
+                services.put(service.toJSONObject());
+            }
+            jsonObj.put(KEY_SERVICE_LIST, services);
+
+            if (!descriptionElements.isEmpty())
+                jsonObj.put(KEY_DESCRIPTION_ELEMENTS, new JSONObject(descriptionElements));
+
+            if (headers != null) {
+                JSONObject headerObject = new JSONObject();
+
+                for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                    // the status line is stored with a null name
+                    if (header.getKey() != null && header.getValue() != null)
+                        headerObject.put(header.getKey(), new JSONArray(header.getValue()));
+                }
+                jsonObj.put(KEY_HEADERS, headerObject);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return jsonObj;
     }
 
     @Override
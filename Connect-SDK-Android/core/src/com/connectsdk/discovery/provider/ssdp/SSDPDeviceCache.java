@@ -0,0 +1,333 @@
+/*
+ * SSDPDeviceCache
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.discovery.provider.ssdp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.xml.sax.SAXException;
+
+import android.content.Context;
+
+import com.connectsdk.core.Util;
+
+/**
+ * Cache of device descriptions keyed by device UUID and description location. The cache is
+ * persisted in the application cache directory, so it survives process restarts.
+ *
+ * A cached description is used without any request when the device announces the same
+ * BOOTID.UPNP.ORG and CONFIGID.UPNP.ORG values as when it was fetched. Otherwise the description
+ * is revalidated with a conditional GET based on its ETag and Last-Modified headers.
+ */
+public class SSDPDeviceCache {
+    // @cond INTERNAL
+    static final String FILENAME = "SSDPDeviceCache";
+
+    static final int CURRENT_VERSION = 0;
+
+    static final String KEY_VERSION = "version";
+    static final String KEY_ENTRIES = "entries";
+    static final String KEY_UUID = "uuid";
+    static final String KEY_LOCATION = "location";
+    static final String KEY_BOOT_ID = "bootId";
+    static final String KEY_CONFIG_ID = "configId";
+    static final String KEY_DEVICE = "device";
+    // @endcond
+
+    /** Maximum number of descriptions kept by default, the least recently used are dropped first */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private final File file;
+    private final int maxEntries;
+
+    // access ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private boolean loaded = false;
+
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+
+    static class Entry {
+        final String uuid;
+        final String location;
+        final String bootId;
+        final String configId;
+        final SSDPDevice device;
+
+        Entry(String uuid, String location, String bootId, String configId, SSDPDevice device) {
+            this.uuid = uuid;
+            this.location = location;
+            this.bootId = bootId;
+            this.configId = configId;
+            this.device = device;
+        }
+
+        Entry(JSONObject json) {
+            uuid = json.optString(KEY_UUID, null);
+            location = json.optString(KEY_LOCATION, null);
+            bootId = json.optString(KEY_BOOT_ID, null);
+            configId = json.optString(KEY_CONFIG_ID, null);
+
+            JSONObject deviceObject = json.optJSONObject(KEY_DEVICE);
+            device = deviceObject != null ? new SSDPDevice(deviceObject) : null;
+        }
+
+        JSONObject toJSONObject() throws JSONException {
+            JSONObject jsonObj = new JSONObject();
+            jsonObj.put(KEY_UUID, uuid);
+            jsonObj.put(KEY_LOCATION, location);
+            jsonObj.putOpt(KEY_BOOT_ID, bootId);
+            jsonObj.putOpt(KEY_CONFIG_ID, configId);
+            jsonObj.put(KEY_DEVICE, device.toJSONObject());
+            return jsonObj;
+        }
+    }
+
+    public SSDPDeviceCache(Context context) {
+        this(context != null ? new File(context.getCacheDir(), FILENAME) : null, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param file file the cache is persisted to, or null to keep the cache in memory only
+     * @param maxEntries maximum number of cached descriptions
+     */
+    public SSDPDeviceCache(File file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the description of the device, downloading it only if there is no valid cached copy.
+     *
+     * @param bootId value of the BOOTID.UPNP.ORG header, or null if the device does not send it
+     * @param configId value of the CONFIGID.UPNP.ORG header, or null if the device does not send it
+     */
+    public SSDPDevice getDevice(URL location, String ST, String uuid, String bootId, String configId) throws IOException, ParserConfigurationException, SAXException {
+        String locationKey = location.toString();
+        Entry entry = getEntry(uuid, locationKey);
+
+        if (entry != null && bootId != null && configId != null
+                && bootId.equals(entry.bootId) && configId.equals(entry.configId)) {
+            return entry.device;
+        }
+
+        SSDPDevice device = entry != null ? revalidate(location, ST, entry.device) : new SSDPDevice(location, ST);
+
+        put(new Entry(uuid, locationKey, bootId, configId, device));
+
+        return device;
+    }
+
+    /**
+     * Stores a description which has been loaded for another device announcing the same location.
+     */
+    public void putDevice(URL location, String uuid, String bootId, String configId, SSDPDevice device) {
+        put(new Entry(uuid, location.toString(), bootId, configId, device));
+    }
+
+    /** Removes all descriptions from the cache and from the disk. */
+    public synchronized void clear() {
+        loaded = true;
+        entries.clear();
+
+        scheduleWrite();
+    }
+
+    public synchronized int size() {
+        load();
+
+        return entries.size();
+    }
+
+    private SSDPDevice revalidate(URL location, String ST, SSDPDevice cached) throws IOException, ParserConfigurationException, SAXException {
+        URLConnection connection = location.openConnection();
+
+        if (connection instanceof HttpURLConnection && (cached.eTag != null || cached.lastModified != null)) {
+            if (cached.eTag != null)
+                connection.setRequestProperty("If-None-Match", cached.eTag);
+            if (cached.lastModified != null)
+                connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+
+            HttpURLConnection httpConnection = (HttpURLConnection) connection;
+
+            if (httpConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                httpConnection.disconnect();
+                return cached;
+            }
+        }
+
+        return new SSDPDevice(location, ST, connection);
+    }
+
+    private synchronized Entry getEntry(String uuid, String location) {
+        load();
+
+        Entry entry = entries.get(uuid);
+
+        if (entry == null || entry.device == null || !location.equals(entry.location))
+            return null;
+
+        // entries stored before retaining was enabled have to be fetched again
+        if (SSDPDevice.isRetainingLocationXML() && entry.device.locationXML == null)
+            return null;
+
+        return entry;
+    }
+
+    private synchronized void put(Entry entry) {
+        load();
+
+        entries.put(entry.uuid, entry);
+
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+
+        scheduleWrite();
+    }
+
+    private void load() {
+        if (loaded)
+            return;
+
+        loaded = true;
+
+        if (file == null || !file.exists())
+            return;
+
+        BufferedReader in = null;
+
+        try {
+            in = new BufferedReader(new FileReader(file));
+
+            StringBuilder sb = new StringBuilder();
+            String line;
+
+            while ((line = in.readLine()) != null) {
+                sb.append(line);
+            }
+
+            JSONObject data = new JSONObject(sb.toString());
+
+            if (data.optInt(KEY_VERSION, CURRENT_VERSION) != CURRENT_VERSION)
+                return;
+
+            JSONArray entryArray = data.optJSONArray(KEY_ENTRIES);
+            for (int i = 0; entryArray != null && i < entryArray.length(); i++) {
+                Entry entry = new Entry(entryArray.getJSONObject(i));
+
+                if (entry.uuid != null && entry.location != null && entry.device != null)
+                    entries.put(entry.uuid, entry);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (JSONException e) {
+            // the cache is likely to be corrupted, it will be rewritten on the next change
+            e.printStackTrace();
+            entries.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void scheduleWrite() {
+        if (file == null || !writeScheduled.compareAndSet(false, true))
+            return;
+
+        Util.runInBackground(new Runnable() {
+
+            @Override
+            public void run() {
+                writeScheduled.set(false);
+                writeToDisk();
+            }
+        }, true);
+    }
+
+    private void writeToDisk() {
+        JSONObject data = new JSONObject();
+
+        synchronized (this) {
+            try {
+                JSONArray entryArray = new JSONArray();
+
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    entryArray.put(entry.getValue().toJSONObject());
+                }
+
+                data.put(KEY_VERSION, CURRENT_VERSION);
+                data.put(KEY_ENTRIES, entryArray);
+            } catch (JSONException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+
+        // write to a temporary file first, so a crash never leaves a truncated cache behind
+        File temp = new File(file.getPath() + ".tmp");
+        FileWriter out = null;
+
+        try {
+            if (!file.exists())
+                file.getParentFile().mkdirs();
+
+            out = new FileWriter(temp);
+            out.write(data.toString());
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(file))
+                temp.delete();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -20,9 +20,6 @@
 
 package com.connectsdk.discovery.provider.ssdp;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -46,27 +43,29 @@ public class SSDPDeviceDescriptionParser extends DefaultHandler {
     public static final String TAG_PORT = "port";
     public static final String TAG_LOCATION = "location";
 
-    String currentValue = null;
+    /* LG webOS screen mirroring support */
+    public static final String TAG_APP_CASTING = "appCasting";
+    public static final String TAG_SUPPORT_APPCASTING_FEATURES = "supportAppcastingFeatures";
+
+    /* Elements outside of the fields of SSDPDevice which are read by the services */
+    static final String[] DESCRIPTION_ELEMENTS = { TAG_APP_CASTING, TAG_SUPPORT_APPCASTING_FEATURES };
+
+    // text is collected in one builder, which is needed for parsing character entities
+    final StringBuilder currentText = new StringBuilder();
+    boolean hasText = false;
     Icon currentIcon;
     Service currentService;
 
     SSDPDevice device;
-    Map<String, String> data;
 
     public SSDPDeviceDescriptionParser(SSDPDevice device) {
         this.device = device;
-        data = new HashMap<String, String>();
     }
 
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
-        if (currentValue == null) {
-            currentValue = new String(ch, start, length);
-        }
-        else {
-            // append to existing string (needed for parsing character entities)
-            currentValue += new String(ch, start, length);
-        }
+        currentText.append(ch, start, length);
+        hasText = true;
     }
 
     @Override
@@ -96,12 +95,14 @@ public class SSDPDeviceDescriptionParser extends DefaultHandler {
                 device.serviceURI = String.format("%s:%s%s", device.serviceURI, port, location);
             }
         }
-        currentValue = null;
+        clearText();
     }
 
 
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException {
+        String currentValue = hasText ? currentText.toString() : null;
+
         /* Parse device-specific information */
         if (TAG_DEVICE_TYPE.equals(qName)) {
             device.deviceType = currentValue;
@@ -153,9 +154,20 @@ public class SSDPDeviceDescriptionParser extends DefaultHandler {
             currentService.eventSubURL = currentValue;
         } else if (Service.TAG.equals(qName)) {
             device.serviceList.add(currentService);
+        } else if (currentValue != null) {
+            for (String element : DESCRIPTION_ELEMENTS) {
+                // the first occurrence wins, like in a search of the document
+                if (element.equals(qName) && !device.descriptionElements.containsKey(qName)) {
+                    device.descriptionElements.put(qName, currentValue);
+                }
+            }
         }
 
-        data.put(qName, currentValue);
-        currentValue = null;
+        clearText();
+    }
+
+    private void clearText() {
+        currentText.setLength(0);
+        hasText = false;
     }
 }
@@ -21,85 +21,330 @@
 package com.connectsdk.discovery.provider.ssdp;
 
 import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * SSDP packet parser which works directly on the bytes of the received datagram. Parsing only
+ * records the offsets of the start line and of every header, strings are created on demand when
+ * a header is requested.
+ *
+ * Since the packet does not copy the datagram, it must not be used after the underlying buffer
+ * has been reused for another packet.
+ */
 public class SSDPPacket {
     DatagramPacket datagramPacket;
-    Map<String, String> data = new HashMap<String, String>();
+    InetSocketAddress sender;
+    Map<String, String> data;
     String type;
     static final Charset ASCII_CHARSET = Charset.forName("US-ASCII");
     static final String CRLF = "\r\n";
     static final String LF = "\n";
 
+    static final String USN = "USN";
+    static final String UUID_PREFIX = "uuid:";
+
+    /* Each header is stored as 4 offsets: name start, name end, value start, value end */
+    private static final int HEADER_FIELDS = 4;
+
+    ByteBuffer buffer;
+    int typeStart;
+    int typeEnd = -1;
+    int[] headers = new int[HEADER_FIELDS * 16];
+    int headerCount;
+    char[] chars = new char[64];
+
+    /**
+     * Creates an empty packet, which can be filled and refilled with {@link #parse(ByteBuffer, InetSocketAddress)}.
+     */
+    public SSDPPacket() {
+    }
+
     public SSDPPacket(DatagramPacket datagramPacket) {
+        parse(ByteBuffer.wrap(datagramPacket.getData()), null);
+
         this.datagramPacket = datagramPacket;
+    }
 
-        String text = new String(datagramPacket.getData(), ASCII_CHARSET);
+    /**
+     * Parses the packet between the buffer's position and limit. The buffer is read lazily, so the
+     * packet is valid only as long as the buffer content is not changed.
+     */
+    public SSDPPacket(ByteBuffer buffer, InetSocketAddress sender) {
+        parse(buffer, sender);
+    }
 
-        int pos = 0;
+    /**
+     * Replaces the content of this packet with the packet stored between the buffer's position and
+     * limit. The buffer's position is not changed.
+     */
+    public void parse(ByteBuffer buffer, InetSocketAddress sender) {
+        this.buffer = buffer;
+        this.sender = sender;
+        datagramPacket = null;
+        data = null;
+        type = null;
+        typeEnd = -1;
+        headerCount = 0;
 
-	        int eolPos;
+        int limit = buffer.limit();
+        int pos = buffer.position();
+        int eolPos;
+        int nextPos;
 
-        if ((eolPos = text.indexOf(CRLF)) != -1) {
-            pos = eolPos + CRLF.length();
+        if ((eolPos = indexOfCRLF(pos, limit)) != -1) {
+            nextPos = eolPos + CRLF.length();
         }
-        else if ((eolPos = text.indexOf(LF)) != -1) {
-            pos = eolPos + LF.length();
+        else if ((eolPos = indexOf((byte) '\n', pos, limit)) != -1) {
+            nextPos = eolPos + LF.length();
         }
-        else 
+        else
             return;
 
         // Get first line
-        type = text.substring(0, eolPos);
+        typeStart = pos;
+        typeEnd = eolPos;
+        pos = nextPos;
+
+        // once there is no CRLF left, lines are terminated by LF only
+        boolean hasCRLF = true;
 
-        while (pos < text.length()) {
-            String line;
-            if ((eolPos = text.indexOf(CRLF, pos)) != -1) {
-                line = text.substring(pos, eolPos);
-                pos = eolPos + CRLF.length();
+        while (pos < limit) {
+            eolPos = hasCRLF ? indexOfCRLF(pos, limit) : -1;
+
+            if (eolPos != -1) {
+                nextPos = eolPos + CRLF.length();
             }
-            else if ((eolPos = text.indexOf(LF, pos)) != -1) {
-                line = text.substring(pos, eolPos);
-                pos = eolPos + LF.length();
+            else {
+                hasCRLF = false;
+
+                if ((eolPos = indexOf((byte) '\n', pos, limit)) != -1)
+                    nextPos = eolPos + LF.length();
+                else
+                    break;
             }
-            else 
-                break;
 
-            int index = line.indexOf(':');
-            if (index == -1) {
-                continue;
+            int index = indexOf((byte) ':', pos, eolPos);
+            if (index != -1) {
+                addHeader(pos, index, index + 1, eolPos);
+            }
+
+            pos = nextPos;
+        }
+    }
+
+    private void addHeader(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        while (valueStart < valueEnd && isWhitespace(buffer.get(valueStart)))
+            valueStart++;
+
+        while (valueEnd > valueStart && isWhitespace(buffer.get(valueEnd - 1)))
+            valueEnd--;
+
+        int offset = headerCount * HEADER_FIELDS;
+
+        if (offset + HEADER_FIELDS > headers.length)
+            headers = Arrays.copyOf(headers, headers.length * 2);
+
+        headers[offset] = nameStart;
+        headers[offset + 1] = nameEnd;
+        headers[offset + 2] = valueStart;
+        headers[offset + 3] = valueEnd;
+        headerCount++;
+    }
+
+    /**
+     * Returns the value of a header, header names are compared case-insensitively. If the header
+     * is repeated, the last value is returned.
+     */
+    public String getHeader(String name) {
+        int header = findHeader(name);
+
+        if (header == -1)
+            return null;
+
+        return decode(headers[header + 2], headers[header + 3], false);
+    }
+
+    /** Whether the header is present and its value is exactly the given value */
+    public boolean headerEquals(String name, String value) {
+        int header = findHeader(name);
+
+        return header != -1 && regionEquals(headers[header + 2], headers[header + 3], value);
+    }
+
+    /**
+     * Returns the UUID from the USN header, that is the text between "uuid:" and either "::" or the
+     * end of the header.
+     */
+    public String getUUID() {
+        int header = findHeader(USN);
+
+        if (header == -1)
+            return null;
+
+        int valueEnd = headers[header + 3];
+        int pos = headers[header + 2];
+
+        while ((pos = indexOf(UUID_PREFIX, pos, valueEnd)) != -1) {
+            int start = pos + UUID_PREFIX.length();
+            int end = start;
+
+            while (end < valueEnd) {
+                byte b = buffer.get(end);
+
+                if (b == '\r' || b == '\n')
+                    break;
+                if (end > start && b == ':' && end + 1 < valueEnd && buffer.get(end + 1) == ':')
+                    break;
+
+                end++;
             }
 
-            String key = asciiUpper(line.substring(0, index));
-            String value = line.substring(index + 1).trim();
+            if (end > start)
+                return decode(start, end, false);
+
+            pos = start;
+        }
+
+        return null;
+    }
+
+    /** Whether the start line of the packet is exactly the given line */
+    public boolean isType(String type) {
+        return typeEnd != -1 && regionEquals(typeStart, typeEnd, type);
+    }
+
+    public int getHeaderCount() {
+        return headerCount;
+    }
+
+    private int findHeader(String name) {
+        for (int i = headerCount - 1; i >= 0; i--) {
+            int offset = i * HEADER_FIELDS;
+            int nameStart = headers[offset];
+            int length = headers[offset + 1] - nameStart;
+
+            if (length != name.length())
+                continue;
+
+            int j = 0;
+            while (j < length && asciiUpper(toChar(buffer.get(nameStart + j))) == asciiUpper(name.charAt(j)))
+                j++;
+
+            if (j == length)
+                return offset;
+        }
+
+        return -1;
+    }
+
+    private boolean regionEquals(int start, int end, String value) {
+        if (end - start != value.length())
+            return false;
+
+        for (int i = start; i < end; i++) {
+            if (toChar(buffer.get(i)) != value.charAt(i - start))
+                return false;
+        }
+
+        return true;
+    }
+
+    private int indexOfCRLF(int from, int to) {
+        for (int i = from; i < to - 1; i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n')
+                return i;
+        }
+
+        return -1;
+    }
+
+    private int indexOf(byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value)
+                return i;
+        }
+
+        return -1;
+    }
+
+    private int indexOf(String value, int from, int to) {
+        int last = to - value.length();
 
-            data.put(key, value);
+        for (int i = from; i <= last; i++) {
+            if (regionEquals(i, i + value.length(), value))
+                return i;
         }
+
+        return -1;
     }
 
-    // Fast toUpperCase for ASCII strings
-    private static String asciiUpper(String text) {
-        char [] chars = text.toCharArray();
+    private String decode(int start, int end, boolean upperCase) {
+        int length = end - start;
 
-        for (int i = 0; i < chars.length; i++) {
-            char c = chars[i];
-            chars[i] = (c >= 97 && c <= 122) ? (char) (c - 32) : c;
+        if (chars.length < length)
+            chars = new char[Math.max(length, chars.length * 2)];
+
+        for (int i = 0; i < length; i++) {
+            char c = toChar(buffer.get(start + i));
+            chars[i] = upperCase ? asciiUpper(c) : c;
         }
 
-        return new String(chars);
+        return new String(chars, 0, length);
+    }
+
+    // US-ASCII decoding, bytes out of range are replaced like String(byte[], Charset) does
+    private static char toChar(byte b) {
+        return b >= 0 ? (char) b : '\uFFFD';
+    }
+
+    // Same rule as String.trim()
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    // Fast toUpperCase for ASCII characters
+    private static char asciiUpper(int c) {
+        return (char) ((c >= 97 && c <= 122) ? (c - 32) : c);
     }
 
     public DatagramPacket getDatagramPacket() {
         return datagramPacket;
     }
 
+    /** Address of the device which has sent the packet */
+    public InetAddress getSourceAddress() {
+        return sender != null ? sender.getAddress() : datagramPacket.getAddress();
+    }
+
+    /**
+     * Returns all headers keyed by upper case name. The map is built on the first call, prefer
+     * {@link #getHeader(String)} for single lookups.
+     */
     public Map<String, String> getData() {
+        if (data == null) {
+            data = new HashMap<String, String>();
+
+            for (int i = 0; i < headerCount; i++) {
+                int offset = i * HEADER_FIELDS;
+
+                data.put(decode(headers[offset], headers[offset + 1], true),
+                        decode(headers[offset + 2], headers[offset + 3], false));
+            }
+        }
+
         return data;
     }
 
     public String getType() {
+        if (type == null && typeEnd != -1)
+            type = decode(typeStart, typeEnd, false);
+
         return type;
     }
 }
@@ -0,0 +1,93 @@
+/*
+ * SSDPScanPlanner
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.discovery.provider.ssdp;
+
+import java.util.Random;
+
+import com.connectsdk.discovery.DiscoveryProvider;
+
+/**
+ * Decides when the next M-SEARCH round is sent.
+ *
+ * After a reset (start or network change) a few rounds are sent in quick succession, so devices
+ * which missed the first packet are found quickly. Then the interval starts at the MX window and
+ * doubles every round in which the set of devices did not change, up to a third of the device
+ * timeout so that a live device always gets several chances to answer before it is dropped. Any
+ * change in the device set brings the interval back to the MX window.
+ */
+public class SSDPScanPlanner {
+    /* Interval and number of the rounds sent right after a reset */
+    public static final long STARTUP_INTERVAL = 1000;
+    public static final int STARTUP_ROUNDS = 3;
+
+    /* Devices answer within MX seconds, searching more often only produces duplicate responses */
+    public static final long MIN_INTERVAL = SSDPClient.MX * 1000;
+    public static final long MAX_INTERVAL = DiscoveryProvider.TIMEOUT / 3;
+
+    private final Random random;
+
+    private int round;
+    private long interval;
+
+    public SSDPScanPlanner() {
+        this(new Random());
+    }
+
+    public SSDPScanPlanner(Random random) {
+        this.random = random;
+
+        reset();
+    }
+
+    /** Starts over with the startup rounds */
+    public synchronized void reset() {
+        round = 0;
+        interval = MIN_INTERVAL;
+    }
+
+    /**
+     * Returns the delay in milliseconds until the next round, to be called after each round.
+     *
+     * @param deviceSetChanged whether a device has been found or lost since the previous round
+     */
+    public synchronized long nextDelay(boolean deviceSetChanged) {
+        round++;
+
+        if (round < STARTUP_ROUNDS)
+            return STARTUP_INTERVAL;
+
+        if (deviceSetChanged) {
+            interval = MIN_INTERVAL;
+        } else if (round > STARTUP_ROUNDS) {
+            interval = Math.min(interval * 2, MAX_INTERVAL);
+        }
+
+        // jitter keeps control points on the same network from searching in lockstep, it stays
+        // within the MX window so the interval never grows by more than one response period
+        long jitter = (long) (random.nextDouble() * Math.min(interval / 4, MIN_INTERVAL));
+
+        return interval + jitter;
+    }
+
+    /** Current interval without jitter */
+    public synchronized long getInterval() {
+        return round < STARTUP_ROUNDS ? STARTUP_INTERVAL : interval;
+    }
+}
@@ -22,6 +22,9 @@ package com.connectsdk.discovery.provider.ssdp;
 
 import java.util.List;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 //import com.connectsdk.core.upnp.parser.Parser;
 
 public class Service {
@@ -32,6 +35,8 @@ public class Service {
     public static final String TAG_CONTROL_URL = "controlURL";
     public static final String TAG_EVENTSUB_URL = "eventSubURL";
 
+    static final String KEY_BASE_URL = "baseURL";
+
     public String baseURL;
     /* Required. UPnP service type. */
     public String serviceType;
@@ -47,6 +52,34 @@ public class Service {
     public List<Action> actionList;
     public List<StateVariable> serviceStateTable;
 
+    public Service() { }
+
+    public Service(JSONObject json) {
+        baseURL = json.optString(KEY_BASE_URL, null);
+        serviceType = json.optString(TAG_SERVICE_TYPE, null);
+        serviceId = json.optString(TAG_SERVICE_ID, null);
+        SCPDURL = json.optString(TAG_SCPD_URL, null);
+        controlURL = json.optString(TAG_CONTROL_URL, null);
+        eventSubURL = json.optString(TAG_EVENTSUB_URL, null);
+    }
+
+    public JSONObject toJSONObject() {
+        JSONObject jsonObj = new JSONObject();
+
+        try {
+            jsonObj.putOpt(KEY_BASE_URL, baseURL);
+            jsonObj.putOpt(TAG_SERVICE_TYPE, serviceType);
+            jsonObj.putOpt(TAG_SERVICE_ID, serviceId);
+            jsonObj.putOpt(TAG_SCPD_URL, SCPDURL);
+            jsonObj.putOpt(TAG_CONTROL_URL, controlURL);
+            jsonObj.putOpt(TAG_EVENTSUB_URL, eventSubURL);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return jsonObj;
+    }
+
     /*
      * We don't get SCPD, control and eventSub descriptions at service creation.
      * So call this method first before you use the service.
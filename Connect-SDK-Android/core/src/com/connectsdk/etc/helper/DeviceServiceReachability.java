@@ -81,6 +81,8 @@ public class DeviceServiceReachability {
             return;
 
         testThread = new Thread(testReachability);
+        // probes are background work, the threads sending commands come first
+        testThread.setPriority(Thread.MIN_PRIORITY);
         testThread.start();
     }
 
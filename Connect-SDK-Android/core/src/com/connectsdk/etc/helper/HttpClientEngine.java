@@ -0,0 +1,589 @@
+/*
+ * HttpClientEngine
+ * Connect SDK
+ *
+ * Copyright (c) 2015 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.connectsdk.etc.helper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Sends HTTP/1.1 requests without blocking a thread per request. All connections are handled by
+ * one I/O thread with a Selector, which is started with the first request and stops once there
+ * are no more connections.
+ *
+ * Connections are kept open after a response, so that the next request to the same host reuses
+ * them. At most MAX_IDLE_PER_HOST idle connections are kept for each host and port, for no longer
+ * than KEEP_ALIVE_TIME or the Keep-Alive timeout of the device. An idle connection which becomes
+ * readable has been closed by the device and is dropped.
+ *
+ * A request with a timeout fails with a SocketTimeoutException if it has not been answered in
+ * time, and a cancelled request fails with an InterruptedIOException. In both cases its
+ * connection is closed, since the response may still arrive on it.
+ */
+final class HttpClientEngine implements Runnable {
+
+    /* max number of idle connections kept for each host and port */
+    static final int MAX_IDLE_PER_HOST = 4;
+    /* time (in milliseconds) an idle connection is kept, unless the device asks for less */
+    static final long KEEP_ALIVE_TIME = 30 * 1000;
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private static final HttpClientEngine instance = new HttpClientEngine();
+
+    interface Callback {
+
+        /**
+         * Called on the I/O thread with the complete response. The body is in pooled segments,
+         * which the callback has to release once it does not need them anymore.
+         */
+        void onResponse(HttpResponseParser response);
+
+        /** Called on the I/O thread if the request has failed */
+        void onFailure(IOException e);
+    }
+
+    /**
+     * A request which has been written to bytes, ready to be sent.
+     */
+    static class Request {
+        final InetSocketAddress address;
+        final String key;
+        final byte[] data;
+        final boolean closeRequested;
+        /* whether a response without Content-Length or chunked encoding has no body, like GENA responses */
+        final boolean unframedBodyEmpty;
+        final Callback callback;
+
+        /* time (in milliseconds since the epoch) by which the response is complete, 0 for none */
+        long deadline;
+        volatile boolean cancelled;
+
+        Request(InetSocketAddress address, byte[] data, boolean closeRequested, boolean unframedBodyEmpty, Callback callback) {
+            this.address = address;
+            this.key = address.getHostString() + ":" + address.getPort();
+            this.data = data;
+            this.closeRequested = closeRequested;
+            this.unframedBodyEmpty = unframedBodyEmpty;
+            this.callback = callback;
+        }
+
+        /**
+         * @param timeout Time (in milliseconds) from now until the response has to be complete,
+         * 0 for none
+         */
+        void setTimeout(long timeout) {
+            deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+        }
+    }
+
+    /* tasks for the I/O thread */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    /* guards starting and stopping the I/O thread */
+    private final Object lock = new Object();
+    private Selector selector;
+    private volatile Thread thread;
+
+    /* used on the I/O thread only */
+    private final Map<String, Deque<Connection>> idleConnections = new HashMap<String, Deque<Connection>>();
+    private final Set<Connection> activeConnections = new HashSet<Connection>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private int openConnections;
+
+    private volatile int idleConnectionCount;
+
+    static HttpClientEngine getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sends the request, its callback is called on the I/O thread.
+     */
+    void execute(final Request request) throws IOException {
+        post(new Runnable() {
+
+            @Override
+            public void run() {
+                start(request, false);
+            }
+        });
+    }
+
+    /**
+     * Aborts the request if it has not been completed yet, its callback gets an
+     * InterruptedIOException.
+     */
+    void cancel(final Request request) throws IOException {
+        request.cancelled = true;
+
+        post(new Runnable() {
+
+            @Override
+            public void run() {
+                for (Connection connection : activeConnections) {
+                    if (connection.request == request) {
+                        abort(connection, new InterruptedIOException("Request cancelled"));
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    /** Whether the current thread is the I/O thread, which must not wait for a response */
+    boolean isIoThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Closes all idle connections and waits until they are closed.
+     */
+    void evictAll() throws IOException {
+        final CountDownLatch done = new CountDownLatch(1);
+
+        post(new Runnable() {
+
+            @Override
+            public void run() {
+                for (Deque<Connection> connections : idleConnections.values()) {
+                    for (Connection connection : connections) {
+                        close(connection);
+                    }
+                }
+                idleConnections.clear();
+                idleConnectionCount = 0;
+
+                done.countDown();
+            }
+        });
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    int getIdleConnectionCount() {
+        return idleConnectionCount;
+    }
+
+    private void post(Runnable task) throws IOException {
+        synchronized (lock) {
+            if (thread == null) {
+                selector = Selector.open();
+
+                tasks.add(task);
+
+                thread = new Thread(this, "HTTP I/O");
+                thread.setDaemon(true);
+                thread.start();
+            } else {
+                tasks.add(task);
+                selector.wakeup();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+
+            long now = System.currentTimeMillis();
+            long timeout = nextTimeout(evictExpired(now), expireRequests(now));
+
+            if (openConnections == 0) {
+                synchronized (lock) {
+                    if (tasks.isEmpty()) {
+                        try {
+                            selector.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+
+                        selector = null;
+                        thread = null;
+                        return;
+                    }
+                }
+                continue;
+            }
+
+            try {
+                selector.select(timeout);
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+
+                handle(key);
+            }
+        }
+    }
+
+    private void start(Request request, boolean newConnection) {
+        if (request.cancelled) {
+            fail(request, new InterruptedIOException("Request cancelled"));
+            return;
+        }
+
+        Connection connection = newConnection ? null : takeIdle(request.key);
+
+        try {
+            if (connection == null) {
+                connection = connect(request);
+            } else {
+                connection.reused = true;
+                connection.selectionKey.interestOps(SelectionKey.OP_WRITE);
+            }
+
+            connection.request = request;
+            connection.out = ByteBuffer.wrap(request.data);
+            connection.parser = new HttpResponseParser(request.closeRequested, request.unframedBodyEmpty);
+            activeConnections.add(connection);
+        } catch (IOException e) {
+            if (connection != null)
+                close(connection);
+
+            fail(request, e);
+        }
+    }
+
+    private Connection connect(Request request) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            boolean connected = channel.connect(request.address);
+
+            Connection connection = new Connection(request.key, channel);
+            connection.selectionKey = channel.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, connection);
+            openConnections++;
+
+            return connection;
+        } catch (UnresolvedAddressException e) {
+            channel.close();
+            throw new UnknownHostException(request.address.getHostString());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+
+        try {
+            if (!key.isValid())
+                return;
+
+            if (key.isConnectable()) {
+                connection.channel.finishConnect();
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (key.isWritable()) {
+                connection.channel.write(connection.out);
+
+                if (!connection.out.hasRemaining())
+                    key.interestOps(SelectionKey.OP_READ);
+            } else if (key.isReadable()) {
+                read(connection);
+            }
+        } catch (IOException e) {
+            failed(connection, e);
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        readBuffer.clear();
+        int count = connection.channel.read(readBuffer);
+
+        if (connection.request == null) {
+            // nothing is expected on an idle connection, it has been closed by the device
+            removeIdle(connection);
+            close(connection);
+            return;
+        }
+
+        boolean complete;
+
+        if (count == -1) {
+            complete = connection.parser.parseEnd();
+        } else {
+            readBuffer.flip();
+            complete = connection.parser.parse(readBuffer);
+        }
+
+        if (complete)
+            complete(connection, !readBuffer.hasRemaining() || count == -1);
+    }
+
+    private void complete(Connection connection, boolean reusable) {
+        Request request = connection.request;
+        HttpResponseParser response = connection.parser;
+
+        connection.request = null;
+        connection.parser = null;
+        connection.out = null;
+        activeConnections.remove(connection);
+
+        long keepAlive = response.getKeepAlive(KEEP_ALIVE_TIME);
+
+        if (reusable && keepAlive > 0)
+            release(connection, keepAlive);
+        else
+            close(connection);
+
+        try {
+            request.callback.onResponse(response);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void failed(Connection connection, IOException e) {
+        Request request = connection.request;
+
+        if (request == null) {
+            removeIdle(connection);
+            close(connection);
+            return;
+        }
+
+        // the device may have closed a reused connection just before the request was sent
+        boolean retry = connection.reused && !connection.parser.isStarted();
+
+        connection.parser.getBody().release();
+        connection.request = null;
+        connection.parser = null;
+        activeConnections.remove(connection);
+        close(connection);
+
+        if (retry)
+            start(request, true);
+        else
+            fail(request, e);
+    }
+
+    /**
+     * Fails the request of a connection without retrying it, and closes the connection.
+     */
+    private void abort(Connection connection, IOException e) {
+        Request request = connection.request;
+
+        connection.parser.getBody().release();
+        connection.request = null;
+        connection.parser = null;
+        activeConnections.remove(connection);
+        close(connection);
+
+        fail(request, e);
+    }
+
+    /**
+     * Fails the requests which have not been answered by their deadline.
+     *
+     * @return Time (in milliseconds) until the next deadline, or 0 if there is none
+     */
+    private long expireRequests(long now) {
+        long next = 0;
+        List<Connection> expired = new ArrayList<Connection>();
+
+        for (Connection connection : activeConnections) {
+            long deadline = connection.request.deadline;
+
+            if (deadline == 0)
+                continue;
+
+            if (deadline <= now)
+                expired.add(connection);
+            else if (next == 0 || deadline - now < next)
+                next = deadline - now;
+        }
+
+        for (Connection connection : expired) {
+            abort(connection, new SocketTimeoutException("No response from " + connection.key));
+        }
+
+        return next;
+    }
+
+    private static long nextTimeout(long first, long second) {
+        if (first == 0)
+            return second;
+        if (second == 0)
+            return first;
+        return Math.min(first, second);
+    }
+
+    private void fail(Request request, IOException e) {
+        try {
+            request.callback.onFailure(e);
+        } catch (RuntimeException re) {
+            re.printStackTrace();
+        }
+    }
+
+    private void release(Connection connection, long keepAlive) {
+        connection.expiresAt = System.currentTimeMillis() + keepAlive;
+        connection.reused = false;
+
+        Deque<Connection> connections = idleConnections.get(connection.key);
+        if (connections == null) {
+            connections = new ArrayDeque<Connection>();
+            idleConnections.put(connection.key, connections);
+        }
+
+        connections.addLast(connection);
+        idleConnectionCount++;
+
+        if (connections.size() > MAX_IDLE_PER_HOST) {
+            close(connections.pollFirst());
+            idleConnectionCount--;
+        }
+    }
+
+    private Connection takeIdle(String key) {
+        Deque<Connection> connections = idleConnections.get(key);
+        long now = System.currentTimeMillis();
+
+        while (connections != null && !connections.isEmpty()) {
+            Connection connection = connections.pollLast();
+            idleConnectionCount--;
+
+            if (connections.isEmpty())
+                idleConnections.remove(key);
+
+            if (connection.expiresAt > now && connection.channel.isOpen())
+                return connection;
+
+            close(connection);
+        }
+
+        return null;
+    }
+
+    private void removeIdle(Connection connection) {
+        Deque<Connection> connections = idleConnections.get(connection.key);
+
+        if (connections != null && connections.remove(connection)) {
+            idleConnectionCount--;
+
+            if (connections.isEmpty())
+                idleConnections.remove(connection.key);
+        }
+    }
+
+    /**
+     * Closes the idle connections which have expired.
+     *
+     * @return Time (in milliseconds) until the next idle connection expires, or 0 if there is none
+     */
+    private long evictExpired(long now) {
+        long next = 0;
+        List<Connection> expired = new ArrayList<Connection>();
+
+        for (Deque<Connection> connections : idleConnections.values()) {
+            for (Connection connection : connections) {
+                if (connection.expiresAt <= now)
+                    expired.add(connection);
+                else if (next == 0 || connection.expiresAt - now < next)
+                    next = connection.expiresAt - now;
+            }
+        }
+
+        for (Connection connection : expired) {
+            removeIdle(connection);
+            close(connection);
+        }
+
+        return next;
+    }
+
+    private void close(Connection connection) {
+        if (connection.closed)
+            return;
+
+        connection.closed = true;
+        openConnections--;
+
+        if (connection.selectionKey != null)
+            connection.selectionKey.cancel();
+
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // the connection is not used anymore
+        }
+    }
+
+    /**
+     * A connection to a host, used by one request at a time.
+     */
+    private static class Connection {
+        final String key;
+        final SocketChannel channel;
+        SelectionKey selectionKey;
+
+        /* whether the connection has been used for an earlier request */
+        boolean reused;
+        boolean closed;
+        long expiresAt;
+
+        Request request;
+        ByteBuffer out;
+        HttpResponseParser parser;
+
+        Connection(String key, SocketChannel channel) {
+            this.key = key;
+            this.channel = channel;
+        }
+    }
+}
@@ -19,33 +19,57 @@
  */
 package com.connectsdk.etc.helper;
 
+import com.connectsdk.core.Util;
+
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.ProtocolException;
-import java.net.Socket;
 import java.net.URI;
+import java.net.UnknownHostException;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * HTTP connection implementation based on this article
  * http://android-developers.blogspot.com/2011/09/androids-http-clients.html
  * Also DefaultHttpClient has been deprecated since Android 5.1
+ *
+ * Plain HTTP requests are sent by HttpClientEngine, which handles all connections on one I/O
+ * thread and keeps them open for the next request to the same device. Use executeAsync() to
+ * send a request without blocking the calling thread. Response bodies are read into pooled
+ * buffers, use getResponseBytes() or getResponseStream() to parse them without decoding them to a
+ * string first.
  */
 public abstract class HttpConnection {
 
+    /* max number of redirects followed for one plain HTTP request */
+    static final int MAX_REDIRECTS = 5;
+
     public static HttpConnection newInstance(URI uri) throws IOException {
+        if ("http".equalsIgnoreCase(uri.getScheme()))
+            return new AsyncConnectionClient(uri);
+
         return new HttpURLConnectionClient(uri);
     }
 
+    /**
+     * Returns a connection for GENA SUBSCRIBE and UNSUBSCRIBE requests, which are sent like other
+     * plain HTTP requests on pooled connections. Their responses have no body unless it is framed
+     * by a Content-Length or chunked encoding.
+     */
     public static HttpConnection newSubscriptionInstance(URI uri) throws IOException {
-        return new CustomConnectionClient(uri);
+        AsyncConnectionClient connection = new AsyncConnectionClient(uri);
+        connection.unframedBodyEmpty = true;
+        return connection;
     }
 
     public abstract void setMethod(Method method) throws ProtocolException;
@@ -54,6 +78,24 @@ public abstract class HttpConnection {
 
     public abstract String getResponseString() throws IOException;
 
+    /**
+     * Returns the response body without decoding it, or null if there is none. Like
+     * getResponseString(), there is no body for errors.
+     */
+    public byte[] getResponseBytes() throws IOException {
+        String response = getResponseString();
+        return response != null ? response.getBytes(HttpResponseParser.DEFAULT_CHARSET) : null;
+    }
+
+    /**
+     * Returns a stream of the response body, or null if there is none. Within
+     * ResponseCallback.onComplete() the stream reads the pooled buffers of the body directly.
+     */
+    public InputStream getResponseStream() throws IOException {
+        byte[] bytes = getResponseBytes();
+        return bytes != null ? new ByteArrayInputStream(bytes) : null;
+    }
+
     public abstract void execute() throws IOException;
 
     public abstract void setPayload(String payload);
@@ -64,6 +106,54 @@ public abstract class HttpConnection {
 
     public abstract String getResponseHeader(String name);
 
+    /**
+     * Sets how long (in milliseconds) to wait for the response, 0 to wait as long as the
+     * connection is open. A request which is not answered in time fails with a
+     * SocketTimeoutException.
+     */
+    public void setTimeout(long timeout) {
+    }
+
+    /**
+     * Aborts the request, execute() and executeAsync() fail with an InterruptedIOException if the
+     * response has not been read yet.
+     */
+    public void cancel() {
+    }
+
+    /**
+     * Executes the request without waiting for the response. The callback is called once the
+     * response has been read, possibly on a thread which is shared with other requests, so it
+     * should not block.
+     */
+    public void executeAsync(final ResponseCallback callback) {
+        Util.runInBackground(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    execute();
+                } catch (IOException e) {
+                    callback.onError(e);
+                    return;
+                }
+                callback.onComplete(HttpConnection.this);
+            }
+        });
+    }
+
+    /**
+     * Callback for executeAsync()
+     */
+    public interface ResponseCallback {
+
+        /** Called with the connection once the response code, headers and body are available */
+        void onComplete(HttpConnection connection);
+
+        /** Called if the request could not be sent or the response could not be read */
+        void onError(IOException e);
+    }
+
     public enum Method {
         GET,
         POST,
@@ -77,6 +167,7 @@ public abstract class HttpConnection {
 
         private final HttpURLConnection connection;
         private byte[] payload;
+        private byte[] responseBytes;
         private String response;
         private int responseCode;
 
@@ -96,9 +187,16 @@ public abstract class HttpConnection {
 
         @Override
         public String getResponseString() throws IOException {
+            if (response == null && responseBytes != null)
+                response = HttpResponseParser.decode(responseBytes, HttpResponseParser.getCharset(connection.getContentType()));
             return response;
         }
 
+        @Override
+        public byte[] getResponseBytes() throws IOException {
+            return responseBytes;
+        }
+
         @Override
         public void execute() throws IOException {
             try {
@@ -109,19 +207,16 @@ public abstract class HttpConnection {
                     writer.flush();
                     writer.close();
                 }
+                HttpResponseBody body = new HttpResponseBody();
                 try {
-                    BufferedReader reader =
-                            new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                    String line;
-                    StringBuilder sb = new StringBuilder();
-                    while (null != (line = reader.readLine())) {
-                        sb.append(line);
-                        sb.append("\r\n");
-                    }
-                    reader.close();
-                    this.response = sb.toString();
+                    InputStream in = connection.getInputStream();
+                    body.write(in);
+                    in.close();
+                    this.responseBytes = body.toByteArray();
                 } catch (Exception e) {
                     // it's OK, we have a response code
+                } finally {
+                    body.release();
                 }
                 responseCode = connection.getResponseCode();
             } finally {
@@ -146,24 +241,60 @@ public abstract class HttpConnection {
             connection.setRequestProperty(name, value);
         }
 
+        @Override
+        public void setTimeout(long timeout) {
+            int millis = (int) Math.max(0, Math.min(timeout, Integer.MAX_VALUE));
+            connection.setConnectTimeout(millis);
+            connection.setReadTimeout(millis);
+        }
+
+        @Override
+        public void cancel() {
+            connection.disconnect();
+        }
+
         @Override
         public String getResponseHeader(String name) {
             return connection.getHeaderField(name);
         }
     }
 
-    private static class CustomConnectionClient extends HttpConnection {
-
-        private final URI uri;
-        private Method method;
-        private String payload;
+    /**
+     * HTTP/1.1 client which sends its request with HttpClientEngine, so that waiting for the
+     * response does not block a thread unless execute() is used.
+     *
+     * Like HttpURLConnection, redirects are followed, but only to the same host. A 303, or a 301
+     * or 302 answering another method than GET, is followed with a GET without payload.
+     */
+    private static class AsyncConnectionClient extends HttpConnection {
+
+        private URI uri;
+        private final String host;
+        private int port;
+        private int redirects;
+        private Method method = Method.GET;
+        private byte[] payload;
         private Map<String, String> headers = new LinkedHashMap<String, String>();
-        private int code;
-        private String response;
+        private boolean unframedBodyEmpty;
+        private long timeout;
+        private volatile HttpClientEngine.Request request;
+        private volatile boolean cancelled;
+        private int responseCode;
         private Map<String, String> responseHeaders = new HashMap<String, String>();
+        private String charset = HttpResponseParser.DEFAULT_CHARSET;
+
+        /* the pooled body while the callback runs, then the bytes or string which have been read */
+        private HttpResponseBody body;
+        private byte[] responseBytes;
+        private String response;
+
+        private AsyncConnectionClient(URI uri) throws IOException {
+            if (uri.getHost() == null)
+                throw new IOException("Missing host in " + uri);
 
-        private CustomConnectionClient(URI uri) {
             this.uri = uri;
+            this.host = uri.getHost();
+            this.port = uri.getPort() > 0 ? uri.getPort() : 80;
         }
 
         @Override
@@ -173,86 +304,283 @@ public abstract class HttpConnection {
 
         @Override
         public int getResponseCode() throws IOException {
-            return code;
+            return responseCode;
         }
 
         @Override
-        public String getResponseString() throws IOException {
+        public synchronized String getResponseString() throws IOException {
+            if (response == null) {
+                if (body != null)
+                    response = body.toString(charset);
+                else if (responseBytes != null)
+                    response = HttpResponseParser.decode(responseBytes, charset);
+            }
             return response;
         }
 
         @Override
-        public void execute() throws IOException {
-            int port = uri.getPort() > 0 ? uri.getPort() : 80;
-            Socket socket = new Socket(uri.getHost(), port);
-            PrintWriter writer =
-                    new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
-            BufferedReader reader =
-                    new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-            // send request
-            writer.print(method.name());
-            writer.print(" ");
-            writer.print(uri.getPath());
-            writer.print(uri.getQuery().isEmpty() ? "" : "?" + uri.getQuery());
-            writer.print(" HTTP/1.1\r\n");
-
-            writer.print("Host:");
-            writer.print(uri.getHost());
-            writer.print(":");
-            writer.print(port);
-            writer.print("\r\n");
-
-            for (Map.Entry<String, String> pair : headers.entrySet()) {
-                writer.print(pair.getKey());
-                writer.print(":");
-                writer.print(pair.getValue());
-                writer.print("\r\n");
+        public synchronized byte[] getResponseBytes() throws IOException {
+            if (responseBytes == null) {
+                if (body != null)
+                    responseBytes = body.toByteArray();
+                else if (response != null)
+                    responseBytes = encode(response, charset);
             }
-            writer.print("\r\n");
+            return responseBytes;
+        }
+
+        @Override
+        public synchronized InputStream getResponseStream() throws IOException {
+            if (body != null)
+                return body.newInputStream();
 
-            if (payload != null) {
-                writer.print(payload);
+            byte[] bytes = getResponseBytes();
+            return bytes != null ? new ByteArrayInputStream(bytes) : null;
+        }
+
+        private static byte[] encode(String response, String charset) {
+            try {
+                return response.getBytes(charset);
+            } catch (UnsupportedEncodingException e) {
+                return response.getBytes();
+            } catch (IllegalArgumentException e) {
+                // illegal charset name
+                return response.getBytes();
             }
-            writer.flush();
+        }
 
-            // receive response
-            StringBuilder sb = new StringBuilder();
-            String line;
-            line = reader.readLine();
-            if (line != null) {
-                String[] tokens = line.split(" ");
-                if (tokens.length > 2) {
-                    code = Integer.parseInt(tokens[1]);
+        /**
+         * Returns the pooled segments of the body once the callback has returned, keeping what it
+         * has read. If it has read nothing, the body is kept as bytes.
+         */
+        private synchronized void releaseBody() {
+            if (body == null)
+                return;
+
+            if (response == null && responseBytes == null)
+                responseBytes = body.toByteArray();
+
+            body.release();
+            body = null;
+        }
+
+        @Override
+        public void execute() throws IOException {
+            if (HttpClientEngine.getInstance().isIoThread())
+                throw new IOException("Cannot wait for a response on the HTTP I/O thread, use executeAsync()");
+
+            final CountDownLatch done = new CountDownLatch(1);
+            final IOException[] error = new IOException[1];
+
+            executeAsync(new ResponseCallback() {
+
+                @Override
+                public void onComplete(HttpConnection connection) {
+                    // the response is read on the calling thread, after the pooled body is released
+                    releaseBody();
+                    done.countDown();
                 }
-            }
 
-            while (null != (line = reader.readLine())) {
-                if (line.isEmpty()) {
-                    break;
+                @Override
+                public void onError(IOException e) {
+                    error[0] = e;
+                    done.countDown();
                 }
-                String[] pair = line.split(":", 2);
-                if (pair != null && pair.length == 2) {
-                    responseHeaders.put(pair[0].trim(), pair[1].trim());
+            });
+
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+
+            if (error[0] != null)
+                throw error[0];
+        }
+
+        @Override
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+
+            HttpClientEngine.Request request = this.request;
+            if (request != null) {
+                try {
+                    HttpClientEngine.getInstance().cancel(request);
+                } catch (IOException e) {
+                    e.printStackTrace();
                 }
             }
+        }
+
+        @Override
+        public void executeAsync(final ResponseCallback callback) {
+            if (cancelled) {
+                callback.onError(new InterruptedIOException("Request cancelled"));
+                return;
+            }
+
+            InetSocketAddress address = new InetSocketAddress(host, port);
+
+            if (address.isUnresolved()) {
+                callback.onError(new UnknownHostException(host));
+                return;
+            }
+
+            String connection = getHeader("Connection");
+            boolean closeRequested = connection != null && connection.equalsIgnoreCase("close");
+
+            try {
+                HttpClientEngine.Request request = new HttpClientEngine.Request(address, writeRequest(), closeRequested, unframedBodyEmpty,
+                        new HttpClientEngine.Callback() {
+
+                            @Override
+                            public void onResponse(HttpResponseParser parser) {
+                                if (followRedirect(parser)) {
+                                    parser.getBody().release();
+                                    executeAsync(callback);
+                                    return;
+                                }
+
+                                responseCode = parser.getCode();
+                                responseHeaders = parser.getHeaders();
+                                charset = parser.getCharset();
+
+                                // like HttpURLConnection, there is no response body for errors
+                                if (responseCode < 400) {
+                                    synchronized (AsyncConnectionClient.this) {
+                                        body = parser.getBody();
+                                    }
+                                } else {
+                                    parser.getBody().release();
+                                }
+
+                                try {
+                                    callback.onComplete(AsyncConnectionClient.this);
+                                } finally {
+                                    releaseBody();
+                                }
+                            }
+
+                            @Override
+                            public void onFailure(IOException e) {
+                                callback.onError(e);
+                            }
+                        });
+                request.setTimeout(timeout);
+                this.request = request;
+
+                HttpClientEngine.getInstance().execute(request);
+
+                // cancelled while the request was being written
+                if (cancelled)
+                    HttpClientEngine.getInstance().cancel(request);
+            } catch (IOException e) {
+                callback.onError(e);
+            }
+        }
+
+        /**
+         * Prepares the request for the location of a redirect response, if it is followed.
+         */
+        private boolean followRedirect(HttpResponseParser parser) {
+            int code = parser.getCode();
 
-            while (null != (line = reader.readLine())) {
-                sb.append(line);
+            if (code != 301 && code != 302 && code != 303 && code != 307 && code != 308)
+                return false;
+
+            String location = parser.getHeaders().get("Location");
+            if (location == null || redirects >= MAX_REDIRECTS || cancelled)
+                return false;
+
+            URI target;
+            try {
+                target = uri.resolve(location);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+
+            if (!"http".equalsIgnoreCase(target.getScheme()) || !host.equalsIgnoreCase(target.getHost()))
+                return false;
+
+            if (code == 303 || (code != 307 && code != 308 && method != Method.GET)) {
+                method = Method.GET;
+                payload = null;
+                removeHeader("Content-Length");
+                removeHeader("Content-Type");
+            }
+
+            uri = target;
+            port = target.getPort() > 0 ? target.getPort() : 80;
+            redirects++;
+            return true;
+        }
+
+        private byte[] writeRequest() throws IOException {
+            StringBuilder sb = new StringBuilder();
+
+            String path = uri.getRawPath();
+            sb.append(method.name()).append(' ');
+            sb.append(path == null || path.isEmpty() ? "/" : path);
+            if (uri.getRawQuery() != null && !uri.getRawQuery().isEmpty())
+                sb.append('?').append(uri.getRawQuery());
+            sb.append(" HTTP/1.1\r\n");
+
+            if (getHeader("Host") == null) {
+                sb.append("Host: ").append(host);
+                if (port != 80)
+                    sb.append(':').append(port);
                 sb.append("\r\n");
             }
-            response = sb.toString();
-            socket.close();
+
+            for (Map.Entry<String, String> pair : headers.entrySet()) {
+                sb.append(pair.getKey()).append(": ").append(pair.getValue()).append("\r\n");
+            }
+
+            if (getHeader("Content-Length") == null && (payload != null || method == Method.POST || method == Method.PUT))
+                sb.append("Content-Length: ").append(payload != null ? payload.length : 0).append("\r\n");
+
+            sb.append("\r\n");
+
+            byte[] head = sb.toString().getBytes(HttpResponseParser.ISO_8859_1);
+            if (payload == null)
+                return head;
+
+            byte[] data = new byte[head.length + payload.length];
+            System.arraycopy(head, 0, data, 0, head.length);
+            System.arraycopy(payload, 0, data, head.length, payload.length);
+            return data;
+        }
+
+        private void removeHeader(String name) {
+            Iterator<Map.Entry<String, String>> iterator = headers.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getKey().equalsIgnoreCase(name))
+                    iterator.remove();
+            }
+        }
+
+        private String getHeader(String name) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (header.getKey().equalsIgnoreCase(name))
+                    return header.getValue();
+            }
+            return null;
         }
 
         @Override
         public void setPayload(String payload) {
-            this.payload = payload;
+            this.payload = payload.getBytes();
         }
 
         @Override
         public void setPayload(byte[] payload) {
-            throw new UnsupportedOperationException();
+            this.payload = payload;
         }
 
         @Override
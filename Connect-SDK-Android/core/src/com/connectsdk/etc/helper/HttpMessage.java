@@ -20,6 +20,8 @@
 
 package com.connectsdk.etc.helper;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
@@ -108,4 +110,15 @@ public class HttpMessage {
         }
         return null;
     }
+
+    /**
+     * Returns a stream of a command response, which is a byte[] for commands with a raw response
+     * and a String otherwise.
+     */
+    public static InputStream getResponseStream(Object response) throws UnsupportedEncodingException {
+        if (response instanceof byte[])
+            return new ByteArrayInputStream((byte[]) response);
+
+        return new ByteArrayInputStream(String.valueOf(response).getBytes("UTF-8"));
+    }
 }
@@ -0,0 +1,213 @@
+/*
+ * HttpResponseBody
+ * Connect SDK
+ *
+ * Copyright (c) 2015 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.connectsdk.etc.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The body of an HTTP response, stored in segments from a shared pool instead of a growing array,
+ * so that it is copied once when received and at most once more when it is read.
+ *
+ * Segments are returned to the pool with release(), after which the body cannot be read anymore.
+ * A body which is not released is simply garbage collected.
+ */
+final class HttpResponseBody {
+
+    static final int SEGMENT_SIZE = 8 * 1024;
+    /* max number of idle segments kept in the pool */
+    static final int MAX_POOLED_SEGMENTS = 32;
+
+    private static final ConcurrentLinkedQueue<byte[]> pool = new ConcurrentLinkedQueue<byte[]>();
+    private static final AtomicInteger pooledSegments = new AtomicInteger();
+
+    private final List<byte[]> segments = new ArrayList<byte[]>();
+    private int length;
+    private boolean released;
+
+    int length() {
+        return length;
+    }
+
+    void write(ByteBuffer data, int count) {
+        while (count > 0) {
+            int offset = length % SEGMENT_SIZE;
+
+            if (offset == 0 && segments.size() * SEGMENT_SIZE == length)
+                segments.add(obtainSegment());
+
+            byte[] segment = segments.get(segments.size() - 1);
+            int chunk = Math.min(count, SEGMENT_SIZE - offset);
+
+            data.get(segment, offset, chunk);
+            length += chunk;
+            count -= chunk;
+        }
+    }
+
+    void write(InputStream in) throws IOException {
+        while (true) {
+            int offset = length % SEGMENT_SIZE;
+
+            if (offset == 0 && segments.size() * SEGMENT_SIZE == length)
+                segments.add(obtainSegment());
+
+            byte[] segment = segments.get(segments.size() - 1);
+            int count = in.read(segment, offset, SEGMENT_SIZE - offset);
+
+            if (count == -1)
+                return;
+
+            length += count;
+        }
+    }
+
+    byte[] toByteArray() {
+        checkNotReleased();
+
+        byte[] bytes = new byte[length];
+        int offset = 0;
+
+        for (byte[] segment : segments) {
+            int count = Math.min(SEGMENT_SIZE, length - offset);
+            System.arraycopy(segment, 0, bytes, offset, count);
+            offset += count;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Decodes the body, with the platform charset if the charset is not supported.
+     */
+    String toString(String charset) {
+        checkNotReleased();
+
+        // a small body is decoded from its segment directly
+        if (segments.size() == 1) {
+            try {
+                return new String(segments.get(0), 0, length, charset);
+            } catch (UnsupportedEncodingException e) {
+                return new String(segments.get(0), 0, length);
+            } catch (IllegalArgumentException e) {
+                // illegal charset name
+                return new String(segments.get(0), 0, length);
+            }
+        }
+
+        return HttpResponseParser.decode(toByteArray(), charset);
+    }
+
+    /**
+     * Returns a stream which reads the segments without copying them first. It must not be used
+     * after the body has been released.
+     */
+    InputStream newInputStream() {
+        checkNotReleased();
+
+        return new InputStream() {
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                if (position >= length)
+                    return -1;
+
+                checkStreamNotReleased();
+
+                int b = segments.get(position / SEGMENT_SIZE)[position % SEGMENT_SIZE] & 0xff;
+                position++;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count) throws IOException {
+                if (count == 0)
+                    return 0;
+
+                if (position >= length)
+                    return -1;
+
+                checkStreamNotReleased();
+
+                int segmentOffset = position % SEGMENT_SIZE;
+                int chunk = Math.min(count, Math.min(SEGMENT_SIZE - segmentOffset, length - position));
+
+                System.arraycopy(segments.get(position / SEGMENT_SIZE), segmentOffset, buffer, offset, chunk);
+                position += chunk;
+                return chunk;
+            }
+
+            @Override
+            public int available() {
+                return length - position;
+            }
+
+            private void checkStreamNotReleased() throws IOException {
+                if (released)
+                    throw new IOException("The response body has been released");
+            }
+        };
+    }
+
+    /**
+     * Returns the segments to the pool.
+     */
+    void release() {
+        if (released)
+            return;
+
+        released = true;
+
+        for (byte[] segment : segments) {
+            if (pooledSegments.incrementAndGet() <= MAX_POOLED_SEGMENTS) {
+                pool.offer(segment);
+            } else {
+                pooledSegments.decrementAndGet();
+            }
+        }
+        segments.clear();
+    }
+
+    private void checkNotReleased() {
+        if (released)
+            throw new IllegalStateException("The response body has been released");
+    }
+
+    private static byte[] obtainSegment() {
+        byte[] segment = pool.poll();
+
+        if (segment != null) {
+            pooledSegments.decrementAndGet();
+            return segment;
+        }
+
+        return new byte[SEGMENT_SIZE];
+    }
+
+    static int getPooledSegmentCount() {
+        return pooledSegments.get();
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * HttpResponseParser
+ * Connect SDK
+ *
+ * Copyright (c) 2015 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.connectsdk.etc.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Parses an HTTP/1.1 response from the bytes received so far. The end of the body is found by its
+ * Content-Length, its chunked encoding, or the end of the connection.
+ */
+final class HttpResponseParser {
+
+    static final String ISO_8859_1 = "ISO-8859-1";
+    static final String DEFAULT_CHARSET = "UTF-8";
+
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+    private enum State {
+        STATUS_LINE,
+        HEADERS,
+        BODY,
+        BODY_TO_END,
+        CHUNK_SIZE,
+        CHUNK_DATA,
+        CHUNK_END,
+        TRAILERS,
+        DONE
+    }
+
+    private final boolean closeRequested;
+    private final boolean unframedBodyEmpty;
+
+    private State state = State.STATUS_LINE;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+    private final HttpResponseBody body = new HttpResponseBody();
+    private long remaining;
+    private boolean bodyToEnd;
+    private boolean started;
+
+    private String statusLine;
+    private int code;
+    private final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * @param closeRequested Whether the request asked the device to close the connection
+     * @param unframedBodyEmpty Whether a response without Content-Length or chunked encoding has
+     * no body, instead of a body up to the end of the connection
+     */
+    HttpResponseParser(boolean closeRequested, boolean unframedBodyEmpty) {
+        this.closeRequested = closeRequested;
+        this.unframedBodyEmpty = unframedBodyEmpty;
+    }
+
+    /**
+     * Consumes the received bytes.
+     *
+     * @return Whether the response is complete, bytes after its end are left in the buffer
+     */
+    boolean parse(ByteBuffer data) throws IOException {
+        if (data.hasRemaining())
+            started = true;
+
+        while (data.hasRemaining() && state != State.DONE) {
+            switch (state) {
+                case STATUS_LINE:
+                    if (readLine(data))
+                        parseStatusLine(takeLine());
+                    break;
+
+                case HEADERS:
+                    if (readLine(data))
+                        parseHeader(takeLine());
+                    break;
+
+                case BODY:
+                case CHUNK_DATA:
+                    int count = (int) Math.min(remaining, data.remaining());
+                    writeBody(data, count);
+                    remaining -= count;
+
+                    if (remaining == 0)
+                        state = state == State.BODY ? State.DONE : State.CHUNK_END;
+                    break;
+
+                case BODY_TO_END:
+                    writeBody(data, data.remaining());
+                    break;
+
+                case CHUNK_SIZE:
+                    if (readLine(data))
+                        parseChunkSize(takeLine());
+                    break;
+
+                case CHUNK_END:
+                    if (readLine(data))
+                        state = State.CHUNK_SIZE;
+                    break;
+
+                case TRAILERS:
+                    if (readLine(data) && takeLine().isEmpty())
+                        state = State.DONE;
+                    break;
+
+                default:
+                    break;
+            }
+        }
+
+        return state == State.DONE;
+    }
+
+    /**
+     * Handles the end of the connection.
+     *
+     * @return Whether the response is complete, which is only the case if the end of the body is
+     * the end of the connection
+     */
+    boolean parseEnd() throws IOException {
+        if (state == State.BODY_TO_END) {
+            state = State.DONE;
+            return true;
+        }
+
+        if (state == State.DONE)
+            return true;
+
+        throw new EOFException(started ? "Connection closed before the end of the response" : "Connection closed before the response");
+    }
+
+    /** Whether any part of the response has been received */
+    boolean isStarted() {
+        return started;
+    }
+
+    int getCode() {
+        return code;
+    }
+
+    Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the body, which is stored in pooled segments until it is released.
+     */
+    HttpResponseBody getBody() {
+        return body;
+    }
+
+    /**
+     * Returns the body as a string in the charset of its Content-Type.
+     */
+    String getBodyString() {
+        return body.toString(getCharset());
+    }
+
+    /**
+     * Returns how long (in milliseconds) the connection may be kept open after this response, or 0
+     * if it has to be closed.
+     *
+     * @param maxKeepAlive Time (in milliseconds) a connection is kept at most
+     */
+    long getKeepAlive(long maxKeepAlive) {
+        String connection = headers.get("Connection");
+
+        // the end of the body is the end of the connection
+        if (closeRequested || bodyToEnd)
+            return 0;
+
+        if (connection != null && connection.equalsIgnoreCase("close"))
+            return 0;
+
+        if (statusLine.startsWith("HTTP/1.0") && (connection == null || !connection.equalsIgnoreCase("keep-alive")))
+            return 0;
+
+        String keepAlive = headers.get("Keep-Alive");
+        if (keepAlive != null) {
+            for (String parameter : keepAlive.split(",")) {
+                String[] pair = parameter.trim().split("=", 2);
+
+                if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("timeout")) {
+                    try {
+                        return Math.min(Long.parseLong(pair[1].trim()) * 1000, maxKeepAlive);
+                    } catch (NumberFormatException e) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        return maxKeepAlive;
+    }
+
+    /**
+     * Decodes a body, with the platform charset if the charset is not supported.
+     */
+    static String decode(byte[] bytes, String charset) {
+        try {
+            return new String(bytes, charset);
+        } catch (UnsupportedEncodingException e) {
+            return new String(bytes);
+        } catch (IllegalArgumentException e) {
+            // illegal charset name
+            return new String(bytes);
+        }
+    }
+
+    /**
+     * Returns the charset of the Content-Type, or UTF-8 if none is given.
+     */
+    String getCharset() {
+        return getCharset(headers.get("Content-Type"));
+    }
+
+    static String getCharset(String contentType) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                String[] pair = parameter.trim().split("=", 2);
+
+                if (pair.length == 2 && pair[0].trim().equalsIgnoreCase("charset"))
+                    return pair[1].trim().replace("\"", "");
+            }
+        }
+
+        return DEFAULT_CHARSET;
+    }
+
+    private void parseStatusLine(String line) throws IOException {
+        String[] tokens = line.split(" ", 3);
+        if (tokens.length < 2 || !tokens[0].startsWith("HTTP/"))
+            throw new ProtocolException("Unexpected status line: " + line);
+
+        try {
+            code = Integer.parseInt(tokens[1]);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Unexpected status line: " + line);
+        }
+
+        statusLine = line;
+        headers.clear();
+        state = State.HEADERS;
+    }
+
+    private void parseHeader(String line) throws IOException {
+        if (!line.isEmpty()) {
+            int separator = line.indexOf(':');
+            if (separator > 0)
+                headers.put(line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+            return;
+        }
+
+        // informational responses are followed by the actual response
+        if (code >= 100 && code < 200) {
+            state = State.STATUS_LINE;
+            return;
+        }
+
+        String transferEncoding = headers.get("Transfer-Encoding");
+        String contentLength = headers.get("Content-Length");
+
+        if (code == 204 || code == 304) {
+            state = State.DONE;
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            state = State.CHUNK_SIZE;
+        } else if (contentLength != null) {
+            try {
+                remaining = Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Unexpected Content-Length: " + contentLength);
+            }
+
+            if (remaining < 0 || remaining > Integer.MAX_VALUE)
+                throw new ProtocolException("Unexpected Content-Length: " + contentLength);
+
+            state = remaining == 0 ? State.DONE : State.BODY;
+        } else if (unframedBodyEmpty) {
+            state = State.DONE;
+        } else {
+            state = State.BODY_TO_END;
+            bodyToEnd = true;
+        }
+    }
+
+    private void parseChunkSize(String line) throws IOException {
+        int extension = line.indexOf(';');
+        String size = (extension >= 0 ? line.substring(0, extension) : line).trim();
+
+        try {
+            remaining = Long.parseLong(size, 16);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Unexpected chunk size: " + line);
+        }
+
+        if (remaining < 0)
+            throw new ProtocolException("Unexpected chunk size: " + line);
+
+        state = remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+    }
+
+    private void writeBody(ByteBuffer data, int count) {
+        body.write(data, count);
+    }
+
+    /**
+     * Reads up to the end of a line.
+     *
+     * @return Whether the line is complete
+     */
+    private boolean readLine(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            byte b = data.get();
+
+            if (b == '\n')
+                return true;
+
+            if (line.size() == MAX_LINE_LENGTH)
+                throw new ProtocolException("Response line too long");
+
+            line.write(b);
+        }
+        return false;
+    }
+
+    private String takeLine() throws UnsupportedEncodingException {
+        String result = line.toString(ISO_8859_1);
+        line.reset();
+
+        return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+    }
+}
@@ -291,8 +291,10 @@ public class AirPlayService extends DeviceService implements MediaPlayer, MediaC
 
         String uri = getRequestURL("scrub");
 
+        // position polls and the keep-alive give way to the commands of the user
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, responseListener);
         request.setHttpMethod(ServiceCommand.TYPE_GET);
+        request.setPriority(ServiceCommand.Priority.BACKGROUND);
         request.send();
     }
 
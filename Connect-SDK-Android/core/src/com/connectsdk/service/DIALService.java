@@ -53,6 +53,8 @@ import java.util.Map;
 public class DIALService extends DeviceService implements Launcher {
 
     public static final String ID = "DIAL";
+    /* some devices only answer a launch once the app has started */
+    private static final long COMMAND_TIMEOUT = 15 * 1000;
     private static final String APP_NETFLIX = "Netflix";
 
     private static List<String> registeredApps = new ArrayList<String>();
@@ -388,18 +390,23 @@ public class DIALService extends DeviceService implements Launcher {
         }
     }
 
+    @Override
+    public long getCommandTimeout() {
+        return COMMAND_TIMEOUT;
+    }
+
     @Override
     public void sendCommand(final ServiceCommand<?> mCommand) {
-        Util.runInBackground(new Runnable() {
+        runCommand(mCommand, new Runnable() {
 
             @SuppressWarnings("unchecked")
             @Override
             public void run() {
-                ServiceCommand<ResponseListener<Object>> command = (ServiceCommand<ResponseListener<Object>>) mCommand;
+                final ServiceCommand<ResponseListener<Object>> command = (ServiceCommand<ResponseListener<Object>>) mCommand;
                 Object payload = command.getPayload();
 
                 try {
-                    HttpConnection connection = createHttpConnection(mCommand.getTarget());
+                    final HttpConnection connection = createHttpConnection(mCommand.getTarget());
                     if (payload != null || command.getHttpMethod().equalsIgnoreCase(ServiceCommand.TYPE_POST)) {
                         connection.setMethod(HttpConnection.Method.POST);
                         if (payload != null) {
@@ -410,15 +417,37 @@ public class DIALService extends DeviceService implements Launcher {
                     } else if (command.getHttpMethod().equalsIgnoreCase(ServiceCommand.TYPE_DEL)) {
                         connection.setMethod(HttpConnection.Method.DELETE);
                     }
-                    connection.execute();
-                    int code = connection.getResponseCode();
-                    if (code == 200) {
-                        Util.postSuccess(command.getResponseListener(), connection.getResponseString());
-                    } else if (code == 201) {
-                        Util.postSuccess(command.getResponseListener(), connection.getResponseHeader("Location"));
-                    } else {
-                        Util.postError(command.getResponseListener(), ServiceCommandError.getError(code));
-                    }
+                    connection.setTimeout(command.getTimeout());
+                    command.setCancelListener(new ServiceCommand.CancelListener() {
+
+                        @Override
+                        public void onCancel(ServiceCommand<?> command) {
+                            connection.cancel();
+                        }
+                    });
+                    connection.executeAsync(new HttpConnection.ResponseCallback() {
+
+                        @Override
+                        public void onComplete(HttpConnection connection) {
+                            try {
+                                int code = connection.getResponseCode();
+                                if (code == 200) {
+                                    Util.postSuccess(command.getResponseListener(), connection.getResponseString());
+                                } else if (code == 201) {
+                                    Util.postSuccess(command.getResponseListener(), connection.getResponseHeader("Location"));
+                                } else {
+                                    Util.postError(command.getResponseListener(), ServiceCommandError.getError(code));
+                                }
+                            } catch (IOException e) {
+                                onError(e);
+                            }
+                        }
+
+                        @Override
+                        public void onError(IOException e) {
+                            Util.postError(command.getResponseListener(), new ServiceCommandError(0, e.getMessage(), null));
+                        }
+                    });
                 } catch (Exception e) {
                     Util.postError(command.getResponseListener(), new ServiceCommandError(0, e.getMessage(), null));
                 }
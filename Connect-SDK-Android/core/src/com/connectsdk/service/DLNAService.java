@@ -25,6 +25,7 @@ import android.text.Html;
 import android.util.Log;
 import android.util.Xml;
 
+import com.connectsdk.core.Futures;
 import com.connectsdk.core.ImageInfo;
 import com.connectsdk.core.MediaInfo;
 import com.connectsdk.core.SubtitleInfo;
@@ -73,12 +74,16 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -120,6 +125,9 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
     private static int TIMEOUT = 300;
 
+    /* time (in milliseconds) to wait for the response to a GENA request before the next one is sent */
+    long subscriptionRequestTimeout = ServiceCommand.DEFAULT_TIMEOUT;
+
     interface PositionInfoListener {
         public void onGetPositionInfoSuccess(String positionInfoXml);
         public void onGetPositionInfoFailed(ServiceCommandError error);
@@ -132,7 +140,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
     public DLNAService(ServiceDescription serviceDescription, ServiceConfig serviceConfig, Context context, DLNAHttpServer dlnaServer) {
         super(serviceDescription, serviceConfig);
         this.context = context;
-        SIDList = new HashMap<String, String>();
+        SIDList = new ConcurrentHashMap<String, String>();
         updateControlURL();
         httpServer = dlnaServer;
     }
@@ -252,76 +260,65 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
     }
 
     private void displayMedia(String url, SubtitleInfo subtitle, String mimeType, String title, String description, String iconSrc, final LaunchListener listener) {
+        Futures.deliver(displayMediaAsync(url, subtitle, mimeType, title, description, iconSrc), listener);
+    }
+
+    private CompletableFuture<MediaLaunchObject> displayMediaAsync(String url, SubtitleInfo subtitle, String mimeType, String title, String description, String iconSrc) {
         final String instanceId = "0";
         String[] mediaElements = mimeType.split("/");
         String mediaType = mediaElements[0];
         String mediaFormat = mediaElements[1];
 
         if (mediaType == null || mediaType.length() == 0 || mediaFormat == null || mediaFormat.length() == 0) {
-            Util.postError(listener, new ServiceCommandError(0, "You must provide a valid mimeType (audio/*,  video/*, etc)", null));
-            return;
+            return Futures.failed(new ServiceCommandError(0, "You must provide a valid mimeType (audio/*,  video/*, etc)", null));
         }
 
         mediaFormat = "mp3".equals(mediaFormat) ? "mpeg" : mediaFormat;
         String mMimeType = String.format("%s/%s", mediaType, mediaFormat);
 
-        ResponseListener<Object> responseListener = new ResponseListener<Object>() {
-
-            @Override
-            public void onSuccess(Object response) {
-                String method = "Play";
-
-                Map<String, String> parameters = new HashMap<String, String>();
-                parameters.put("Speed", "1");
-
-                String payload = getMessageXml(AV_TRANSPORT_URN, method, "0", parameters);
-
-                ResponseListener<Object> playResponseListener = new ResponseListener<Object> () {
-                    @Override
-                    public void onSuccess(Object response) {
-                        LaunchSession launchSession = new LaunchSession();
-                        launchSession.setService(DLNAService.this);
-                        launchSession.setSessionType(LaunchSessionType.Media);
-
-                        Util.postSuccess(listener, new MediaLaunchObject(launchSession, DLNAService.this, DLNAService.this));
-                    }
-
-                    @Override
-                    public void onError(ServiceCommandError error) {
-                        Util.postError(listener, error);
-                    }
-                };
-
-                ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(DLNAService.this, method, payload, playResponseListener);
-                request.send();
-            }
-
-            @Override
-            public void onError(ServiceCommandError error) {
-                Util.postError(listener, error);
-            }
-        };
-
         String method = "SetAVTransportURI";
         String metadata = getMetadata(url, subtitle, mMimeType, title, description, iconSrc);
         if (metadata == null) {
-            Util.postError(listener, ServiceCommandError.getError(500));
-            return;
+            return Futures.failed(ServiceCommandError.getError(500));
         }
 
         Map<String, String> params = new LinkedHashMap<String, String>();
         try {
             params.put("CurrentURI", encodeURL(url));
         } catch (Exception e) {
-            Util.postError(listener, ServiceCommandError.getError(500));
-            return;
+            return Futures.failed(ServiceCommandError.getError(500));
         }
         params.put("CurrentURIMetaData", metadata);
 
         String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, params);
 
-        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(DLNAService.this, method, payload, responseListener);
-        request.send();
+        ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(DLNAService.this, method, payload, null);
+
+        // Play goes out as soon as the URI has been set, without waiting for the main thread
+        return request.sendAsync().thenCompose(new Function<Object, CompletableFuture<Object>>() {
+
+            @Override
+            public CompletableFuture<Object> apply(Object response) {
+                String method = "Play";
+
+                Map<String, String> parameters = new HashMap<String, String>();
+                parameters.put("Speed", "1");
+
+                String payload = getMessageXml(AV_TRANSPORT_URN, method, "0", parameters);
+
+                return new ServiceCommand<ResponseListener<Object>>(DLNAService.this, method, payload, null).sendAsync();
+            }
+        }).thenApply(new Function<Object, MediaLaunchObject>() {
+
+            @Override
+            public MediaLaunchObject apply(Object response) {
+                LaunchSession launchSession = new LaunchSession();
+                launchSession.setService(DLNAService.this);
+                launchSession.setSessionType(LaunchSessionType.Media);
+
+                return new MediaLaunchObject(launchSession, DLNAService.this, DLNAService.this);
+            }
+        });
     }
 
     @Override
@@ -360,6 +357,15 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
     @Override
     public void playMedia(MediaInfo mediaInfo, boolean shouldLoop,
             LaunchListener listener) {
+        Futures.deliver(playMediaAsync(mediaInfo, shouldLoop), listener);
+    }
+
+    /**
+     * Returns the future of the SetAVTransportURI and Play chain itself, rather than adapting
+     * the listener of playMedia().
+     */
+    @Override
+    public CompletableFuture<MediaLaunchObject> playMediaAsync(MediaInfo mediaInfo, boolean shouldLoop) {
         String mediaUrl = null;
         SubtitleInfo subtitle = null;
         String mimeType = null;
@@ -380,7 +386,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
             }
         }
 
-        displayMedia(mediaUrl, subtitle, mimeType, title, desc, iconSrc, listener);
+        return displayMediaAsync(mediaUrl, subtitle, mimeType, title, desc, iconSrc);
     }
 
     @Override
@@ -552,6 +558,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
         };
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, responseListener);
+        request.setPriority(ServiceCommand.Priority.BACKGROUND);
         request.send();
     }
 
@@ -781,12 +788,12 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
     @Override
     public void sendCommand(final ServiceCommand<?> mCommand) {
-        Util.runInBackground(new Runnable() {
+        runCommand(mCommand, new Runnable() {
 
             @SuppressWarnings("unchecked")
             @Override
             public void run() {
-                ServiceCommand<ResponseListener<Object>> command = (ServiceCommand<ResponseListener<Object>>) mCommand;
+                final ServiceCommand<ResponseListener<Object>> command = (ServiceCommand<ResponseListener<Object>>) mCommand;
 
                 String method = command.getTarget();
                 String payload = (String) command.getPayload();
@@ -821,18 +828,40 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
                 }
 
                 try {
-                    HttpConnection connection = createHttpConnection(targetURL);
+                    final HttpConnection connection = createHttpConnection(targetURL);
                     connection.setHeader("Content-Type", "text/xml; charset=utf-8");
                     connection.setHeader("SOAPAction", String.format("\"%s#%s\"", serviceURN, method));
                     connection.setMethod(HttpConnection.Method.POST);
                     connection.setPayload(payload);
-                    connection.execute();
-                    int code = connection.getResponseCode();
-                    if (code == 200) {
-                        Util.postSuccess(command.getResponseListener(), connection.getResponseString());
-                    } else {
-                        Util.postError(command.getResponseListener(), ServiceCommandError.getError(code));
-                    }
+                    connection.setTimeout(command.getTimeout());
+                    command.setCancelListener(new ServiceCommand.CancelListener() {
+
+                        @Override
+                        public void onCancel(ServiceCommand<?> command) {
+                            connection.cancel();
+                        }
+                    });
+                    connection.executeAsync(new HttpConnection.ResponseCallback() {
+
+                        @Override
+                        public void onComplete(HttpConnection connection) {
+                            try {
+                                int code = connection.getResponseCode();
+                                if (code == 200) {
+                                    Util.postSuccess(command.getResponseListener(), connection.getResponseString());
+                                } else {
+                                    Util.postError(command.getResponseListener(), ServiceCommandError.getError(code));
+                                }
+                            } catch (IOException e) {
+                                onError(e);
+                            }
+                        }
+
+                        @Override
+                        public void onError(IOException e) {
+                            Util.postError(command.getResponseListener(), new ServiceCommandError(0, e.getMessage(), null));
+                        }
+                    });
                 } catch (IOException e) {
                     Util.postError(command.getResponseListener(), new ServiceCommandError(0, e.getMessage(), null));
                 }
@@ -1130,6 +1159,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
                 }
 
                 List<Service> serviceList = serviceDescription.getServiceList();
+                Map<String, HttpConnection> requests = new LinkedHashMap<String, HttpConnection>();
 
                 if (serviceList != null) {
                     for (int i = 0; i < serviceList.size(); i++) {
@@ -1139,25 +1169,30 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
                         }
 
                         try {
-                            HttpConnection connection = HttpConnection.newSubscriptionInstance(
-                                    new URI("http", "", serviceDescription.getIpAddress(), serviceDescription.getPort(), eventSubURL, "", ""));
+                            HttpConnection connection = createSubscriptionConnection(eventSubURL);
                             connection.setMethod(HttpConnection.Method.SUBSCRIBE);
                             connection.setHeader("CALLBACK", "<http://" + myIpAddress + ":" + httpServer.getPort() + eventSubURL + ">");
                             connection.setHeader("NT", "upnp:event");
                             connection.setHeader("TIMEOUT", "Second-" + TIMEOUT);
-                            connection.setHeader("Connection", "close");
                             connection.setHeader("Content-length", "0");
                             connection.setHeader("USER-AGENT", "Android UPnp/1.1 ConnectSDK");
-                            connection.execute();
-                            if (connection.getResponseCode() == 200) {
-                                SIDList.put(serviceList.get(i).serviceType, connection.getResponseHeader("SID"));
-                            }
+                            requests.put(serviceList.get(i).serviceType, connection);
                         } catch (Exception e) {
                             e.printStackTrace();
                         }
-
                     }
                 }
+
+                sendSubscriptionRequests(requests.entrySet().iterator(), new SubscriptionResponseListener() {
+
+                    @Override
+                    public void onResponse(String serviceType, HttpConnection connection) throws IOException {
+                        String sid = connection.getResponseHeader("SID");
+                        if (connection.getResponseCode() == 200 && sid != null) {
+                            SIDList.put(serviceType, sid);
+                        }
+                    }
+                });
             }
         });
 
@@ -1170,34 +1205,31 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
 
             @Override
             public void run() {
-                Util.runInBackground(new Runnable() {
-
-                    @Override
-                    public void run() {
-                        List<Service> serviceList = serviceDescription.getServiceList();
+                List<Service> serviceList = serviceDescription.getServiceList();
+                Map<String, HttpConnection> requests = new LinkedHashMap<String, HttpConnection>();
 
-                        if (serviceList != null) {
-                            for (int i = 0; i < serviceList.size(); i++) {
-                                String eventSubURL = makeControlURL("/", serviceList.get(i).eventSubURL);
-                                if (eventSubURL == null) {
-                                    continue;
-                                }
+                if (serviceList != null) {
+                    for (int i = 0; i < serviceList.size(); i++) {
+                        String eventSubURL = makeControlURL("/", serviceList.get(i).eventSubURL);
+                        String SID = SIDList.get(serviceList.get(i).serviceType);
+                        if (eventSubURL == null || SID == null) {
+                            continue;
+                        }
 
-                                String SID = SIDList.get(serviceList.get(i).serviceType);
-                                try {
-                                    HttpConnection connection = HttpConnection.newSubscriptionInstance(
-                                            new URI("http", "", serviceDescription.getIpAddress(), serviceDescription.getPort(), eventSubURL, "", ""));
-                                    connection.setMethod(HttpConnection.Method.SUBSCRIBE);
-                                    connection.setHeader("TIMEOUT", "Second-" + TIMEOUT);
-                                    connection.setHeader("SID", SID);
-                                    connection.execute();
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                }
-                            }
+                        try {
+                            HttpConnection connection = createSubscriptionConnection(eventSubURL);
+                            connection.setMethod(HttpConnection.Method.SUBSCRIBE);
+                            connection.setHeader("TIMEOUT", "Second-" + TIMEOUT);
+                            connection.setHeader("SID", SID);
+                            requests.put(serviceList.get(i).serviceType, connection);
+                        } catch (Exception e) {
+                            e.printStackTrace();
                         }
                     }
-                });
+                }
+
+                // the renewals of all services are sent together, on one connection to the device
+                sendSubscriptionRequests(requests.entrySet().iterator(), null);
             }
         }, TIMEOUT/2*1000, TIMEOUT/2*1000);
     }
@@ -1212,33 +1244,85 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
             @Override
             public void run() {
                 final List<Service> serviceList = serviceDescription.getServiceList();
+                Map<String, HttpConnection> requests = new LinkedHashMap<String, HttpConnection>();
 
                 if (serviceList != null) {
                     for (int i = 0; i < serviceList.size(); i++) {
                         String eventSubURL = makeControlURL("/", serviceList.get(i).eventSubURL);
-                        if (eventSubURL == null) {
+                        String sid = SIDList.get(serviceList.get(i).serviceType);
+                        if (eventSubURL == null || sid == null) {
                             continue;
                         }
 
-                        String sid = SIDList.get(serviceList.get(i).serviceType);
                         try {
-                            HttpConnection connection = HttpConnection.newSubscriptionInstance(
-                                    new URI("http", "", serviceDescription.getIpAddress(), serviceDescription.getPort(), eventSubURL, "", ""));
+                            HttpConnection connection = createSubscriptionConnection(eventSubURL);
                             connection.setMethod(HttpConnection.Method.UNSUBSCRIBE);
                             connection.setHeader("SID", sid);
-                            connection.execute();
-                            if (connection.getResponseCode() == 200) {
-                                SIDList.remove(serviceList.get(i).serviceType);
-                            }
+                            requests.put(serviceList.get(i).serviceType, connection);
                         } catch (Exception e) {
                             e.printStackTrace();
                         }
                     }
                 }
+
+                sendSubscriptionRequests(requests.entrySet().iterator(), new SubscriptionResponseListener() {
+
+                    @Override
+                    public void onResponse(String serviceType, HttpConnection connection) throws IOException {
+                        if (connection.getResponseCode() == 200) {
+                            SIDList.remove(serviceType);
+                        }
+                    }
+                });
             }
         });
     }
 
+    HttpConnection createSubscriptionConnection(String eventSubURL) throws IOException, URISyntaxException {
+        HttpConnection connection = HttpConnection.newSubscriptionInstance(
+                new URI("http", null, serviceDescription.getIpAddress(), serviceDescription.getPort(), eventSubURL, null, null));
+        connection.setTimeout(subscriptionRequestTimeout);
+        return connection;
+    }
+
+    /**
+     * Sends the GENA requests for the services of this device one after the other, so that they
+     * share one pooled connection instead of opening a socket for each service. Each request
+     * has a timeout, so a device which does not answer one of them does not hold up the others.
+     */
+    void sendSubscriptionRequests(final Iterator<Map.Entry<String, HttpConnection>> requests,
+            final SubscriptionResponseListener listener) {
+        if (!requests.hasNext()) {
+            return;
+        }
+
+        final Map.Entry<String, HttpConnection> request = requests.next();
+        request.getValue().executeAsync(new HttpConnection.ResponseCallback() {
+
+            @Override
+            public void onComplete(HttpConnection connection) {
+                if (listener != null) {
+                    try {
+                        listener.onResponse(request.getKey(), connection);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                sendSubscriptionRequests(requests, listener);
+            }
+
+            @Override
+            public void onError(IOException e) {
+                e.printStackTrace();
+                sendSubscriptionRequests(requests, listener);
+            }
+        });
+    }
+
+    interface SubscriptionResponseListener {
+        void onResponse(String serviceType, HttpConnection connection) throws IOException;
+    }
+
     @Override
     public VolumeControl getVolumeControl() {
         return this;
@@ -1320,6 +1404,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
         String payload = getMessageXml(RENDERING_CONTROL_URN, method, instanceId, params);
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -1375,6 +1460,7 @@ public class DLNAService extends DeviceService implements PlaylistControl, Media
         String payload = getMessageXml(RENDERING_CONTROL_URN, method, instanceId, params);
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -25,13 +25,13 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.util.SparseArray;
 
+import com.connectsdk.core.CommandDispatcher;
 import com.connectsdk.core.Util;
 import com.connectsdk.device.ConnectableDevice;
 import com.connectsdk.discovery.DiscoveryFilter;
@@ -39,6 +39,8 @@ import com.connectsdk.etc.helper.DeviceServiceReachability;
 import com.connectsdk.etc.helper.DeviceServiceReachability.DeviceServiceReachabilityListener;
 import com.connectsdk.service.capability.CapabilityMethods;
 import com.connectsdk.service.capability.CapabilityMethods.CapabilityPriorityLevel;
+import com.connectsdk.service.capability.CapabilityQuery;
+import com.connectsdk.service.capability.CapabilitySet;
 import com.connectsdk.service.capability.ExternalInputControl;
 import com.connectsdk.service.capability.Launcher;
 import com.connectsdk.service.capability.MediaPlayer;
@@ -125,6 +127,9 @@ public class DeviceService implements DeviceServiceReachabilityListener, Service
      */
     List<String> mCapabilities;
 
+    /* Interned copy of mCapabilities which is used for all capability tests */
+    volatile CapabilitySet mCapabilitySet = CapabilitySet.EMPTY;
+
     // @cond INTERNAL
     protected DeviceServiceListener listener;
 
@@ -336,6 +341,62 @@ public class DeviceService implements DeviceServiceReachabilityListener, Service
 
     }
 
+    /**
+     * Runs a command in the lane of this device, after the commands which were sent to the device
+     * before it. Commands to other devices don't wait for it.
+     */
+    protected void runCommand(Runnable command) {
+        runCommand(ServiceCommand.Priority.NORMAL, command);
+    }
+
+    /**
+     * Runs a command in the lane of this device, ahead of the queued commands of a lower priority.
+     */
+    protected void runCommand(ServiceCommand.Priority priority, Runnable command) {
+        CommandDispatcher.getInstance().execute(getCommandLane(), priority, command);
+    }
+
+    /**
+     * Runs the request of a ServiceCommand in the lane of this device, with the priority of the
+     * command. The time until it starts counts as queue time in CommandMetrics.
+     *
+     * The next command to the device is sent once the command has been answered, cancelled or has
+     * timed out, also when the request only starts an asynchronous connection. Commands without a
+     * deadline or without a listener could never tell when they are done, so the next command
+     * follows as soon as their request has returned.
+     */
+    protected void runCommand(final ServiceCommand<?> serviceCommand, final Runnable request) {
+        CommandDispatcher.getInstance().execute(getCommandLane(), serviceCommand.getPriority(), new CommandDispatcher.Request() {
+
+            @Override
+            public void run(Runnable done) {
+                boolean held = serviceCommand.hasDeadline() && serviceCommand.getResponseListener() != null;
+
+                if (held)
+                    serviceCommand.setDoneListener(done);
+
+                serviceCommand.markStarted();
+
+                try {
+                    request.run();
+                } finally {
+                    if (!held)
+                        done.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Key of the command lane, shared by the services of a device
+     */
+    public String getCommandLane() {
+        if (serviceDescription != null && serviceDescription.getIpAddress() != null)
+            return serviceDescription.getIpAddress();
+
+        return getServiceName();
+    }
+
     // @endcond
 
     public List<String> getCapabilities() {
@@ -344,22 +405,33 @@ public class DeviceService implements DeviceServiceReachabilityListener, Service
 
     protected void updateCapabilities() { }
 
+    /**
+     * The capabilities of getCapabilities() as a set of interned capability IDs, which can be
+     * matched against a CapabilityQuery with bitwise operations.
+     */
+    public CapabilitySet getCapabilitySet() {
+        return mCapabilitySet;
+    }
+
     protected void setCapabilities(List<String> newCapabilities) {
         List<String> oldCapabilities = mCapabilities;
+        CapabilitySet oldCapabilitySet = mCapabilitySet;
+        CapabilitySet newCapabilitySet = CapabilitySet.of(newCapabilities);
 
         mCapabilities = newCapabilities;
+        mCapabilitySet = newCapabilitySet;
 
         List<String> _lostCapabilities = new ArrayList<String>();
 
         for (String capability : oldCapabilities) {
-            if (!newCapabilities.contains(capability))
+            if (!newCapabilitySet.contains(capability))
                 _lostCapabilities.add(capability);
         }
 
         List<String> _addedCapabilities = new ArrayList<String>();
 
         for (String capability : newCapabilities) {
-            if (!oldCapabilities.contains(capability))
+            if (!oldCapabilitySet.contains(capability))
                 _addedCapabilities.add(capability);
         }
 
@@ -387,20 +459,7 @@ public class DeviceService implements DeviceServiceReachabilityListener, Service
      * @param capability Capability to test against
      */
     public boolean hasCapability(String capability) {
-        Matcher m = CapabilityMethods.ANY_PATTERN.matcher(capability);
-
-        if (m.find()) {
-            String match = m.group();
-            for (String item : this.mCapabilities) {
-                if (item.contains(match)) {
-                    return true;
-                }
-            }
-
-            return false;
-        }
-
-        return mCapabilities.contains(capability);
+        return CapabilityQuery.compile(capability).matchesAll(mCapabilitySet);
     }
 
     /**
@@ -411,12 +470,7 @@ public class DeviceService implements DeviceServiceReachabilityListener, Service
      * @param capabilities Set of capabilities to test against
      */
     public boolean hasAnyCapability(String... capabilities) {
-        for (String capability : capabilities) {
-            if (hasCapability(capability))
-                return true;
-        }
-
-        return false;
+        return CapabilityQuery.compile(capabilities).matchesAny(mCapabilitySet);
     }
 
     /**
@@ -427,9 +481,7 @@ public class DeviceService implements DeviceServiceReachabilityListener, Service
      * @param capabilities List of capabilities to test against
      */
     public boolean hasCapabilities(List<String> capabilities) {
-        String[] arr = new String[capabilities.size()];
-        capabilities.toArray(arr);
-        return hasCapabilities(arr);
+        return CapabilityQuery.compile(capabilities).matchesAll(mCapabilitySet);
     }
 
     /**
@@ -440,16 +492,17 @@ public class DeviceService implements DeviceServiceReachabilityListener, Service
      * @param capabilities Set of capabilities to test against
      */
     public boolean hasCapabilities(String... capabilities) {
-        boolean hasCaps = true;
-
-        for (String capability: capabilities) {
-            if (!hasCapability(capability)) {
-                hasCaps = false;
-                break;
-            }
-        }
+        return CapabilityQuery.compile(capabilities).matchesAll(mCapabilitySet);
+    }
 
-        return hasCaps;
+    /**
+     * Test to see if the capabilities array contains all capabilities of a compiled query, which
+     * avoids parsing the capability names on every test.
+     *
+     * @param query Capabilities to test against
+     */
+    public boolean hasCapabilities(CapabilityQuery query) {
+        return query.matchesAll(mCapabilitySet);
     }
 
     // @cond INTERNAL
@@ -559,6 +612,7 @@ public class DeviceService implements DeviceServiceReachabilityListener, Service
             return;
 
         this.mCapabilities.add(capability);
+        mCapabilitySet = CapabilitySet.of(mCapabilities);
 
         Util.runOnUI(new Runnable() {
 
@@ -583,6 +637,7 @@ public class DeviceService implements DeviceServiceReachabilityListener, Service
 
             mCapabilities.add(capability);
         }
+        mCapabilitySet = CapabilitySet.of(mCapabilities);
 
         Util.runOnUI(new Runnable() {
 
@@ -604,6 +659,7 @@ public class DeviceService implements DeviceServiceReachabilityListener, Service
             return;
 
         this.mCapabilities.remove(capability);
+        mCapabilitySet = CapabilitySet.of(mCapabilities);
 
         Util.runOnUI(new Runnable() {
 
@@ -625,6 +681,7 @@ public class DeviceService implements DeviceServiceReachabilityListener, Service
         for (String capability : capabilities) {
             mCapabilities.remove(capability);
         }
+        mCapabilitySet = CapabilitySet.of(mCapabilities);
 
         Util.runOnUI(new Runnable() {
 
@@ -0,0 +1,42 @@
+/*
+ * DeviceServiceFactory
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service;
+
+import com.connectsdk.service.config.ServiceConfig;
+import com.connectsdk.service.config.ServiceDescription;
+
+/**
+ * Creates DeviceServices for discovered services without reflection. A factory is registered
+ * together with the DiscoveryFilter of its service, see
+ * DiscoveryManager.registerDeviceService(DiscoveryFilter, Class, DeviceServiceFactory). The class
+ * of the service, and any library it depends on, is not loaded before the first matching service
+ * has been found.
+ */
+public interface DeviceServiceFactory {
+
+    /**
+     * Creates the DeviceService for a service which has been found by a DiscoveryProvider.
+     *
+     * @param serviceDescription Description of the discovered service
+     * @param serviceConfig Stored or new configuration of the service
+     * @return The new DeviceService, or null if it cannot be created
+     */
+    DeviceService createService(ServiceDescription serviceDescription, ServiceConfig serviceConfig);
+}
@@ -26,6 +26,7 @@ import android.util.Log;
 import com.connectsdk.core.AppInfo;
 import com.connectsdk.core.ChannelInfo;
 import com.connectsdk.core.ExternalInputInfo;
+import com.connectsdk.core.Futures;
 import com.connectsdk.core.ImageInfo;
 import com.connectsdk.core.MediaInfo;
 import com.connectsdk.core.Util;
@@ -71,7 +72,6 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.xml.sax.SAXException;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -81,6 +81,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -89,6 +91,8 @@ import javax.xml.parsers.SAXParserFactory;
 public class NetcastTVService extends DeviceService implements Launcher, MediaControl, MediaPlayer, TVControl, VolumeControl, ExternalInputControl, MouseControl, TextInputControl, PowerControl, KeyControl {
 
     public static final String ID = "Netcast TV";
+    /* UDAP commands are answered right away */
+    private static final long COMMAND_TIMEOUT = 5 * 1000;
 
     public static final String UDAP_PATH_PAIRING = "/udap/api/pairing";
     public static final String UDAP_PATH_DATA = "/udap/api/data";
@@ -793,21 +797,26 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
         command.send();
     }
 
-    private void getTotalNumberOfApplications(int type, final AppCountListener listener) {
+    /* the responses are parsed on a background thread, never on the thread which reads them */
+    private CompletableFuture<Integer> getTotalNumberOfApplications(int type) {
+        final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+
         ResponseListener<Object> responseListener = new ResponseListener<Object>() {
 
             @Override
             public void onSuccess(Object response) {
-                String strObj = (String) response;
-
-                int applicationNumber = parseAppNumberXmlToJSON(strObj);
+                int applicationNumber = parseAppNumberXmlToJSON(response);
 
-                Util.postSuccess(listener, applicationNumber);
+                if (applicationNumber < 0) {
+                    future.completeExceptionally(new ServiceCommandError(0, "Unable to parse the number of applications", response));
+                } else {
+                    future.complete(applicationNumber);
+                }
             }
 
             @Override
             public void onError(ServiceCommandError error) {
-                Util.postError(listener, error);
+                future.completeExceptionally(error);
             }
         };
 
@@ -815,17 +824,27 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 
         ServiceCommand<ResponseListener<Object>> command = new ServiceCommand<ResponseListener<Object>>(this, requestURL, null, responseListener);
         command.setHttpMethod(ServiceCommand.TYPE_GET);
+        command.setRawResponse(true);
+        command.setCallbackExecutor(Util.getExecutor());
         command.send();
+
+        return future;
     }
 
-    private void getApplications(int type, int number, final AppListListener listener) {
+    private CompletableFuture<List<AppInfo>> getApplications(int type, int number) {
+        final CompletableFuture<List<AppInfo>> future = new CompletableFuture<List<AppInfo>>();
+
         ResponseListener<Object> responseListener = new ResponseListener<Object>() {
 
             @Override
             public void onSuccess(Object response) {
-                String strObj = (String) response;
+                JSONArray applicationArray = parseApplicationsXmlToJSON(response);
+
+                if (applicationArray == null) {
+                    future.completeExceptionally(new ServiceCommandError(0, "Unable to parse the applications", response));
+                    return;
+                }
 
-                JSONArray applicationArray = parseApplicationsXmlToJSON(strObj);
                 List<AppInfo> appList = new ArrayList<AppInfo>();
 
                 for (int i = 0; i < applicationArray.length(); i++)
@@ -844,12 +863,12 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
                     }
                 }
 
-                Util.postSuccess(listener, appList);
+                future.complete(appList);
             }
 
             @Override
             public void onError(ServiceCommandError error) {
-                Util.postError(listener, error);
+                future.completeExceptionally(error);
             }
         };
 
@@ -857,59 +876,47 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 
         ServiceCommand<ResponseListener<Object>> command = new ServiceCommand<ResponseListener<Object>>(this, requestURL, null, responseListener);
         command.setHttpMethod(ServiceCommand.TYPE_GET);
+        command.setRawResponse(true);
+        command.setCallbackExecutor(Util.getExecutor());
         command.send();
+
+        return future;
     }
 
     @Override
     public void getAppList(final AppListListener listener) {
-        applications.clear();
-        getTotalNumberOfApplications(2, new AppCountListener() {
-
-            @Override
-            public void onSuccess(final Integer count) {
-                getApplications(2, count, new AppListListener() {
-
-                    @Override
-                    public void onSuccess(List<AppInfo> apps) {
-                        applications.addAll(apps);
-
-                        getTotalNumberOfApplications(3, new AppCountListener() {
-
-                            @Override
-                            public void onSuccess(final Integer count) {
-                                getApplications(3, count, new AppListListener() {
+        Futures.deliver(getAppListAsync(), listener);
+    }
 
-                                    @Override
-                                    public void onSuccess(List<AppInfo> apps) {
-                                        applications.addAll(apps);
+    @Override
+    public CompletableFuture<List<AppInfo>> getAppListAsync() {
+        // both categories are fetched at once, each step runs as soon as its response is in
+        List<CompletableFuture<List<AppInfo>>> categories = new ArrayList<CompletableFuture<List<AppInfo>>>();
+        categories.add(getApplicationsAsync(2));
+        categories.add(getApplicationsAsync(3));
 
-                                        Util.postSuccess(listener, applications);
-                                    }
+        return Futures.all(categories).thenApply(new Function<List<List<AppInfo>>, List<AppInfo>>() {
 
-                                    @Override
-                                    public void onError(ServiceCommandError error) {
-                                        Util.postError(listener, error);
-                                    }
-                                });
-                            }
+            @Override
+            public List<AppInfo> apply(List<List<AppInfo>> lists) {
+                List<AppInfo> apps = new ArrayList<AppInfo>();
 
-                            @Override
-                            public void onError(ServiceCommandError error) {
-                                Util.postError(listener, error);
-                            }
-                        });
-                    }
+                for (List<AppInfo> list : lists) {
+                    apps.addAll(list);
+                }
 
-                    @Override
-                    public void onError(ServiceCommandError error) {
-                        Util.postError(listener, error);
-                    }
-                });
+                applications = apps;
+                return apps;
             }
+        });
+    }
+
+    private CompletableFuture<List<AppInfo>> getApplicationsAsync(final int type) {
+        return getTotalNumberOfApplications(type).thenCompose(new Function<Integer, CompletableFuture<List<AppInfo>>>() {
 
             @Override
-            public void onError(ServiceCommandError error) {
-                Util.postError(listener, error);
+            public CompletableFuture<List<AppInfo>> apply(Integer number) {
+                return getApplications(type, number);
             }
         });
     }
@@ -994,11 +1001,9 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 
             @Override
             public void onSuccess(Object response) {
-                String strObj = (String)response;
-
                 try {
                     SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-                    InputStream stream = new ByteArrayInputStream(strObj.getBytes("UTF-8"));
+                    InputStream stream = HttpMessage.getResponseStream(response);
                     SAXParser saxParser = saxParserFactory.newSAXParser();
 
                     NetcastChannelParser parser = new NetcastChannelParser();
@@ -1037,6 +1042,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, requestURL, null, responseListener);
         request.setHttpMethod(ServiceCommand.TYPE_GET);
+        request.setRawResponse(true);
         request.send();
     }
 
@@ -1110,11 +1116,9 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 
             @Override
             public void onSuccess(Object response) {
-                String strObj = (String)response;
-
                 try {
                     SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-                    InputStream stream = new ByteArrayInputStream(strObj.getBytes("UTF-8"));
+                    InputStream stream = HttpMessage.getResponseStream(response);
                     SAXParser saxParser = saxParserFactory.newSAXParser();
 
                     NetcastChannelParser parser = new NetcastChannelParser();
@@ -1147,6 +1151,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
         };
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, requestURL, null, responseListener);
+        request.setRawResponse(true);
         request.send();
     }
 
@@ -1363,8 +1368,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 
             @Override
             public void onSuccess(Object response) {
-                String strObj = (String) response;
-                JSONObject volumeStatus = parseVolumeXmlToJSON(strObj);
+                JSONObject volumeStatus = parseVolumeXmlToJSON(response);
                 try {
                     boolean isMute = (Boolean) volumeStatus.get("mute");
                     int volume = (Integer) volumeStatus.get("level");
@@ -1386,6 +1390,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, requestURL, null, responseListener);
         request.setHttpMethod(ServiceCommand.TYPE_GET);
+        request.setRawResponse(true);
         request.send();
     }
 
@@ -1729,6 +1734,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
         String httpMessage = getUDAPMessageBody(UDAP_API_EVENT, params);
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, requestURL, httpMessage, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -1780,6 +1786,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
         String httpMessage = getUDAPMessageBody(UDAP_API_COMMAND, params);
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, requestURL, httpMessage, responseListener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -1831,6 +1838,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
         String httpMessage = getUDAPMessageBody(UDAP_API_COMMAND, params);
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, requestURL, httpMessage, responseListener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -1866,6 +1874,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
         String httpMessage = getUDAPMessageBody(UDAP_API_COMMAND, params);
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, requestURL, httpMessage, responseListener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -2063,10 +2072,10 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
             listener.onError(ServiceCommandError.notSupported());
     }
 
-    private JSONObject parseVolumeXmlToJSON(String data) {
+    private JSONObject parseVolumeXmlToJSON(Object data) {
         SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
         try {
-            InputStream stream = new ByteArrayInputStream(data.getBytes("UTF-8"));
+            InputStream stream = HttpMessage.getResponseStream(data);
 
             SAXParser saxParser = saxParserFactory.newSAXParser();
             NetcastVolumeParser handler = new NetcastVolumeParser();
@@ -2083,10 +2092,10 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
         return null;
     }
 
-    private int parseAppNumberXmlToJSON(String data) {
+    private int parseAppNumberXmlToJSON(Object data) {
         SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
         try {
-            InputStream stream = new ByteArrayInputStream(data.getBytes("UTF-8"));
+            InputStream stream = HttpMessage.getResponseStream(data);
 
             SAXParser saxParser = saxParserFactory.newSAXParser();
             NetcastAppNumberParser handler = new NetcastAppNumberParser();
@@ -2100,13 +2109,13 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
         } catch (IOException e) {
             e.printStackTrace();
         }
-        return 0;
+        return -1;
     }
 
-    private JSONArray parseApplicationsXmlToJSON(String data) {
+    private JSONArray parseApplicationsXmlToJSON(Object data) {
         SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
         try {
-            InputStream stream = new ByteArrayInputStream(data.getBytes("UTF-8"));
+            InputStream stream = HttpMessage.getResponseStream(data);
 
             SAXParser saxParser = saxParserFactory.newSAXParser();
             NetcastApplicationsParser handler = new NetcastApplicationsParser();
@@ -2197,6 +2206,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
                 String httpMessage = getHttpMessageForHandleKeyInput(keycode);
 
                 ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(NetcastTVService.this, requestURL, httpMessage, listener);
+                request.setPriority(ServiceCommand.Priority.INTERACTIVE);
                 request.send();
             }
 
@@ -2295,9 +2305,14 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
         return String.format("%016x",dec);
     }
 
+    @Override
+    public long getCommandTimeout() {
+        return COMMAND_TIMEOUT;
+    }
+
     @Override
     public void sendCommand(final ServiceCommand<?> mCommand) {
-        Util.runInBackground(new Runnable() {
+        runCommand(mCommand, new Runnable() {
 
             @SuppressWarnings("unchecked")
             @Override
@@ -2306,21 +2321,45 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
                 Object payload = command.getPayload();
 
                 try {
-                    HttpConnection connection = HttpConnection.newInstance(URI.create(command.getTarget()));
+                    final HttpConnection connection = HttpConnection.newInstance(URI.create(command.getTarget()));
                     connection.setHeader(HttpMessage.USER_AGENT, HttpMessage.UDAP_USER_AGENT);
                     connection.setHeader(HttpMessage.CONTENT_TYPE_HEADER, HttpMessage.CONTENT_TYPE_TEXT_XML);
                     if (payload != null && command.getHttpMethod().equalsIgnoreCase(ServiceCommand.TYPE_POST)) {
                         connection.setMethod(HttpConnection.Method.POST);
                         connection.setPayload(payload.toString());
                     }
-                    connection.execute();
-                    int code = connection.getResponseCode();
-                    Log.d("", "RESP " + code);
-                    if (code == 200) {
-                        Util.postSuccess(command.getResponseListener(), connection.getResponseString());
-                    } else {
-                        Util.postError(command.getResponseListener(), ServiceCommandError.getError(code));
-                    }
+                    connection.setTimeout(command.getTimeout());
+                    command.setCancelListener(new ServiceCommand.CancelListener() {
+
+                        @Override
+                        public void onCancel(ServiceCommand<?> command) {
+                            connection.cancel();
+                        }
+                    });
+                    connection.executeAsync(new HttpConnection.ResponseCallback() {
+
+                        @Override
+                        public void onComplete(HttpConnection connection) {
+                            try {
+                                int code = connection.getResponseCode();
+                                Log.d("", "RESP " + code);
+                                if (code == 200) {
+                                    Util.postSuccess(command.getResponseListener(), command.isRawResponse()
+                                            ? connection.getResponseBytes() : connection.getResponseString());
+                                } else {
+                                    Util.postError(command.getResponseListener(), ServiceCommandError.getError(code));
+                                }
+                            } catch (IOException e) {
+                                onError(e);
+                            }
+                        }
+
+                        @Override
+                        public void onError(IOException e) {
+                            e.printStackTrace();
+                            Util.postError(command.getResponseListener(), new ServiceCommandError(0, e.getMessage(), null));
+                        }
+                    });
                 } catch (IOException e) {
                     e.printStackTrace();
                     Util.postError(command.getResponseListener(), new ServiceCommandError(0, e.getMessage(), null));
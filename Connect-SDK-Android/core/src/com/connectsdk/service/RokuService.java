@@ -55,7 +55,6 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.xml.sax.SAXException;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -72,6 +71,8 @@ import javax.xml.parsers.SAXParserFactory;
 public class RokuService extends DeviceService implements Launcher, MediaPlayer, MediaControl, KeyControl, TextInputControl {
 
     public static final String ID = "Roku";
+    /* key presses and queries are answered right away */
+    private static final long COMMAND_TIMEOUT = 5 * 1000;
 
     private static List<String> registeredApps = new ArrayList<String>();
 
@@ -260,13 +261,11 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
             @Override
             public void onSuccess(Object response) {
-                String msg = (String) response;
-
                 SAXParserFactory saxParserFactory = SAXParserFactory
                         .newInstance();
                 InputStream stream;
                 try {
-                    stream = new ByteArrayInputStream(msg.getBytes("UTF-8"));
+                    stream = HttpMessage.getResponseStream(response);
                     SAXParser saxParser = saxParserFactory.newSAXParser();
 
                     RokuApplicationListParser parser = new RokuApplicationListParser();
@@ -300,6 +299,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, responseListener);
         request.setHttpMethod(ServiceCommand.TYPE_GET);
+        request.setRawResponse(true);
         request.send();
     }
 
@@ -453,6 +453,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -465,6 +466,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -477,6 +479,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -489,6 +492,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -501,6 +505,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -513,6 +518,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -525,6 +531,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -547,6 +554,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -559,6 +567,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -583,6 +592,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -595,6 +605,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -819,6 +830,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -856,6 +868,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -883,6 +896,7 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
                 this, uri, null, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -890,33 +904,62 @@ public class RokuService extends DeviceService implements Launcher, MediaPlayer,
     public void unsubscribe(URLServiceSubscription<?> subscription) {
     }
 
+    @Override
+    public long getCommandTimeout() {
+        return COMMAND_TIMEOUT;
+    }
+
     @Override
     public void sendCommand(final ServiceCommand<?> mCommand) {
-        Util.runInBackground(new Runnable() {
+        runCommand(mCommand, new Runnable() {
 
             @SuppressWarnings("unchecked")
             @Override
             public void run() {
-                ServiceCommand<ResponseListener<Object>> command = (ServiceCommand<ResponseListener<Object>>) mCommand;
+                final ServiceCommand<ResponseListener<Object>> command = (ServiceCommand<ResponseListener<Object>>) mCommand;
                 Object payload = command.getPayload();
 
                 try {
                     Log.d("", "RESP " + command.getTarget());
-                    HttpConnection connection = HttpConnection.newInstance(URI.create(command.getTarget()));
+                    final HttpConnection connection = HttpConnection.newInstance(URI.create(command.getTarget()));
                     if (command.getHttpMethod().equalsIgnoreCase(ServiceCommand.TYPE_POST)) {
                         connection.setMethod(HttpConnection.Method.POST);
                         if (payload != null) {
                             connection.setPayload(payload.toString());
                         }
                     }
-                    connection.execute();
-                    int code = connection.getResponseCode();
-                    Log.d("", "RESP " + code);
-                    if (code == 200 || code == 201) {
-                        Util.postSuccess(command.getResponseListener(), connection.getResponseString());
-                    } else {
-                        Util.postError(command.getResponseListener(), ServiceCommandError.getError(code));
-                    }
+                    connection.setTimeout(command.getTimeout());
+                    command.setCancelListener(new ServiceCommand.CancelListener() {
+
+                        @Override
+                        public void onCancel(ServiceCommand<?> command) {
+                            connection.cancel();
+                        }
+                    });
+                    connection.executeAsync(new HttpConnection.ResponseCallback() {
+
+                        @Override
+                        public void onComplete(HttpConnection connection) {
+                            try {
+                                int code = connection.getResponseCode();
+                                Log.d("", "RESP " + code);
+                                if (code == 200 || code == 201) {
+                                    Util.postSuccess(command.getResponseListener(), command.isRawResponse()
+                                            ? connection.getResponseBytes() : connection.getResponseString());
+                                } else {
+                                    Util.postError(command.getResponseListener(), ServiceCommandError.getError(code));
+                                }
+                            } catch (IOException e) {
+                                onError(e);
+                            }
+                        }
+
+                        @Override
+                        public void onError(IOException e) {
+                            e.printStackTrace();
+                            Util.postError(command.getResponseListener(), new ServiceCommandError(0, e.getMessage(), null));
+                        }
+                    });
                 } catch (IOException e) {
                     e.printStackTrace();
                     Util.postError(command.getResponseListener(), new ServiceCommandError(0, e.getMessage(), null));
@@ -498,7 +498,7 @@ public class VizioService extends DeviceService implements PowerControl, KeyCont
 
     @Override
     public void sendCommand(final ServiceCommand<?> serviceCommand) {
-        Util.runInBackground(new Runnable() {
+        runCommand(serviceCommand, new Runnable() {
             @Override
             public void run() {
                 ServiceCommand serviceCommand2 = serviceCommand;
@@ -506,7 +506,17 @@ public class VizioService extends DeviceService implements PowerControl, KeyCont
                 try {
                     URL url = new URL(serviceCommand2.getTarget());
                     VizioService.this.setupHTTPS();
-                    HttpsURLConnection httpsURLConnection = (HttpsURLConnection) url.openConnection();
+                    final HttpsURLConnection httpsURLConnection = (HttpsURLConnection) url.openConnection();
+                    int timeout = (int) Math.max(0, serviceCommand2.getTimeout());
+                    httpsURLConnection.setConnectTimeout(timeout);
+                    httpsURLConnection.setReadTimeout(timeout);
+                    serviceCommand2.setCancelListener(new ServiceCommand.CancelListener() {
+
+                        @Override
+                        public void onCancel(ServiceCommand<?> command) {
+                            httpsURLConnection.disconnect();
+                        }
+                    });
                     HashMap<String, String> headers = serviceCommand2.getHeaders();
                     if (!headers.isEmpty()) {
                         for (String str2 : headers.keySet()) {
@@ -36,6 +36,8 @@ import com.connectsdk.core.Util;
 import com.connectsdk.discovery.DiscoveryFilter;
 import com.connectsdk.discovery.DiscoveryManager;
 import com.connectsdk.discovery.DiscoveryManager.PairingLevel;
+import com.connectsdk.discovery.provider.ssdp.SSDPDeviceDescriptionParser;
+import com.connectsdk.discovery.provider.ssdp.Service;
 import com.connectsdk.service.capability.CapabilityMethods;
 import com.connectsdk.service.capability.ExternalInputControl;
 import com.connectsdk.service.capability.KeyControl;
@@ -73,18 +75,12 @@ import com.connectsdk.service.webos.WebOSTVMouseSocketConnection;
 import com.connectsdk.service.webos.WebOSTVServiceSocketClient;
 import com.connectsdk.service.webos.WebOSTVServiceSocketClient.WebOSTVServiceSocketClientListener;
 
-import com.connectsdk.service.webos.lgcast.common.utils.XmlUtil;
 import com.connectsdk.service.webos.lgcast.remotecamera.api.RemoteCameraApi;
 import com.connectsdk.service.webos.lgcast.screenmirroring.api.ScreenMirroringApi;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -92,13 +88,13 @@ import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 
 @SuppressLint("DefaultLocale")
 public class WebOSTVService extends WebOSTVDeviceService implements Launcher, MediaPlayer, PlaylistControl, VolumeControl, TVControl, ToastControl, ExternalInputControl, MouseControl, KeyControl, TextInputControl, WebAppLauncher, ScreenMirroringControl, RemoteCameraControl {
 
     public static final String ID = "webOS TV";
+    /* app launches are answered once the app has started */
+    private static final long COMMAND_TIMEOUT = 15 * 1000;
     private static final String MEDIA_PLAYER_ID = "MediaPlayer";
 
     public interface SecureAccessTestListener extends ResponseListener<Boolean> { }
@@ -208,15 +204,11 @@ public class WebOSTVService extends WebOSTVDeviceService implements Launcher, Me
             this.serviceDescription.setVersion(systemVersion);
 
             try {
-                DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-                DocumentBuilder docBuilder = dbFactory.newDocumentBuilder();
-                InputSource source = new InputSource();
-                source.setCharacterStream(new StringReader(serviceDescription.getLocationXML()));
-                Document doc = docBuilder.parse(source);
-                NodeList nodes = doc.getElementsByTagName("serviceId");
-                Node node = nodes.item(0);
-
-                String[] tempArr = node.getTextContent().split("-");
+                // the first service of the description, e.g. urn:lge-com:serviceId:webos-second-screen-3000-3001
+                List<Service> services = serviceDescription.getServiceList();
+                String serviceId = services.get(0).serviceId.trim();
+
+                String[] tempArr = serviceId.split("-");
                 this.serviceDescription.setPort(Integer.parseInt(tempArr[tempArr.length - 1]));
             } catch (Exception e) {
                 e.printStackTrace();
@@ -805,6 +797,7 @@ public class WebOSTVService extends WebOSTVDeviceService implements Launcher, Me
     public void volumeUp(ResponseListener<Object> listener) {
         String uri = "ssap://audio/volumeUp";
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, true, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
 
         request.send();
     }
@@ -817,6 +810,7 @@ public class WebOSTVService extends WebOSTVDeviceService implements Launcher, Me
     public void volumeDown(ResponseListener<Object> listener) {
         String uri = "ssap://audio/volumeDown";
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, true, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
 
         request.send();
     }
@@ -1164,6 +1158,7 @@ public class WebOSTVService extends WebOSTVDeviceService implements Launcher, Me
         String uri = "ssap://tv/channelUp";
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, true, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -1176,6 +1171,7 @@ public class WebOSTVService extends WebOSTVDeviceService implements Launcher, Me
         String uri = "ssap://tv/channelDown";
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, true, listener);
+        request.setPriority(ServiceCommand.Priority.INTERACTIVE);
         request.send();
     }
 
@@ -2387,6 +2383,11 @@ public class WebOSTVService extends WebOSTVDeviceService implements Launcher, Me
         Util.postError(listener, ServiceCommandError.notSupported());
     }
 
+    @Override
+    public long getCommandTimeout() {
+        return COMMAND_TIMEOUT;
+    }
+
     @Override
     public void sendCommand(ServiceCommand<?> command) {
         if (socket != null)
@@ -2466,9 +2467,8 @@ public class WebOSTVService extends WebOSTVDeviceService implements Launcher, Me
                 capabilities.add(MediaPlayer.Loop);
             }
 
-            String locationXML = serviceDescription.getLocationXML();
-            String appCasting = (locationXML != null) ? XmlUtil.findElement(locationXML, "appCasting") : null;
-            String appCastingFeature = (locationXML != null) ? XmlUtil.findElement(locationXML, "supportAppcastingFeatures") : null;
+            String appCasting = serviceDescription.getDescriptionElement(SSDPDeviceDescriptionParser.TAG_APP_CASTING);
+            String appCastingFeature = serviceDescription.getDescriptionElement(SSDPDeviceDescriptionParser.TAG_SUPPORT_APPCASTING_FEATURES);
 
             if (appCastingFeature != null) {
                 // <supportAppcastingFeatures>mirroring|remote-camera</supportAppcastingFeatures>
@@ -3,6 +3,7 @@ package com.connectsdk.service.airplay;
 import android.annotation.SuppressLint;
 import android.util.Log;
 
+import com.connectsdk.core.CommandDispatcher;
 import com.connectsdk.core.Util;
 import com.connectsdk.etc.helper.HttpMessage;
 import com.connectsdk.service.DeviceService.PairingType;
@@ -41,6 +42,8 @@ public class AirPlayServiceSocketClient implements ServiceCommandProcessor {
     AirPlayAuth airPlayAuth;
     Socket socket;
     AirPlayServiceConfig mconfig;
+    /* requests share the authenticated socket, so they run one after another in the device lane */
+    final String commandLane;
 
     public String getAuthToken() {
         return mconfig.getAuthToken();
@@ -53,6 +56,7 @@ public class AirPlayServiceSocketClient implements ServiceCommandProcessor {
     public AirPlayServiceSocketClient(AirPlayServiceConfig config, PairingType pairingType , String ipAddress) {
         this.mPairingType = pairingType;
         this.mconfig = config;
+        this.commandLane = ipAddress;
         if (mconfig.getAuthToken() == "") {
             mconfig.setAuthToken(AirPlayAuth.generateNewAuthToken());
         }
@@ -151,8 +155,14 @@ public class AirPlayServiceSocketClient implements ServiceCommandProcessor {
     }
 
     public void sendCommand(final ServiceCommand<?> serviceCommand) {
-        new Thread(new Runnable() {
+        CommandDispatcher.getInstance().execute(commandLane, serviceCommand.getPriority(), new Runnable() {
             public void run() {
+                // the authenticated socket is shared, so a request cannot be aborted once sent
+                if (serviceCommand.isCancelled())
+                    return;
+
+                serviceCommand.markStarted();
+
                 byte[] payload = (byte[]) serviceCommand.getPayload();
                 String url = serviceCommand.getTarget();
 
@@ -173,13 +183,17 @@ public class AirPlayServiceSocketClient implements ServiceCommandProcessor {
                     Util.postError(serviceCommand.getResponseListener(), ServiceCommandError.getError(statusCode));
                 }
             }
-        }).start();
+        });
     }
 
     public void unsubscribe(URLServiceSubscription<?> subscription) { }
 
     public void unsubscribe(ServiceSubscription<?> subscription) { }
 
+    public String getCommandLane() {
+        return commandLane;
+    }
+
     public interface AirPlayServiceSocketClientListener {
 
         public void onConnect();
@@ -0,0 +1,184 @@
+/*
+ * CapabilityQuery
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.capability;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+
+/**
+ * A list of capabilities compiled for matching against a CapabilitySet.
+ *
+ * Capabilities ending with the `.Any` wildcard (e.g. `MediaControl.Any`) match every capability
+ * which contains the term up to the wildcard, see CapabilityMethods.ANY_PATTERN. A wildcard is
+ * compiled into the set of all known capabilities it matches, and compiled again when new
+ * capability names have been interned since.
+ *
+ * Compiling a query never interns a name. A capability which no CapabilitySet has contained yet
+ * cannot be in any set, so it does not match until a set with it has been created.
+ */
+public final class CapabilityQuery {
+
+    /* Compiled single capabilities, their number is bounded by the capability constants in practice */
+    private static final ConcurrentHashMap<String, CapabilityQuery> singles = new ConcurrentHashMap<String, CapabilityQuery>();
+    private static final int MAX_CACHED_SINGLES = 1024;
+
+    private static final String[] NONE = new String[0];
+
+    private final CapabilitySet required;
+    private final String[] wildcards;
+    /* exact capabilities which had not been interned when the query was compiled */
+    private final String[] unknown;
+
+    private volatile CapabilitySet[] wildcardMasks;
+    private volatile int wildcardGeneration = -1;
+
+    private CapabilityQuery(CapabilitySet required, String[] wildcards, String[] unknown) {
+        this.required = required;
+        this.wildcards = wildcards;
+        this.unknown = unknown;
+    }
+
+    /** Returns the compiled query for one capability, which is cached */
+    public static CapabilityQuery compile(String capability) {
+        CapabilityQuery query = singles.get(capability);
+
+        if (query == null) {
+            Matcher m = CapabilityMethods.ANY_PATTERN.matcher(capability);
+
+            if (m.find()) {
+                query = new CapabilityQuery(CapabilitySet.EMPTY, new String[] { m.group() }, NONE);
+            } else {
+                int id = CapabilitySet.idOf(capability);
+
+                // unknown names are not cached, so that queries for arbitrary names don't pile up
+                if (id < 0)
+                    return new CapabilityQuery(CapabilitySet.EMPTY, NONE, new String[] { capability });
+
+                query = new CapabilityQuery(CapabilitySet.ofIds(Collections.singletonList(id)), NONE, NONE);
+            }
+
+            if (singles.size() < MAX_CACHED_SINGLES)
+                singles.put(capability, query);
+        }
+
+        return query;
+    }
+
+    public static CapabilityQuery compile(String... capabilities) {
+        if (capabilities.length == 1)
+            return compile(capabilities[0]);
+
+        return compile(Arrays.asList(capabilities));
+    }
+
+    public static CapabilityQuery compile(Collection<String> capabilities) {
+        List<Integer> exactIds = new ArrayList<Integer>();
+        List<String> wildcards = new ArrayList<String>();
+        List<String> unknown = new ArrayList<String>();
+
+        for (String capability : capabilities) {
+            CapabilityQuery single = compile(capability);
+
+            if (single.wildcards.length > 0) {
+                if (!wildcards.contains(single.wildcards[0]))
+                    wildcards.add(single.wildcards[0]);
+            } else if (single.unknown.length > 0) {
+                if (!unknown.contains(capability))
+                    unknown.add(capability);
+            } else {
+                exactIds.add(CapabilitySet.idOf(capability));
+            }
+        }
+
+        return new CapabilityQuery(CapabilitySet.ofIds(exactIds), wildcards.toArray(new String[wildcards.size()]),
+                unknown.isEmpty() ? NONE : unknown.toArray(new String[unknown.size()]));
+    }
+
+    /** Whether the set contains every capability of the query */
+    public boolean matchesAll(CapabilitySet capabilities) {
+        if (!capabilities.containsAll(required))
+            return false;
+
+        for (String capability : unknown) {
+            if (!capabilities.contains(capability))
+                return false;
+        }
+
+        if (wildcards.length > 0) {
+            for (CapabilitySet mask : getWildcardMasks()) {
+                if (!capabilities.intersects(mask))
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    /** Whether the set contains at least one capability of the query */
+    public boolean matchesAny(CapabilitySet capabilities) {
+        if (capabilities.intersects(required))
+            return true;
+
+        for (String capability : unknown) {
+            if (capabilities.contains(capability))
+                return true;
+        }
+
+        if (wildcards.length > 0) {
+            for (CapabilitySet mask : getWildcardMasks()) {
+                if (capabilities.intersects(mask))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    private CapabilitySet[] getWildcardMasks() {
+        int generation = CapabilitySet.internedCount();
+
+        if (generation == wildcardGeneration)
+            return wildcardMasks;
+
+        CapabilitySet[] masks = new CapabilitySet[wildcards.length];
+
+        for (int i = 0; i < wildcards.length; i++) {
+            List<Integer> matching = new ArrayList<Integer>();
+
+            for (int id = 0; id < generation; id++) {
+                if (CapabilitySet.nameOf(id).contains(wildcards[i]))
+                    matching.add(id);
+            }
+
+            masks[i] = CapabilitySet.ofIds(matching);
+        }
+
+        // masks are published before the generation which marks them as current
+        wildcardMasks = masks;
+        wildcardGeneration = generation;
+
+        return masks;
+    }
+}
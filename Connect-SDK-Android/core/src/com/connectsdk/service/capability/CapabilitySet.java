@@ -0,0 +1,226 @@
+/*
+ * CapabilitySet
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.capability;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable set of capabilities stored as a bitset. Every capability name is interned to an
+ * integer ID the first time it is seen, so sets of services and devices can be compared with
+ * bitwise operations instead of string searches.
+ */
+public final class CapabilitySet {
+
+    public static final CapabilitySet EMPTY = new CapabilitySet(new long[0]);
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private static final List<String> names = new ArrayList<String>();
+
+    private final long[] words;
+
+    private CapabilitySet(long[] words) {
+        this.words = words;
+    }
+
+    // @cond INTERNAL
+    /** Returns the ID of the capability, assigning the next free one to a new name */
+    public static int intern(String capability) {
+        Integer id = ids.get(capability);
+
+        if (id != null)
+            return id;
+
+        synchronized (names) {
+            id = ids.get(capability);
+
+            if (id == null) {
+                id = names.size();
+                names.add(capability);
+                ids.put(capability, id);
+            }
+
+            return id;
+        }
+    }
+
+    /** Returns the ID of the capability, or -1 if no set has contained it yet */
+    public static int idOf(String capability) {
+        Integer id = ids.get(capability);
+        return id != null ? id : -1;
+    }
+
+    /** Number of capability names interned so far, which grows whenever a new name is seen */
+    public static int internedCount() {
+        synchronized (names) {
+            return names.size();
+        }
+    }
+
+    static String nameOf(int id) {
+        synchronized (names) {
+            return names.get(id);
+        }
+    }
+    // @endcond
+
+    public static CapabilitySet of(Collection<String> capabilities) {
+        if (capabilities == null || capabilities.isEmpty())
+            return EMPTY;
+
+        long[] words = new long[0];
+
+        for (String capability : capabilities) {
+            if (capability == null)
+                continue;
+
+            int id = intern(capability);
+            int word = id >>> 6;
+
+            if (word >= words.length)
+                words = Arrays.copyOf(words, word + 1);
+
+            words[word] |= 1L << id;
+        }
+
+        return new CapabilitySet(words);
+    }
+
+    public static CapabilitySet of(String... capabilities) {
+        return of(Arrays.asList(capabilities));
+    }
+
+    static CapabilitySet ofIds(List<Integer> capabilityIds) {
+        long[] words = new long[0];
+
+        for (int id : capabilityIds) {
+            int word = id >>> 6;
+
+            if (word >= words.length)
+                words = Arrays.copyOf(words, word + 1);
+
+            words[word] |= 1L << id;
+        }
+
+        return words.length == 0 ? EMPTY : new CapabilitySet(words);
+    }
+
+    public boolean contains(String capability) {
+        int id = idOf(capability);
+        return id >= 0 && contains(id);
+    }
+
+    public boolean contains(int id) {
+        int word = id >>> 6;
+        return word < words.length && (words[word] & (1L << id)) != 0;
+    }
+
+    /** Whether this set contains every capability of the other set */
+    public boolean containsAll(CapabilitySet other) {
+        for (int i = 0; i < other.words.length; i++) {
+            long word = i < words.length ? words[i] : 0;
+
+            if ((word & other.words[i]) != other.words[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    /** Whether this set contains at least one capability of the other set */
+    public boolean intersects(CapabilitySet other) {
+        int length = Math.min(words.length, other.words.length);
+
+        for (int i = 0; i < length; i++) {
+            if ((words[i] & other.words[i]) != 0)
+                return true;
+        }
+
+        return false;
+    }
+
+    public CapabilitySet union(CapabilitySet other) {
+        if (other.words.length == 0)
+            return this;
+        if (words.length == 0)
+            return other;
+
+        long[] result = Arrays.copyOf(words, Math.max(words.length, other.words.length));
+        for (int i = 0; i < other.words.length; i++) {
+            result[i] |= other.words[i];
+        }
+
+        return new CapabilitySet(result);
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    public List<String> toList() {
+        List<String> list = new ArrayList<String>();
+
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                list.add(nameOf(i * 64 + bit));
+                word &= word - 1;
+            }
+        }
+
+        return list;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof CapabilitySet))
+            return false;
+
+        CapabilitySet other = (CapabilitySet) o;
+        return containsAll(other) && other.containsAll(this);
+    }
+
+    @Override
+    public int hashCode() {
+        int length = words.length;
+        while (length > 0 && words[length - 1] == 0) {
+            length--;
+        }
+
+        return Arrays.hashCode(Arrays.copyOf(words, length));
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+}
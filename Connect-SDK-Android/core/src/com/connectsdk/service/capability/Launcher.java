@@ -21,8 +21,10 @@
 package com.connectsdk.service.capability;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import com.connectsdk.core.AppInfo;
+import com.connectsdk.core.Futures;
 import com.connectsdk.service.capability.listeners.ResponseListener;
 import com.connectsdk.service.command.ServiceSubscription;
 import com.connectsdk.service.sessions.LaunchSession;
@@ -94,6 +96,26 @@ public interface Launcher extends CapabilityMethods {
     public void launchHulu(String contentId, AppLaunchListener listener);
     public void launchAppStore(String appId, AppLaunchListener listener);
 
+    /**
+     * Future based variant of launchApp(String, AppLaunchListener).
+     * By default it only adapts the listener of that method.
+     */
+    public default CompletableFuture<LaunchSession> launchAppAsync(String appId) {
+        CompletableFuture<LaunchSession> future = new CompletableFuture<LaunchSession>();
+        launchApp(appId, Futures.newListener(AppLaunchListener.class, future));
+        return future;
+    }
+
+    /**
+     * Future based variant of getAppList(AppListListener).
+     * By default it only adapts the listener of that method.
+     */
+    public default CompletableFuture<List<AppInfo>> getAppListAsync() {
+        CompletableFuture<List<AppInfo>> future = new CompletableFuture<List<AppInfo>>();
+        getAppList(Futures.newListener(AppListListener.class, future));
+        return future;
+    }
+
     /**
      * Success listener that is called upon successfully launching an app.
      *
@@ -20,6 +20,9 @@
 
 package com.connectsdk.service.capability;
 
+import java.util.concurrent.CompletableFuture;
+
+import com.connectsdk.core.Futures;
 import com.connectsdk.service.capability.listeners.ResponseListener;
 import com.connectsdk.service.command.ServiceSubscription;
 
@@ -227,6 +230,36 @@ public interface MediaControl extends CapabilityMethods {
      */
     public void getPlayState(PlayStateListener listener);
 
+    /**
+     * Future based variant of getDuration(DurationListener).
+     * By default it only adapts the listener of that method.
+     */
+    public default CompletableFuture<Long> getDurationAsync() {
+        CompletableFuture<Long> future = new CompletableFuture<Long>();
+        getDuration(Futures.newListener(DurationListener.class, future));
+        return future;
+    }
+
+    /**
+     * Future based variant of getPosition(PositionListener).
+     * By default it only adapts the listener of that method.
+     */
+    public default CompletableFuture<Long> getPositionAsync() {
+        CompletableFuture<Long> future = new CompletableFuture<Long>();
+        getPosition(Futures.newListener(PositionListener.class, future));
+        return future;
+    }
+
+    /**
+     * Future based variant of getPlayState(PlayStateListener).
+     * By default it only adapts the listener of that method.
+     */
+    public default CompletableFuture<PlayStateStatus> getPlayStateAsync() {
+        CompletableFuture<PlayStateStatus> future = new CompletableFuture<PlayStateStatus>();
+        getPlayState(Futures.newListener(PlayStateListener.class, future));
+        return future;
+    }
+
     /**
      * Subscribe for playback state changes
      * @param listener receives play state notifications
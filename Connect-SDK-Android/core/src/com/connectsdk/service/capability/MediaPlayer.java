@@ -20,6 +20,9 @@
 
 package com.connectsdk.service.capability;
 
+import java.util.concurrent.CompletableFuture;
+
+import com.connectsdk.core.Futures;
 import com.connectsdk.core.MediaInfo;
 import com.connectsdk.service.capability.listeners.ResponseListener;
 import com.connectsdk.service.command.ServiceSubscription;
@@ -82,6 +85,16 @@ public interface MediaPlayer extends CapabilityMethods {
 
     public void playMedia(MediaInfo mediaInfo, boolean shouldLoop, LaunchListener listener);
 
+    /**
+     * Future based variant of playMedia(MediaInfo, boolean, LaunchListener).
+     * By default it only adapts the listener of that method.
+     */
+    public default CompletableFuture<MediaLaunchObject> playMediaAsync(MediaInfo mediaInfo, boolean shouldLoop) {
+        CompletableFuture<MediaLaunchObject> future = new CompletableFuture<MediaLaunchObject>();
+        playMedia(mediaInfo, shouldLoop, Futures.newListener(LaunchListener.class, future));
+        return future;
+    }
+
     public void closeMedia(LaunchSession launchSession, ResponseListener<Object> listener);
 
     /**
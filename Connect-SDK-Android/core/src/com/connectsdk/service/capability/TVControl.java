@@ -21,8 +21,10 @@
 package com.connectsdk.service.capability;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import com.connectsdk.core.ChannelInfo;
+import com.connectsdk.core.Futures;
 import com.connectsdk.core.ProgramInfo;
 import com.connectsdk.core.ProgramList;
 import com.connectsdk.service.capability.listeners.ResponseListener;
@@ -74,6 +76,26 @@ public interface TVControl extends CapabilityMethods {
 
     public void getChannelList(ChannelListListener listener);
 
+    /**
+     * Future based variant of getCurrentChannel(ChannelListener).
+     * By default it only adapts the listener of that method.
+     */
+    public default CompletableFuture<ChannelInfo> getCurrentChannelAsync() {
+        CompletableFuture<ChannelInfo> future = new CompletableFuture<ChannelInfo>();
+        getCurrentChannel(Futures.newListener(ChannelListener.class, future));
+        return future;
+    }
+
+    /**
+     * Future based variant of getChannelList(ChannelListListener).
+     * By default it only adapts the listener of that method.
+     */
+    public default CompletableFuture<List<ChannelInfo>> getChannelListAsync() {
+        CompletableFuture<List<ChannelInfo>> future = new CompletableFuture<List<ChannelInfo>>();
+        getChannelList(Futures.newListener(ChannelListListener.class, future));
+        return future;
+    }
+
     public void getProgramInfo(ProgramInfoListener listener);
     public ServiceSubscription<ProgramInfoListener> subscribeProgramInfo(ProgramInfoListener listener);
 
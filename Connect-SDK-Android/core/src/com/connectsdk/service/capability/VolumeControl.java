@@ -20,6 +20,9 @@
 
 package com.connectsdk.service.capability;
 
+import java.util.concurrent.CompletableFuture;
+
+import com.connectsdk.core.Futures;
 import com.connectsdk.service.capability.listeners.ResponseListener;
 import com.connectsdk.service.command.ServiceSubscription;
 
@@ -56,6 +59,36 @@ public interface VolumeControl extends CapabilityMethods {
     public void setMute(boolean isMute, ResponseListener<Object> listener);
     public void getMute(MuteListener listener);
 
+    /**
+     * Future based variant of setVolume(float, ResponseListener).
+     * By default it only adapts the listener of that method.
+     */
+    public default CompletableFuture<Object> setVolumeAsync(float volume) {
+        CompletableFuture<Object> future = new CompletableFuture<Object>();
+        setVolume(volume, Futures.newListener(future));
+        return future;
+    }
+
+    /**
+     * Future based variant of getVolume(VolumeListener).
+     * By default it only adapts the listener of that method.
+     */
+    public default CompletableFuture<Float> getVolumeAsync() {
+        CompletableFuture<Float> future = new CompletableFuture<Float>();
+        getVolume(Futures.newListener(VolumeListener.class, future));
+        return future;
+    }
+
+    /**
+     * Future based variant of getMute(MuteListener).
+     * By default it only adapts the listener of that method.
+     */
+    public default CompletableFuture<Boolean> getMuteAsync() {
+        CompletableFuture<Boolean> future = new CompletableFuture<Boolean>();
+        getMute(Futures.newListener(MuteListener.class, future));
+        return future;
+    }
+
     public ServiceSubscription<VolumeListener> subscribeVolume(VolumeListener listener);
     public ServiceSubscription<MuteListener> subscribeMute(MuteListener listener);
 
@@ -0,0 +1,35 @@
+/*
+ * CallbackExecutor
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.capability.listeners;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Listeners are called on the main thread by default. A listener which also implements this
+ * interface is called on the executor it returns instead, for example Util.DIRECT_EXECUTOR for a
+ * listener which only feeds background work and would otherwise wait for a busy UI thread.
+ */
+public interface CallbackExecutor {
+
+    /**
+     * Returns the executor which runs the callbacks of this listener, or null for the main thread.
+     */
+    public Executor getCallbackExecutor();
+}
@@ -0,0 +1,438 @@
+/*
+ * CommandMetrics
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.command;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.connectsdk.core.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and outcomes of the commands sent to devices, grouped by the service which sent them,
+ * the command and the device. They tell which service or protocol makes remote interactions slow,
+ * and whether the time goes into waiting for the device or into waiting behind other commands.
+ *
+ * Recording is off by default and costs a single volatile read per command then. Turn it on with
+ * {@link #setEnabled(boolean)}, read a consistent copy with {@link #snapshot()}, or get every
+ * finished command pushed to a {@link Listener}. All times are in milliseconds.
+ */
+public class CommandMetrics {
+
+    private static final CommandMetrics instance = new CommandMetrics();
+
+    /** Number of groups above which the commands of a service are counted under OTHER_COMMANDS */
+    static final int MAX_ENTRIES = 512;
+    /** Command of the group for the commands which did not fit into MAX_ENTRIES */
+    public static final String OTHER_COMMANDS = "(other)";
+
+    /* path segments longer than this are taken for IDs or tokens */
+    private static final int MAX_OPERATION_SEGMENT = 32;
+
+    private static volatile boolean enabled;
+
+    /**
+     * How a command ended
+     */
+    public enum Outcome {
+        SUCCESS,
+        ERROR,
+        TIMEOUT,
+        CANCELLED
+    }
+
+    /**
+     * Called for every command which has been answered, has timed out or has been cancelled while
+     * recording is enabled. It is called on the thread which finished the command, so it should
+     * return quickly.
+     */
+    public interface Listener {
+        void onCommandFinished(Sample sample);
+    }
+
+    /**
+     * One finished command
+     */
+    public static class Sample {
+        private final String serviceName;
+        private final String command;
+        private final String device;
+        private final Outcome outcome;
+        private final int errorCode;
+        private final long queueTime;
+        private final long latency;
+        private final long payloadSize;
+        private final long responseSize;
+
+        public Sample(String serviceName, String command, String device, Outcome outcome, int errorCode,
+                long queueTime, long latency, long payloadSize, long responseSize) {
+            this.serviceName = serviceName;
+            this.command = command;
+            this.device = device;
+            this.outcome = outcome;
+            this.errorCode = errorCode;
+            this.queueTime = queueTime;
+            this.latency = latency;
+            this.payloadSize = payloadSize;
+            this.responseSize = responseSize;
+        }
+
+        /** Class name of the service or connection which processed the command */
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        /**
+         * Operation of the command: its target without host and query, and with the arguments in
+         * its path replaced by "*", like "/keypress/Home", "/keypress/*" for the letters of
+         * sendText or "ssap://audio/setVolume"
+         */
+        public String getCommand() {
+            return command;
+        }
+
+        /** Address of the device, or an empty string if it is not known */
+        public String getDevice() {
+            return device;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /** Code of the ServiceCommandError for failed commands, 0 otherwise */
+        public int getErrorCode() {
+            return errorCode;
+        }
+
+        /** Time from send() until the command was sent to the device, -1 if not known */
+        public long getQueueTime() {
+            return queueTime;
+        }
+
+        /** Time from send() until the first response reached the listener, the timeout or the cancellation */
+        public long getLatency() {
+            return latency;
+        }
+
+        /** Length of the payload, in bytes for binary payloads and in characters for text */
+        public long getPayloadSize() {
+            return payloadSize;
+        }
+
+        /** Length of the response, in bytes or characters like the payload, 0 if not known */
+        public long getResponseSize() {
+            return responseSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s: %s queue=%dms latency=%dms payload=%d response=%d",
+                    serviceName, command, device, outcome, queueTime, latency, payloadSize, responseSize);
+        }
+    }
+
+    /**
+     * Counters of the commands with the same service, command and device.
+     */
+    public static class Entry {
+        private final String serviceName;
+        private final String command;
+        private final String device;
+
+        private final LatencyHistogram latency;
+        private final LatencyHistogram queueTime;
+        private final AtomicLong[] outcomes;
+        private final AtomicLong payloadBytes;
+        private final AtomicLong responseBytes;
+
+        Entry(String serviceName, String command, String device) {
+            this.serviceName = serviceName;
+            this.command = command;
+            this.device = device;
+
+            latency = new LatencyHistogram();
+            queueTime = new LatencyHistogram();
+            outcomes = new AtomicLong[Outcome.values().length];
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = new AtomicLong();
+            }
+            payloadBytes = new AtomicLong();
+            responseBytes = new AtomicLong();
+        }
+
+        Entry(Entry other) {
+            serviceName = other.serviceName;
+            command = other.command;
+            device = other.device;
+
+            latency = new LatencyHistogram(other.latency);
+            queueTime = new LatencyHistogram(other.queueTime);
+            outcomes = new AtomicLong[other.outcomes.length];
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = new AtomicLong(other.outcomes[i].get());
+            }
+            payloadBytes = new AtomicLong(other.payloadBytes.get());
+            responseBytes = new AtomicLong(other.responseBytes.get());
+        }
+
+        void record(Sample sample) {
+            latency.record(sample.getLatency());
+            if (sample.getQueueTime() >= 0)
+                queueTime.record(sample.getQueueTime());
+            outcomes[sample.getOutcome().ordinal()].incrementAndGet();
+            payloadBytes.addAndGet(sample.getPayloadSize());
+            responseBytes.addAndGet(sample.getResponseSize());
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public String getDevice() {
+            return device;
+        }
+
+        /** Time from send() until the first response reached the listener, the timeout or the cancellation */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /** Time from send() until the command was sent to the device */
+        public LatencyHistogram getQueueTime() {
+            return queueTime;
+        }
+
+        public long getCount(Outcome outcome) {
+            return outcomes[outcome.ordinal()].get();
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (AtomicLong value : outcomes) {
+                count += value.get();
+            }
+            return count;
+        }
+
+        /** Ratio of the commands which did not succeed, between 0 and 1 */
+        public double getErrorRate() {
+            long count = getCount();
+            return count == 0 ? 0 : (count - getCount(Outcome.SUCCESS)) / (double) count;
+        }
+
+        public long getPayloadSize() {
+            return payloadBytes.get();
+        }
+
+        public long getResponseSize() {
+            return responseBytes.get();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s: ok=%d errors=%d timeouts=%d cancelled=%d latency=[%s] queue=[%s]",
+                    serviceName, command, device, getCount(Outcome.SUCCESS), getCount(Outcome.ERROR),
+                    getCount(Outcome.TIMEOUT), getCount(Outcome.CANCELLED), latency, queueTime);
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries;
+    private volatile Listener listener;
+
+    public static CommandMetrics getInstance() {
+        return instance;
+    }
+
+    // @cond INTERNAL
+    CommandMetrics() {
+        entries = new ConcurrentHashMap<String, Entry>();
+    }
+    // @endcond
+
+    private CommandMetrics(CommandMetrics other) {
+        entries = new ConcurrentHashMap<String, Entry>();
+        for (Map.Entry<String, Entry> entry : other.entries.entrySet()) {
+            entries.put(entry.getKey(), new Entry(entry.getValue()));
+        }
+    }
+
+    /**
+     * Turns recording on or off. Commands which are already on their way are only recorded if
+     * recording was on when they were sent.
+     */
+    public static void setEnabled(boolean enabled) {
+        CommandMetrics.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Sets the listener which gets every finished command, null to remove it */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Returns a copy which does not change anymore */
+    public CommandMetrics snapshot() {
+        return new CommandMetrics(this);
+    }
+
+    /** Returns the counters of a service, command and device, or null if none has been recorded */
+    public Entry getEntry(String serviceName, String command, String device) {
+        return entries.get(key(serviceName, command, device));
+    }
+
+    public List<Entry> getAllEntries() {
+        List<Entry> list = new ArrayList<Entry>(entries.values());
+        return Collections.unmodifiableList(list);
+    }
+
+    public void reset() {
+        entries.clear();
+    }
+
+    // @cond INTERNAL
+    public void record(Sample sample) {
+        String command = sample.getCommand();
+        String device = sample.getDevice();
+        String key = key(sample.getServiceName(), command, device);
+        Entry entry = entries.get(key);
+
+        // commands with arguments which have not been recognized must not grow the groups without bound
+        if (entry == null && entries.size() >= MAX_ENTRIES) {
+            command = OTHER_COMMANDS;
+            device = "";
+            key = key(sample.getServiceName(), command, device);
+            entry = entries.get(key);
+        }
+
+        if (entry == null) {
+            entry = new Entry(sample.getServiceName(), command, device);
+
+            Entry existing = entries.putIfAbsent(key, entry);
+            if (existing != null)
+                entry = existing;
+        }
+
+        entry.record(sample);
+
+        Listener listener = this.listener;
+        if (listener != null)
+            listener.onCommandFinished(sample);
+    }
+    // @endcond
+
+    private static String key(String serviceName, String command, String device) {
+        return serviceName + '\n' + command + '\n' + device;
+    }
+
+    /* the operation of a command: its target without host, query and arguments, so commands to different devices and with different arguments match */
+    static String getCommandName(String target) {
+        if (target == null)
+            return "";
+
+        int query = target.indexOf('?');
+        if (query >= 0)
+            target = target.substring(0, query);
+
+        String prefix = "";
+        int scheme = target.indexOf("://");
+
+        if (target.startsWith("http://") || target.startsWith("https://")) {
+            int path = target.indexOf('/', scheme + 3);
+            target = path >= 0 ? target.substring(path) : "/";
+        } else if (scheme >= 0) {
+            prefix = target.substring(0, scheme + 3);
+            target = target.substring(scheme + 3);
+        }
+
+        StringBuilder sb = new StringBuilder(prefix);
+        int start = 0;
+
+        while (start <= target.length()) {
+            int end = target.indexOf('/', start);
+            if (end < 0)
+                end = target.length();
+
+            String segment = target.substring(start, end);
+            sb.append(isArgument(segment) ? "*" : segment);
+
+            if (end < target.length())
+                sb.append('/');
+            start = end + 1;
+        }
+
+        return sb.toString();
+    }
+
+    /* path segments which carry a value of the call rather than name an operation, like the letter of a Roku Lit_ keypress or an app ID */
+    private static boolean isArgument(String segment) {
+        if (segment.startsWith("Lit_") || segment.indexOf('%') >= 0 || segment.length() > MAX_OPERATION_SEGMENT)
+            return true;
+
+        for (int i = 0; i < segment.length(); i++) {
+            if (Character.isDigit(segment.charAt(i)))
+                return true;
+        }
+
+        return false;
+    }
+
+    static long getSize(Object value) {
+        if (value instanceof String)
+            return ((String) value).length();
+        else if (value instanceof byte[])
+            return ((byte[]) value).length;
+        else if (value instanceof JSONObject || value instanceof JSONArray)
+            return value.toString().length();
+
+        return 0;
+    }
+
+    static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        for (Entry entry : entries.values()) {
+            if (sb.length() > 0)
+                sb.append('\n');
+            sb.append(entry);
+        }
+
+        return sb.toString();
+    }
+}
@@ -27,12 +27,28 @@ import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.json.JSONObject;
 
+import com.connectsdk.core.Futures;
+import com.connectsdk.core.Util;
+import com.connectsdk.service.capability.listeners.CallbackExecutor;
 import com.connectsdk.service.capability.listeners.ResponseListener;
 
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 /**
  * Internal implementation of ServiceCommand for URL-based commands
+ *
+ * A command which is sent with send() has a deadline for its first response, which is its
+ * timeout or else the command timeout of its processor. If there is no response in time, the
+ * listener gets a TimeoutServiceCommandError and the command is cancelled. A cancelled command
+ * does not call its listener anymore, and its processor releases what it holds for the command
+ * through the CancelListener.
  */
 public class ServiceCommand<T extends ResponseListener<? extends Object>> {
     public static final String TYPE_REQ = "request";
@@ -41,17 +57,44 @@ public class ServiceCommand<T extends ResponseListener<? extends Object>> {
     public static final String TYPE_POST = "POST";
     public static final String TYPE_DEL = "DELETE";
     public static final String TYPE_PUT = "PUT";
+    /* command timeout (in milliseconds) of services which don't have their own */
+    public static final long DEFAULT_TIMEOUT = 10 * 1000;
+
+    private static ScheduledThreadPoolExecutor deadlineExecutor;
     protected HashMap<String, String> headers;
 
     protected ServiceCommandProcessor processor;
     protected String httpMethod; // WebOSTV: {request, subscribe}, NetcastTV: {GET, POST}
     protected Object payload;
     protected String target;
+    /* whether the response is passed to the listener as bytes instead of a string */
+    protected boolean rawResponse;
+    protected Priority priority = Priority.NORMAL;
 
     int requestId;
 
     ResponseListener<Object> responseListener;
 
+    /* deadline (in milliseconds) for the first response, 0 for the timeout of the processor */
+    protected long timeout;
+    private boolean responded;
+    private boolean cancelled;
+    private boolean timedOut;
+    private ScheduledFuture<?> deadline;
+    private CancelListener cancelListener;
+    /* called once when the command is answered, cancelled or times out */
+    private Runnable doneListener;
+
+    /* times (in milliseconds) for CommandMetrics, -1 unless recording was on when sent */
+    private volatile long sendTime = -1;
+    private volatile long startTime = -1;
+    private boolean recorded;
+
+    /* executor for the callbacks, null for the one of the listener */
+    private Executor callbackExecutor;
+
+    private final ResponseListener<Object> completionListener = new CompletionListener();
+
     public ServiceCommand(ServiceCommandProcessor processor, String targetURL, Object payload, ResponseListener<Object> listener) {
         this.processor = processor;
         this.target = targetURL;
@@ -69,10 +112,334 @@ public class ServiceCommand<T extends ResponseListener<? extends Object>> {
         responseListener = listener;
     }
 
-    public void send() {
+    /**
+     * Sends the command to its processor and starts its deadline.
+     *
+     * @return The command, which can be cancelled until it is answered
+     */
+    public ServiceCommand<T> send() {
+        if (CommandMetrics.isEnabled())
+            sendTime = CommandMetrics.now();
+
+        startDeadline();
         processor.sendCommand(this);
+        return this;
+    }
+
+    /**
+     * Sends the command with a future as its listener, in place of the listener it was created
+     * with. The future is completed on a background thread of Util.getExecutor(), and cancelling it
+     * cancels the command.
+     */
+    public CompletableFuture<Object> sendAsync() {
+        final CompletableFuture<Object> future = new CompletableFuture<Object>();
+
+        responseListener = Futures.newListener(future);
+        future.whenComplete(new BiConsumer<Object, Throwable>() {
+
+            @Override
+            public void accept(Object result, Throwable throwable) {
+                if (future.isCancelled())
+                    cancel();
+            }
+        });
+
+        send();
+        return future;
+    }
+
+    /**
+     * Cancels the command. Its listener is not called anymore, and the request is aborted where
+     * the processor supports it.
+     */
+    public void cancel() {
+        CancelListener listener;
+        Runnable done;
+
+        synchronized (this) {
+            if (cancelled || timedOut)
+                return;
+
+            cancelled = true;
+            listener = finish();
+            done = takeDoneListener();
+        }
+
+        recordMetrics(CommandMetrics.Outcome.CANCELLED, null, null);
+
+        if (listener != null)
+            listener.onCancel(this);
+        if (done != null)
+            done.run();
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled || timedOut;
+    }
+
+    public synchronized boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Returns whether the command has been answered. Later responses still reach the listener.
+     */
+    public synchronized boolean isResponded() {
+        return responded;
+    }
+
+    /**
+     * Returns the deadline (in milliseconds) for the first response. Once the command has been
+     * sent, this is the timeout of its processor unless the command has its own.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the deadline (in milliseconds) for the first response, which has to be done before the
+     * command is sent. 0 uses the timeout of the processor, a negative value means no deadline.
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
     }
 
+    /**
+     * Returns the executor which runs the callbacks of the listener, null for the main thread.
+     * Unless it has been set, this is the executor the listener asks for through CallbackExecutor.
+     */
+    public Executor getCallbackExecutor() {
+        return callbackExecutor != null ? callbackExecutor : Util.getCallbackExecutor(responseListener);
+    }
+
+    /**
+     * Sets the executor which runs the callbacks of the listener, for example Util.DIRECT_EXECUTOR
+     * when the response only feeds another command.
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets how urgent the command is, which has to be done before the command is sent. Queued
+     * commands to a device run in order of priority.
+     */
+    public void setPriority(Priority priority) {
+        this.priority = priority != null ? priority : Priority.NORMAL;
+    }
+
+    /**
+     * Sets what the processor does when the command is cancelled or times out, like aborting its
+     * request. If the command has already been cancelled, the listener is called right away.
+     */
+    public void setCancelListener(CancelListener listener) {
+        boolean finished;
+
+        synchronized (this) {
+            cancelListener = listener;
+            finished = cancelled || timedOut;
+        }
+
+        if (finished && listener != null)
+            listener.onCancel(this);
+    }
+
+    private void startDeadline() {
+        if (timeout == 0)
+            timeout = processor.getCommandTimeout();
+
+        if (timeout <= 0)
+            return;
+
+        synchronized (this) {
+            if (responded || cancelled || timedOut)
+                return;
+
+            deadline = getDeadlineExecutor().schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    expire();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // @cond INTERNAL
+    /**
+     * Returns whether the deadline of the command runs, from send() until the first response.
+     * Commands which are not sent with send() have no deadline.
+     */
+    public synchronized boolean hasDeadline() {
+        return deadline != null;
+    }
+
+    /**
+     * Fails the command with a TimeoutServiceCommandError as if its deadline had passed, for
+     * processors which keep deadlines of their own. Does nothing once the command has been
+     * answered or has finished.
+     *
+     * @return Whether the command has expired
+     */
+    public boolean expire() {
+        CancelListener listener;
+        Runnable done;
+
+        synchronized (this) {
+            if (responded || cancelled || timedOut)
+                return false;
+
+            timedOut = true;
+            listener = finish();
+            done = takeDoneListener();
+        }
+
+        recordMetrics(CommandMetrics.Outcome.TIMEOUT, null, null);
+
+        if (listener != null)
+            listener.onCancel(this);
+        if (done != null)
+            done.run();
+
+        Util.postError(getCallbackExecutor(), responseListener, ServiceCommandError.timeout(timeout));
+        return true;
+    }
+    // @endcond
+
+    /**
+     * Stops the deadline of a cancelled command.
+     *
+     * @return The listener to call, outside of the lock
+     */
+    private CancelListener finish() {
+        if (deadline != null) {
+            deadline.cancel(false);
+            deadline = null;
+        }
+
+        CancelListener listener = cancelListener;
+        cancelListener = null;
+        return listener;
+    }
+
+    /**
+     * Records a response. Commands may be answered more than once, like webOS requests which are
+     * answered with a pairing prompt first, so only the first response stops the deadline.
+     *
+     * @return Whether the response is passed to the listener
+     */
+    private boolean respond() {
+        Runnable done;
+
+        synchronized (this) {
+            if (cancelled || timedOut)
+                return false;
+
+            if (responded)
+                return true;
+
+            responded = true;
+
+            if (deadline != null) {
+                deadline.cancel(false);
+                deadline = null;
+            }
+
+            done = takeDoneListener();
+        }
+
+        if (done != null)
+            done.run();
+        return true;
+    }
+
+    private Runnable takeDoneListener() {
+        Runnable listener = doneListener;
+        doneListener = null;
+        return listener;
+    }
+
+    /**
+     * Records the first outcome of the command, if recording was on when it was sent.
+     */
+    private void recordMetrics(CommandMetrics.Outcome outcome, Object response, ServiceCommandError error) {
+        long sent = sendTime;
+
+        if (sent < 0)
+            return;
+
+        synchronized (this) {
+            if (recorded)
+                return;
+
+            recorded = true;
+        }
+
+        long started = startTime;
+        String device = processor.getCommandLane();
+
+        CommandMetrics.getInstance().record(new CommandMetrics.Sample(
+                processor.getClass().getSimpleName(),
+                CommandMetrics.getCommandName(target),
+                device != null ? device : "",
+                outcome,
+                error != null ? error.getCode() : 0,
+                started >= 0 ? started - sent : -1,
+                CommandMetrics.now() - sent,
+                CommandMetrics.getSize(payload),
+                CommandMetrics.getSize(response)));
+    }
+
+    // @cond INTERNAL
+    /**
+     * Called by the processor when it sends the command to the device, which ends the time the
+     * command has been queued.
+     */
+    public void markStarted() {
+        if (sendTime >= 0)
+            startTime = CommandMetrics.now();
+    }
+
+    /**
+     * Sets what runs once the command has been answered, cancelled or has timed out, like letting
+     * the next command to the device go. If that has already happened, it runs right away.
+     */
+    public void setDoneListener(Runnable listener) {
+        synchronized (this) {
+            if (!responded && !cancelled && !timedOut) {
+                doneListener = listener;
+                return;
+            }
+        }
+
+        if (listener != null)
+            listener.run();
+    }
+
+    /**
+     * Returns the thread which runs the deadlines of commands and futures
+     */
+    public static synchronized ScheduledThreadPoolExecutor getDeadlineExecutor() {
+        if (deadlineExecutor == null) {
+            deadlineExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Command deadlines");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            deadlineExecutor.setRemoveOnCancelPolicy(true);
+        }
+        return deadlineExecutor;
+    }
+    // @endcond
+
     public ServiceCommandProcessor getCommandProcessor() {
         return processor;
     }
@@ -105,6 +472,18 @@ public class ServiceCommand<T extends ResponseListener<? extends Object>> {
         this.target = target;
     }
 
+    public boolean isRawResponse() {
+        return rawResponse;
+    }
+
+    /**
+     * Passes the response body to the listener as a byte[] instead of a String, for responses
+     * which are parsed from bytes anyway, like XML lists.
+     */
+    public void setRawResponse(boolean rawResponse) {
+        this.rawResponse = rawResponse;
+    }
+
     public int getRequestId() {
         return requestId;
     }
@@ -145,13 +524,74 @@ public class ServiceCommand<T extends ResponseListener<? extends Object>> {
         }
     }
 
+    /**
+     * Returns the listener to answer the command with, which drops responses once the command
+     * has been cancelled or has timed out.
+     */
     public ResponseListener<Object> getResponseListener() {
-        return responseListener;
+        return responseListener != null ? completionListener : null;
+    }
+
+    /**
+     * Passes the first response on to the listener, on the executor chosen for the command.
+     */
+    private class CompletionListener implements ResponseListener<Object>, CallbackExecutor {
+
+        @Override
+        public void onSuccess(Object object) {
+            if (respond()) {
+                recordMetrics(CommandMetrics.Outcome.SUCCESS, object, null);
+                responseListener.onSuccess(object);
+            }
+        }
+
+        @Override
+        public void onError(ServiceCommandError error) {
+            if (respond()) {
+                recordMetrics(CommandMetrics.Outcome.ERROR, null, error);
+                responseListener.onError(error);
+            }
+        }
+
+        @Override
+        public Executor getCallbackExecutor() {
+            return ServiceCommand.this.getCallbackExecutor();
+        }
     }
 
     public interface ServiceCommandProcessor {
         public void unsubscribe(URLServiceSubscription<?> subscription);
         public void unsubscribe(ServiceSubscription<?> subscription);
         public void sendCommand(ServiceCommand<?> command);
+
+        /** Deadline (in milliseconds) for commands without their own timeout, 0 for none */
+        public default long getCommandTimeout() {
+            return DEFAULT_TIMEOUT;
+        }
+
+        /** Address of the device the commands go to, which tags them in CommandMetrics */
+        public default String getCommandLane() {
+            return null;
+        }
+    }
+
+    /**
+     * How urgent a command is. Interactive commands go ahead of queued normal commands, and
+     * background commands only run when no other command to the device is queued. The commands
+     * to a device still run one at a time.
+     */
+    public enum Priority {
+        /** Key presses, pointer moves and volume steps, which the user waits for */
+        INTERACTIVE,
+        NORMAL,
+        /** Polling and keep-alive requests */
+        BACKGROUND
+    }
+
+    /**
+     * Called when a command is cancelled or times out
+     */
+    public interface CancelListener {
+        public void onCancel(ServiceCommand<?> command);
     }
 }
\ No newline at end of file
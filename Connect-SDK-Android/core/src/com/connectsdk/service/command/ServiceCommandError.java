@@ -57,6 +57,15 @@ public class ServiceCommandError extends Error {
         return new NotSupportedServiceCommandError();
     }
 
+    /**
+     * Create an error which indicates that a command has not been answered before its deadline
+     * @param timeout deadline of the command (in milliseconds)
+     * @return TimeoutServiceCommandError
+     */
+    public static ServiceCommandError timeout(long timeout) {
+        return new TimeoutServiceCommandError(timeout);
+    }
+
     /**
      * Create an error from HTTP response code
      * @param code HTTP response code
@@ -0,0 +1,35 @@
+/*
+ * TimeoutServiceCommandError
+ * Connect SDK
+ *
+ * Copyright (c) 2015 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.connectsdk.service.command;
+
+/**
+ * This class defines an Error which is returned if a command has not been answered before its
+ * deadline
+ */
+public class TimeoutServiceCommandError extends ServiceCommandError {
+
+    private static final long serialVersionUID = -2751262870236178318L;
+
+    /* HTTP 408 Request Timeout */
+    public static final int CODE = 408;
+
+    public TimeoutServiceCommandError(long timeout) {
+        super(CODE, "No response within " + timeout + " ms", null);
+    }
+}
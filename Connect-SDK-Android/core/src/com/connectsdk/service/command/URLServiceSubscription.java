@@ -44,8 +44,13 @@ public class URLServiceSubscription<T extends ResponseListener<?>> extends Servi
             httpMethod = "subscribe";
     }
 
-    public void send() {
+    /**
+     * Subscribes, without a deadline since the subscription is answered for as long as it lasts.
+     */
+    @Override
+    public ServiceCommand<T> send() {
         this.subscribe();
+        return this;
     }
 
     public void subscribe() {
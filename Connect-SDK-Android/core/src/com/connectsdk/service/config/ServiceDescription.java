@@ -53,6 +53,7 @@ public class ServiceDescription implements Cloneable {
     String version;
     List<Service> serviceList; 
     String locationXML;
+    Map<String, String> descriptionElements;
     String serviceURI;
     Map<String, List<String>> responseHeaders;
     String serviceID;
@@ -212,6 +213,22 @@ public class ServiceDescription implements Cloneable {
         this.locationXML = locationXML;
     }
 
+    /**
+     * Returns the value of an element of the device description which has no getter of its own, or
+     * null if the description does not contain the element or the element is not extracted.
+     */
+    public String getDescriptionElement(String name) {
+        return descriptionElements != null ? descriptionElements.get(name) : null;
+    }
+
+    public Map<String, String> getDescriptionElements() {
+        return descriptionElements;
+    }
+
+    public void setDescriptionElements(Map<String, String> descriptionElements) {
+        this.descriptionElements = descriptionElements;
+    }
+
     public String getServiceURI() {
         return serviceURI;
     }
@@ -264,6 +281,7 @@ public class ServiceDescription implements Cloneable {
         try { service.setModelDescription(this.modelDescription); } catch (NullPointerException ex) { }
         try { service.setApplicationURL(this.applicationURL); } catch (NullPointerException ex) { }
         try { service.setLocationXML(this.locationXML); } catch (NullPointerException ex) { }
+        try { service.setDescriptionElements(this.descriptionElements); } catch (NullPointerException ex) { }
         try { service.setResponseHeaders(this.responseHeaders); } catch (NullPointerException ex) { }
         try { service.setServiceList(this.serviceList); } catch (NullPointerException ex) { }
         try { service.setServiceFilter(this.serviceFilter); } catch (NullPointerException ex) { }
@@ -0,0 +1,203 @@
+/*
+ * RequestTable
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.webos;
+
+import com.connectsdk.service.command.ServiceCommand;
+import com.connectsdk.service.command.URLServiceSubscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The requests of a webOS connection which wait for their response, by request ID. Responses
+ * arrive on the socket thread while commands are sent from the command threads, so the table can
+ * be used from any thread without locking.
+ *
+ * Commands which are sent with ServiceCommand.send() keep their own deadline, and are removed
+ * through their CancelListener when it passes. The requests which the connection sends itself, like
+ * the registration and the pairing PIN, get a deadline here instead: the timeout of their command or
+ * else ServiceCommand.DEFAULT_TIMEOUT. While the table holds such requests, a sweep removes the
+ * ones which are past their deadline without an answer and fails them with a
+ * TimeoutServiceCommandError, so a response which never comes does not keep its listener.
+ * Subscriptions and commands with a negative timeout stay until they are removed.
+ */
+public class RequestTable {
+    /** Time (in milliseconds) between two sweeps for requests which are past their deadline */
+    static final long SWEEP_INTERVAL = 1000;
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<Integer, Entry>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    private ScheduledFuture<?> sweep;
+
+    private static class Entry {
+        final ServiceCommand<?> command;
+        final long deadline;
+
+        Entry(ServiceCommand<?> command, long deadline) {
+            this.command = command;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Returns a new request ID
+     */
+    public int nextId() {
+        return nextId.getAndIncrement();
+    }
+
+    /**
+     * Adds a request which waits for its response, replacing the request with the same ID.
+     */
+    public void put(int id, ServiceCommand<?> command) {
+        long deadline = getDeadline(command);
+
+        entries.put(id, new Entry(command, deadline));
+
+        if (deadline != NO_DEADLINE)
+            startSweep();
+    }
+
+    public ServiceCommand<?> get(int id) {
+        Entry entry = entries.get(id);
+        return entry != null ? entry.command : null;
+    }
+
+    public void remove(int id) {
+        entries.remove(id);
+    }
+
+    /**
+     * Removes a request if the ID still belongs to the command.
+     *
+     * @return Whether the command has been removed
+     */
+    public boolean remove(int id, ServiceCommand<?> command) {
+        Entry entry = entries.get(id);
+        return entry != null && entry.command == command && entries.remove(id, entry);
+    }
+
+    /**
+     * Removes all requests.
+     *
+     * @return The commands which have been removed
+     */
+    public List<ServiceCommand<?>> clear() {
+        List<ServiceCommand<?>> commands = new ArrayList<ServiceCommand<?>>();
+
+        for (Integer id : entries.keySet()) {
+            Entry entry = entries.remove(id);
+
+            if (entry != null)
+                commands.add(entry.command);
+        }
+
+        return commands;
+    }
+
+    /**
+     * Returns the number of requests which wait for their response, including subscriptions.
+     */
+    public int getPendingCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of requests which have expired because they were past their deadline.
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * Fails and removes the requests which are past their deadline and have not been answered.
+     *
+     * @param now Current time in milliseconds, as returned by now()
+     */
+    void sweep(long now) {
+        for (Map.Entry<Integer, Entry> entry : entries.entrySet()) {
+            Entry request = entry.getValue();
+
+            if (request.deadline > now || request.command.isResponded())
+                continue;
+
+            if (request.command.expire()) {
+                entries.remove(entry.getKey(), request);
+                expiredCount.incrementAndGet();
+            } else if (request.command.isCancelled()) {
+                entries.remove(entry.getKey(), request);
+            }
+        }
+    }
+
+    private long getDeadline(ServiceCommand<?> command) {
+        long timeout = command.getTimeout();
+
+        if (command instanceof URLServiceSubscription || command.hasDeadline() || timeout < 0)
+            return NO_DEADLINE;
+
+        if (timeout == 0)
+            timeout = ServiceCommand.DEFAULT_TIMEOUT;
+
+        return now() + timeout;
+    }
+
+    private synchronized void startSweep() {
+        if (sweep != null)
+            return;
+
+        sweep = ServiceCommand.getDeadlineExecutor().scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                sweep(now());
+                stopSweepIfEmpty();
+            }
+        }, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /* a request added after this check starts a new sweep */
+    private synchronized void stopSweepIfEmpty() {
+        if (sweep == null)
+            return;
+
+        for (Entry entry : entries.values()) {
+            if (entry.deadline != NO_DEADLINE && !entry.command.isResponded())
+                return;
+        }
+
+        sweep.cancel(false);
+        sweep = null;
+    }
+
+    static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
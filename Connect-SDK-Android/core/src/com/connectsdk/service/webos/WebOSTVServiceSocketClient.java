@@ -8,7 +8,6 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.os.Build;
 import android.util.Base64;
 import android.util.Log;
-import android.util.SparseArray;
 import android.view.Display;
 import android.view.WindowManager;
 
@@ -76,8 +75,6 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
     WebOSTVTrustManager customTrustManager;  // 1.6.1 patch
 
-    int nextRequestId = 1;
-
     State state = State.INITIAL;
 
     JSONObject manifest;
@@ -94,7 +91,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
     // Queue of commands that should be sent once register is complete
     LinkedHashSet<ServiceCommand<ResponseListener<Object>>> commandQueue = new LinkedHashSet<ServiceCommand<ResponseListener<Object>>>();
 
-    public SparseArray<ServiceCommand<? extends Object>> requests = new SparseArray<ServiceCommand<? extends Object>>();
+    public RequestTable requests = new RequestTable();
 
     boolean mConnectSucceeded = false;
     Boolean mConnected;
@@ -216,6 +213,13 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
         }
     }
 
+    /**
+     * Returns the number of requests which wait for their response, including subscriptions
+     */
+    public int getPendingRequestCount() {
+        return requests.getPendingCount();
+    }
+
     private void setDefaultManifest() {
         manifest = new JSONObject();
 
@@ -479,7 +483,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
             e.printStackTrace();
         }
 
-        int dataId = this.nextRequestId++;
+        int dataId = requests.nextId();
 
         JSONObject sendData = new JSONObject();
         try {
@@ -513,7 +517,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
             }
         };
 
-        int dataId = this.nextRequestId++;
+        int dataId = requests.nextId();
 
         ServiceCommand<ResponseListener<Object>> command = new ServiceCommand<ResponseListener<Object>>(this, null, null, listener);
         command.setRequestId(dataId);
@@ -608,10 +612,12 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
             }
         };
 
-        int dataId = this.nextRequestId++;
+        int dataId = requests.nextId();
 
         ServiceCommand<ResponseListener<Object>> command = new ServiceCommand<ResponseListener<Object>>(this, null, null, listener);
         command.setRequestId(dataId);
+        // the registration waits for the user to accept the pairing on the TV
+        command.setTimeout(-1);
 
         JSONObject headers = new JSONObject();
         JSONObject payload = new JSONObject();
@@ -661,7 +667,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
         String uri = "ssap://pairing/setPin";
 
-        int dataId = this.nextRequestId++;
+        int dataId = requests.nextId();
 
         ServiceCommand<ResponseListener<Object>> command = new ServiceCommand<ResponseListener<Object>>(this, null, null, listener);
         command.setRequestId(dataId);
@@ -689,11 +695,17 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
         if (!commandQueue.isEmpty()) {
             LinkedHashSet<ServiceCommand<ResponseListener<Object>>> tempHashSet = new LinkedHashSet<ServiceCommand<ResponseListener<Object>>>(commandQueue);
-            for (ServiceCommand<ResponseListener<Object>> command : tempHashSet) {
-                Log.d(Util.T, "executing queued command for " + command.getTarget());
+            // interactive commands queued during the connection go out first
+            for (ServiceCommand.Priority priority : ServiceCommand.Priority.values()) {
+                for (ServiceCommand<ResponseListener<Object>> command : tempHashSet) {
+                    if (command.getPriority() != priority)
+                        continue;
+
+                    Log.d(Util.T, "executing queued command for " + command.getTarget());
 
-                sendCommandImmediately(command);
-                commandQueue.remove(command);
+                    sendCommandImmediately(command);
+                    commandQueue.remove(command);
+                }
             }
         }
 
@@ -714,9 +726,9 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
     @SuppressWarnings("unchecked")
     public void sendCommand(ServiceCommand<?> command) {
-        Integer requestId;
+        final Integer requestId;
         if (command.getRequestId() == -1) {
-            requestId = this.nextRequestId++;
+            requestId = requests.nextId();
             command.setRequestId(requestId);
         }
         else {
@@ -725,6 +737,18 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
         requests.put(requestId, command);
 
+        if (!(command instanceof URLServiceSubscription)) {
+            // a request which is cancelled or not answered in time does not hold its slot
+            command.setCancelListener(new ServiceCommand.CancelListener() {
+
+                @Override
+                public void onCancel(ServiceCommand<?> command) {
+                    requests.remove(requestId, command);
+                    commandQueue.remove(command);
+                }
+            });
+        }
+
         if (state == State.REGISTERED) {
             this.sendCommandImmediately(command);
         } else if (state == State.CONNECTING || state == State.DISCONNECTING){
@@ -759,7 +783,13 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
     public void unsubscribe(ServiceSubscription<?> subscription) { }
 
+    public String getCommandLane() {
+        return getURI().getHost();
+    }
+
     protected void sendCommandImmediately(ServiceCommand<?> command) {
+        command.markStarted();
+
         JSONObject headers = new JSONObject();
         JSONObject payload = (JSONObject) command.getPayload();
         String payloadType = "";
@@ -871,7 +901,6 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
         }
     }
 
-    @SuppressWarnings("unchecked")
     private void handleConnectionLost(boolean cleanDisconnect, Exception ex) {
         ServiceCommandError error = null;
 
@@ -881,14 +910,9 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
         if (mListener != null)
             mListener.onCloseWithError(error);
 
-        for (int i = 0; i < requests.size(); i++) {
-            ServiceCommand<ResponseListener<Object>> request = (ServiceCommand<ResponseListener<Object>>) requests.get(requests.keyAt(i));
-
-            if (request != null)
-                Util.postError(request.getResponseListener(), new ServiceCommandError(0, "connection lost", null));
+        for (ServiceCommand<?> request : requests.clear()) {
+            Util.postError(request.getResponseListener(), new ServiceCommandError(0, "connection lost", null));
         }
-
-        clearRequests();
     }
 
     public void setServerCertificate(X509Certificate cert) {
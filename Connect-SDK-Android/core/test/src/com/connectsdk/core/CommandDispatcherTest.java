@@ -0,0 +1,348 @@
+package com.connectsdk.core;
+
+import com.connectsdk.service.command.ServiceCommand.Priority;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest=Config.NONE)
+public class CommandDispatcherTest {
+
+    private ExecutorService pool;
+    private CommandDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(2);
+        dispatcher = new CommandDispatcher();
+        dispatcher.setExecutor(pool);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testTasksOfLaneRunInOrder() throws InterruptedException {
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(1);
+        int count = CommandDispatcher.MAX_TASKS_PER_TURN * 3;
+
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            dispatcher.execute("tv", new Runnable() {
+                @Override
+                public void run() {
+                    order.add(index);
+                }
+            });
+        }
+        dispatcher.execute("tv", new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(count, order.size());
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void testSlowLaneDoesNotBlockOtherLanes() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch otherDone = new CountDownLatch(1);
+
+        for (int i = 0; i < 3; i++) {
+            dispatcher.execute("slow", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+        dispatcher.execute("fast", new Runnable() {
+            @Override
+            public void run() {
+                otherDone.countDown();
+            }
+        });
+
+        Assert.assertTrue(otherDone.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, dispatcher.getQueueDepth("slow"));
+        Assert.assertEquals(0, dispatcher.getQueueDepth("fast"));
+        release.countDown();
+    }
+
+    @Test
+    public void testQueueDepthMetrics() {
+        final List<Runnable> submitted = new ArrayList<Runnable>();
+        dispatcher.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.add(command);
+            }
+        });
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        dispatcher.execute("tv", task);
+        dispatcher.execute("tv", task);
+        dispatcher.execute("tv", task);
+        dispatcher.execute("speaker", task);
+
+        // one submission per lane, however many tasks it holds
+        Assert.assertEquals(2, submitted.size());
+        Assert.assertEquals(3, dispatcher.getQueueDepth("tv"));
+        Assert.assertEquals(4, dispatcher.getTotalQueueDepth());
+
+        submitted.get(0).run();
+
+        Assert.assertEquals(0, dispatcher.getQueueDepth("tv"));
+        Assert.assertEquals(3, dispatcher.getMaxQueueDepth("tv"));
+        Assert.assertEquals(3, dispatcher.getCompletedTaskCount("tv"));
+        Assert.assertEquals(1, dispatcher.getTotalQueueDepth());
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopLane() {
+        final List<Runnable> submitted = new ArrayList<Runnable>();
+        final boolean[] ran = new boolean[1];
+        dispatcher.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.add(command);
+            }
+        });
+
+        dispatcher.execute("tv", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        });
+        dispatcher.execute("tv", new Runnable() {
+            @Override
+            public void run() {
+                ran[0] = true;
+            }
+        });
+        submitted.get(0).run();
+
+        Assert.assertTrue(ran[0]);
+    }
+
+    @Test
+    public void testInteractiveTasksGoAheadOfQueuedTasks() {
+        final List<Runnable> submitted = new ArrayList<Runnable>();
+        final List<String> order = new ArrayList<String>();
+        dispatcher.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.add(command);
+            }
+        });
+
+        dispatcher.execute("tv", Priority.NORMAL, record(order, "normal"));
+        dispatcher.execute("tv", Priority.BACKGROUND, record(order, "poll"));
+        dispatcher.execute("tv", Priority.INTERACTIVE, record(order, "key"));
+
+        Assert.assertEquals(1, dispatcher.getQueueDepth("tv", Priority.BACKGROUND));
+        Assert.assertEquals(1, submitted.size());
+        submitted.get(0).run();
+
+        // the poll only runs once the lane has nothing else to do
+        Assert.assertEquals(3, order.size());
+        Assert.assertEquals("key", order.get(0));
+        Assert.assertEquals("normal", order.get(1));
+        Assert.assertEquals("poll", order.get(2));
+    }
+
+    @Test
+    public void testLaneWithInteractiveTaskGetsNextThread() {
+        final List<Runnable> submitted = new ArrayList<Runnable>();
+        final List<String> order = new ArrayList<String>();
+        dispatcher.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.add(command);
+            }
+        });
+
+        dispatcher.execute("speaker", Priority.NORMAL, record(order, "speaker"));
+        dispatcher.execute("tv", Priority.INTERACTIVE, record(order, "tv"));
+        submitted.get(0).run();
+
+        Assert.assertEquals(1, order.size());
+        Assert.assertEquals("tv", order.get(0));
+    }
+
+    @Test
+    public void testLaneNeverRunsTwoTasksAtOnce() throws InterruptedException {
+        ExecutorService wide = Executors.newFixedThreadPool(4);
+        dispatcher.setExecutor(wide);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(60);
+        Priority[] priorities = Priority.values();
+
+        try {
+            for (int i = 0; i < 60; i++) {
+                dispatcher.execute("tv", priorities[i % priorities.length], new Runnable() {
+                    @Override
+                    public void run() {
+                        int now = running.incrementAndGet();
+                        int max;
+                        do {
+                            max = maxRunning.get();
+                        } while (now > max && !maxRunning.compareAndSet(max, now));
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        }
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, maxRunning.get());
+        } finally {
+            wide.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRequestHoldsLaneUntilDone() {
+        final List<Runnable> submitted = new ArrayList<Runnable>();
+        final List<String> order = new ArrayList<String>();
+        final Runnable[] done = new Runnable[1];
+        dispatcher.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.add(command);
+            }
+        });
+
+        dispatcher.execute("tv", Priority.NORMAL, new CommandDispatcher.Request() {
+            @Override
+            public void run(Runnable requestDone) {
+                order.add("request");
+                done[0] = requestDone;
+            }
+        });
+        submitted.get(0).run();
+        dispatcher.execute("tv", Priority.INTERACTIVE, record(order, "key"));
+
+        // the key waits for the response to the request which has been sent
+        Assert.assertEquals(1, order.size());
+        Assert.assertEquals(1, submitted.size());
+        Assert.assertEquals(1, dispatcher.getQueueDepth("tv"));
+
+        done[0].run();
+        done[0].run();
+        Assert.assertEquals(2, submitted.size());
+        submitted.get(1).run();
+
+        Assert.assertEquals(2, order.size());
+        Assert.assertEquals("key", order.get(1));
+    }
+
+    @Test
+    public void testRequestDoneBeforeReturningDoesNotHoldLane() {
+        final List<Runnable> submitted = new ArrayList<Runnable>();
+        final List<String> order = new ArrayList<String>();
+        dispatcher.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.add(command);
+            }
+        });
+
+        dispatcher.execute("tv", Priority.NORMAL, new CommandDispatcher.Request() {
+            @Override
+            public void run(Runnable done) {
+                order.add("request");
+                done.run();
+            }
+        });
+        dispatcher.execute("tv", record(order, "next"));
+        submitted.get(0).run();
+
+        Assert.assertEquals(1, submitted.size());
+        Assert.assertEquals(2, order.size());
+    }
+
+    @Test
+    public void testIdleLanesAreForgotten() {
+        final List<Runnable> submitted = new ArrayList<Runnable>();
+        dispatcher.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.add(command);
+            }
+        });
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        // a request which is never answered keeps its lane busy
+        dispatcher.execute("busy", Priority.NORMAL, new CommandDispatcher.Request() {
+            @Override
+            public void run(Runnable done) {
+            }
+        });
+        for (int i = 1; i < CommandDispatcher.MAX_LANES; i++) {
+            dispatcher.execute("device-" + i, task);
+        }
+        for (Runnable worker : submitted) {
+            worker.run();
+        }
+        Assert.assertEquals(CommandDispatcher.MAX_LANES, dispatcher.getLaneCount());
+
+        // a new lane makes room by dropping the idle ones, the busy lane is kept
+        dispatcher.execute("new", task);
+        Assert.assertEquals(2, dispatcher.getLaneCount());
+        Assert.assertEquals(1, dispatcher.getCompletedTaskCount("busy"));
+    }
+
+    private Runnable record(final List<String> order, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+}
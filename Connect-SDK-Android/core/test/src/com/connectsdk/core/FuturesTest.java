@@ -0,0 +1,116 @@
+package com.connectsdk.core;
+
+import com.connectsdk.service.capability.Launcher;
+import com.connectsdk.service.command.ServiceCommandError;
+import com.connectsdk.service.command.TimeoutServiceCommandError;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest=Config.NONE)
+public class FuturesTest {
+
+    @Test
+    public void testListenerCompletesFuture() {
+        CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        Launcher.AppCountListener listener = Futures.newListener(Launcher.AppCountListener.class, future);
+
+        listener.onSuccess(3);
+
+        Assert.assertEquals(Integer.valueOf(3), future.getNow(null));
+    }
+
+    @Test
+    public void testListenerIsCalledInBackground() {
+        CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+        Launcher.AppCountListener listener = Futures.newListener(Launcher.AppCountListener.class, future);
+
+        Assert.assertSame(Util.getExecutor(), Util.getCallbackExecutor(listener));
+    }
+
+    @Test
+    public void testListenerFailsFuture() {
+        CompletableFuture<Object> future = new CompletableFuture<Object>();
+        ServiceCommandError error = new ServiceCommandError(500, "Failed", null);
+
+        Futures.newListener(future).onError(error);
+
+        Assert.assertTrue(future.isCompletedExceptionally());
+        try {
+            future.join();
+            Assert.fail();
+        } catch (CompletionException e) {
+            Assert.assertSame(error, Futures.getError(e));
+        }
+    }
+
+    @Test
+    public void testAllKeepsOrder() {
+        CompletableFuture<String> first = new CompletableFuture<String>();
+        CompletableFuture<String> second = new CompletableFuture<String>();
+        CompletableFuture<List<String>> all = Futures.all(Arrays.asList(first, second));
+
+        second.complete("second");
+        Assert.assertFalse(all.isDone());
+        first.complete("first");
+
+        Assert.assertEquals(Arrays.asList("first", "second"), all.getNow(null));
+    }
+
+    @Test
+    public void testAllFailsFast() {
+        CompletableFuture<String> first = new CompletableFuture<String>();
+        CompletableFuture<String> second = new CompletableFuture<String>();
+        CompletableFuture<List<String>> all = Futures.all(Arrays.asList(first, second));
+
+        second.completeExceptionally(new ServiceCommandError(500, "Failed", null));
+
+        Assert.assertTrue(all.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testAllOfNothing() {
+        List<CompletableFuture<String>> none = new ArrayList<CompletableFuture<String>>();
+
+        Assert.assertTrue(Futures.all(none).getNow(null).isEmpty());
+    }
+
+    @Test
+    public void testWithTimeoutCancelsSlowFuture() throws InterruptedException {
+        CompletableFuture<String> slow = new CompletableFuture<String>();
+        CompletableFuture<String> result = Futures.withTimeout(slow, 10);
+
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(Futures.getError(e) instanceof TimeoutServiceCommandError);
+        } catch (TimeoutException e) {
+            Assert.fail();
+        }
+        Assert.assertTrue(slow.isCancelled());
+    }
+
+    @Test
+    public void testWithTimeoutPassesResult() {
+        CompletableFuture<String> future = new CompletableFuture<String>();
+        CompletableFuture<String> result = Futures.withTimeout(future, 5000);
+
+        future.complete("done");
+
+        Assert.assertEquals("done", result.getNow(null));
+    }
+}
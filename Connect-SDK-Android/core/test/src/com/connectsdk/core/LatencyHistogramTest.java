@@ -0,0 +1,62 @@
+package com.connectsdk.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest=Config.NONE)
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMean());
+        Assert.assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(150);
+        }
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals((90 * 3 + 10 * 150) / 100, histogram.getMean());
+        Assert.assertEquals(5, histogram.getPercentile(50));
+        Assert.assertEquals(5, histogram.getPercentile(90));
+        Assert.assertEquals(150, histogram.getPercentile(99));
+        Assert.assertEquals(150, histogram.getMax());
+    }
+
+    @Test
+    public void testValuesAboveLastBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100000);
+
+        long[] buckets = histogram.getBuckets();
+        Assert.assertEquals(1, buckets[buckets.length - 1]);
+        Assert.assertEquals(100000, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+
+        LatencyHistogram copy = new LatencyHistogram(histogram);
+        histogram.record(20);
+        histogram.reset();
+
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(1, copy.getCount());
+        Assert.assertEquals(10, copy.getMax());
+    }
+}
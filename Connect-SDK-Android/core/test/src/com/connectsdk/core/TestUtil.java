@@ -1,7 +1,11 @@
 package com.connectsdk.core;
 
+import com.connectsdk.etc.helper.HttpConnection;
+
 import org.apache.tools.ant.filters.StringInputStream;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
 import java.net.URI;
@@ -46,6 +50,30 @@ public final class TestUtil {
         Util.createExecutor();
     }
 
+    /**
+     * Makes executeAsync() of a mocked connection call execute() and then the callback, so that
+     * tests can verify execute() and stub the response
+     * @param connection mocked connection
+     */
+    public static void stubExecuteAsync(final HttpConnection connection) {
+        Mockito.doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                HttpConnection.ResponseCallback callback =
+                        (HttpConnection.ResponseCallback) invocation.getArguments()[0];
+                try {
+                    connection.execute();
+                } catch (IOException e) {
+                    callback.onError(e);
+                    return null;
+                }
+                callback.onComplete(connection);
+                return null;
+            }
+        }).when(connection).executeAsync(Mockito.any(HttpConnection.ResponseCallback.class));
+    }
+
     /**
      * Compare 2 URLs with custom parameters order
      * @param expectedUrl
@@ -8,6 +8,7 @@ import com.connectsdk.service.DeviceService;
 import com.connectsdk.service.NetcastTVService;
 import com.connectsdk.service.RokuService;
 import com.connectsdk.service.WebOSTVService;
+import com.connectsdk.service.capability.CapabilitySet;
 import com.connectsdk.service.capability.Launcher;
 import com.connectsdk.service.capability.MediaPlayer;
 import com.connectsdk.service.config.ServiceConfig;
@@ -25,6 +26,7 @@ import org.robolectric.annotation.Config;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 @RunWith(RobolectricTestRunner.class)
@@ -47,7 +49,7 @@ public class ConnectableDeviceTest {
     @Test
     public void testHasCapabilityWithServices() {
         DeviceService service = Mockito.mock(DeviceService.class);
-        Mockito.when(service.hasCapability(MediaPlayer.Display_Image)).thenReturn(Boolean.TRUE);
+        Mockito.when(service.getCapabilitySet()).thenReturn(CapabilitySet.of(MediaPlayer.Display_Image));
         device.services.put("service", service);
         Assert.assertTrue(device.hasCapability(MediaPlayer.Display_Image));
     }
@@ -56,7 +58,7 @@ public class ConnectableDeviceTest {
     public void testHasAnyCapabilities() {
         DeviceService service = Mockito.mock(DeviceService.class);
         String[] capabilities = {Launcher.Browser, Launcher.YouTube};
-        Mockito.when(service.hasAnyCapability(capabilities)).thenReturn(Boolean.TRUE);
+        Mockito.when(service.getCapabilitySet()).thenReturn(CapabilitySet.of(Launcher.YouTube, Launcher.Netflix));
         device.services.put("service", service);
         Assert.assertTrue(device.hasAnyCapability(capabilities));
     }
@@ -65,7 +67,7 @@ public class ConnectableDeviceTest {
     public void testHasAnyCapabilitiesWithoutServices() {
         DeviceService service = Mockito.mock(DeviceService.class);
         String[] capabilities = {Launcher.Browser, Launcher.YouTube};
-        Mockito.when(service.hasAnyCapability(capabilities)).thenReturn(Boolean.FALSE);
+        Mockito.when(service.getCapabilitySet()).thenReturn(CapabilitySet.of(Launcher.Netflix));
         device.services.put("service", service);
         Assert.assertFalse(device.hasAnyCapability(capabilities));
     }
@@ -73,8 +75,7 @@ public class ConnectableDeviceTest {
     @Test
     public void testHasCapabilities() {
         DeviceService service = Mockito.mock(DeviceService.class);
-        Mockito.when(service.hasCapability(Launcher.Browser)).thenReturn(Boolean.TRUE);
-        Mockito.when(service.hasCapability(Launcher.YouTube)).thenReturn(Boolean.TRUE);
+        Mockito.when(service.getCapabilitySet()).thenReturn(CapabilitySet.of(Launcher.Browser, Launcher.YouTube));
         device.services.put("service", service);
 
         List<String> capabilities = new ArrayList<String>();
@@ -84,6 +85,47 @@ public class ConnectableDeviceTest {
         Assert.assertTrue(device.hasCapabilities(capabilities));
     }
 
+    @Test
+    public void testCapabilitiesFollowServiceChanges() {
+        DeviceService service = Mockito.mock(DeviceService.class);
+        Mockito.when(service.getServiceName()).thenReturn("service");
+        Mockito.when(service.getCapabilities()).thenReturn(Arrays.asList(Launcher.Browser));
+        Mockito.when(service.getCapabilitySet()).thenReturn(CapabilitySet.of(Launcher.Browser));
+        device.addService(service);
+
+        Assert.assertEquals(Arrays.asList(Launcher.Browser), device.getCapabilities());
+
+        // every call returns a list of its own
+        device.getCapabilities().clear();
+        Assert.assertEquals(Arrays.asList(Launcher.Browser), device.getCapabilities());
+
+        Mockito.when(service.getCapabilities()).thenReturn(Arrays.asList(Launcher.Browser, Launcher.YouTube));
+        Mockito.when(service.getCapabilitySet()).thenReturn(CapabilitySet.of(Launcher.Browser, Launcher.YouTube));
+        device.onCapabilitiesUpdated(service, Arrays.asList(Launcher.YouTube), new ArrayList<String>());
+
+        Assert.assertEquals(Arrays.asList(Launcher.Browser, Launcher.YouTube), device.getCapabilities());
+        Assert.assertTrue(device.hasCapability(Launcher.YouTube));
+
+        device.removeService(service);
+        Assert.assertTrue(device.getCapabilities().isEmpty());
+        Assert.assertFalse(device.hasCapability(Launcher.Browser));
+    }
+
+    @Test
+    public void testGetCapabilityFollowsServiceChanges() throws IOException {
+        addAllCoreServicesToDevice();
+
+        MediaPlayer mediaPlayer = device.getCapability(MediaPlayer.class);
+        Assert.assertNotNull(mediaPlayer);
+        Assert.assertSame(mediaPlayer, device.getCapability(MediaPlayer.class));
+
+        device.removeService((DeviceService) mediaPlayer);
+
+        MediaPlayer nextMediaPlayer = device.getCapability(MediaPlayer.class);
+        Assert.assertNotNull(nextMediaPlayer);
+        Assert.assertNotSame(mediaPlayer, nextMediaPlayer);
+    }
+
     @Test
     public void testSetPromptPairingType() throws IOException {
         // given
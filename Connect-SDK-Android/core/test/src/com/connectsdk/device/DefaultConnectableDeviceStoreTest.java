@@ -0,0 +1,310 @@
+package com.connectsdk.device;
+
+import com.connectsdk.core.Util;
+import com.connectsdk.service.DIALService;
+import com.connectsdk.service.config.ServiceConfig;
+import com.connectsdk.service.config.ServiceDescription;
+
+import junit.framework.Assert;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DefaultConnectableDeviceStoreTest {
+
+    File snapshotFile;
+    File journalFile;
+
+    @Before
+    public void setUp() {
+        snapshotFile = new File(Robolectric.application.getFilesDir(), DefaultConnectableDeviceStore.FILENAME);
+        journalFile = new File(snapshotFile.getPath() + DeviceStoreJournal.JOURNAL_SUFFIX);
+
+        snapshotFile.delete();
+        journalFile.delete();
+    }
+
+    @Test
+    public void testChangesAreJournaled() {
+        DefaultConnectableDeviceStore store = new DefaultConnectableDeviceStore(Robolectric.application);
+        ConnectableDevice device = createDevice("uuid-1", "192.168.0.1");
+
+        store.addDevice(device);
+        store.flush();
+
+        Assert.assertTrue(journalFile.exists());
+        Assert.assertFalse(snapshotFile.exists());
+
+        DefaultConnectableDeviceStore reloaded = new DefaultConnectableDeviceStore(Robolectric.application);
+        Assert.assertTrue(reloaded.getStoredDevices().has(device.getId()));
+        Assert.assertNotNull(reloaded.getServiceConfig(device.getServiceByName(DIALService.ID).getServiceDescription()));
+    }
+
+    @Test
+    public void testRemoveAndClearAreReplayed() {
+        DefaultConnectableDeviceStore store = new DefaultConnectableDeviceStore(Robolectric.application);
+        ConnectableDevice first = createDevice("uuid-1", "192.168.0.1");
+        ConnectableDevice second = createDevice("uuid-2", "192.168.0.2");
+
+        store.addDevice(first);
+        store.addDevice(second);
+        store.flush();
+        store.removeDevice(first);
+        store.flush();
+
+        JSONObject devices = new DefaultConnectableDeviceStore(Robolectric.application).getStoredDevices();
+        Assert.assertFalse(devices.has(first.getId()));
+        Assert.assertTrue(devices.has(second.getId()));
+
+        store.removeAll();
+        store.flush();
+
+        Assert.assertEquals(0, new DefaultConnectableDeviceStore(Robolectric.application).getStoredDevices().length());
+    }
+
+    @Test
+    public void testUpdatesAreCoalesced() throws IOException {
+        DefaultConnectableDeviceStore store = new DefaultConnectableDeviceStore(Robolectric.application);
+        ConnectableDevice device = createDevice("uuid-1", "192.168.0.1");
+
+        store.addDevice(device);
+        for (int i = 0; i < 10; i++) {
+            device.setLastConnected(i);
+            store.updateDevice(device);
+        }
+        store.flush();
+
+        Assert.assertEquals(1, countLines(journalFile));
+        Assert.assertEquals(9, new DefaultConnectableDeviceStore(Robolectric.application).getStoredDevices()
+                .optJSONObject(device.getId()).optLong(ConnectableDevice.KEY_LAST_CONNECTED));
+    }
+
+    @Test
+    public void testRecoveryFromRecordCutOff() throws IOException, JSONException {
+        DefaultConnectableDeviceStore store = new DefaultConnectableDeviceStore(Robolectric.application);
+        ConnectableDevice device = createDevice("uuid-1", "192.168.0.1");
+
+        store.addDevice(device);
+        store.flush();
+
+        FileWriter out = new FileWriter(journalFile, true);
+        out.write("{\"op\":\"put\",\"updated\":1,\"dev");
+        out.close();
+
+        DefaultConnectableDeviceStore reloaded = new DefaultConnectableDeviceStore(Robolectric.application);
+        Assert.assertTrue(reloaded.getStoredDevices().has(device.getId()));
+
+        // the damaged journal is compacted into the snapshot
+        reloaded.flush();
+
+        Assert.assertFalse(journalFile.exists());
+        JSONObject snapshot = new JSONObject(readFile(snapshotFile));
+        Assert.assertEquals(1, snapshot.getJSONArray(DefaultConnectableDeviceStore.KEY_DEVICES).length());
+        Assert.assertTrue(new DefaultConnectableDeviceStore(Robolectric.application).getStoredDevices().has(device.getId()));
+    }
+
+    @Test
+    public void testLookupByServiceUuid() throws InterruptedException {
+        DefaultConnectableDeviceStore store = new DefaultConnectableDeviceStore(Robolectric.application);
+        ConnectableDevice device = createDevice("uuid-1", "192.168.0.1");
+
+        store.addDevice(device);
+        store.flush();
+
+        final ServiceDescription description = device.getServiceByName(DIALService.ID).getServiceDescription();
+        final DefaultConnectableDeviceStore reloaded = new DefaultConnectableDeviceStore(Robolectric.application);
+        final AtomicReference<ServiceConfig> config = new AtomicReference<ServiceConfig>();
+
+        // lookups on other threads than the main thread wait for the devices which have not been read yet
+        Thread lookup = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                config.set(reloaded.getServiceConfig(description));
+            }
+        });
+        lookup.start();
+        lookup.join();
+
+        Assert.assertNotNull(config.get());
+        Assert.assertTrue(reloaded.getStoredDevices().has(device.getId()));
+        Assert.assertNotNull(reloaded.getServiceConfig(description));
+        Assert.assertNull(reloaded.getServiceConfig(createDevice("uuid-2", "192.168.0.2")
+                .getServiceByName(DIALService.ID).getServiceDescription()));
+    }
+
+    @Test
+    public void testAddWhileLoadingUpdatesStoredDevice() {
+        DefaultConnectableDeviceStore store = new DefaultConnectableDeviceStore(Robolectric.application);
+        ConnectableDevice device = createDevice("uuid-1", "192.168.0.1");
+        device.setFriendlyName("Stored");
+
+        store.addDevice(device);
+        store.flush();
+
+        // the device is added on the main thread, which does not wait for the stored device to be read
+        DefaultConnectableDeviceStore reloaded = new DefaultConnectableDeviceStore(Robolectric.application);
+        ConnectableDevice discovered = createDevice("uuid-1", "192.168.0.1");
+        discovered.setLastConnected(42);
+        reloaded.addDevice(discovered);
+
+        JSONObject stored = reloaded.getStoredDevices().optJSONObject(device.getId());
+        Assert.assertEquals("Stored", stored.optString(ConnectableDevice.KEY_FRIENDLY));
+        Assert.assertEquals(42, stored.optLong(ConnectableDevice.KEY_LAST_CONNECTED));
+    }
+
+    @Test
+    public void testRemoveWinsOverLoadedDevice() {
+        DefaultConnectableDeviceStore store = new DefaultConnectableDeviceStore(Robolectric.application);
+        ConnectableDevice device = createDevice("uuid-1", "192.168.0.1");
+
+        store.addDevice(device);
+        store.flush();
+
+        DefaultConnectableDeviceStore reloaded = new DefaultConnectableDeviceStore(Robolectric.application);
+        reloaded.removeDevice(device);
+
+        Assert.assertFalse(reloaded.getStoredDevices().has(device.getId()));
+        Assert.assertNull(reloaded.getServiceConfig(device.getServiceByName(DIALService.ID).getServiceDescription()));
+    }
+
+    @Test
+    public void testLeastRecentlyDiscoveredDevicesAreRemoved() {
+        DefaultConnectableDeviceStore store = new DefaultConnectableDeviceStore(Robolectric.application);
+        ConnectableDevice[] devices = new ConnectableDevice[3];
+
+        for (int i = 0; i < devices.length; i++) {
+            devices[i] = createDevice("uuid-" + i, "192.168.0." + i);
+            devices[i].setLastDetection(Util.getTime() - devices.length + i);
+            store.addDevice(devices[i]);
+        }
+        store.flush();
+
+        // devices which are not active in this store can be removed
+        DefaultConnectableDeviceStore reloaded = new DefaultConnectableDeviceStore(Robolectric.application);
+        reloaded.maxStoredDevices = 2;
+        reloaded.flush();
+
+        JSONObject stored = reloaded.getStoredDevices();
+        Assert.assertEquals(2, reloaded.getStoredDeviceCount());
+        Assert.assertFalse(stored.has(devices[0].getId()));
+        Assert.assertTrue(stored.has(devices[1].getId()));
+        Assert.assertTrue(stored.has(devices[2].getId()));
+        Assert.assertTrue(reloaded.getStoredSize() > 0);
+
+        // devices which are online are kept
+        reloaded.maxStoredDevices = 0;
+        reloaded.addDevice(devices[0]);
+        reloaded.flush();
+
+        Assert.assertTrue(reloaded.getStoredDevices().has(devices[0].getId()));
+        Assert.assertEquals(1, reloaded.getStoredDeviceCount());
+    }
+
+    @Test
+    public void testLostDevicesOfThisSessionAreRemoved() {
+        DefaultConnectableDeviceStore store = new DefaultConnectableDeviceStore(Robolectric.application);
+        ConnectableDevice lost = createDevice("uuid-1", "192.168.0.1");
+        ConnectableDevice online = createDevice("uuid-2", "192.168.0.2");
+
+        lost.setLastDetection(Util.getTime() - 10);
+        store.addDevice(lost);
+        store.addDevice(online);
+        store.flush();
+
+        // discovery removes the services of a device which is lost
+        lost.removeServiceWithId(DIALService.ID);
+        store.maxStoredDevices = 1;
+        store.updateDevice(online);
+        store.flush();
+
+        Assert.assertFalse(store.getStoredDevices().has(lost.getId()));
+        Assert.assertTrue(store.getStoredDevices().has(online.getId()));
+    }
+
+    @Test
+    public void testStoredSizeCountsBytes() {
+        DefaultConnectableDeviceStore store = new DefaultConnectableDeviceStore(Robolectric.application);
+        ConnectableDevice ascii = createDevice("uuid-1", "192.168.0.1");
+        ConnectableDevice japanese = createDevice("uuid-2", "192.168.0.2");
+        japanese.setFriendlyName("\u30c6\u30ec");
+
+        store.addDevice(ascii);
+        store.flush();
+        long asciiSize = store.getStoredSize();
+
+        store.addDevice(japanese);
+        store.flush();
+
+        // both names have two characters, but each katakana character takes three bytes
+        Assert.assertEquals(asciiSize + 4, store.getStoredSize() - asciiSize);
+    }
+
+    @Test
+    public void testExpiredDevicesAreRemoved() {
+        DefaultConnectableDeviceStore store = new DefaultConnectableDeviceStore(Robolectric.application);
+        ConnectableDevice expired = createDevice("uuid-1", "192.168.0.1");
+        ConnectableDevice recent = createDevice("uuid-2", "192.168.0.2");
+
+        expired.setLastDetection(Util.getTime() - TimeUnit.DAYS.toSeconds(4));
+        store.addDevice(expired);
+        store.addDevice(recent);
+        store.flush();
+
+        DefaultConnectableDeviceStore reloaded = new DefaultConnectableDeviceStore(Robolectric.application);
+        reloaded.flush();
+
+        Assert.assertFalse(reloaded.getStoredDevices().has(expired.getId()));
+        Assert.assertTrue(reloaded.getStoredDevices().has(recent.getId()));
+    }
+
+    private ConnectableDevice createDevice(String uuid, String ipAddress) {
+        ServiceDescription description = new ServiceDescription();
+        description.setServiceID(DIALService.ID);
+        description.setUUID(uuid);
+        description.setIpAddress(ipAddress);
+        description.setFriendlyName("TV");
+
+        ConnectableDevice device = new ConnectableDevice(description);
+        device.addService(new DIALService(description, new ServiceConfig(description)));
+        device.setLastDetection(Util.getTime());
+        return device;
+    }
+
+    private static int countLines(File file) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        int lines = 0;
+        while (in.readLine() != null) {
+            lines++;
+        }
+        in.close();
+        return lines;
+    }
+
+    private static String readFile(File file) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        StringBuilder sb = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null) {
+            sb.append(line);
+        }
+        in.close();
+        return sb.toString();
+    }
+}
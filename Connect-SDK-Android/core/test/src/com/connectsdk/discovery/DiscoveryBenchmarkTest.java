@@ -0,0 +1,252 @@
+package com.connectsdk.discovery;
+
+import android.content.Context;
+
+import com.connectsdk.discovery.provider.SSDPDiscoveryProvider;
+import com.connectsdk.discovery.provider.ssdp.SSDPClient;
+import com.connectsdk.discovery.provider.ssdp.SSDPFleetSimulator;
+import com.connectsdk.service.DLNAService;
+import com.connectsdk.service.command.ServiceCommandError;
+import com.connectsdk.service.config.ServiceDescription;
+import com.connectsdk.shadow.WifiInfoShadow;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+
+/**
+ * Drives SSDPDiscoveryProvider and DiscoveryManager through a loopback fleet of virtual devices
+ * and reports throughput, memory and time to convergence.
+ *
+ * The benchmark depends on timing, so it is skipped unless it is run with
+ * -Dconnectsdk.benchmark=true, and -Dconnectsdk.benchmark.devices=5000 to measure a large network.
+ * The results are appended to the file named by connectsdk.benchmark.report.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest=Config.NONE, shadows={WifiInfoShadow.class})
+public class DiscoveryBenchmarkTest {
+
+    static final int DEFAULT_DEVICES = 200;
+    static final long CONVERGENCE_TIMEOUT = 60000;
+
+    int deviceCount;
+    SSDPFleetSimulator simulator;
+    DiscoveryManager discovery;
+    SimulatedSSDPDiscoveryProvider provider;
+    DiscoveryMetrics.ProviderMetrics providerMetrics;
+
+    class SimulatedSSDPDiscoveryProvider extends SSDPDiscoveryProvider {
+
+        public SimulatedSSDPDiscoveryProvider(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected SSDPClient createSocket(InetAddress source) throws IOException {
+            return simulator.createClient();
+        }
+    }
+
+    /**
+     * All virtual devices share the loopback address, DiscoveryManager groups services by address,
+     * so each service is handed over with the virtual address of its device.
+     */
+    class VirtualAddressListener implements DiscoveryProviderListener {
+
+        @Override
+        public void onServiceAdded(DiscoveryProvider provider, ServiceDescription serviceDescription) {
+            setVirtualAddress(serviceDescription);
+            discovery.onServiceAdded(provider, serviceDescription);
+        }
+
+        @Override
+        public void onServiceRemoved(DiscoveryProvider provider, ServiceDescription serviceDescription) {
+            setVirtualAddress(serviceDescription);
+            discovery.onServiceRemoved(provider, serviceDescription);
+        }
+
+        @Override
+        public void onServiceDiscoveryFailed(DiscoveryProvider provider, ServiceCommandError error) {
+            discovery.onServiceDiscoveryFailed(provider, error);
+        }
+
+        private void setVirtualAddress(ServiceDescription serviceDescription) {
+            SSDPFleetSimulator.VirtualDevice device = simulator.getDevice(serviceDescription.getUUID());
+            if (device != null)
+                serviceDescription.setIpAddress(device.virtualAddress);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        Assume.assumeTrue(Boolean.getBoolean("connectsdk.benchmark"));
+
+        deviceCount = Integer.getInteger("connectsdk.benchmark.devices", DEFAULT_DEVICES);
+
+        simulator = new SSDPFleetSimulator(deviceCount);
+        simulator.start();
+
+        DiscoveryManager.init(Robolectric.application, null);
+        discovery = DiscoveryManager.getInstance();
+        discovery.deviceClasses.put(DLNAService.ID, DLNAService.class);
+
+        provider = new SimulatedSSDPDiscoveryProvider(Robolectric.application);
+        providerMetrics = discovery.getMetrics().getProviderMetrics("SimulatedSSDPDiscoveryProvider");
+        provider.setMetrics(providerMetrics);
+        provider.addDeviceFilter(DLNAService.discoveryFilter());
+        provider.addListener(new VirtualAddressListener());
+    }
+
+    @After
+    public void tearDown() {
+        if (simulator == null)
+            return;
+
+        provider.stop();
+        simulator.close();
+        DiscoveryManager.destroy();
+    }
+
+    @Test
+    public void testDiscoveryConvergence() throws InterruptedException, IOException {
+        long heapBefore = usedHeap();
+
+        discovery.getMetrics().markStart();
+        long start = System.nanoTime();
+        provider.start();
+
+        boolean converged = waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return discovery.getCompatibleDevices().size() >= deviceCount;
+            }
+        });
+
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        long heapAfter = usedHeap();
+
+        DiscoveryMetrics metrics = discovery.getMetrics().snapshot();
+        report("convergence", String.format("%d devices in %d ms, %d searches, %d descriptions served, %d bytes of heap per device",
+                discovery.getCompatibleDevices().size(), elapsed, simulator.getSearchesReceived(),
+                simulator.getDescriptionsServed(), (heapAfter - heapBefore) / Math.max(1, deviceCount)));
+        report("metrics", metrics.toString());
+
+        Assert.assertTrue("discovery did not converge", converged);
+        Assert.assertEquals(0, metrics.getProviderMetrics("SimulatedSSDPDiscoveryProvider").getParseFailures());
+        Assert.assertTrue(metrics.getTimeToFirstCompatibleDevice() >= 0);
+        Assert.assertTrue(metrics.getTimeToFullDeviceSet() >= metrics.getTimeToFirstCompatibleDevice());
+    }
+
+    @Test
+    public void testNotifyStorms() throws InterruptedException, IOException {
+        provider.start();
+
+        Assert.assertTrue("discovery did not converge", waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return providerMetrics.getServicesFound() >= deviceCount;
+            }
+        }));
+
+        // alive storm for devices which are all known already, in one burst
+        final long packetsBefore = providerMetrics.getPacketsReceived();
+        long duplicatesBefore = providerMetrics.getDuplicatesSuppressed();
+        long start = System.nanoTime();
+
+        simulator.sendAlive(0);
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return providerMetrics.getPacketsReceived() - packetsBefore >= deviceCount;
+            }
+        }, 2000);
+
+        long elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+        long received = providerMetrics.getPacketsReceived() - packetsBefore;
+        report("alive storm", String.format("%d of %d packets received in %d ms (%d packets/s), %d duplicates suppressed",
+                received, deviceCount, elapsed, received * 1000 / elapsed,
+                providerMetrics.getDuplicatesSuppressed() - duplicatesBefore));
+
+        Assert.assertEquals(deviceCount, providerMetrics.getServicesFound());
+
+        // byebye storm, spread over one second so that loopback does not drop packets, and sent
+        // twice like devices do, since any notification may be lost
+        start = System.nanoTime();
+        simulator.sendByeBye(1000);
+
+        Condition allLost = new Condition() {
+            @Override
+            public boolean isMet() {
+                return providerMetrics.getServicesLost() >= deviceCount;
+            }
+        };
+        if (!waitFor(allLost, 5000))
+            simulator.sendByeBye(1000);
+        waitFor(allLost, 5000);
+
+        report("byebye storm", String.format("%d of %d devices removed in %d ms",
+                providerMetrics.getServicesLost(), deviceCount, (System.nanoTime() - start) / 1000000));
+
+        Assert.assertEquals(deviceCount, providerMetrics.getServicesLost());
+        Assert.assertTrue(discovery.getAllDevices().isEmpty());
+        Assert.assertTrue(discovery.getCompatibleDevices().isEmpty());
+    }
+
+    interface Condition {
+        boolean isMet();
+    }
+
+    boolean waitFor(Condition condition) throws InterruptedException {
+        return waitFor(condition, CONVERGENCE_TIMEOUT);
+    }
+
+    /** Waits for the condition, running the listener callbacks which are posted to the UI thread */
+    boolean waitFor(Condition condition, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        while (System.currentTimeMillis() < deadline) {
+            Robolectric.runUiThreadTasks();
+
+            if (condition.isMet())
+                return true;
+
+            Thread.sleep(10);
+        }
+
+        Robolectric.runUiThreadTasks();
+        return condition.isMet();
+    }
+
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    void report(String name, String result) throws IOException {
+        File file = new File(System.getProperty("connectsdk.benchmark.report",
+                new File(System.getProperty("java.io.tmpdir"), "discovery-benchmark.txt").getPath()));
+        file.getParentFile().mkdirs();
+
+        Writer out = new FileWriter(file, true);
+        try {
+            out.write(String.format("%d devices, %s: %s%n", deviceCount, name, result));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package com.connectsdk.discovery;
 
+import android.content.Context;
+
+import com.connectsdk.device.ConnectableDevice;
 import com.connectsdk.discovery.provider.SSDPDiscoveryProvider;
 import com.connectsdk.discovery.provider.ZeroconfDiscoveryProvider;
 import com.connectsdk.service.DIALService;
 import com.connectsdk.service.DLNAService;
+import com.connectsdk.service.DeviceService;
+import com.connectsdk.service.DeviceServiceFactory;
+import com.connectsdk.service.config.ServiceConfig;
+import com.connectsdk.service.config.ServiceDescription;
 
 import junit.framework.Assert;
 
@@ -14,6 +21,7 @@ import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -110,4 +118,86 @@ public class DiscoveryManagerTest {
         Assert.assertEquals(0, discovery.discoveryProviders.size());
         Assert.assertEquals(0, discovery.deviceClasses.size());
     }
+
+    @Test
+    public void testRegisterDeviceServiceFactory() {
+        discovery.registerDeviceService(DIALService.discoveryFilter(), SSDPDiscoveryProvider.class, new DIALServiceFactory());
+        Assert.assertEquals(0, discovery.discoveryProviders.size());
+        Assert.assertEquals(1, discovery.pendingProviders.size());
+        Assert.assertEquals(1, discovery.serviceFactories.size());
+        Assert.assertEquals(0, discovery.deviceClasses.size());
+        Assert.assertEquals(1, discovery.getDiscoveryProviders().size());
+        Assert.assertEquals(0, discovery.pendingProviders.size());
+
+        discovery.registerDeviceService(DIALService.class, SSDPDiscoveryProvider.class);
+        Assert.assertEquals(0, discovery.serviceFactories.size());
+        Assert.assertEquals(1, discovery.deviceClasses.size());
+
+        discovery.registerDeviceService(DIALService.discoveryFilter(), SSDPDiscoveryProvider.class, new DIALServiceFactory());
+        discovery.unregisterDeviceService(DIALService.class, SSDPDiscoveryProvider.class);
+        Assert.assertEquals(0, discovery.serviceFactories.size());
+        Assert.assertEquals(0, discovery.deviceClasses.size());
+        Assert.assertEquals(0, discovery.discoveryProviders.size());
+    }
+
+    @Test
+    public void testAddServiceWithFactory() {
+        DIALServiceFactory factory = new DIALServiceFactory();
+        discovery.registerDeviceService(DIALService.discoveryFilter(), SSDPDiscoveryProvider.class, factory);
+
+        ServiceDescription description = new ServiceDescription();
+        description.setServiceID(DIALService.ID);
+        description.setUUID("uuid");
+        description.setIpAddress("192.168.0.1");
+        ConnectableDevice device = new ConnectableDevice(description);
+
+        discovery.addServiceDescriptionToDevice(description, device);
+
+        Assert.assertEquals(1, factory.created);
+        Assert.assertTrue(device.getServiceByName(DIALService.ID) instanceof DIALService);
+    }
+
+    @Test
+    public void testProviderIsCreatedOnFirstLookup() {
+        final int[] created = new int[1];
+        DiscoveryProviderFactory providerFactory = new DiscoveryProviderFactory() {
+            @Override
+            public DiscoveryProvider createProvider(Context context) {
+                created[0]++;
+                return new SSDPDiscoveryProvider(context);
+            }
+        };
+
+        discovery.registerDeviceService(DIALService.discoveryFilter(), SSDPDiscoveryProvider.class, providerFactory, new DIALServiceFactory());
+        discovery.registerDeviceService(DLNAService.discoveryFilter(), SSDPDiscoveryProvider.class, providerFactory, new DIALServiceFactory());
+        Assert.assertEquals(0, created[0]);
+
+        List<DiscoveryProvider> providers = discovery.getDiscoveryProviders();
+        Assert.assertEquals(1, created[0]);
+        Assert.assertEquals(1, providers.size());
+        Assert.assertFalse(providers.get(0).isEmpty());
+
+        discovery.getDiscoveryProviders();
+        Assert.assertEquals(1, created[0]);
+    }
+
+    @Test
+    public void testUnregisterPendingService() {
+        discovery.registerDeviceService(DIALService.discoveryFilter(), SSDPDiscoveryProvider.class, new DIALServiceFactory());
+        discovery.unregisterDeviceService(DIALService.class, SSDPDiscoveryProvider.class);
+
+        Assert.assertEquals(0, discovery.pendingProviders.size());
+        Assert.assertEquals(0, discovery.serviceFactories.size());
+        Assert.assertEquals(0, discovery.getDiscoveryProviders().size());
+    }
+
+    static class DIALServiceFactory implements DeviceServiceFactory {
+        int created;
+
+        @Override
+        public DeviceService createService(ServiceDescription serviceDescription, ServiceConfig serviceConfig) {
+            created++;
+            return new DIALService(serviceDescription, serviceConfig);
+        }
+    }
 }
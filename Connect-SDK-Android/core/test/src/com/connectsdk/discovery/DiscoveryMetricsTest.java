@@ -0,0 +1,83 @@
+package com.connectsdk.discovery;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest=Config.NONE)
+public class DiscoveryMetricsTest {
+
+    @Test
+    public void testProviderCounters() {
+        DiscoveryMetrics metrics = new DiscoveryMetrics();
+        DiscoveryMetrics.ProviderMetrics provider = metrics.getProviderMetrics("SSDPDiscoveryProvider");
+
+        provider.recordPacket();
+        provider.recordPacket();
+        provider.recordParseFailure();
+        provider.recordDuplicate();
+        provider.recordFetch(40);
+        provider.recordFetchFailure();
+        provider.recordServiceFound();
+
+        Assert.assertSame(provider, metrics.getProviderMetrics("SSDPDiscoveryProvider"));
+        Assert.assertEquals(1, metrics.getAllProviderMetrics().size());
+        Assert.assertEquals(2, provider.getPacketsReceived());
+        Assert.assertEquals(1, provider.getParseFailures());
+        Assert.assertEquals(1, provider.getDuplicatesSuppressed());
+        Assert.assertEquals(1, provider.getFetchFailures());
+        Assert.assertEquals(1, provider.getServicesFound());
+        Assert.assertEquals(1, provider.getFetchLatency().getCount());
+        Assert.assertEquals(40, provider.getFetchLatency().getMax());
+    }
+
+    @Test
+    public void testCompatibleDeviceTimes() {
+        DiscoveryMetrics metrics = new DiscoveryMetrics();
+        Assert.assertEquals(-1, metrics.getTimeToFirstCompatibleDevice());
+        Assert.assertEquals(-1, metrics.getTimeToFullDeviceSet());
+
+        metrics.markStart();
+        metrics.recordCompatibleDevice();
+        metrics.recordCompatibleDevice();
+
+        Assert.assertEquals(2, metrics.getCompatibleDevicesFound());
+        Assert.assertTrue(metrics.getTimeToFirstCompatibleDevice() >= 0);
+        Assert.assertTrue(metrics.getTimeToFullDeviceSet() >= metrics.getTimeToFirstCompatibleDevice());
+    }
+
+    @Test
+    public void testSnapshotDoesNotChange() {
+        DiscoveryMetrics metrics = new DiscoveryMetrics();
+        DiscoveryMetrics.ProviderMetrics provider = metrics.getProviderMetrics("SSDPDiscoveryProvider");
+        provider.recordPacket();
+        metrics.recordCompatibleDevice();
+
+        DiscoveryMetrics snapshot = metrics.snapshot();
+        provider.recordPacket();
+        metrics.recordCompatibleDevice();
+
+        Assert.assertEquals(1, snapshot.getProviderMetrics("SSDPDiscoveryProvider").getPacketsReceived());
+        Assert.assertEquals(1, snapshot.getCompatibleDevicesFound());
+        Assert.assertEquals(2, provider.getPacketsReceived());
+    }
+
+    @Test
+    public void testStartResetsCounters() {
+        DiscoveryMetrics metrics = new DiscoveryMetrics();
+        DiscoveryMetrics.ProviderMetrics provider = metrics.getProviderMetrics("SSDPDiscoveryProvider");
+        provider.recordPacket();
+        provider.recordFetch(10);
+        metrics.recordCompatibleDevice();
+
+        metrics.markStart();
+
+        Assert.assertEquals(0, provider.getPacketsReceived());
+        Assert.assertEquals(0, provider.getFetchLatency().getCount());
+        Assert.assertEquals(0, metrics.getCompatibleDevicesFound());
+        Assert.assertEquals(-1, metrics.getTimeToFirstCompatibleDevice());
+    }
+}
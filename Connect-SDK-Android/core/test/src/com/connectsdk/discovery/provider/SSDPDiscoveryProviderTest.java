@@ -21,14 +21,12 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.URL;
 import java.util.ArrayList;
 
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest=Config.NONE,shadows={WifiInfoShadow.class})
@@ -54,9 +52,6 @@ public class SSDPDiscoveryProviderTest{
 
     @Before
     public void setUp() throws Exception {
-        byte[] data = new byte[1];
-        when(ssdpClient.responseReceive()).thenReturn(new DatagramPacket(data, 1));
-        when(ssdpClient.multicastReceive()).thenReturn(new DatagramPacket(data, 1));
         dp = new StubSSDPDiscoveryProvider(Robolectric.application);
         assertNotNull(dp);
     }
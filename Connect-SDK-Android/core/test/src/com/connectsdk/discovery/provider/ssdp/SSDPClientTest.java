@@ -14,13 +14,15 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.MulticastSocket;
-import java.net.NetworkInterface;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest=Config.NONE ,shadows = { WifiInfoShadow.class })
@@ -29,8 +31,8 @@ public class SSDPClientTest {
     InetAddress localAddress;
     SSDPClient ssdpClient;
 
-    private DatagramSocket wildSocket = Mockito.mock(DatagramSocket.class);
-    private MulticastSocket mLocalSocket = Mockito.mock(MulticastSocket.class);
+    private DatagramChannel wildChannel = Mockito.mock(DatagramChannel.class);
+    private DatagramChannel mLocalChannel = Mockito.mock(DatagramChannel.class);
 
     public SSDPClientTest() {
         super();
@@ -39,81 +41,100 @@ public class SSDPClientTest {
     @Before
     public void setUp() throws IOException {
         localAddress = Util.getIpAddress(Robolectric.application);
-        ssdpClient = new SSDPClient(localAddress, mLocalSocket, wildSocket);
+        ssdpClient = new SSDPClient(localAddress, mLocalChannel, wildChannel);
     }
 
     @Test
     public void testSend() throws Exception {
-        //Verify is ssdpClient.send() is sending correct SSDP packet to DatagramSocket
+        //Verify is ssdpClient.send() is sending correct SSDP packet to DatagramChannel
 
         String stringData = "some data";
-        DatagramPacket dp = new DatagramPacket(stringData.getBytes(),
-                stringData.length(), new InetSocketAddress("239.255.255.250",1900));
         ssdpClient.send(stringData);
 
-        ArgumentCaptor<DatagramPacket> argument = ArgumentCaptor.forClass(DatagramPacket.class);
-        Mockito.verify(wildSocket).send(argument.capture());
+        ArgumentCaptor<ByteBuffer> data = ArgumentCaptor.forClass(ByteBuffer.class);
+        ArgumentCaptor<SocketAddress> target = ArgumentCaptor.forClass(SocketAddress.class);
+        Mockito.verify(wildChannel).send(data.capture(), target.capture());
 
-        Assert.assertEquals(dp.getAddress(), argument.getValue().getAddress());
-        Assert.assertEquals(dp.getPort(), argument.getValue().getPort());
-        Assert.assertEquals(new String(dp.getData()), new String(argument.getValue().getData()));
+        Assert.assertEquals(new InetSocketAddress("239.255.255.250", 1900), target.getValue());
+        Assert.assertEquals(stringData, new String(data.getValue().array()));
     }
 
     @Test
-    public void testResponseRecieve() throws IOException {
-        //Verify is ssdpClient.responseReceive() receive SSDP Response packet to DatagramSocket
-
-        byte[] buf = new byte[1024];
-        DatagramPacket dp = new DatagramPacket(buf, buf.length);
-        ssdpClient.responseReceive();
-
-        ArgumentCaptor<DatagramPacket> argument = ArgumentCaptor.forClass(DatagramPacket.class);
-        Mockito.verify(wildSocket).receive(argument.capture());
-        Assert.assertEquals(dp.getLength(), argument.getValue().getLength());
-        Assert.assertEquals(new String(dp.getData()), new String(argument.getValue().getData()));
+    public void testBindResponseChannel() throws IOException {
+        //Verify is ssdpClient binds the response channel to the local address
 
+        Mockito.verify(wildChannel).bind(new InetSocketAddress(localAddress, 0));
     }
 
     @Test
-    public void testNotifyReceive() throws IOException {
-        //Verify is ssdpClient.NotifyReceive() receive SSDP Notify packet to DatagramSocket.
-
-        byte[] buf = new byte[1024];
-        DatagramPacket dp = new DatagramPacket(buf, buf.length);
-        ssdpClient.multicastReceive();
-
-        ArgumentCaptor<DatagramPacket> argument = ArgumentCaptor.forClass(DatagramPacket.class);
-        Mockito.verify(mLocalSocket).receive(argument.capture());
-        Assert.assertEquals(dp.getLength(), argument.getValue().getLength());
-        Assert.assertEquals(new String(dp.getData()), new String(argument.getValue().getData()));
-
+    public void testReceive() throws Exception {
+        //Verify is ssdpClient.receive() delivers packets from both response and multicast channels
+
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        DatagramChannel multicastChannel = DatagramChannel.open();
+        multicastChannel.bind(new InetSocketAddress(loopback, 0));
+        DatagramChannel responseChannel = DatagramChannel.open();
+        final SSDPClient client = new SSDPClient(loopback, multicastChannel, responseChannel);
+
+        final List<String> packets = new CopyOnWriteArrayList<String>();
+        final CountDownLatch latch = new CountDownLatch(2);
+        Thread receiveThread = startReceiving(client, new SSDPClient.PacketListener() {
+            @Override
+            public void onPacketReceived(ByteBuffer packet, InetSocketAddress sender) {
+                byte[] bytes = new byte[packet.remaining()];
+                packet.get(bytes);
+                packets.add(new String(bytes));
+                latch.countDown();
+            }
+        });
+
+        DatagramChannel sender = DatagramChannel.open();
+        sender.send(ByteBuffer.wrap("notify".getBytes()), multicastChannel.getLocalAddress());
+        sender.send(ByteBuffer.wrap("response".getBytes()), responseChannel.getLocalAddress());
+        sender.close();
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(packets.contains("notify"));
+        Assert.assertTrue(packets.contains("response"));
+
+        client.close();
+        receiveThread.join(5000);
+        Assert.assertFalse(receiveThread.isAlive());
     }
 
-
     @Test
-    public void testClose() throws IOException {
-        wildSocket.connect(localAddress, 1903);
-        mLocalSocket.connect(localAddress, 1904);
-        ssdpClient.close();
-
-        Mockito.verify(mLocalSocket, Mockito.times(1)).leaveGroup(Mockito.any(SocketAddress.class),Mockito.any(NetworkInterface.class));
-        Mockito.verify(mLocalSocket, Mockito.times(1)).close();
-        Mockito.verify(wildSocket, Mockito.times(1)).disconnect();
-        Mockito.verify(wildSocket, Mockito.times(1)).close();
-
-
+    public void testClose() throws Exception {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        DatagramChannel multicastChannel = DatagramChannel.open();
+        multicastChannel.bind(new InetSocketAddress(loopback, 0));
+        DatagramChannel responseChannel = DatagramChannel.open();
+        SSDPClient client = new SSDPClient(loopback, multicastChannel, responseChannel);
+
+        Thread receiveThread = startReceiving(client, Mockito.mock(SSDPClient.PacketListener.class));
+        Assert.assertTrue(client.isConnected());
+
+        client.close();
+        receiveThread.join(5000);
+
+        Assert.assertFalse(receiveThread.isAlive());
+        Assert.assertFalse(client.isConnected());
+        Assert.assertFalse(multicastChannel.isOpen());
+        Assert.assertFalse(responseChannel.isOpen());
     }
 
-    @Test
-    public void testSetTimeout() throws Exception {
-        Integer testTimeout = 1000;
-        ssdpClient.setTimeout(testTimeout);
-
-        ArgumentCaptor<Integer> argument = ArgumentCaptor.forClass(Integer.class);
-        Mockito.verify(wildSocket, Mockito.times(1)).setSoTimeout(argument.capture());
-        Assert.assertEquals(testTimeout, new Integer(argument.getValue()));
-
+    private Thread startReceiving(final SSDPClient client, final SSDPClient.PacketListener listener) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.receive(listener);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        thread.start();
+        return thread;
     }
 
-
 }
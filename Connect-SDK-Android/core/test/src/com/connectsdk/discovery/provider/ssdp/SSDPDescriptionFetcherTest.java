@@ -0,0 +1,183 @@
+package com.connectsdk.discovery.provider.ssdp;
+
+import com.connectsdk.core.TestUtil;
+
+import org.apache.tools.ant.filters.StringInputStream;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest=Config.NONE)
+public class SSDPDescriptionFetcherTest {
+
+    static final String DESCRIPTION =
+            "<root xmlns=\"urn:schemas-upnp-org:device-1-0\">\n" +
+            "<device>\n" +
+            "<friendlyName>Adnan TV</friendlyName>\n" +
+            "</device>\n" +
+            "</root>";
+
+    AtomicInteger openedConnections;
+    CountDownLatch firstConnection;
+    CountDownLatch release;
+    URLStreamHandler handler;
+
+    @Before
+    public void setUp() {
+        openedConnections = new AtomicInteger();
+        firstConnection = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+
+        // every connection blocks until the test releases it
+        handler = new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL url) throws IOException {
+                URLConnection connection = Mockito.mock(URLConnection.class);
+                Mockito.when(connection.getInputStream()).thenAnswer(new Answer<InputStream>() {
+                    @Override
+                    public InputStream answer(InvocationOnMock invocation) throws Throwable {
+                        openedConnections.incrementAndGet();
+                        firstConnection.countDown();
+                        release.await(5, TimeUnit.SECONDS);
+                        return new StringInputStream(DESCRIPTION);
+                    }
+                });
+                return connection;
+            }
+        };
+    }
+
+    @Test
+    public void testMergeFetchesOfSameLocation() throws Exception {
+        SSDPDescriptionFetcher fetcher = new SSDPDescriptionFetcher(new SSDPDeviceCache(null, 10));
+        URL location = new URL("http", "hostname", 80, "/description.xml", handler);
+        RecordingListener dlnaListener = new RecordingListener();
+        RecordingListener dialListener = new RecordingListener();
+
+        fetcher.fetch(location, "urn:schemas-upnp-org:device:MediaRenderer:1", "uuid-1", null, null, dlnaListener);
+        Assert.assertTrue(firstConnection.await(5, TimeUnit.SECONDS));
+        fetcher.fetch(location, "urn:dial-multiscreen-org:service:dial:1", "uuid-2", null, null, dialListener);
+        Assert.assertEquals(1, fetcher.getFetchCount());
+
+        release.countDown();
+        TestUtil.runUtilBackgroundTasks();
+
+        Assert.assertEquals(1, openedConnections.get());
+        Assert.assertNotNull(dlnaListener.device);
+        Assert.assertSame(dlnaListener.device, dialListener.device);
+        Assert.assertEquals(0, fetcher.getFetchCount());
+    }
+
+    @Test
+    public void testLimitFetchesPerHost() throws Exception {
+        SSDPDescriptionFetcher fetcher = new SSDPDescriptionFetcher(new SSDPDeviceCache(null, 10), 8, 1);
+        RecordingListener firstListener = new RecordingListener();
+        RecordingListener secondListener = new RecordingListener();
+
+        fetcher.fetch(new URL("http", "hostname", 80, "/first.xml", handler), null, "uuid-1", null, null, firstListener);
+        Assert.assertTrue(firstConnection.await(5, TimeUnit.SECONDS));
+        fetcher.fetch(new URL("http", "hostname", 80, "/second.xml", handler), null, "uuid-2", null, null, secondListener);
+
+        Thread.sleep(100);
+        Assert.assertEquals(1, openedConnections.get());
+        Assert.assertEquals(2, fetcher.getFetchCount());
+
+        release.countDown();
+        TestUtil.runUtilBackgroundTasks();
+
+        Assert.assertEquals(2, openedConnections.get());
+        Assert.assertNotNull(firstListener.device);
+        Assert.assertNotNull(secondListener.device);
+    }
+
+    @Test
+    public void testCancelPendingFailsQueuedRequests() throws Exception {
+        SSDPDescriptionFetcher fetcher = new SSDPDescriptionFetcher(new SSDPDeviceCache(null, 10), 8, 1);
+        RecordingListener runningListener = new RecordingListener();
+        RecordingListener queuedListener = new RecordingListener();
+
+        fetcher.fetch(new URL("http", "hostname", 80, "/first.xml", handler), null, "uuid-1", null, null, runningListener);
+        Assert.assertTrue(firstConnection.await(5, TimeUnit.SECONDS));
+        fetcher.fetch(new URL("http", "hostname", 80, "/second.xml", handler), null, "uuid-2", null, null, queuedListener);
+
+        fetcher.cancelPending();
+
+        Assert.assertTrue(queuedListener.error instanceof CancellationException);
+        Assert.assertEquals(1, fetcher.getFetchCount());
+
+        release.countDown();
+        TestUtil.runUtilBackgroundTasks();
+
+        Assert.assertNotNull(runningListener.device);
+        Assert.assertEquals(1, openedConnections.get());
+    }
+
+    @Test
+    public void testThrowingListenerDoesNotStopQueuedFetches() throws Exception {
+        SSDPDescriptionFetcher fetcher = new SSDPDescriptionFetcher(new SSDPDeviceCache(null, 10), 8, 1);
+        RecordingListener throwingListener = new RecordingListener() {
+            @Override
+            public void onDeviceFetched(SSDPDevice device) {
+                super.onDeviceFetched(device);
+                throw new IllegalStateException();
+            }
+        };
+        RecordingListener queuedListener = new RecordingListener();
+
+        fetcher.fetch(new URL("http", "hostname", 80, "/first.xml", handler), null, "uuid-1", null, null, throwingListener);
+        Assert.assertTrue(firstConnection.await(5, TimeUnit.SECONDS));
+        fetcher.fetch(new URL("http", "hostname", 80, "/second.xml", handler), null, "uuid-2", null, null, queuedListener);
+
+        release.countDown();
+        TestUtil.runUtilBackgroundTasks();
+
+        Assert.assertNotNull(throwingListener.device);
+        Assert.assertNotNull(queuedListener.device);
+        Assert.assertEquals(0, fetcher.getFetchCount());
+    }
+
+    @Test
+    public void testReportFailure() throws Exception {
+        SSDPDescriptionFetcher fetcher = new SSDPDescriptionFetcher(new SSDPDeviceCache(null, 10));
+        URL location = TestUtil.getMockUrl("plain text", null);
+        RecordingListener listener = new RecordingListener();
+
+        fetcher.fetch(location, null, "uuid-1", null, null, listener);
+        TestUtil.runUtilBackgroundTasks();
+
+        Assert.assertNull(listener.device);
+        Assert.assertNotNull(listener.error);
+    }
+
+    static class RecordingListener implements SSDPDescriptionFetcher.FetchListener {
+        volatile SSDPDevice device;
+        volatile Exception error;
+
+        @Override
+        public void onDeviceFetched(SSDPDevice device) {
+            this.device = device;
+        }
+
+        @Override
+        public void onFetchFailed(Exception error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.connectsdk.discovery.provider.ssdp;
+
+import com.connectsdk.core.TestUtil;
+
+import org.apache.tools.ant.filters.StringInputStream;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.LinkedList;
+import java.util.Queue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest=Config.NONE)
+public class SSDPDeviceCacheTest {
+
+    static final String UUID = "86ea12c3-4ad7-2117-edbd-8177429fe21e";
+
+    static final String DESCRIPTION =
+            "<root xmlns=\"urn:schemas-upnp-org:device-1-0\">\n" +
+            "<device>\n" +
+            "<deviceType>urn:schemas-upnp-org:device:Basic:1</deviceType>\n" +
+            "<friendlyName>Adnan TV</friendlyName>\n" +
+            "<serviceList>\n" +
+            "<service>\n" +
+            "<serviceType>urn:schemas-upnp-org:service:AVTransport:1</serviceType>\n" +
+            "<controlURL>/AVTransport/control</controlURL>\n" +
+            "</service>\n" +
+            "</serviceList>\n" +
+            "</device>\n" +
+            "</root>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File file;
+    SSDPDeviceCache cache;
+    Queue<URLConnection> connections;
+    URL location;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), SSDPDeviceCache.FILENAME);
+        cache = new SSDPDeviceCache(file, SSDPDeviceCache.DEFAULT_MAX_ENTRIES);
+        connections = new LinkedList<URLConnection>();
+        location = new URL("http", "hostname", 80, "/description.xml", new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL url) throws IOException {
+                return connections.remove();
+            }
+        });
+    }
+
+    @Test
+    public void testSkipFetchWhenBootIdAndConfigIdAreUnchanged() throws Exception {
+        connections.add(mockConnection(DESCRIPTION));
+
+        SSDPDevice device = cache.getDevice(location, null, UUID, "1", "2");
+        SSDPDevice cachedDevice = cache.getDevice(location, null, UUID, "1", "2");
+
+        Assert.assertSame(device, cachedDevice);
+        Assert.assertTrue(connections.isEmpty());
+    }
+
+    @Test
+    public void testFetchWhenBootIdChanges() throws Exception {
+        connections.add(mockConnection(DESCRIPTION));
+        connections.add(mockConnection(DESCRIPTION.replace("Adnan TV", "Renamed TV")));
+
+        cache.getDevice(location, null, UUID, "1", "2");
+        SSDPDevice device = cache.getDevice(location, null, UUID, "2", "2");
+
+        Assert.assertEquals("Renamed TV", device.friendlyName);
+        Assert.assertTrue(connections.isEmpty());
+    }
+
+    @Test
+    public void testRevalidateWithConditionalRequest() throws Exception {
+        URLConnection first = mockConnection(DESCRIPTION);
+        Mockito.when(first.getHeaderField("ETag")).thenReturn("\"v1\"");
+        connections.add(first);
+
+        HttpURLConnection notModified = Mockito.mock(HttpURLConnection.class);
+        Mockito.when(notModified.getResponseCode()).thenReturn(HttpURLConnection.HTTP_NOT_MODIFIED);
+        connections.add(notModified);
+
+        SSDPDevice device = cache.getDevice(location, null, UUID, null, null);
+        SSDPDevice revalidated = cache.getDevice(location, null, UUID, null, null);
+
+        Mockito.verify(notModified).setRequestProperty("If-None-Match", "\"v1\"");
+        Mockito.verify(notModified, Mockito.never()).getInputStream();
+        Assert.assertSame(device, revalidated);
+    }
+
+    @Test
+    public void testPersistAcrossInstances() throws Exception {
+        connections.add(mockConnection(DESCRIPTION));
+        cache.getDevice(location, null, UUID, "1", "2");
+        TestUtil.runUtilBackgroundTasks();
+
+        Assert.assertTrue(file.exists());
+
+        SSDPDeviceCache restoredCache = new SSDPDeviceCache(file, SSDPDeviceCache.DEFAULT_MAX_ENTRIES);
+        SSDPDevice device = restoredCache.getDevice(location, null, UUID, "1", "2");
+
+        Assert.assertTrue(connections.isEmpty());
+        Assert.assertEquals("Adnan TV", device.friendlyName);
+        Assert.assertEquals(1, device.serviceList.size());
+        Assert.assertEquals("/AVTransport/control", device.serviceList.get(0).controlURL);
+        Assert.assertEquals("http://hostname:80", device.serviceList.get(0).baseURL);
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        cache = new SSDPDeviceCache(file, 1);
+        connections.add(mockConnection(DESCRIPTION));
+        connections.add(mockConnection(DESCRIPTION));
+
+        cache.getDevice(location, null, UUID, "1", "2");
+        cache.getDevice(location, null, "other-uuid", "1", "2");
+
+        Assert.assertEquals(1, cache.size());
+    }
+
+    private URLConnection mockConnection(String content) throws IOException {
+        URLConnection connection = Mockito.mock(URLConnection.class);
+        Mockito.when(connection.getInputStream()).thenReturn(new StringInputStream(content));
+        return connection;
+    }
+}
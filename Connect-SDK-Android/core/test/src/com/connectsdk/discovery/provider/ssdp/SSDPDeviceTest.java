@@ -4,6 +4,7 @@ import com.connectsdk.core.TestUtil;
 
 import junit.framework.Assert;
 
+import org.junit.After;
 import org.junit.Test;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
@@ -67,6 +68,21 @@ public class SSDPDeviceTest {
             "</device>\n" +
             "</root>";
 
+    String deviceAppCastingDescription =
+            "<root xmlns=\"urn:schemas-upnp-org:device-1-0\">\n" +
+            "<device>\n" +
+            "<deviceType>urn:schemas-upnp-org:device:Basic:1</deviceType>\n" +
+            "<friendlyName>Living room &amp; kitchen</friendlyName>\n" +
+            "<appCasting>support</appCasting>\n" +
+            "<supportAppcastingFeatures>mirroring|remote-camera</supportAppcastingFeatures>\n" +
+            "</device>\n" +
+            "</root>";
+
+    @After
+    public void tearDown() {
+        SSDPDevice.setRetainLocationXML(false);
+    }
+
     @Test
     public void testCreateDeviceWithNullUrl() {
         try {
@@ -110,7 +126,7 @@ public class SSDPDeviceTest {
         Assert.assertEquals("Adnan TV", device.friendlyName);
         Assert.assertEquals("LG Electronics", device.manufacturer);
         Assert.assertNull(device.modelDescription);
-        Assert.assertEquals(deviceDescription, device.locationXML);
+        Assert.assertNull(device.locationXML);
         Assert.assertEquals("http://application_url/", device.applicationURL);
         Assert.assertEquals("hostname", device.ipAddress);
         Assert.assertEquals(80, device.port);
@@ -126,7 +142,7 @@ public class SSDPDeviceTest {
         Assert.assertNull(device.friendlyName);
         Assert.assertNull(device.manufacturer);
         Assert.assertNull(device.modelDescription);
-        Assert.assertEquals(deviceSmallDescription, device.locationXML);
+        Assert.assertNull(device.locationXML);
         Assert.assertEquals("http://application_url/", device.applicationURL);
         Assert.assertEquals("hostname", device.ipAddress);
         Assert.assertEquals(80, device.port);
@@ -135,4 +151,41 @@ public class SSDPDeviceTest {
         Assert.assertNull(device.modelNumber);
     }
 
+    @Test
+    public void testCreateDeviceRetainingLocationXML() throws IOException, ParserConfigurationException, SAXException {
+        SSDPDevice.setRetainLocationXML(true);
+
+        SSDPDevice device = new SSDPDevice(TestUtil.getMockUrl(deviceDescription, "http://application_url/"), null);
+        Assert.assertEquals(deviceDescription, device.locationXML);
+        Assert.assertEquals("Adnan TV", device.friendlyName);
+        Assert.assertEquals(1, device.serviceList.size());
+    }
+
+    @Test
+    public void testCreateDeviceExtractsDescriptionElements() throws IOException, ParserConfigurationException, SAXException {
+        SSDPDevice device = new SSDPDevice(TestUtil.getMockUrl(deviceAppCastingDescription, null), null);
+        Assert.assertEquals("Living room & kitchen", device.friendlyName);
+        Assert.assertEquals("support", device.descriptionElements.get(SSDPDeviceDescriptionParser.TAG_APP_CASTING));
+        Assert.assertEquals("mirroring|remote-camera",
+                device.descriptionElements.get(SSDPDeviceDescriptionParser.TAG_SUPPORT_APPCASTING_FEATURES));
+        Assert.assertEquals(2, device.descriptionElements.size());
+
+        SSDPDevice restored = new SSDPDevice(device.toJSONObject());
+        Assert.assertEquals(device.descriptionElements, restored.descriptionElements);
+    }
+
+    @Test
+    public void testParsersAreReused() throws IOException, ParserConfigurationException, SAXException {
+        try {
+            new SSDPDevice(TestUtil.getMockUrl("plain text", null), null);
+            Assert.fail("SAXParseException should be thrown");
+        } catch (SAXParseException e) {
+            // OK
+        }
+
+        // the parser of this thread has to be usable after a failure
+        SSDPDevice device = new SSDPDevice(TestUtil.getMockUrl(deviceDescription, null), null);
+        Assert.assertEquals("Adnan TV", device.friendlyName);
+        Assert.assertEquals("\nurn:lge-com:serviceId:webos-second-screen-3000-3001\n", device.serviceList.get(0).serviceId);
+    }
 }
@@ -0,0 +1,445 @@
+package com.connectsdk.discovery.provider.ssdp;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a fleet of virtual UPnP devices on loopback for tests and benchmarks.
+ *
+ * The devices answer M-SEARCH requests, send NOTIFY alive and byebye storms and serve their
+ * description documents over HTTP. Clients created with {@link #createClient()} send their
+ * searches to the simulator instead of the multicast group and receive the notifications of the
+ * simulator on a loopback channel, so no multicast support is needed.
+ */
+public class SSDPFleetSimulator implements Closeable {
+
+    public static final String DEFAULT_SEARCH_TARGET = "urn:schemas-upnp-org:device:MediaRenderer:1";
+
+    /* Number of packets sent at once when responses or notifications are spread over a window */
+    static final int SLICE_MILLIS = 10;
+
+    public static class VirtualDevice {
+        public final int index;
+        public final String uuid;
+        public final String searchTarget;
+        public final String friendlyName;
+        /* Address the device is reported with, loopback gives every device the same one */
+        public final String virtualAddress;
+        volatile int bootId = 1;
+
+        VirtualDevice(int index, String uuid, String searchTarget) {
+            this.index = index;
+            this.uuid = uuid;
+            this.searchTarget = searchTarget;
+            this.friendlyName = "Simulated Renderer " + index;
+            this.virtualAddress = String.format(Locale.US, "10.%d.%d.%d", (index >> 16) & 0xff, (index >> 8) & 0xff, index & 0xff);
+        }
+    }
+
+    private final List<VirtualDevice> devices;
+    private final InetAddress loopback = InetAddress.getLoopbackAddress();
+
+    private DatagramChannel searchChannel;
+    private ServerSocket httpServer;
+    private ExecutorService httpWorkers;
+    private ScheduledExecutorService sender;
+    private Thread searchThread;
+    private Thread httpThread;
+
+    private final List<InetSocketAddress> notifyTargets = new CopyOnWriteArrayList<InetSocketAddress>();
+
+    private long responseWindow = 1000;
+    private volatile boolean closed = false;
+
+    private final AtomicLong searchesReceived = new AtomicLong();
+    private final AtomicLong packetsSent = new AtomicLong();
+    private final AtomicLong descriptionsServed = new AtomicLong();
+
+    public SSDPFleetSimulator(int deviceCount) {
+        this(deviceCount, DEFAULT_SEARCH_TARGET);
+    }
+
+    public SSDPFleetSimulator(int deviceCount, String searchTarget) {
+        List<VirtualDevice> list = new ArrayList<VirtualDevice>(deviceCount);
+        for (int i = 0; i < deviceCount; i++) {
+            list.add(new VirtualDevice(i, UUID.randomUUID().toString(), searchTarget));
+        }
+        devices = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Sets the time over which the responses to one search are spread, like devices do within
+     * the MX window. Zero sends all responses at once.
+     */
+    public void setResponseWindow(long millis) {
+        responseWindow = millis;
+    }
+
+    public void start() throws IOException {
+        searchChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+        searchChannel.bind(new InetSocketAddress(loopback, 0));
+
+        httpServer = new ServerSocket(0, 256, loopback);
+        httpWorkers = Executors.newFixedThreadPool(8);
+        sender = Executors.newSingleThreadScheduledExecutor();
+
+        searchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                receiveSearches();
+            }
+        }, "SSDP Simulator Search");
+        searchThread.start();
+
+        httpThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "SSDP Simulator HTTP");
+        httpThread.start();
+    }
+
+    /**
+     * Creates a client which talks to this simulator. Its M-SEARCH requests are answered by all
+     * devices of the fleet and it receives all notifications.
+     */
+    public SSDPClient createClient() throws IOException {
+        DatagramChannel mcChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+        mcChannel.bind(new InetSocketAddress(loopback, 0));
+
+        SSDPClient client = new SSDPClient(loopback, mcChannel, DatagramChannel.open(StandardProtocolFamily.INET));
+        client.multicastGroup = (InetSocketAddress) searchChannel.getLocalAddress();
+
+        notifyTargets.add((InetSocketAddress) mcChannel.getLocalAddress());
+
+        return client;
+    }
+
+    public List<VirtualDevice> getDevices() {
+        return devices;
+    }
+
+    public VirtualDevice getDevice(String uuid) {
+        for (VirtualDevice device : devices) {
+            if (device.uuid.equals(uuid))
+                return device;
+        }
+        return null;
+    }
+
+    public String getLocation(VirtualDevice device) {
+        return String.format(Locale.US, "http://%s:%d/device/%d.xml", loopback.getHostAddress(), httpServer.getLocalPort(), device.index);
+    }
+
+    /** Simulates a reboot of the device, which changes its BOOTID.UPNP.ORG header */
+    public void reboot(VirtualDevice device) {
+        device.bootId++;
+    }
+
+    /**
+     * Sends a NOTIFY ssdp:alive for every device to every client.
+     *
+     * @param windowMillis time over which the packets are spread, zero sends them in one burst
+     */
+    public void sendAlive(long windowMillis) {
+        sendNotify(SSDPClient.ALIVE, windowMillis);
+    }
+
+    /** Sends a NOTIFY ssdp:byebye for every device to every client */
+    public void sendByeBye(long windowMillis) {
+        sendNotify(SSDPClient.BYEBYE, windowMillis);
+    }
+
+    public long getSearchesReceived() {
+        return searchesReceived.get();
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    public long getDescriptionsServed() {
+        return descriptionsServed.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+
+        if (sender != null)
+            sender.shutdownNow();
+        if (httpWorkers != null)
+            httpWorkers.shutdownNow();
+
+        try {
+            if (searchChannel != null)
+                searchChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        try {
+            if (httpServer != null)
+                httpServer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void sendNotify(String nts, long windowMillis) {
+        List<byte[]> packets = new ArrayList<byte[]>(devices.size());
+        List<InetSocketAddress> targets = new ArrayList<InetSocketAddress>(notifyTargets);
+
+        for (VirtualDevice device : devices) {
+            packets.add(notifyMessage(device, nts).getBytes(StandardCharsets.UTF_8));
+        }
+
+        for (InetSocketAddress target : targets) {
+            sendSpread(packets, target, windowMillis);
+        }
+    }
+
+    private void receiveSearches() {
+        ByteBuffer buffer = ByteBuffer.allocate(SSDPClient.MAX_PACKET_SIZE);
+        SSDPPacket packet = new SSDPPacket();
+
+        while (!closed) {
+            try {
+                buffer.clear();
+                InetSocketAddress sender = (InetSocketAddress) searchChannel.receive(buffer);
+                buffer.flip();
+
+                packet.parse(buffer, sender);
+
+                if (!packet.isType(SSDPClient.MSEARCH))
+                    continue;
+
+                searchesReceived.incrementAndGet();
+                answerSearch(packet.getHeader("ST"), sender);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (!closed)
+                    e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    private void answerSearch(String searchTarget, InetSocketAddress sender) {
+        if (searchTarget == null)
+            return;
+
+        List<byte[]> packets = new ArrayList<byte[]>();
+
+        for (VirtualDevice device : devices) {
+            if (searchTarget.equals(device.searchTarget) || searchTarget.equals("ssdp:all")
+                    || searchTarget.equals("upnp:rootdevice") || searchTarget.equals("uuid:" + device.uuid)) {
+                packets.add(searchResponse(device, searchTarget).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        sendSpread(packets, sender, responseWindow);
+    }
+
+    private void sendSpread(final List<byte[]> packets, final InetSocketAddress target, long windowMillis) {
+        int slices = (int) Math.max(1, windowMillis / SLICE_MILLIS);
+        int perSlice = (packets.size() + slices - 1) / slices;
+
+        for (int slice = 0; slice < slices && slice * perSlice < packets.size(); slice++) {
+            final int from = slice * perSlice;
+            final int to = Math.min(packets.size(), from + perSlice);
+
+            try {
+                sender.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = from; i < to; i++) {
+                            try {
+                                searchChannel.send(ByteBuffer.wrap(packets.get(i)), target);
+                                packetsSent.incrementAndGet();
+                            } catch (IOException e) {
+                                if (!closed)
+                                    e.printStackTrace();
+                                return;
+                            }
+                        }
+                    }
+                }, (long) slice * SLICE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    private String searchResponse(VirtualDevice device, String searchTarget) {
+        return SSDPClient.OK + SSDPClient.NEWLINE
+                + "CACHE-CONTROL: max-age=1800" + SSDPClient.NEWLINE
+                + "EXT:" + SSDPClient.NEWLINE
+                + "LOCATION: " + getLocation(device) + SSDPClient.NEWLINE
+                + "SERVER: Linux/4.0 UPnP/1.1 ConnectSDKSimulator/1.0" + SSDPClient.NEWLINE
+                + "ST: " + searchTarget + SSDPClient.NEWLINE
+                + "USN: uuid:" + device.uuid + "::" + device.searchTarget + SSDPClient.NEWLINE
+                + "BOOTID.UPNP.ORG: " + device.bootId + SSDPClient.NEWLINE
+                + "CONFIGID.UPNP.ORG: 1" + SSDPClient.NEWLINE
+                + SSDPClient.NEWLINE;
+    }
+
+    private String notifyMessage(VirtualDevice device, String nts) {
+        return SSDPClient.NOTIFY + SSDPClient.NEWLINE
+                + "HOST: " + SSDPClient.MULTICAST_ADDRESS + ":" + SSDPClient.PORT + SSDPClient.NEWLINE
+                + "CACHE-CONTROL: max-age=1800" + SSDPClient.NEWLINE
+                + "LOCATION: " + getLocation(device) + SSDPClient.NEWLINE
+                + "NT: " + device.searchTarget + SSDPClient.NEWLINE
+                + "NTS: " + nts + SSDPClient.NEWLINE
+                + "SERVER: Linux/4.0 UPnP/1.1 ConnectSDKSimulator/1.0" + SSDPClient.NEWLINE
+                + "USN: uuid:" + device.uuid + "::" + device.searchTarget + SSDPClient.NEWLINE
+                + "BOOTID.UPNP.ORG: " + device.bootId + SSDPClient.NEWLINE
+                + "CONFIGID.UPNP.ORG: 1" + SSDPClient.NEWLINE
+                + SSDPClient.NEWLINE;
+    }
+
+    String description(VirtualDevice device) {
+        return "<?xml version=\"1.0\"?>\n"
+                + "<root xmlns=\"urn:schemas-upnp-org:device-1-0\">\n"
+                + "<specVersion><major>1</major><minor>0</minor></specVersion>\n"
+                + "<device>\n"
+                + "<deviceType>" + device.searchTarget + "</deviceType>\n"
+                + "<friendlyName>" + device.friendlyName + "</friendlyName>\n"
+                + "<manufacturer>Connect SDK</manufacturer>\n"
+                + "<modelDescription>Simulated media renderer</modelDescription>\n"
+                + "<modelName>Simulator</modelName>\n"
+                + "<modelNumber>" + device.index + "</modelNumber>\n"
+                + "<UDN>uuid:" + device.uuid + "</UDN>\n"
+                + "<serviceList>\n"
+                + service("AVTransport", device)
+                + service("RenderingControl", device)
+                + service("ConnectionManager", device)
+                + "</serviceList>\n"
+                + "</device>\n"
+                + "</root>\n";
+    }
+
+    private String service(String name, VirtualDevice device) {
+        return "<service>\n"
+                + "<serviceType>urn:schemas-upnp-org:service:" + name + ":1</serviceType>\n"
+                + "<serviceId>urn:upnp-org:serviceId:" + name + "</serviceId>\n"
+                + "<SCPDURL>/device/" + device.index + "/" + name + "/scpd.xml</SCPDURL>\n"
+                + "<controlURL>/device/" + device.index + "/" + name + "/control</controlURL>\n"
+                + "<eventSubURL>/device/" + device.index + "/" + name + "/event</eventSubURL>\n"
+                + "</service>\n";
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                final Socket socket = httpServer.accept();
+
+                httpWorkers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                return;
+            } catch (SocketException e) {
+                return;
+            } catch (IOException e) {
+                if (!closed)
+                    e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            String requestLine = reader.readLine();
+            String ifNoneMatch = null;
+
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("If-None-Match"))
+                    ifNoneMatch = line.substring(colon + 1).trim();
+            }
+
+            VirtualDevice device = requestLine != null ? deviceForPath(requestLine) : null;
+            OutputStream out = socket.getOutputStream();
+
+            if (device == null) {
+                out.write("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            } else {
+                String eTag = "\"" + device.bootId + "-1\"";
+
+                if (eTag.equals(ifNoneMatch)) {
+                    out.write(("HTTP/1.1 304 Not Modified\r\nETag: " + eTag + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                } else {
+                    byte[] body = description(device).getBytes(StandardCharsets.UTF_8);
+                    String headers = "HTTP/1.1 200 OK\r\n"
+                            + "Content-Type: text/xml; charset=\"utf-8\"\r\n"
+                            + "Content-Length: " + body.length + "\r\n"
+                            + "ETag: " + eTag + "\r\n"
+                            + "Server: Linux/4.0 UPnP/1.1 ConnectSDKSimulator/1.0\r\n"
+                            + "Connection: close\r\n\r\n";
+
+                    out.write(headers.getBytes(StandardCharsets.ISO_8859_1));
+                    out.write(body);
+                    descriptionsServed.incrementAndGet();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            if (!closed)
+                e.printStackTrace();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private VirtualDevice deviceForPath(String requestLine) {
+        // GET /device/<index>.xml HTTP/1.1
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2 || !parts[1].startsWith("/device/") || !parts[1].endsWith(".xml"))
+            return null;
+
+        try {
+            int index = Integer.parseInt(parts[1].substring("/device/".length(), parts[1].length() - ".xml".length()));
+            return index >= 0 && index < devices.size() ? devices.get(index) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
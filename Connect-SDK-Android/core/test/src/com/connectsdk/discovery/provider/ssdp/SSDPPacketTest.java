@@ -8,11 +8,39 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest=Config.NONE)
 public class SSDPPacketTest {
 
+    static final String[] DATAGRAMS = {
+            "NOTIFY * HTTP/1.1\r\n" +
+            "HOST: 239.255.255.250:1900\r\n" +
+            "NT: nt_value\r\n" +
+            "NTS: ssdp:byebye\r\n" +
+            "USN: uuid:advertisement_UUID\r\n\r\n",
+            "NOTIFY * HTTP/1.1\r\n" +
+            "host: 239.255.255.250:1900\r\n" +
+            "nt: nt_value\r\n" +
+            "Nts: ssdp:byebye\r\n" +
+            "uSN: uuid:advertisement_UUID\r\n\r\n",
+            "HTTP/1.1 200 OK\n" +
+            "ST: urn:dial-multiscreen-org:service:dial:1\n" +
+            "LOCATION: http://192.168.1.10:8008/ssdp/device-desc.xml\n" +
+            "USN: uuid:0f574021-141a-ebe8-eeac-bcf7b973615a::urn:dial-multiscreen-org:service:dial:1\n\n",
+            "Unknown",
+            "\n\r\n\r\r\n\n\r\n\r\n::::sdkfjh::\r\n:\r\n::\r\nKEY:\r\nsdf\r\n\u000E¾<ƒÄ\f^‹Ã_Ã\u0007Ì\u0001ÜLÿ›îÿ$\u0004‰P\u0004‹T$\b‰H\u001B\f\f‰\r\n",
+            "key:value",
+    };
+
     DatagramPacket mDatagramPacket;
     SSDPPacket ssdpPacket;
 
@@ -91,4 +119,141 @@ public class SSDPPacketTest {
         ssdpPacket = new SSDPPacket(mDatagramPacket);
         Assert.assertEquals(null, ssdpPacket.getData().get("key"));
     }
+
+    @Test
+    public void testParseDatagramParity() {
+        for (String datagram : DATAGRAMS) {
+            byte[] bytes = datagram.getBytes();
+            String[] type = new String[1];
+            Map<String, String> expected = parseWithStrings(bytes, type);
+
+            ssdpPacket = new SSDPPacket(new DatagramPacket(bytes, 0));
+            Assert.assertEquals(datagram, type[0], ssdpPacket.getType());
+            Assert.assertEquals(datagram, expected, ssdpPacket.getData());
+            Assert.assertEquals(datagram, expected.size() > 0, ssdpPacket.getHeaderCount() > 0);
+
+            for (Map.Entry<String, String> header : expected.entrySet()) {
+                Assert.assertEquals(header.getValue(), ssdpPacket.getHeader(header.getKey()));
+                Assert.assertTrue(ssdpPacket.headerEquals(header.getKey(), header.getValue()));
+            }
+        }
+    }
+
+    @Test
+    public void testParseByteBufferParity() {
+        for (String datagram : DATAGRAMS) {
+            byte[] bytes = datagram.getBytes();
+            Map<String, String> expected = parseWithStrings(bytes, new String[1]);
+
+            // only the region between position and limit belongs to the packet
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 8);
+            buffer.put("garbage\n".getBytes());
+            buffer.put(bytes);
+            buffer.flip();
+            buffer.position(8);
+
+            ssdpPacket = new SSDPPacket(buffer, null);
+            Assert.assertEquals(datagram, expected, ssdpPacket.getData());
+            Assert.assertEquals(8, buffer.position());
+        }
+    }
+
+    @Test
+    public void testGetUUIDParity() {
+        Pattern uuidReg = Pattern.compile("(?<=uuid:)(.+?)(?=(::)|$)");
+        String[] usns = {
+                "uuid:advertisement_UUID",
+                "uuid:0f574021-141a-ebe8-eeac-bcf7b973615a::urn:dial-multiscreen-org:service:dial:1",
+                "uuid:::urn:schemas-upnp-org:device:MediaRenderer:1",
+                "uuid:",
+                "urn:lge-com:device:uuid:123::x",
+                "no uuid here",
+        };
+
+        for (String usn : usns) {
+            Matcher m = uuidReg.matcher(usn);
+            String expected = m.find() ? m.group() : null;
+
+            ssdpPacket = new SSDPPacket(ByteBuffer.wrap(("NOTIFY * HTTP/1.1\r\nUSN: " + usn + "\r\n\r\n").getBytes()), null);
+            Assert.assertEquals(usn, expected, ssdpPacket.getUUID());
+        }
+    }
+
+    @Test
+    public void testGetUUIDWithoutUSN() {
+        mDatagramPacket = new DatagramPacket(DATAGRAMS[3].getBytes(), 0);
+        ssdpPacket = new SSDPPacket(mDatagramPacket);
+        Assert.assertNull(ssdpPacket.getUUID());
+    }
+
+    @Test
+    public void testIsType() {
+        ssdpPacket = new SSDPPacket(ByteBuffer.wrap(DATAGRAMS[0].getBytes()), null);
+        Assert.assertTrue(ssdpPacket.isType(SSDPClient.NOTIFY));
+        Assert.assertFalse(ssdpPacket.isType(SSDPClient.MSEARCH));
+        Assert.assertFalse(ssdpPacket.isType("NOTIFY"));
+    }
+
+    @Test
+    public void testReparse() throws Exception {
+        InetSocketAddress sender = new InetSocketAddress(InetAddress.getByName("192.168.1.10"), 1900);
+        ssdpPacket = new SSDPPacket();
+        ssdpPacket.parse(ByteBuffer.wrap(DATAGRAMS[2].getBytes()), sender);
+        Assert.assertEquals("0f574021-141a-ebe8-eeac-bcf7b973615a", ssdpPacket.getUUID());
+        Assert.assertEquals(sender.getAddress(), ssdpPacket.getSourceAddress());
+
+        ssdpPacket.parse(ByteBuffer.wrap(DATAGRAMS[0].getBytes()), sender);
+        Assert.assertEquals("advertisement_UUID", ssdpPacket.getUUID());
+        Assert.assertNull(ssdpPacket.getHeader("LOCATION"));
+        Assert.assertEquals("NOTIFY * HTTP/1.1", ssdpPacket.getType());
+        Assert.assertEquals(4, ssdpPacket.getData().size());
+    }
+
+    /**
+     * String based parser which SSDPPacket used before, it serves as a reference for parity tests.
+     */
+    private static Map<String, String> parseWithStrings(byte[] bytes, String[] type) {
+        Map<String, String> data = new HashMap<String, String>();
+        String text = new String(bytes, Charset.forName("US-ASCII"));
+
+        int pos;
+        int eolPos;
+
+        if ((eolPos = text.indexOf("\r\n")) != -1) {
+            pos = eolPos + 2;
+        } else if ((eolPos = text.indexOf("\n")) != -1) {
+            pos = eolPos + 1;
+        } else {
+            return data;
+        }
+
+        type[0] = text.substring(0, eolPos);
+
+        while (pos < text.length()) {
+            String line;
+            if ((eolPos = text.indexOf("\r\n", pos)) != -1) {
+                line = text.substring(pos, eolPos);
+                pos = eolPos + 2;
+            } else if ((eolPos = text.indexOf("\n", pos)) != -1) {
+                line = text.substring(pos, eolPos);
+                pos = eolPos + 1;
+            } else {
+                break;
+            }
+
+            int index = line.indexOf(':');
+            if (index == -1) {
+                continue;
+            }
+
+            char[] key = line.substring(0, index).toCharArray();
+            for (int i = 0; i < key.length; i++) {
+                key[i] = (key[i] >= 'a' && key[i] <= 'z') ? (char) (key[i] - 32) : key[i];
+            }
+
+            data.put(new String(key), line.substring(index + 1).trim());
+        }
+
+        return data;
+    }
 }
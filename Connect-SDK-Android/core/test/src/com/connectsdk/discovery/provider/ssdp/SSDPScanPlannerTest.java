@@ -0,0 +1,94 @@
+package com.connectsdk.discovery.provider.ssdp;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest=Config.NONE)
+public class SSDPScanPlannerTest {
+
+    SSDPScanPlanner planner;
+
+    @Before
+    public void setUp() {
+        // no jitter
+        planner = new SSDPScanPlanner(new Random() {
+            @Override
+            public double nextDouble() {
+                return 0;
+            }
+        });
+    }
+
+    @Test
+    public void testStartupRounds() {
+        for (int i = 1; i < SSDPScanPlanner.STARTUP_ROUNDS; i++) {
+            Assert.assertEquals(SSDPScanPlanner.STARTUP_INTERVAL, planner.nextDelay(true));
+        }
+        Assert.assertEquals(SSDPScanPlanner.MIN_INTERVAL, planner.nextDelay(false));
+    }
+
+    @Test
+    public void testBackOffWhileStable() {
+        skipStartup();
+
+        long previous = SSDPScanPlanner.MIN_INTERVAL;
+        for (int i = 0; i < 20; i++) {
+            long delay = planner.nextDelay(false);
+            Assert.assertTrue(delay >= previous);
+            Assert.assertTrue(delay <= SSDPScanPlanner.MAX_INTERVAL);
+            previous = delay;
+        }
+        Assert.assertEquals(SSDPScanPlanner.MAX_INTERVAL, previous);
+    }
+
+    @Test
+    public void testChangeResetsInterval() {
+        skipStartup();
+        planner.nextDelay(false);
+        planner.nextDelay(false);
+
+        Assert.assertEquals(SSDPScanPlanner.MIN_INTERVAL, planner.nextDelay(true));
+        Assert.assertEquals(SSDPScanPlanner.MIN_INTERVAL * 2, planner.nextDelay(false));
+    }
+
+    @Test
+    public void testResetStartsOver() {
+        skipStartup();
+        planner.nextDelay(false);
+
+        planner.reset();
+        Assert.assertEquals(SSDPScanPlanner.STARTUP_INTERVAL, planner.getInterval());
+        Assert.assertEquals(SSDPScanPlanner.STARTUP_INTERVAL, planner.nextDelay(false));
+    }
+
+    @Test
+    public void testJitterStaysWithinResponseWindow() {
+        planner = new SSDPScanPlanner(new Random() {
+            @Override
+            public double nextDouble() {
+                return 0.999;
+            }
+        });
+        skipStartup();
+
+        for (int i = 0; i < 20; i++) {
+            long delay = planner.nextDelay(false);
+            long interval = planner.getInterval();
+            Assert.assertTrue(delay >= interval);
+            Assert.assertTrue(delay < interval + SSDPScanPlanner.MIN_INTERVAL);
+        }
+    }
+
+    private void skipStartup() {
+        for (int i = 0; i < SSDPScanPlanner.STARTUP_ROUNDS; i++) {
+            planner.nextDelay(false);
+        }
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * HttpConnectionTest
+ * Connect SDK
+ *
+ * Copyright (c) 2015 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.etc.helper;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HttpConnectionTest {
+
+    TestServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        HttpClientEngine.getInstance().evictAll();
+        server = new TestServer();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        HttpClientEngine.getInstance().evictAll();
+        server.close();
+    }
+
+    @Test
+    public void testConnectionIsReused() throws IOException {
+        server.response = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello";
+
+        for (int i = 0; i < 3; i++) {
+            HttpConnection connection = HttpConnection.newInstance(server.uri("/keypress/Up"));
+            connection.setMethod(HttpConnection.Method.POST);
+            connection.execute();
+
+            Assert.assertEquals(200, connection.getResponseCode());
+            Assert.assertEquals("hello", connection.getResponseString());
+        }
+
+        Assert.assertEquals(1, server.connections.get());
+        Assert.assertEquals(3, server.requests.size());
+        Assert.assertTrue(server.requests.get(0).startsWith("POST /keypress/Up HTTP/1.1\r\n"));
+        Assert.assertTrue(server.requests.get(0).contains("Content-Length: 0\r\n"));
+    }
+
+    @Test
+    public void testChunkedResponse() throws IOException {
+        server.response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\nContent-Type: text/xml; charset=utf-8\r\n\r\n"
+                + "5\r\n<apps\r\n3;ext=1\r\n/>\n\r\n0\r\n\r\n";
+
+        HttpConnection connection = HttpConnection.newInstance(server.uri("/query/apps"));
+        connection.execute();
+
+        Assert.assertEquals("<apps/>\n", connection.getResponseString());
+        Assert.assertEquals("text/xml; charset=utf-8", connection.getResponseHeader("content-type"));
+        Assert.assertEquals(1, HttpClientEngine.getInstance().getIdleConnectionCount());
+    }
+
+    @Test
+    public void testConnectionClosedByDeviceIsNotReused() throws IOException {
+        server.response = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\nConnection: close\r\n\r\nok";
+
+        for (int i = 0; i < 2; i++) {
+            HttpConnection connection = HttpConnection.newInstance(server.uri("/"));
+            connection.execute();
+
+            Assert.assertEquals("ok", connection.getResponseString());
+        }
+
+        Assert.assertEquals(2, server.connections.get());
+        Assert.assertEquals(0, HttpClientEngine.getInstance().getIdleConnectionCount());
+    }
+
+    @Test
+    public void testIdleConnectionClosedByDeviceIsReplaced() throws Exception {
+        server.response = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok";
+        server.closeAfterResponse = true;
+
+        for (int i = 0; i < 2; i++) {
+            HttpConnection connection = HttpConnection.newInstance(server.uri("/"));
+            connection.execute();
+
+            Assert.assertEquals("ok", connection.getResponseString());
+
+            // until the device has closed the connection
+            Thread.sleep(50);
+        }
+
+        Assert.assertEquals(2, server.connections.get());
+    }
+
+    @Test
+    public void testErrorHasNoResponseString() throws IOException {
+        server.response = "HTTP/1.1 404 Not Found\r\nContent-Length: 9\r\n\r\nnot found";
+
+        HttpConnection connection = HttpConnection.newInstance(server.uri("/"));
+        connection.execute();
+
+        Assert.assertEquals(404, connection.getResponseCode());
+        Assert.assertNull(connection.getResponseString());
+        Assert.assertEquals(1, HttpClientEngine.getInstance().getIdleConnectionCount());
+    }
+
+    @Test
+    public void testRequestsAreMultiplexed() throws Exception {
+        server.response = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok";
+        server.delay = 200;
+
+        int count = 8;
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicInteger succeeded = new AtomicInteger();
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+
+        for (int i = 0; i < count; i++) {
+            HttpConnection connection = HttpConnection.newInstance(server.uri("/"));
+            connection.executeAsync(new HttpConnection.ResponseCallback() {
+
+                @Override
+                public void onComplete(HttpConnection connection) {
+                    try {
+                        if (connection.getResponseCode() == 200 && "ok".equals(connection.getResponseString()))
+                            succeeded.incrementAndGet();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    threads.add(Thread.currentThread().getName());
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(IOException e) {
+                    done.countDown();
+                }
+            });
+        }
+
+        // the requests wait for their responses at the same time
+        Assert.assertTrue(done.await(count * server.delay / 2, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(count, succeeded.get());
+        Assert.assertEquals(1, threads.size());
+        Assert.assertTrue(HttpClientEngine.getInstance().getIdleConnectionCount() <= HttpClientEngine.MAX_IDLE_PER_HOST);
+    }
+
+    @Test
+    public void testResponseBytesSpanSegments() throws IOException {
+        String body = largeBody();
+        server.response = "HTTP/1.1 200 OK\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+
+        HttpConnection connection = HttpConnection.newInstance(server.uri("/query/apps"));
+        connection.execute();
+
+        Assert.assertEquals(body, new String(connection.getResponseBytes(), "UTF-8"));
+        Assert.assertEquals(body, readStream(connection.getResponseStream()));
+        Assert.assertEquals(body, connection.getResponseString());
+    }
+
+    @Test
+    public void testResponseStreamInCallbackAndBufferReuse() throws Exception {
+        final String body = largeBody();
+        server.response = "HTTP/1.1 200 OK\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final String[] streamed = new String[1];
+
+        HttpConnection connection = HttpConnection.newInstance(server.uri("/"));
+        connection.executeAsync(new HttpConnection.ResponseCallback() {
+
+            @Override
+            public void onComplete(HttpConnection connection) {
+                try {
+                    streamed[0] = readStream(connection.getResponseStream());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                done.countDown();
+            }
+
+            @Override
+            public void onError(IOException e) {
+                done.countDown();
+            }
+        });
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(body, streamed[0]);
+
+        // once the callback has returned, the segments of the body are back in the pool
+        HttpClientEngine.getInstance().evictAll();
+        Assert.assertTrue(HttpResponseBody.getPooledSegmentCount() >= body.length() / HttpResponseBody.SEGMENT_SIZE);
+        Assert.assertEquals(body, new String(connection.getResponseBytes(), "UTF-8"));
+    }
+
+    @Test
+    public void testSubscriptionsShareConnection() throws IOException {
+        // GENA responses have no body, even without a Content-Length
+        server.response = "HTTP/1.1 200 OK\r\nSID: uuid:1234\r\nTIMEOUT: Second-300\r\n\r\n";
+
+        for (int i = 0; i < 3; i++) {
+            HttpConnection connection = HttpConnection.newSubscriptionInstance(server.uri("/AVTransport/event"));
+            connection.setMethod(HttpConnection.Method.SUBSCRIBE);
+            connection.setHeader("SID", "uuid:1234");
+            connection.execute();
+
+            Assert.assertEquals(200, connection.getResponseCode());
+            Assert.assertEquals("uuid:1234", connection.getResponseHeader("SID"));
+        }
+
+        Assert.assertEquals(1, server.connections.get());
+        Assert.assertTrue(server.requests.get(0).startsWith("SUBSCRIBE /AVTransport/event HTTP/1.1\r\n"));
+    }
+
+    @Test
+    public void testRequestTimesOut() throws IOException {
+        server.response = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok";
+        server.delay = 1000;
+
+        HttpConnection connection = HttpConnection.newInstance(server.uri("/"));
+        connection.setTimeout(100);
+
+        long start = System.currentTimeMillis();
+        try {
+            connection.execute();
+            Assert.fail("Expected a SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+
+        Assert.assertTrue(System.currentTimeMillis() - start < server.delay);
+        Assert.assertEquals(0, HttpClientEngine.getInstance().getIdleConnectionCount());
+    }
+
+    @Test
+    public void testCancelledRequestFails() throws Exception {
+        server.response = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok";
+        server.delay = 1000;
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final IOException[] error = new IOException[1];
+
+        HttpConnection connection = HttpConnection.newInstance(server.uri("/"));
+        connection.executeAsync(new HttpConnection.ResponseCallback() {
+
+            @Override
+            public void onComplete(HttpConnection connection) {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(IOException e) {
+                error[0] = e;
+                done.countDown();
+            }
+        });
+
+        Thread.sleep(50);
+        connection.cancel();
+
+        Assert.assertTrue(done.await(server.delay / 2, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(error[0] instanceof InterruptedIOException);
+    }
+
+    @Test
+    public void testRedirectToSameHostIsFollowed() throws IOException {
+        server.response = "HTTP/1.1 200 OK\r\nContent-Length: 7\r\n\r\nrunning";
+        server.responses.put("/apps/YouTube", "HTTP/1.1 302 Found\r\nLocation: /apps/YouTube/run\r\nContent-Length: 0\r\n\r\n");
+
+        HttpConnection connection = HttpConnection.newInstance(server.uri("/apps/YouTube"));
+        connection.setMethod(HttpConnection.Method.POST);
+        connection.execute();
+
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals("running", connection.getResponseString());
+        Assert.assertEquals(2, server.requests.size());
+        Assert.assertTrue(server.requests.get(1).startsWith("GET /apps/YouTube/run HTTP/1.1\r\n"));
+        Assert.assertFalse(server.requests.get(1).contains("Content-Length"));
+        Assert.assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    public void testRedirectToOtherHostIsNotFollowed() throws IOException {
+        server.response = "HTTP/1.1 301 Moved Permanently\r\nLocation: http://192.0.2.1/\r\nContent-Length: 0\r\n\r\n";
+
+        HttpConnection connection = HttpConnection.newInstance(server.uri("/"));
+        connection.execute();
+
+        Assert.assertEquals(301, connection.getResponseCode());
+        Assert.assertEquals("http://192.0.2.1/", connection.getResponseHeader("Location"));
+        Assert.assertEquals(1, server.requests.size());
+    }
+
+    @Test
+    public void testRedirectLoopIsStopped() throws IOException {
+        server.response = "HTTP/1.1 307 Temporary Redirect\r\nLocation: /\r\nContent-Length: 0\r\n\r\n";
+
+        HttpConnection connection = HttpConnection.newInstance(server.uri("/"));
+        connection.execute();
+
+        Assert.assertEquals(307, connection.getResponseCode());
+        Assert.assertEquals(HttpConnection.MAX_REDIRECTS + 1, server.requests.size());
+    }
+
+    @Test
+    public void testConnectionRefused() throws IOException {
+        int port = server.serverSocket.getLocalPort();
+        server.close();
+
+        HttpConnection connection = HttpConnection.newInstance(URI.create("http://127.0.0.1:" + port + "/"));
+        try {
+            connection.execute();
+            Assert.fail("Expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    static String largeBody() {
+        StringBuilder sb = new StringBuilder("<apps>");
+        for (int i = 0; sb.length() < 3 * HttpResponseBody.SEGMENT_SIZE; i++) {
+            sb.append("<app id=\"").append(i).append("\">Channel ").append(i).append("</app>");
+        }
+        return sb.append("</apps>").toString();
+    }
+
+    static String readStream(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int count;
+
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toString("UTF-8");
+    }
+
+    static class TestServer {
+        final ServerSocket serverSocket;
+        final AtomicInteger connections = new AtomicInteger();
+        final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+        /* responses by request path, the others get the default response */
+        final Map<String, String> responses = new ConcurrentHashMap<String, String>();
+
+        volatile String response;
+        volatile boolean closeAfterResponse;
+        volatile long delay;
+
+        TestServer() throws IOException {
+            serverSocket = new ServerSocket(0);
+
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            final Socket socket = serverSocket.accept();
+                            connections.incrementAndGet();
+
+                            new Thread(new Runnable() {
+
+                                @Override
+                                public void run() {
+                                    serve(socket);
+                                }
+                            }).start();
+                        }
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        URI uri(String path) {
+            return URI.create("http://127.0.0.1:" + serverSocket.getLocalPort() + path);
+        }
+
+        void serve(Socket socket) {
+            try {
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream();
+
+                while (true) {
+                    String request = readRequest(in);
+                    if (request == null)
+                        break;
+
+                    requests.add(request);
+
+                    if (delay > 0)
+                        Thread.sleep(delay);
+
+                    String path = request.substring(request.indexOf(' ') + 1, request.indexOf(" HTTP/"));
+                    String response = responses.containsKey(path) ? responses.get(path) : this.response;
+
+                    out.write(response.getBytes("ISO-8859-1"));
+                    out.flush();
+
+                    if (closeAfterResponse || response.contains("Connection: close"))
+                        break;
+                }
+
+                socket.close();
+            } catch (IOException e) {
+                // closed
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }
+
+        static String readRequest(InputStream in) throws IOException {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            int b;
+
+            while ((b = in.read()) != -1) {
+                request.write(b);
+
+                if (request.toString("ISO-8859-1").endsWith("\r\n\r\n"))
+                    return request.toString("ISO-8859-1");
+            }
+
+            return null;
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
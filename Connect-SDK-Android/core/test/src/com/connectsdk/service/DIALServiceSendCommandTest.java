@@ -70,6 +70,7 @@ public class DIALServiceSendCommandTest {
     @Before
     public void setUp() {
         httpConnection = Mockito.mock(HttpConnection.class);
+        TestUtil.stubExecuteAsync(httpConnection);
         service = new StubDIALService(Mockito.mock(ServiceDescription.class),
                 Mockito.mock(ServiceConfig.class));
     }
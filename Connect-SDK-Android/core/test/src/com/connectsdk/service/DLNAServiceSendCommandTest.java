@@ -70,6 +70,7 @@ public class DLNAServiceSendCommandTest {
     @Before
     public void setUp() {
         httpConnection = Mockito.mock(HttpConnection.class);
+        TestUtil.stubExecuteAsync(httpConnection);
         service = new StubDLNAService(Mockito.mock(ServiceDescription.class),
                 Mockito.mock(ServiceConfig.class));
     }
@@ -1,8 +1,11 @@
 package com.connectsdk.service;
 
+import com.connectsdk.core.MediaInfo;
 import com.connectsdk.core.SubtitleInfo;
 import com.connectsdk.core.TestUtil;
 import com.connectsdk.discovery.provider.ssdp.Service;
+import com.connectsdk.etc.helper.HttpConnection;
+import com.connectsdk.service.capability.MediaPlayer;
 import com.connectsdk.service.config.ServiceConfig;
 import com.connectsdk.service.config.ServiceDescription;
 import com.connectsdk.service.upnp.DLNAHttpServer;
@@ -14,6 +17,7 @@ import org.custommonkey.xmlunit.XMLUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
@@ -21,11 +25,17 @@ import org.robolectric.annotation.Config;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by oleksii.frolov on 1/13/2015.
@@ -436,6 +446,101 @@ public class DLNAServiceTest {
         Assert.assertNull(service.makeControlURL("base", null));
     }
 
+    @Test
+    public void testPlayMediaAsyncFailsWithoutListener() {
+        MediaInfo mediaInfo = new MediaInfo.Builder("http://host/video.mp4", "/mp4").build();
+
+        CompletableFuture<MediaPlayer.MediaLaunchObject> future = service.playMediaAsync(mediaInfo, false);
+
+        Assert.assertTrue(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testSubscriptionRequestsAreSentOneAfterAnother() throws IOException {
+        final List<String> responses = new ArrayList<String>();
+        Map<String, HttpConnection> requests = new LinkedHashMap<String, HttpConnection>();
+        HttpConnection failing = Mockito.mock(HttpConnection.class);
+        HttpConnection second = Mockito.mock(HttpConnection.class);
+        HttpConnection third = Mockito.mock(HttpConnection.class);
+        requests.put(DLNAService.AV_TRANSPORT, failing);
+        requests.put(DLNAService.RENDERING_CONTROL, second);
+        requests.put(DLNAService.CONNECTION_MANAGER, third);
+
+        for (HttpConnection connection : requests.values()) {
+            TestUtil.stubExecuteAsync(connection);
+        }
+        Mockito.doThrow(new IOException()).when(failing).execute();
+
+        service.sendSubscriptionRequests(requests.entrySet().iterator(), new DLNAService.SubscriptionResponseListener() {
+
+            @Override
+            public void onResponse(String serviceType, HttpConnection connection) {
+                responses.add(serviceType);
+            }
+        });
+
+        InOrder inOrder = Mockito.inOrder(failing, second, third);
+        inOrder.verify(failing).execute();
+        inOrder.verify(second).execute();
+        inOrder.verify(third).execute();
+        Assert.assertEquals(2, responses.size());
+        Assert.assertEquals(DLNAService.RENDERING_CONTROL, responses.get(0));
+        Assert.assertEquals(DLNAService.CONNECTION_MANAGER, responses.get(1));
+    }
+
+    @Test
+    public void testSubscriptionRequestsMoveOnWhenDeviceDoesNotAnswer() throws Exception {
+        // accepts the requests but never answers them
+        final ServerSocket serverSocket = new ServerSocket(0);
+        final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+        Thread acceptor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        sockets.add(serverSocket.accept());
+                    }
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        ServiceDescription description = Mockito.mock(ServiceDescription.class);
+        Mockito.when(description.getIpAddress()).thenReturn("127.0.0.1");
+        Mockito.when(description.getPort()).thenReturn(serverSocket.getLocalPort());
+        DLNAService service = new DLNAService(description, Mockito.mock(ServiceConfig.class), Robolectric.application, dlnaServer);
+        service.subscriptionRequestTimeout = 200;
+
+        HttpConnection second = Mockito.mock(HttpConnection.class);
+        TestUtil.stubExecuteAsync(second);
+        Map<String, HttpConnection> requests = new LinkedHashMap<String, HttpConnection>();
+        requests.put(DLNAService.AV_TRANSPORT, service.createSubscriptionConnection("/AVTransport/event"));
+        requests.put(DLNAService.RENDERING_CONTROL, second);
+
+        final CountDownLatch answered = new CountDownLatch(1);
+        try {
+            service.sendSubscriptionRequests(requests.entrySet().iterator(), new DLNAService.SubscriptionResponseListener() {
+
+                @Override
+                public void onResponse(String serviceType, HttpConnection connection) {
+                    if (DLNAService.RENDERING_CONTROL.equals(serviceType))
+                        answered.countDown();
+                }
+            });
+
+            Assert.assertTrue(answered.await(5, TimeUnit.SECONDS));
+        } finally {
+            serverSocket.close();
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
     private DLNAService makeServiceWithControlURL(String base, String controlURL) {
         List<Service> services = new ArrayList<Service>();
         Service service = new Service();
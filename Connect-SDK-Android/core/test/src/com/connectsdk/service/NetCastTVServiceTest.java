@@ -18,10 +18,15 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
 @RunWith(RobolectricTestRunner.class)
 @Config(manifest = Config.NONE)
 public class NetCastTVServiceTest {
@@ -127,6 +132,27 @@ public class NetCastTVServiceTest {
                 service.getMediaControlCapabilityLevel());
     }
 
+    @Test
+    public void testAppListFailsWhenResponseCannotBeParsed() throws Exception {
+        NetcastTVService service = Mockito.spy(this.service);
+        Mockito.doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ServiceCommand<?> command = (ServiceCommand<?>) invocation.getArguments()[0];
+                command.getResponseListener().onSuccess("not xml");
+                return null;
+            }
+        }).when(service).sendCommand(Mockito.any(ServiceCommand.class));
+
+        try {
+            service.getAppListAsync().get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof ServiceCommandError);
+        }
+    }
+
     private void verifyNotImplemented(ResponseListener<Object> listener) {
         ArgumentCaptor<ServiceCommandError> argError
                 = ArgumentCaptor.forClass(ServiceCommandError.class);
@@ -0,0 +1,89 @@
+/*
+ * CapabilityQueryTest
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.connectsdk.service.capability;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class CapabilityQueryTest {
+
+    @Test
+    public void testSetOperations() {
+        CapabilitySet first = CapabilitySet.of(MediaPlayer.Display_Image, MediaPlayer.Play_Video);
+        CapabilitySet second = CapabilitySet.of(VolumeControl.Volume_Up_Down);
+        CapabilitySet union = first.union(second);
+
+        Assert.assertTrue(union.containsAll(first));
+        Assert.assertTrue(union.containsAll(second));
+        Assert.assertFalse(first.intersects(second));
+        Assert.assertTrue(union.contains(VolumeControl.Volume_Up_Down));
+        Assert.assertFalse(first.contains("Unknown.Capability"));
+        Assert.assertEquals(CapabilitySet.of(MediaPlayer.Play_Video, MediaPlayer.Display_Image), first);
+        Assert.assertTrue(CapabilitySet.of().isEmpty());
+        Assert.assertEquals(3, union.toList().size());
+    }
+
+    @Test
+    public void testExactCapabilities() {
+        CapabilitySet capabilities = CapabilitySet.of(Launcher.Browser, Launcher.YouTube);
+
+        Assert.assertTrue(CapabilityQuery.compile(Launcher.Browser, Launcher.YouTube).matchesAll(capabilities));
+        Assert.assertFalse(CapabilityQuery.compile(Launcher.Browser, Launcher.Netflix).matchesAll(capabilities));
+        Assert.assertTrue(CapabilityQuery.compile(Launcher.Browser, Launcher.Netflix).matchesAny(capabilities));
+        Assert.assertFalse(CapabilityQuery.compile(Launcher.Netflix).matchesAny(capabilities));
+    }
+
+    @Test
+    public void testWildcardCapabilities() {
+        CapabilitySet capabilities = CapabilitySet.of(MediaControl.Play, Launcher.Browser);
+
+        Assert.assertTrue(CapabilityQuery.compile(MediaControl.Any).matchesAll(capabilities));
+        Assert.assertFalse(CapabilityQuery.compile(VolumeControl.Any).matchesAny(capabilities));
+        Assert.assertFalse(CapabilityQuery.compile(Arrays.asList(MediaControl.Any, VolumeControl.Any)).matchesAll(capabilities));
+        Assert.assertTrue(CapabilityQuery.compile(Arrays.asList(MediaControl.Any, VolumeControl.Any)).matchesAny(capabilities));
+    }
+
+    @Test
+    public void testWildcardMatchesCapabilityInternedLater() {
+        CapabilityQuery query = CapabilityQuery.compile("CapabilityQueryTest.Any");
+        Assert.assertFalse(query.matchesAny(CapabilitySet.of(Launcher.Browser)));
+
+        CapabilitySet capabilities = CapabilitySet.of("CapabilityQueryTest.Added");
+        Assert.assertTrue(query.matchesAll(capabilities));
+    }
+
+    @Test
+    public void testUnknownCapabilityIsNotInterned() {
+        CapabilitySet capabilities = CapabilitySet.of(Launcher.Browser);
+        int interned = CapabilitySet.internedCount();
+
+        CapabilityQuery query = CapabilityQuery.compile("CapabilityQueryTest.Unknown");
+        Assert.assertFalse(query.matchesAll(capabilities));
+        Assert.assertFalse(CapabilityQuery.compile(Launcher.Browser, "CapabilityQueryTest.Unknown").matchesAll(capabilities));
+        Assert.assertTrue(CapabilityQuery.compile(Launcher.Browser, "CapabilityQueryTest.Unknown").matchesAny(capabilities));
+        Assert.assertEquals(interned, CapabilitySet.internedCount());
+        Assert.assertEquals(-1, CapabilitySet.idOf("CapabilityQueryTest.Unknown"));
+
+        // the name matches once a set contains it
+        Assert.assertTrue(query.matchesAll(CapabilitySet.of("CapabilityQueryTest.Unknown")));
+    }
+}
@@ -0,0 +1,140 @@
+package com.connectsdk.service.command;
+
+import com.connectsdk.service.capability.listeners.ResponseListener;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest=Config.NONE)
+public class CommandMetricsTest {
+
+    @After
+    public void tearDown() {
+        CommandMetrics.setEnabled(false);
+        CommandMetrics.getInstance().setListener(null);
+        CommandMetrics.getInstance().reset();
+    }
+
+    @Test
+    public void testEntryCounters() {
+        CommandMetrics metrics = new CommandMetrics();
+
+        metrics.record(new CommandMetrics.Sample("RokuService", "/keypress/Home", "192.168.1.10",
+                CommandMetrics.Outcome.SUCCESS, 0, 5, 40, 0, 10));
+        metrics.record(new CommandMetrics.Sample("RokuService", "/keypress/Home", "192.168.1.10",
+                CommandMetrics.Outcome.TIMEOUT, 0, 2, 10000, 0, 0));
+        metrics.record(new CommandMetrics.Sample("RokuService", "/keypress/Home", "192.168.1.11",
+                CommandMetrics.Outcome.ERROR, 500, -1, 20, 0, 0));
+
+        CommandMetrics.Entry entry = metrics.getEntry("RokuService", "/keypress/Home", "192.168.1.10");
+        Assert.assertEquals(2, metrics.getAllEntries().size());
+        Assert.assertEquals(2, entry.getCount());
+        Assert.assertEquals(1, entry.getCount(CommandMetrics.Outcome.SUCCESS));
+        Assert.assertEquals(1, entry.getCount(CommandMetrics.Outcome.TIMEOUT));
+        Assert.assertEquals(0.5, entry.getErrorRate(), 0.001);
+        Assert.assertEquals(10000, entry.getLatency().getMax());
+        Assert.assertEquals(5, entry.getQueueTime().getMax());
+        Assert.assertEquals(10, entry.getResponseSize());
+
+        // commands which never left the queue have no queue time
+        entry = metrics.getEntry("RokuService", "/keypress/Home", "192.168.1.11");
+        Assert.assertEquals(0, entry.getQueueTime().getCount());
+        Assert.assertEquals(1, entry.getLatency().getCount());
+    }
+
+    @Test
+    public void testSnapshotDoesNotChange() {
+        CommandMetrics metrics = new CommandMetrics();
+        CommandMetrics.Sample sample = new CommandMetrics.Sample("DLNAService", "Play", "",
+                CommandMetrics.Outcome.SUCCESS, 0, 1, 30, 200, 100);
+        metrics.record(sample);
+
+        CommandMetrics snapshot = metrics.snapshot();
+        metrics.record(sample);
+
+        Assert.assertEquals(1, snapshot.getEntry("DLNAService", "Play", "").getCount());
+        Assert.assertEquals(2, metrics.getEntry("DLNAService", "Play", "").getCount());
+    }
+
+    @Test
+    public void testCommandName() {
+        Assert.assertEquals("/keypress/Home", CommandMetrics.getCommandName("http://192.168.1.10:8060/keypress/Home"));
+        Assert.assertEquals("/query/apps", CommandMetrics.getCommandName("http://192.168.1.10:8060/query/apps?x=1"));
+        Assert.assertEquals("/", CommandMetrics.getCommandName("http://192.168.1.10:8060"));
+        Assert.assertEquals("ssap://audio/setVolume", CommandMetrics.getCommandName("ssap://audio/setVolume"));
+        Assert.assertEquals("", CommandMetrics.getCommandName(null));
+
+        // arguments of the call are not part of the operation
+        Assert.assertEquals("/keypress/*", CommandMetrics.getCommandName("http://192.168.1.10:8060/keypress/Lit_a"));
+        Assert.assertEquals("/keypress/*", CommandMetrics.getCommandName("http://192.168.1.10:8060/keypress/Lit_%C3%A9"));
+        Assert.assertEquals("/launch/*", CommandMetrics.getCommandName("http://192.168.1.10:8060/launch/12"));
+        Assert.assertEquals("/apps/YouTube/run", CommandMetrics.getCommandName("http://192.168.1.10:8080/apps/YouTube/run"));
+    }
+
+    @Test
+    public void testNumberOfEntriesIsBounded() {
+        CommandMetrics metrics = new CommandMetrics();
+
+        for (int i = 0; i < CommandMetrics.MAX_ENTRIES + 10; i++) {
+            metrics.record(new CommandMetrics.Sample("DIALService", "/apps/App" + (char) ('a' + i % 26) + i / 26, "192.168.1.10",
+                    CommandMetrics.Outcome.SUCCESS, 0, 1, 30, 0, 0));
+        }
+
+        Assert.assertEquals(CommandMetrics.MAX_ENTRIES + 1, metrics.getAllEntries().size());
+        Assert.assertEquals(10, metrics.getEntry("DIALService", CommandMetrics.OTHER_COMMANDS, "").getCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCommandIsRecordedOnce() {
+        ServiceCommand.ServiceCommandProcessor processor = Mockito.mock(ServiceCommand.ServiceCommandProcessor.class);
+        Mockito.when(processor.getCommandLane()).thenReturn("192.168.1.10");
+        final List<CommandMetrics.Sample> samples = new ArrayList<CommandMetrics.Sample>();
+        CommandMetrics.getInstance().setListener(new CommandMetrics.Listener() {
+            @Override
+            public void onCommandFinished(CommandMetrics.Sample sample) {
+                samples.add(sample);
+            }
+        });
+        CommandMetrics.setEnabled(true);
+
+        ServiceCommand<ResponseListener<Object>> command = new ServiceCommand<ResponseListener<Object>>(
+                processor, "http://192.168.1.10:8060/keypress/Home", "", Mockito.mock(ResponseListener.class));
+        command.send();
+        command.markStarted();
+        command.getResponseListener().onSuccess("ok");
+        command.getResponseListener().onSuccess("again");
+        command.cancel();
+
+        Assert.assertEquals(1, samples.size());
+        CommandMetrics.Sample sample = samples.get(0);
+        Assert.assertEquals(CommandMetrics.Outcome.SUCCESS, sample.getOutcome());
+        Assert.assertEquals("/keypress/Home", sample.getCommand());
+        Assert.assertEquals("192.168.1.10", sample.getDevice());
+        Assert.assertEquals(2, sample.getResponseSize());
+        Assert.assertTrue(sample.getQueueTime() >= 0);
+        Assert.assertEquals(1, CommandMetrics.getInstance().getAllEntries().size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNothingIsRecordedWhenDisabled() {
+        ServiceCommand.ServiceCommandProcessor processor = Mockito.mock(ServiceCommand.ServiceCommandProcessor.class);
+        ServiceCommand<ResponseListener<Object>> command = new ServiceCommand<ResponseListener<Object>>(
+                processor, "http://192.168.1.10:8060/keypress/Home", "", Mockito.mock(ResponseListener.class));
+
+        command.send();
+        command.getResponseListener().onSuccess("ok");
+
+        Assert.assertTrue(CommandMetrics.getInstance().getAllEntries().isEmpty());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * ServiceCommandTest
+ * Connect SDK
+ *
+ * Copyright (c) 2015 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.command;
+
+import com.connectsdk.core.Util;
+import com.connectsdk.service.capability.listeners.CallbackExecutor;
+import com.connectsdk.service.capability.listeners.ResponseListener;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ServiceCommandTest {
+
+    private ServiceCommand.ServiceCommandProcessor processor;
+
+    private ResponseListener<Object> listener;
+
+    private ServiceCommand.CancelListener cancelListener;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        processor = Mockito.mock(ServiceCommand.ServiceCommandProcessor.class);
+        listener = Mockito.mock(ResponseListener.class);
+        cancelListener = Mockito.mock(ServiceCommand.CancelListener.class);
+    }
+
+    @Test
+    public void testCommandTimesOutWithoutResponse() throws InterruptedException {
+        Mockito.when(processor.getCommandTimeout()).thenReturn(50L);
+        ServiceCommand<ResponseListener<Object>> command = newCommand();
+        command.setCancelListener(cancelListener);
+
+        command.send();
+        Thread.sleep(200);
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+
+        Assert.assertEquals(50, command.getTimeout());
+        Assert.assertTrue(command.isTimedOut());
+        Mockito.verify(cancelListener).onCancel(command);
+        Mockito.verify(listener).onError(Mockito.isA(TimeoutServiceCommandError.class));
+
+        // a late response is dropped
+        command.getResponseListener().onSuccess("late");
+        Mockito.verify(listener, Mockito.never()).onSuccess(Mockito.any());
+    }
+
+    @Test
+    public void testResponseStopsDeadline() throws InterruptedException {
+        ServiceCommand<ResponseListener<Object>> command = newCommand();
+        command.setTimeout(50);
+        command.setCancelListener(cancelListener);
+
+        command.send();
+        command.getResponseListener().onSuccess("response");
+        Thread.sleep(200);
+        Robolectric.runUiThreadTasksIncludingDelayedTasks();
+
+        Assert.assertFalse(command.isCancelled());
+        Mockito.verify(listener).onSuccess("response");
+        Mockito.verify(listener, Mockito.never()).onError(Mockito.any(ServiceCommandError.class));
+        Mockito.verify(cancelListener, Mockito.never()).onCancel(command);
+    }
+
+    @Test
+    public void testCancelledCommandDropsResponse() {
+        ServiceCommand<ResponseListener<Object>> command = newCommand().send();
+
+        command.cancel();
+        command.setCancelListener(cancelListener);
+        command.getResponseListener().onSuccess("response");
+
+        Assert.assertTrue(command.isCancelled());
+        Assert.assertFalse(command.isTimedOut());
+        Mockito.verify(cancelListener).onCancel(command);
+        Mockito.verify(listener, Mockito.never()).onSuccess(Mockito.any());
+        Mockito.verify(listener, Mockito.never()).onError(Mockito.any(ServiceCommandError.class));
+    }
+
+    @Test
+    public void testDoneListenerRunsOnceOnFirstResponse() {
+        Runnable done = Mockito.mock(Runnable.class);
+        ServiceCommand<ResponseListener<Object>> command = newCommand();
+        command.setTimeout(10000);
+
+        command.send();
+        command.setDoneListener(done);
+        Mockito.verify(done, Mockito.never()).run();
+
+        command.getResponseListener().onSuccess("prompt");
+        command.getResponseListener().onSuccess("response");
+        command.cancel();
+        Mockito.verify(done, Mockito.times(1)).run();
+
+        // a command which is done already runs the listener right away
+        Runnable late = Mockito.mock(Runnable.class);
+        command.setDoneListener(late);
+        Mockito.verify(late).run();
+    }
+
+    @Test
+    public void testCommandWithoutTimeoutHasNoDeadline() {
+        ServiceCommand<ResponseListener<Object>> command = newCommand();
+
+        command.send();
+
+        Assert.assertEquals(0, command.getTimeout());
+        Mockito.verify(processor).sendCommand(command);
+    }
+
+    @Test
+    public void testResponseIsDeliveredOnCallbackExecutor() {
+        final List<Runnable> delivered = new ArrayList<Runnable>();
+        ServiceCommand<ResponseListener<Object>> command = newCommand();
+        command.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                delivered.add(runnable);
+            }
+        });
+
+        command.send();
+        Util.postSuccess(command.getResponseListener(), "response");
+
+        Assert.assertEquals(1, delivered.size());
+        Mockito.verify(listener, Mockito.never()).onSuccess(Mockito.any());
+
+        delivered.get(0).run();
+        Mockito.verify(listener).onSuccess("response");
+    }
+
+    @Test
+    public void testListenerChoosesCallbackExecutor() {
+        DirectListener directListener = Mockito.mock(DirectListener.class);
+        Mockito.when(directListener.getCallbackExecutor()).thenReturn(Util.DIRECT_EXECUTOR);
+        ServiceCommand<ResponseListener<Object>> command =
+                new ServiceCommand<ResponseListener<Object>>(processor, "http://127.0.0.1/", null, directListener);
+
+        command.send();
+        Util.postSuccess(command.getResponseListener(), "response");
+
+        // delivered without waiting for the main thread
+        Mockito.verify(directListener).onSuccess("response");
+    }
+
+    private ServiceCommand<ResponseListener<Object>> newCommand() {
+        return new ServiceCommand<ResponseListener<Object>>(processor, "http://127.0.0.1/", null, listener);
+    }
+
+    public interface DirectListener extends ResponseListener<Object>, CallbackExecutor {
+    }
+}
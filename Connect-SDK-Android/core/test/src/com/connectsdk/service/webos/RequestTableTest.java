@@ -0,0 +1,168 @@
+package com.connectsdk.service.webos;
+
+import com.connectsdk.core.Util;
+import com.connectsdk.service.capability.listeners.ResponseListener;
+import com.connectsdk.service.command.ServiceCommand;
+import com.connectsdk.service.command.ServiceCommandError;
+import com.connectsdk.service.command.TimeoutServiceCommandError;
+import com.connectsdk.service.command.URLServiceSubscription;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest=Config.NONE)
+public class RequestTableTest {
+
+    private final RequestTable table = new RequestTable();
+
+    @Test
+    public void testIdsAreUniqueAcrossThreads() throws InterruptedException {
+        final Set<Integer> ids = Collections.synchronizedSet(new HashSet<Integer>());
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        ids.add(table.nextId());
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(4000, ids.size());
+    }
+
+    @Test
+    public void testSweepFailsRequestsPastDeadline() {
+        RecordingListener listener = new RecordingListener();
+        ServiceCommand<ResponseListener<Object>> command = newCommand(listener, 50);
+        ServiceCommand<ResponseListener<Object>> later = newCommand(new RecordingListener(), 60000);
+
+        table.put(1, command);
+        table.put(2, later);
+        table.sweep(RequestTable.now() + 100);
+
+        Assert.assertNull(table.get(1));
+        Assert.assertSame(later, table.get(2));
+        Assert.assertEquals(1, table.getPendingCount());
+        Assert.assertEquals(1, table.getExpiredCount());
+        Assert.assertTrue(command.isTimedOut());
+        Assert.assertEquals(1, listener.errors.size());
+        Assert.assertTrue(listener.errors.get(0) instanceof TimeoutServiceCommandError);
+    }
+
+    @Test
+    public void testSweepSkipsAnsweredRequests() {
+        RecordingListener listener = new RecordingListener();
+        ServiceCommand<ResponseListener<Object>> command = newCommand(listener, 50);
+
+        table.put(1, command);
+        command.getResponseListener().onSuccess("prompt");
+        table.sweep(RequestTable.now() + 100);
+
+        Assert.assertSame(command, table.get(1));
+        Assert.assertEquals(0, table.getExpiredCount());
+        Assert.assertTrue(listener.errors.isEmpty());
+    }
+
+    @Test
+    public void testSweepOnlyCountsExpiredRequests() {
+        ServiceCommand<ResponseListener<Object>> command = newCommand(new RecordingListener(), 50);
+
+        table.put(1, command);
+        command.cancel();
+        table.sweep(RequestTable.now() + 100);
+
+        Assert.assertNull(table.get(1));
+        Assert.assertEquals(0, table.getExpiredCount());
+    }
+
+    @Test
+    public void testCommandsWithOwnDeadlineAreNotSwept() {
+        ServiceCommand.ServiceCommandProcessor processor = Mockito.mock(ServiceCommand.ServiceCommandProcessor.class);
+        ServiceCommand<ResponseListener<Object>> command =
+                new ServiceCommand<ResponseListener<Object>>(processor, null, null, new RecordingListener());
+        command.setTimeout(60000);
+        command.send();
+
+        table.put(1, command);
+        table.sweep(Long.MAX_VALUE - 1);
+
+        Assert.assertSame(command, table.get(1));
+        Assert.assertEquals(0, table.getExpiredCount());
+        command.cancel();
+    }
+
+    @Test
+    public void testSubscriptionsDoNotExpire() {
+        URLServiceSubscription<ResponseListener<Object>> subscription =
+                new URLServiceSubscription<ResponseListener<Object>>(null, "ssap://audio/getVolume", null, true, new RecordingListener());
+
+        table.put(1, subscription);
+        table.sweep(Long.MAX_VALUE - 1);
+
+        Assert.assertSame(subscription, table.get(1));
+        Assert.assertEquals(0, table.getExpiredCount());
+    }
+
+    @Test
+    public void testRemoveOnlyMatchingCommand() {
+        ServiceCommand<ResponseListener<Object>> first = newCommand(new RecordingListener(), 0);
+        ServiceCommand<ResponseListener<Object>> second = newCommand(new RecordingListener(), 0);
+
+        table.put(1, first);
+        table.put(1, second);
+
+        Assert.assertFalse(table.remove(1, first));
+        Assert.assertSame(second, table.get(1));
+        Assert.assertTrue(table.remove(1, second));
+        Assert.assertEquals(0, table.getPendingCount());
+    }
+
+    @Test
+    public void testClearReturnsRemovedCommands() {
+        table.put(1, newCommand(new RecordingListener(), 0));
+        table.put(2, newCommand(new RecordingListener(), 0));
+
+        Assert.assertEquals(2, table.clear().size());
+        Assert.assertEquals(0, table.getPendingCount());
+    }
+
+    private ServiceCommand<ResponseListener<Object>> newCommand(ResponseListener<Object> listener, long timeout) {
+        ServiceCommand<ResponseListener<Object>> command = new ServiceCommand<ResponseListener<Object>>(null, null, null, listener);
+        command.setTimeout(timeout);
+        command.setCallbackExecutor(Util.DIRECT_EXECUTOR);
+        return command;
+    }
+
+    private static class RecordingListener implements ResponseListener<Object> {
+        final List<ServiceCommandError> errors = new ArrayList<ServiceCommandError>();
+
+        @Override
+        public void onSuccess(Object object) {
+        }
+
+        @Override
+        public void onError(ServiceCommandError error) {
+            errors.add(error);
+        }
+    }
+}
@@ -1,6 +1,25 @@
 package com.connectsdk;
 
-import java.util.HashMap;
+import android.content.Context;
+
+import com.connectsdk.discovery.DiscoveryFilter;
+import com.connectsdk.discovery.DiscoveryManager;
+import com.connectsdk.discovery.DiscoveryProvider;
+import com.connectsdk.discovery.DiscoveryProviderFactory;
+import com.connectsdk.discovery.provider.FireTVDiscoveryProvider;
+import com.connectsdk.discovery.provider.SSDPDiscoveryProvider;
+import com.connectsdk.discovery.provider.ZeroconfDiscoveryProvider;
+import com.connectsdk.service.AndroidService;
+import com.connectsdk.service.DLNAService;
+import com.connectsdk.service.DeviceService;
+import com.connectsdk.service.DeviceServiceFactory;
+import com.connectsdk.service.FireTVService;
+import com.connectsdk.service.NewAndroidService;
+import com.connectsdk.service.RokuService;
+import com.connectsdk.service.VizioService;
+import com.connectsdk.service.WebOSTVService;
+import com.connectsdk.service.config.ServiceConfig;
+import com.connectsdk.service.config.ServiceDescription;
 
 public class DefaultPlatform {
 
@@ -24,17 +43,69 @@ public class DefaultPlatform {
 //        return devicesList;
 //    }
 
-    public static HashMap<String, String> getDeviceServiceMap() {
-        HashMap<String, String> devicesList = new HashMap<String, String>();
-        devicesList.put("com.connectsdk.service.WebOSTVService", "com.connectsdk.discovery.provider.SSDPDiscoveryProvider");
-        devicesList.put("com.connectsdk.service.DLNAService", "com.connectsdk.discovery.provider.SSDPDiscoveryProvider");
-        devicesList.put("com.connectsdk.service.RokuService", "com.connectsdk.discovery.provider.SSDPDiscoveryProvider");
-        devicesList.put("com.connectsdk.service.FireTVService", "com.connectsdk.discovery.provider.FireTVDiscoveryProvider");
-        devicesList.put("com.connectsdk.service.AndroidService", "com.connectsdk.discovery.provider.ZeroconfDiscoveryProvider");
-        devicesList.put("com.connectsdk.service.NewAndroidService", "com.connectsdk.discovery.provider.ZeroconfDiscoveryProvider");
-        devicesList.put("com.connectsdk.service.VizioService", "com.connectsdk.discovery.provider.ZeroconfDiscoveryProvider");
-
-        return devicesList;
+    private static final DiscoveryProviderFactory SSDP = new DiscoveryProviderFactory() {
+        @Override
+        public DiscoveryProvider createProvider(Context context) {
+            return new SSDPDiscoveryProvider(context);
+        }
+    };
+
+    private static final DiscoveryProviderFactory ZEROCONF = new DiscoveryProviderFactory() {
+        @Override
+        public DiscoveryProvider createProvider(Context context) {
+            return new ZeroconfDiscoveryProvider(context);
+        }
+    };
+
+    private static final DiscoveryProviderFactory FIRETV = new DiscoveryProviderFactory() {
+        @Override
+        public DiscoveryProvider createProvider(Context context) {
+            return new FireTVDiscoveryProvider(context);
+        }
+    };
+
+    /* creates the default services by their ID, so the class of a service is loaded when the first one has been found */
+    private static final DeviceServiceFactory SERVICES = new DeviceServiceFactory() {
+        @Override
+        public DeviceService createService(ServiceDescription serviceDescription, ServiceConfig serviceConfig) {
+            String serviceId = serviceDescription.getServiceID();
+
+            if (WebOSTVService.ID.equals(serviceId))
+                return new WebOSTVService(serviceDescription, serviceConfig);
+            if (DLNAService.ID.equals(serviceId))
+                return new DLNAService(serviceDescription, serviceConfig);
+            if (RokuService.ID.equals(serviceId))
+                return new RokuService(serviceDescription, serviceConfig);
+            if (FireTVService.ID.equals(serviceId))
+                return new FireTVService(serviceDescription, serviceConfig);
+            if (AndroidService.ID.equals(serviceId))
+                return new AndroidService(serviceDescription, serviceConfig);
+            if (NewAndroidService.ID.equals(serviceId))
+                return new NewAndroidService(serviceDescription, serviceConfig);
+            if (VizioService.ID.equals(serviceId))
+                return new VizioService(serviceDescription, serviceConfig);
+            return null;
+        }
+    };
+
+    /**
+     * Registers the default services with factories, so DiscoveryManager creates them without reflection.
+     * <p>
+     * The filters are the ones of discoveryFilter() of each service, repeated here because calling it
+     * would load the service class, and with it the libraries it depends on, such as the Fling SDK of
+     * FireTVService. The IDs are constants, which the compiler copies here.
+     * <p>
+     * The discovery providers are created when discovery is started, since they have to run to find
+     * anything, and each service when the first one of its type has been found.
+     */
+    public static void registerDeviceServices(DiscoveryManager discoveryManager) {
+        discoveryManager.registerDeviceService(new DiscoveryFilter(WebOSTVService.ID, "urn:lge-com:service:webos-second-screen:1"), SSDPDiscoveryProvider.class, SSDP, SERVICES);
+        discoveryManager.registerDeviceService(new DiscoveryFilter(DLNAService.ID, "urn:schemas-upnp-org:device:MediaRenderer:1"), SSDPDiscoveryProvider.class, SSDP, SERVICES);
+        discoveryManager.registerDeviceService(new DiscoveryFilter(RokuService.ID, "roku:ecp"), SSDPDiscoveryProvider.class, SSDP, SERVICES);
+        discoveryManager.registerDeviceService(new DiscoveryFilter(FireTVService.ID, "FireTV"), FireTVDiscoveryProvider.class, FIRETV, SERVICES);
+        discoveryManager.registerDeviceService(new DiscoveryFilter(AndroidService.ID, "_androidtvremote._tcp.local."), ZeroconfDiscoveryProvider.class, ZEROCONF, SERVICES);
+        discoveryManager.registerDeviceService(new DiscoveryFilter(NewAndroidService.ID, "_androidtvremote2._tcp.local."), ZeroconfDiscoveryProvider.class, ZEROCONF, SERVICES);
+        discoveryManager.registerDeviceService(new DiscoveryFilter(VizioService.ID, "_viziocast._tcp.local."), ZeroconfDiscoveryProvider.class, ZEROCONF, SERVICES);
     }
 
 }